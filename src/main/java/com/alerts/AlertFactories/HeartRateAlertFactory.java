@@ -0,0 +1,14 @@
+package com.alerts.AlertFactories;
+
+import com.alerts.Alert;
+import com.alerts.BasisAlert;
+
+/**
+ * alert factory for alerts based on the heart rhythm
+ */
+public class HeartRateAlertFactory extends AlertFactory{
+    @Override
+    public Alert createAlert(String patientId, String condition, long timestamp) {
+        return new BasisAlert(patientId, "HeartRateAlert -> " + condition, timestamp);
+    }
+}
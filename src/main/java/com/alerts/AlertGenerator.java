@@ -1,18 +1,28 @@
 package com.alerts;
 
 import com.alerts.AlertFactories.*;
+import com.alerts.AlertSinks.AlertPipeline;
+import com.alerts.AlertSinks.AlertSink;
+import com.alerts.AlertSinks.ConsoleAlertSink;
 import com.alerts.AlertStrategies.*;
 import com.alerts.Decorators.PriorityAlertDecorator;
 import com.alerts.Decorators.RepeatedAlertDecorator;
 import com.data_management.DataStorage;
+import com.data_management.IngestListener;
 import com.data_management.PatientRecord;
+import com.data_management.RecordTypeRegistry;
+import com.util.ConcurrentIntMap;
+import com.util.HashedTimingWheel;
 
+import java.io.IOException;
 import java.util.List;
 import java.util.Map;
 import java.util.Stack;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * The {@code AlertGenerator} class is responsible for monitoring patient data
@@ -39,46 +49,85 @@ import java.util.concurrent.TimeUnit;
  * many times for just a few new records, which leads to repeatedly scanning old records which is inefficient.
  * In that case, keeping either strategy instances or required data directly in the {@code Patient}
  * object would be better.
+ *
+ * Record types are handled by their code from {@link RecordTypeRegistry}, so finding the strategies of a record
+ * is an array lookup. Record types without strategies (e.g. a label a new generator outputs) are skipped.
+ *
+ * For evaluating often, there is an incremental mode (see {@link #AlertGenerator(DataStorage, boolean)}) that uses
+ * option 1: every patient gets its own strategies, which are prepared from the history only the first time.
+ * After that every record updates the windows and trends of its patient once, so an evaluation costs
+ * the number of new records instead of rescanning old ones.
+ * In that mode the generator can also {@link #subscribe()} to the storage, then new records are evaluated
+ * on the ingest thread as soon as they are stored, instead of when {@code evaluateData()} is called.
+ * To evaluate on multiple cores, {@link AlertLanes} spreads the patients over threads.
+ *
+ * Repeated alerts are rechecked on a {@link HashedTimingWheel}, with one recheck per patient and record type.
+ * The wheel only times the rechecks, they run on a pool of recheck threads, so a slow sink doesn't delay the timers.
+ *
+ * In incremental mode the ECG of every patient also goes through a {@link HeartRateStrategy}, which finds the heart
+ * beats, alerts on tachycardia, bradycardia and irregular rhythms and adds a derived "HeartRate" series to the storage.
  */
 
 public class AlertGenerator {
+    private static final int RECHECKS = 3;
+    private static final long RECHECK_INTERVAL_SECONDS = 3;
+    //one timer thread for the rechecks of all generators, with 100ms precision
+    private static final HashedTimingWheel RECHECK_WHEEL =
+            new HashedTimingWheel(100, TimeUnit.MILLISECONDS, 64, "alert-rechecks");
+    //runs the rechecks that are due: the lookup, the check and the delivery
+    private static final ExecutorService RECHECK_EXECUTOR = newRecheckExecutor();
+
+    /**
+     * the pending rechecks of the repeated alerts of one patient and record type
+     */
+    private static final class Recheck {
+        final int patientId;
+        final int recordType;
+        PatientAlertState state;
+        RepeatedAlertDecorator alert; //the latest alert, it is the one that is repeated
+        HashedTimingWheel.Timeout timeout; //the next recheck
+        int remaining;
+        long generation; //counts the alerts, so a recheck notices a new alert that came in while it ran
+
+        Recheck(int patientId, int recordType) {
+            this.patientId = patientId;
+            this.recordType = recordType;
+        }
+    }
+
     private final DataStorage dataStorage;
-    private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(1);
+    //rechecks of repeated alerts, one per patient and record type (see scheduleRechecks())
+    private final ConcurrentHashMap<Long, Recheck> rechecks = new ConcurrentHashMap<>();
+    private final boolean incremental;
 
-    //Define and make an instance of all strategies
-    private final AlertStrategy ecgStrategy = new ECGStrategy();
-    private final AlertStrategy saturationStrategy = new SaturationStrategy();
-    private final CombinedAlertStrategy combinedStrategy = new CombinedAlertStrategy();
-    private final AlertStrategy systolicStrategy = new SystolicBloodPressureStrategy();
-    private final AlertStrategy diastolicStrategy = new DiabolicBloodPressureStrategy();
-    private final AlertStrategy triggeredStrategy = new TriggeredAlertStrategy();
+    //the strategies that are prepared again for every evaluation (option 2 above)
+    private final PatientAlertState sharedState = new PatientAlertState(false);
+    //the strategies of every patient, only used in incremental mode (option 1 above)
+    private final ConcurrentIntMap<PatientAlertState> patientStates = new ConcurrentIntMap<>();
+    private final IngestListener ingestListener = this::evaluateData;
+    private volatile AlertSink alertSink = new ConsoleAlertSink(); //where triggered alerts go
 
     //define all record types (got replaced by RecordType class)
     //private final String[] recordTypes = new String[]{"SystolicPressure", "DiastolicPressure", "ECG", "Saturation", "Alert"};
 
-    //assign one or more alert strategies to every record type
-    private final Map<String, AlertStrategy[]> strategies = Map.of(
-            RecordType.SYSTOLIC, new AlertStrategy[]{systolicStrategy, combinedStrategy},
-            RecordType.DIASTOLIC, new AlertStrategy[]{diastolicStrategy},
-            RecordType.ECG, new AlertStrategy[]{ecgStrategy},
-            RecordType.SATURATION, new AlertStrategy[]{saturationStrategy, combinedStrategy},
-            RecordType.ALERT, new AlertStrategy[]{triggeredStrategy}
-    );
-
-    //assign a factory to every alert strategy
-    private final Map<AlertStrategy, AlertFactory> factories = Map.of(systolicStrategy,
-            new BloodPressureAlertFactory(), diastolicStrategy, new BloodPressureAlertFactory(),
-            ecgStrategy, new ECGAlertFactory(), saturationStrategy, new BloodOxygenAlertFactory(),
-            combinedStrategy, new CombinedAlertFactory(), triggeredStrategy, new AlertFactory());
-
-    //list for which strategies an alertDecorator should be used
-    private final List<AlertStrategy> priorityStrategies;
-    private final List<AlertStrategy> repeatedStrategies;
+    //assign a factory to every kind of alert strategy
+    private final Map<Class<? extends AlertStrategy>, AlertFactory> factories = Map.of(
+            SystolicBloodPressureStrategy.class, new BloodPressureAlertFactory(),
+            DiabolicBloodPressureStrategy.class, new BloodPressureAlertFactory(),
+            ECGStrategy.class, new ECGAlertFactory(),
+            SaturationStrategy.class, new BloodOxygenAlertFactory(),
+            CombinedAlertStrategy.class, new CombinedAlertFactory(),
+            TriggeredAlertStrategy.class, new AlertFactory(),
+            HeartRateStrategy.class, new HeartRateAlertFactory());
+
+    //list for which kinds of strategies an alertDecorator should be used
+    private final List<Class<? extends AlertStrategy>> priorityStrategies;
+    private final List<Class<? extends AlertStrategy>> repeatedStrategies;
 
     //constants for prepping AlertStrategies
-    private final int repetitionsForTrend = ((SystolicBloodPressureStrategy) systolicStrategy).getRepetitionsForTrend();
-    private final int EcgWindowSize = ((ECGStrategy) ecgStrategy).getECGSize();
-    private final long saturationWindowSize = ((SaturationStrategy) saturationStrategy).getWindowSize();
+    private final int repetitionsForTrend = sharedState.systolicStrategy.getRepetitionsForTrend();
+    private final int EcgWindowSize = sharedState.ecgStrategy.getECGSize();
+    private final long saturationWindowSize = sharedState.saturationStrategy.getWindowSize();
 
 
     /**
@@ -90,11 +139,24 @@ public class AlertGenerator {
      *                    data
      */
     public AlertGenerator(DataStorage dataStorage) {
+        this(dataStorage, false);
+    }
+
+    /**
+     * Constructs an {@code AlertGenerator} that either prepares shared strategies from the evaluated history
+     * on every evaluation, or keeps strategies per patient.
+     *
+     * @param dataStorage the data storage system that provides access to patient data
+     * @param incremental true to keep the strategies (and their windows and trends) of every patient between
+     *                    evaluations, so an evaluation only goes over the new records
+     */
+    public AlertGenerator(DataStorage dataStorage, boolean incremental) {
         this.dataStorage = dataStorage;
+        this.incremental = incremental;
 
         //make saturation alerts use a priority and repeated decorator
-        priorityStrategies = List.of(saturationStrategy);
-        repeatedStrategies = List.of(saturationStrategy);
+        priorityStrategies = List.of(SaturationStrategy.class);
+        repeatedStrategies = List.of(SaturationStrategy.class);
     }
 
     /**
@@ -105,62 +167,179 @@ public class AlertGenerator {
      * @param patientId the patient to evaluate for alert conditions
      */
     public void evaluateData(int patientId) {
-        long evaluateFrom = dataStorage.getPatientScannedTime(patientId);
-        List<PatientRecord> evaluatedRecords = dataStorage.getRecords(patientId, Long.MIN_VALUE, evaluateFrom);
-        prepAlertStrategies(evaluatedRecords);
+        if (incremental) {
+            evaluateIncrementally(patientId);
+            return;
+        }
+        PatientAlertState state = sharedState;
+        synchronized (state) {
+            long scannedUpTo = dataStorage.getPatientScannedTime(patientId);
+            List<PatientRecord> evaluatedRecords = dataStorage.getRecords(patientId, Long.MIN_VALUE, scannedUpTo);
+            prepAlertStrategies(state, evaluatedRecords);
+
+            //checks all unchecked records of the patient, from old to new, streaming over the storage
+            long[] lastTime = {scannedUpTo};
+            dataStorage.forEachTypedRecord(patientId, scannedUpTo, Long.MAX_VALUE, (recordType, time, value) -> {
+                evaluateRecordForAlerts(state, patientId, recordType, value, time);
+                lastTime[0] = time;
+            });
+            //update the scanned records as checked
+            dataStorage.setPatientScannedTime(patientId, lastTime[0]);
+        }
+    }
+
+    /**
+     * Evaluates the records of a patient its strategies didn't go over yet. What was evaluated is kept per record
+     * type, so a record with the same timestamp as the last evaluated one (e.g. systolic and diastolic pressure
+     * measured together) or a late record of another type is still evaluated. The scan starts at the oldest
+     * unevaluated time of the record types that got new records, records of other types in between are skipped.
+     * A late record that is older than what was evaluated of its own type is not evaluated, since its strategies
+     * already moved past it.
+     */
+    private void evaluateIncrementally(int patientId) {
+        PatientAlertState state = getPatientState(patientId);
+        synchronized (state) {
+            long[] lastTimestamps = dataStorage.getLastTimestamps(patientId);
+            long evaluateFrom = Long.MAX_VALUE;
+            for (int recordType = 0; recordType < lastTimestamps.length; recordType++) {
+                long evaluatedUpTo = state.getEvaluatedUpTo(recordType);
+                if (lastTimestamps[recordType] > evaluatedUpTo) {
+                    if (state.getStrategies(recordType).length == 0) {
+                        state.setEvaluatedUpTo(recordType, lastTimestamps[recordType]); //nothing to check
+                    } else {
+                        evaluateFrom = Math.min(evaluateFrom, evaluatedUpTo + 1);
+                    }
+                }
+            }
+            if (evaluateFrom != Long.MAX_VALUE) {
+                long[] lastTime = {dataStorage.getPatientScannedTime(patientId)};
+                dataStorage.forEachTypedRecord(patientId, evaluateFrom, Long.MAX_VALUE, (recordType, time, value) -> {
+                    if (time > state.getEvaluatedUpTo(recordType)) {
+                        evaluateRecordForAlerts(state, patientId, recordType, value, time);
+                        state.setEvaluatedUpTo(recordType, time);
+                    }
+                    lastTime[0] = Math.max(lastTime[0], time);
+                });
+                dataStorage.setPatientScannedTime(patientId, lastTime[0]);
+            }
+            storeHeartRates(patientId, state.heartRateStrategy);
+        }
+    }
+
+    /**
+     * Stores the heart rates the strategy found as "HeartRate" records of the patient. They are stored after
+     * the evaluation, since the storage can't be written while it is being read. The beats are older than the
+     * records that were just evaluated, so an evaluation they cause on ingest doesn't go over records again.
+     */
+    private void storeHeartRates(int patientId, HeartRateStrategy heartRateStrategy) {
+        if (heartRateStrategy.getBeatCount() > 0) {
+            heartRateStrategy.drainBeats((time, heartRate) ->
+                    dataStorage.addPatientData(patientId, heartRate, RecordType.HEART_RATE_CODE, time));
+        }
+    }
+
+    /**
+     * Sets where triggered alerts are delivered, the console by default.
+     * To keep slow sinks (files, network) from holding up evaluation, wrap them in an {@link AlertPipeline}.
+     *
+     * @param alertSink the sink
+     */
+    public void setAlertSink(AlertSink alertSink) {
+        this.alertSink = alertSink;
+    }
+
+    boolean isIncremental() {
+        return incremental;
+    }
+
+    DataStorage getDataStorage() {
+        return dataStorage;
+    }
 
-        List<PatientRecord> records = dataStorage.getRecords(patientId, evaluateFrom, Long.MAX_VALUE);
+    /**
+     * Evaluates the records of every patient as soon as they are stored (push instead of polling), until
+     * {@link #unsubscribe()}. Evaluation runs on the thread that adds the records, once per added record
+     * or once per patient in a batch, so alerts are triggered before adding the records returns.
+     *
+     * @throws IllegalStateException if the generator is not in incremental mode, since evaluating that often
+     *                               would rescan the history of the patient for every record
+     */
+    public void subscribe() {
+        if (!incremental) {
+            throw new IllegalStateException("evaluating on ingest needs the incremental mode");
+        }
+        dataStorage.addIngestListener(ingestListener);
+    }
 
-        //checks all unchecked records of the patient, from old to new.
-        for (PatientRecord record : records) {
-            evaluateRecordForAlerts(record);
+    /**
+     * Stops evaluating records when they are stored, see {@link #subscribe()}
+     */
+    public void unsubscribe() {
+        dataStorage.removeIngestListener(ingestListener);
+    }
+
+    /**
+     * Gets the strategies of a patient for the incremental mode. The first time they are prepared from the records
+     * that were already evaluated (e.g. by an earlier generator), after that they are kept up to date by the
+     * evaluations, so the history is only read once per patient.
+     */
+    PatientAlertState getPatientState(int patientId) {
+        PatientAlertState state = patientStates.get(patientId);
+        if (state == null) {
+            PatientAlertState newState = new PatientAlertState(true);
+            long evaluatedUpTo = dataStorage.getPatientScannedTime(patientId);
+            prepAlertStrategies(newState, dataStorage.getRecords(patientId, Long.MIN_VALUE, evaluatedUpTo));
+            newState.setInitialEvaluatedUpTo(evaluatedUpTo);
+            state = patientStates.computeIfAbsent(patientId, id -> newState);
         }
-        //update the scanned records as checked
-        dataStorage.setPatientScannedTime(patientId, records.get(records.size()-1).getTimestamp());
+        return state;
     }
 
     /**
      * checks for a single record if an alert should be triggered.
      * Helper method for evaluateData()
-     * @param record    the PatientRecord to be checked
+     * @param state      the strategies to check the record with
+     * @param patientId  patient of the record
+     * @param recordType code of the type of the record
+     * @param value      measurement value of the record
+     * @param time       timestamp of the record
      */
-    private void evaluateRecordForAlerts(PatientRecord record) {
-        String recordType = record.getRecordType();
-        double value = record.getMeasurementValue();
-        long time = record.getTimestamp();
-        int patientId = record.getPatientId();
-
+    private void evaluateRecordForAlerts(PatientAlertState state, int patientId, int recordType, double value, long time) {
         //for all strategies that should be checked for the record type, check and make alert if necessary
-        for (AlertStrategy strategy : strategies.get(recordType)) {
+        for (AlertStrategy strategy : state.getStrategies(recordType)) {
             if (strategy instanceof CombinedAlertStrategy) {
                 ((CombinedAlertStrategy) strategy).setLastData(value, recordType);
             }
             if (strategy.checkAlert(value, time)) {
-                AlertFactory factory = factories.get(strategy);
+                AlertFactory factory = factories.get(strategy.getClass());
                 assert factory != null: "No factory defined for strategy: " + strategy;
 
-                Alert alert = factory.createAlert(String.valueOf(patientId), recordType + "=" + value, time);
-                useDecorator(recordType, alert, strategy);
+                String condition = strategy instanceof HeartRateStrategy
+                        ? ((HeartRateStrategy) strategy).getCondition()
+                        : RecordTypeRegistry.nameOf(recordType) + "=" + value;
+                Alert alert = factory.createAlert(String.valueOf(patientId), condition, time);
+                useDecorator(state, recordType, alert, strategy);
             }
         }
     }
 
     /**
      * checks how an alert should be triggered
-     * @param recordType    record type that caused the alert
+     * @param state the strategies that the strategy belongs to
+     * @param recordType    code of the record type that caused the alert
      * @param alert the alert
      * @param strategy strategy that caused the alert
      */
-    private void useDecorator(String recordType, Alert alert, AlertStrategy strategy) {
+    private void useDecorator(PatientAlertState state, int recordType, Alert alert, AlertStrategy strategy) {
         boolean triggered = false;
-        if (priorityStrategies.contains(strategy)) {
-            triggerAlert(new PriorityAlertDecorator(alert));
+        if (priorityStrategies.contains(strategy.getClass())) {
+            triggerAlert(state, new PriorityAlertDecorator(alert));
             triggered = true;
         }
-        if (repeatedStrategies.contains(strategy)) {
-            triggerAlert(new RepeatedAlertDecorator(alert, strategy, recordType));
+        if (repeatedStrategies.contains(strategy.getClass())) {
+            triggerAlert(state, new RepeatedAlertDecorator(alert, strategy, recordType));
         } else if (!triggered) {
-            triggerAlert(alert);
+            triggerAlert(state, alert);
         }
     }
 
@@ -172,9 +351,10 @@ public class AlertGenerator {
      * This method should be run once before evaluating unchecked records for a patient
      * to get data needed for e.g. trend alerts
      *
+     * @param state            the strategies to prepare
      * @param evaluatedRecords list of already evaluated records
      */
-    private void prepAlertStrategies (List<PatientRecord> evaluatedRecords) {
+    private void prepAlertStrategies (PatientAlertState state, List<PatientRecord> evaluatedRecords) {
         Stack<Double> systolicStack = new Stack<>();
         Stack<Double> diastolicStack = new Stack<>();
         Stack<Double> ecgStack = new Stack<>();
@@ -186,18 +366,19 @@ public class AlertGenerator {
         for (int i = evaluatedRecords.size() - 1; i >= 0; i--) {
             PatientRecord record = evaluatedRecords.get(i);
 
-            if (record.getRecordType().equals(RecordType.ECG) && ecgStack.size() < EcgWindowSize) {
+            int recordType = record.getRecordTypeCode();
+            if (recordType == RecordType.ECG_CODE && ecgStack.size() < EcgWindowSize) {
                 ecgStack.push(record.getMeasurementValue());
-            } else if (record.getRecordType().equals(RecordType.SYSTOLIC) && systolicStack.size() < repetitionsForTrend) {
+            } else if (recordType == RecordType.SYSTOLIC_CODE && systolicStack.size() < repetitionsForTrend) {
                 systolicStack.push(record.getMeasurementValue());
                 if (systolicStack.size() == 1)
-                    combinedStrategy.setLastData(systolicStack.peek(), RecordType.SYSTOLIC);
-            } else if (record.getRecordType().equals(RecordType.DIASTOLIC) && diastolicStack.size() < repetitionsForTrend) {
+                    state.combinedStrategy.setLastData(systolicStack.peek(), RecordType.SYSTOLIC_CODE);
+            } else if (recordType == RecordType.DIASTOLIC_CODE && diastolicStack.size() < repetitionsForTrend) {
                 diastolicStack.push(record.getMeasurementValue());
-            } else if (record.getRecordType().equals(RecordType.SATURATION) && !satWindowFull) {
+            } else if (recordType == RecordType.SATURATION_CODE && !satWindowFull) {
                 if (saturationStack.isEmpty()) {
                     firstSatTime = record.getTimestamp();
-                    combinedStrategy.setLastData(record.getMeasurementValue(), RecordType.SATURATION);
+                    state.combinedStrategy.setLastData(record.getMeasurementValue(), RecordType.SATURATION_CODE);
                 } else if (saturationWindowSize <= firstSatTime -record.getTimestamp()){
                     satWindowFull = true;
                 }
@@ -210,47 +391,136 @@ public class AlertGenerator {
         }
         assert saturationTimes.size() == saturationStack.size(): "Saturation times and values size don't match";
         while (!saturationStack.isEmpty()) {
-            saturationStrategy.checkAlert(saturationStack.pop(), saturationTimes.pop());
+            state.saturationStrategy.checkAlert(saturationStack.pop(), saturationTimes.pop());
         }
         while (!systolicStack.isEmpty()){
-            systolicStrategy.checkAlert(systolicStack.pop(), null);
+            state.systolicStrategy.checkAlert(systolicStack.pop(), null);
         }
         while (!diastolicStack.isEmpty()) {
-            diastolicStrategy.checkAlert(diastolicStack.pop(), null);
+            state.diastolicStrategy.checkAlert(diastolicStack.pop(), null);
         }
         while (!ecgStack.isEmpty()){
-            ecgStrategy.checkAlert(ecgStack.pop(), null);
+            state.ecgStrategy.checkAlert(ecgStack.pop(), null);
         }
     }
 
     /**
-     * Triggers an alert for the monitoring system. This method can be extended to
-     * notify medical staff, log the alert, or perform other actions. The method
-     * currently assumes that the alert information is fully formed when passed as
-     * an argument.
+     * Triggers an alert for the monitoring system by passing it to the alert sink
+     * (see {@link #setAlertSink(AlertSink)}), which can notify medical staff, log the alert,
+     * or perform other actions. The method currently assumes that the alert information
+     * is fully formed when passed as an argument.
      *
+     * @param state the strategies that made the alert, a repeated alert is rechecked with them
      * @param alert the alert object containing details about the alert condition
      */
-    private void triggerAlert(Alert alert) {
+    private void triggerAlert(PatientAlertState state, Alert alert) {
         assert alert != null;
-        System.out.println(alert);
+        deliver(alert);
 
         if (alert instanceof RepeatedAlertDecorator) {
-            int id = Integer.parseInt(alert.getPatientId());
-            String recordType = ((RepeatedAlertDecorator) alert).getRecordType();
-
-            //schedule to recheck the alert 3 times
-            for (int i = 1; i <= 3; i++) {
-                int delay = i * 3; // after 3s, 6s, 9s
-                scheduler.schedule(() -> {
-                    PatientRecord latestRecord = dataStorage.getLastRecordOfType(id, recordType);
-                    System.out.println("rechecking on value" + latestRecord.getMeasurementValue());
-                    if (((RepeatedAlertDecorator) alert).getAlertStrategy()
-                            .checkAlert(latestRecord.getMeasurementValue(), latestRecord.getTimestamp())) {
-                        System.out.println(alert + ", repeated");
-                    }
-                }, delay, TimeUnit.SECONDS);
+            scheduleRechecks(state, (RepeatedAlertDecorator) alert);
+        }
+    }
+
+    /**
+     * Schedules the rechecks of a repeated alert: it is delivered again every 3 seconds while the latest record of its
+     * type still triggers the strategy, at most 3 times, and not at all once the condition cleared.
+     * Alerts of the same patient and record type share one recheck, so a new alert replaces the alert to repeat,
+     * cancels the pending timer and starts the 3 rechecks again, instead of adding 3 timers and 3 lookups of its own.
+     *
+     * @param state the strategies that made the alert
+     * @param alert the alert to repeat
+     */
+    private void scheduleRechecks(PatientAlertState state, RepeatedAlertDecorator alert) {
+        int id = Integer.parseInt(alert.getPatientId());
+        int recordType = alert.getRecordTypeCode();
+        long key = ((long) id << 32) | (recordType & 0xFFFFFFFFL);
+        rechecks.compute(key, (k, recheck) -> {
+            if (recheck == null) {
+                recheck = new Recheck(id, recordType);
+            }
+            synchronized (recheck) {
+                if (recheck.timeout != null) {
+                    recheck.timeout.cancel(); //the next recheck is 3 seconds after the latest alert
+                }
+                recheck.timeout = scheduleRecheck(k);
+                recheck.state = state;
+                recheck.alert = alert;
+                recheck.remaining = RECHECKS;
+                recheck.generation++;
             }
+            return recheck;
+        });
+    }
+
+    /**
+     * Schedules the next recheck in 3 seconds. The wheel thread only hands it to the recheck executor.
+     */
+    private HashedTimingWheel.Timeout scheduleRecheck(long key) {
+        return RECHECK_WHEEL.schedule(() -> RECHECK_EXECUTOR.execute(() -> recheck(key)),
+                RECHECK_INTERVAL_SECONDS, TimeUnit.SECONDS);
+    }
+
+    private static ExecutorService newRecheckExecutor() {
+        AtomicInteger threads = new AtomicInteger();
+        return Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), runnable -> {
+            Thread thread = new Thread(runnable, "alert-recheck-" + threads.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Runs on the recheck executor: looks up the latest record once, delivers the alert again if the condition still holds
+     * and schedules the next recheck, or drops the recheck if the condition cleared or it was the last one
+     */
+    private void recheck(long key) {
+        Recheck recheck = rechecks.get(key);
+        if (recheck == null) {
+            return;
+        }
+        PatientAlertState state;
+        RepeatedAlertDecorator alert;
+        long generation;
+        synchronized (recheck) {
+            state = recheck.state;
+            alert = recheck.alert;
+            generation = recheck.generation;
+        }
+        PatientRecord latestRecord = dataStorage.getLastRecordOfType(recheck.patientId, recheck.recordType);
+        boolean holds = false;
+        if (latestRecord != null) {
+            synchronized (state) {
+                holds = alert.getAlertStrategy()
+                        .checkAlert(latestRecord.getMeasurementValue(), latestRecord.getTimestamp());
+            }
+        }
+        if (holds) {
+            deliver(alert);
+        }
+        boolean cleared = !holds;
+        rechecks.computeIfPresent(key, (k, current) -> {
+            synchronized (current) {
+                if (current.generation != generation) {
+                    return current; //a new alert came in while this recheck ran and scheduled the next one
+                }
+                if (cleared || --current.remaining == 0) {
+                    return null;
+                }
+                current.timeout = scheduleRecheck(k);
+            }
+            return current;
+        });
+    }
+
+    /**
+     * passes an alert to the sink. a sink that fails doesn't stop the evaluation
+     */
+    private void deliver(Alert alert) {
+        try {
+            alertSink.deliver(List.of(alert));
+        } catch (IOException | RuntimeException e) {
+            System.err.println("could not deliver alert " + alert + ": " + e);
         }
     }
 }
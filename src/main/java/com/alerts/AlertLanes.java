@@ -0,0 +1,139 @@
+package com.alerts;
+
+import com.data_management.IngestListener;
+import com.util.ConcurrentIntMap;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Evaluates patients in parallel on a fixed number of lanes. Every patient is hashed onto one lane, and every lane
+ * is a single thread, so the records of a patient are evaluated in order and the strategies of a patient
+ * (see {@link AlertGenerator#AlertGenerator(com.data_management.DataStorage, boolean)}) are only used by its lane.
+ * Lanes don't share any mutable state, so throughput grows with the number of lanes up to the number of cores.
+ *
+ * <p>An evaluation that is requested while the patient is already waiting in its lane is merged with the waiting
+ * one, since that one will see the new records as well.
+ */
+public class AlertLanes implements AutoCloseable {
+    private static final long CLOSE_TIMEOUT_NANOS = TimeUnit.MINUTES.toNanos(1); //for the lanes to finish in close()
+    private final AlertGenerator generator;
+    private final ExecutorService[] lanes;
+    private final IngestListener ingestListener = this::submit;
+    //per patient, true while an evaluation of it is waiting in its lane, so more records don't queue more
+    private final ConcurrentIntMap<AtomicBoolean> queued = new ConcurrentIntMap<>();
+
+    /**
+     * Starts the lanes
+     *
+     * @param generator the generator to evaluate with, in incremental mode
+     * @param laneCount the number of lanes (threads), e.g. the number of cores
+     * @throws IllegalArgumentException if the generator is not in incremental mode, or there are no lanes
+     */
+    public AlertLanes(AlertGenerator generator, int laneCount) {
+        if (!generator.isIncremental()) {
+            throw new IllegalArgumentException("evaluating in lanes needs a generator in incremental mode");
+        }
+        if (laneCount < 1) {
+            throw new IllegalArgumentException("at least one lane is needed, got " + laneCount);
+        }
+        this.generator = generator;
+        this.lanes = new ExecutorService[laneCount];
+        for (int lane = 0; lane < laneCount; lane++) {
+            String name = "alert-lane-" + lane;
+            lanes[lane] = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, name);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    /**
+     * @return the lane of a patient, the same for every call
+     */
+    int laneOf(int patientId) {
+        //Fibonacci hashing, so consecutive IDs are spread over the lanes
+        long hash = (patientId * 0x9E3779B9L) & 0xFFFFFFFFL;
+        return (int) ((hash * lanes.length) >>> 32);
+    }
+
+    /**
+     * Evaluates a patient's new records on the patient's lane, and returns without waiting for it.
+     * The strategies of a new patient are prepared from its history on the lane as well, not on the caller's thread.
+     *
+     * @param patientId the patient to evaluate
+     */
+    public void submit(int patientId) {
+        AtomicBoolean patientQueued = queued.computeIfAbsent(patientId, id -> new AtomicBoolean());
+        if (patientQueued.compareAndSet(false, true)) {
+            lanes[laneOf(patientId)].execute(() -> {
+                patientQueued.set(false); //records that are added from here on need another evaluation
+                generator.evaluateData(patientId);
+            });
+        }
+    }
+
+    /**
+     * Submits every patient as soon as new records of it are stored, until {@link #unsubscribe()}.
+     * Unlike {@link AlertGenerator#subscribe()}, the ingest thread doesn't wait for the evaluation.
+     */
+    public void subscribe() {
+        generator.getDataStorage().addIngestListener(ingestListener);
+    }
+
+    /**
+     * Stops submitting patients when records are stored, see {@link #subscribe()}
+     */
+    public void unsubscribe() {
+        generator.getDataStorage().removeIngestListener(ingestListener);
+    }
+
+    /**
+     * Waits until all evaluations that were submitted before this call are done
+     *
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    public void awaitSubmitted() throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(lanes.length);
+        for (ExecutorService lane : lanes) {
+            lane.execute(done::countDown);
+        }
+        done.await();
+    }
+
+    /**
+     * Stops submitting, lets the lanes finish the submitted evaluations and stops them.
+     * If that takes longer than a minute, or the thread is interrupted while waiting, the evaluations that
+     * didn't start yet are dropped and the running ones are interrupted; an interrupt stays set on the thread.
+     */
+    @Override
+    public void close() {
+        unsubscribe();
+        for (ExecutorService lane : lanes) {
+            lane.shutdown();
+        }
+        long deadline = System.nanoTime() + CLOSE_TIMEOUT_NANOS;
+        try {
+            for (ExecutorService lane : lanes) {
+                if (!lane.awaitTermination(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+                    System.err.println("alert lanes didn't finish their evaluations within a minute, stopping them");
+                    stopNow();
+                    return;
+                }
+            }
+        } catch (InterruptedException e) {
+            stopNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void stopNow() {
+        for (ExecutorService lane : lanes) {
+            lane.shutdownNow();
+        }
+    }
+}
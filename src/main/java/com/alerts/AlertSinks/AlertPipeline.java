@@ -0,0 +1,231 @@
+package com.alerts.AlertSinks;
+
+import com.alerts.Alert;
+import com.alerts.Decorators.PriorityAlertDecorator;
+import com.util.BoundedMpmcQueue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Sink that decouples triggering alerts from delivering them: alerts go into a bounded lock-free queue, and
+ * one delivery thread takes them out in batches (up to the batch size) and delivers every batch to all downstream
+ * sinks. So evaluation never waits on console, disk or network I/O, only on a full queue if the backpressure
+ * policy says so.
+ *
+ * <p>When the queue is full, the {@link Backpressure} policy decides what happens. Queue depth, delivered and
+ * dropped alerts and the delivery latency (from entering the queue until all sinks returned) can be read while
+ * the pipeline runs.
+ */
+public class AlertPipeline implements AlertSink {
+    private static final long IDLE_PARK_NANOS = 1_000_000;
+    private static final long FULL_PARK_NANOS = 20_000;
+
+    /**
+     * what to do with a new alert when the queue is full
+     */
+    public enum Backpressure {
+        /** the triggering thread waits until there is room, nothing is lost */
+        BLOCK,
+        /** the oldest alert in the queue is dropped to make room */
+        DROP_OLDEST,
+        /**
+         * alerts without priority are dropped once the queue is 3/4 full, the rest of the queue is kept for
+         * priority alerts ({@link PriorityAlertDecorator}), which drop the oldest alert when it's full
+         */
+        SHED_BY_PRIORITY
+    }
+
+    /**
+     * an alert in the queue, with the time it entered the queue
+     */
+    private static final class Pending {
+        final Alert alert;
+        final long queuedAt;
+
+        Pending(Alert alert, long queuedAt) {
+            this.alert = alert;
+            this.queuedAt = queuedAt;
+        }
+    }
+
+    private final BoundedMpmcQueue<Pending> queue;
+    private final Backpressure backpressure;
+    private final int sheddingDepth;
+    private final int maxBatchSize;
+    private final AlertSink[] sinks;
+    private final Thread deliveryThread;
+    private volatile boolean running = true;
+    private volatile boolean idle; //true while the delivery thread is parked on an empty queue
+
+    private final AtomicLong delivered = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong failedBatches = new AtomicLong();
+    private volatile long totalLatencyNanos; //only written by the delivery thread
+    private volatile long maxLatencyNanos;
+
+    /**
+     * Starts a pipeline with its delivery thread
+     *
+     * @param capacity     the number of alerts the queue can hold (rounded up to a power of two)
+     * @param maxBatchSize the maximum number of alerts per delivery
+     * @param backpressure what to do when the queue is full
+     * @param sinks        the sinks every alert is delivered to
+     */
+    public AlertPipeline(int capacity, int maxBatchSize, Backpressure backpressure, AlertSink... sinks) {
+        if (maxBatchSize < 1) {
+            throw new IllegalArgumentException("the batch size must be positive, got " + maxBatchSize);
+        }
+        this.queue = new BoundedMpmcQueue<>(capacity);
+        this.backpressure = backpressure;
+        this.sheddingDepth = queue.capacity() * 3 / 4;
+        this.maxBatchSize = maxBatchSize;
+        this.sinks = sinks.clone();
+        this.deliveryThread = new Thread(this::deliverLoop, "alert-delivery");
+        deliveryThread.setDaemon(true);
+        deliveryThread.start();
+    }
+
+    /**
+     * Queues the alerts for delivery, and only waits if the queue is full and the policy is {@link Backpressure#BLOCK}
+     */
+    @Override
+    public void deliver(List<? extends Alert> alerts) {
+        for (Alert alert : alerts) {
+            offer(alert);
+        }
+    }
+
+    /**
+     * Queues one alert for delivery, see {@link #deliver(List)}
+     *
+     * @param alert the alert
+     */
+    public void offer(Alert alert) {
+        if (!running) {
+            throw new IllegalStateException("the alert pipeline is closed");
+        }
+        Pending pending = new Pending(alert, System.nanoTime());
+        if (backpressure == Backpressure.SHED_BY_PRIORITY && !(alert instanceof PriorityAlertDecorator)
+                && queue.size() >= sheddingDepth) {
+            dropped.incrementAndGet();
+            return;
+        }
+        while (!queue.offer(pending)) {
+            if (backpressure == Backpressure.BLOCK) {
+                LockSupport.unpark(deliveryThread);
+                LockSupport.parkNanos(FULL_PARK_NANOS);
+            } else if (queue.poll() != null) {
+                dropped.incrementAndGet();
+            }
+        }
+        if (idle) {
+            LockSupport.unpark(deliveryThread);
+        }
+    }
+
+    private void deliverLoop() {
+        List<Alert> batch = new ArrayList<>(maxBatchSize);
+        long[] queuedAt = new long[maxBatchSize];
+        while (running || !queue.isEmpty()) {
+            Pending pending;
+            while (batch.size() < maxBatchSize && (pending = queue.poll()) != null) {
+                queuedAt[batch.size()] = pending.queuedAt;
+                batch.add(pending.alert);
+            }
+            if (batch.isEmpty()) {
+                idle = true;
+                if (queue.isEmpty() && running) { //checked again after setting idle, so an offer can't be missed
+                    LockSupport.parkNanos(IDLE_PARK_NANOS);
+                }
+                idle = false;
+                continue;
+            }
+            for (AlertSink sink : sinks) {
+                try {
+                    sink.deliver(batch);
+                } catch (IOException | RuntimeException e) {
+                    failedBatches.incrementAndGet();
+                    System.err.println("could not deliver " + batch.size() + " alerts to " + sink + ": " + e);
+                }
+            }
+            long now = System.nanoTime();
+            long total = totalLatencyNanos;
+            long max = maxLatencyNanos;
+            for (int i = 0; i < batch.size(); i++) {
+                long latency = now - queuedAt[i];
+                total += latency;
+                max = Math.max(max, latency);
+            }
+            totalLatencyNanos = total;
+            maxLatencyNanos = max;
+            delivered.addAndGet(batch.size());
+            batch.clear();
+        }
+    }
+
+    /**
+     * @return the number of alerts waiting in the queue
+     */
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    /**
+     * @return the number of alerts that were delivered to the sinks
+     */
+    public long getDeliveredCount() {
+        return delivered.get();
+    }
+
+    /**
+     * @return the number of alerts that were dropped because the queue was full
+     */
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    /**
+     * @return the number of batches that a sink failed to deliver
+     */
+    public long getFailedBatchCount() {
+        return failedBatches.get();
+    }
+
+    /**
+     * @return the mean time from queueing an alert until all sinks delivered it, in nanoseconds
+     */
+    public double getMeanDeliveryLatencyNanos() {
+        long count = delivered.get();
+        return count == 0 ? 0 : (double) totalLatencyNanos / count;
+    }
+
+    /**
+     * @return the longest time from queueing an alert until all sinks delivered it, in nanoseconds
+     */
+    public long getMaxDeliveryLatencyNanos() {
+        return maxLatencyNanos;
+    }
+
+    /**
+     * Stops accepting alerts, delivers the alerts that are still queued and closes the sinks
+     *
+     * @throws IOException if closing a sink fails
+     */
+    @Override
+    public void close() throws IOException {
+        running = false;
+        LockSupport.unpark(deliveryThread);
+        try {
+            deliveryThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (AlertSink sink : sinks) {
+            sink.close();
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package com.alerts.AlertSinks;
+
+import com.alerts.Alert;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * interface for the places where triggered alerts are delivered to (console, file, network, ...).
+ * Alerts are delivered in batches, so a sink can write a whole batch with one write or one message.
+ */
+public interface AlertSink extends AutoCloseable {
+    /**
+     * delivers alerts, in the order they were triggered
+     * @param alerts the alerts, not empty. the list is only valid during the call
+     * @throws IOException if delivering fails
+     */
+    void deliver(List<? extends Alert> alerts) throws IOException;
+
+    /**
+     * releases the resources of the sink (files, connections), nothing is delivered after it
+     * @throws IOException if closing fails
+     */
+    @Override
+    default void close() throws IOException {
+    }
+}
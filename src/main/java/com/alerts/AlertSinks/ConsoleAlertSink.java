@@ -0,0 +1,18 @@
+package com.alerts.AlertSinks;
+
+import com.alerts.Alert;
+
+import java.util.List;
+
+/**
+ * sink that prints every alert on a line of the console (the current {@code System.out}).
+ * this is what the {@code AlertGenerator} uses if no other sink is set
+ */
+public class ConsoleAlertSink implements AlertSink {
+    @Override
+    public void deliver(List<? extends Alert> alerts) {
+        for (Alert alert : alerts) {
+            System.out.println(alert);
+        }
+    }
+}
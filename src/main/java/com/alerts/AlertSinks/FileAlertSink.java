@@ -0,0 +1,41 @@
+package com.alerts.AlertSinks;
+
+import com.alerts.Alert;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * sink that appends every alert as a line to a file. a batch is written with one flush
+ */
+public class FileAlertSink implements AlertSink {
+    private final BufferedWriter writer;
+
+    /**
+     * @param file the file, is created if it doesn't exist
+     * @throws IOException if the file can't be opened
+     */
+    public FileAlertSink(Path file) throws IOException {
+        writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    @Override
+    public synchronized void deliver(List<? extends Alert> alerts) throws IOException {
+        for (Alert alert : alerts) {
+            writer.write(alert.toString());
+            writer.newLine();
+        }
+        writer.flush();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        writer.close();
+    }
+}
@@ -0,0 +1,25 @@
+package com.alerts.AlertSinks;
+
+import com.alerts.Alert;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * sink that keeps all delivered alerts in a list, e.g. for tests or for showing them in a UI
+ */
+public class InMemoryAlertSink implements AlertSink {
+    private final List<Alert> alerts = new ArrayList<>();
+
+    @Override
+    public synchronized void deliver(List<? extends Alert> alerts) {
+        this.alerts.addAll(alerts);
+    }
+
+    /**
+     * @return a copy of the alerts that were delivered so far
+     */
+    public synchronized List<Alert> getAlerts() {
+        return new ArrayList<>(alerts);
+    }
+}
@@ -0,0 +1,58 @@
+package com.alerts.AlertSinks;
+
+import com.alerts.Alert;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * sink that sends every alert as a line over a TCP connection, e.g. to a paging system.
+ * a batch is sent with one flush. if sending fails the connection is made again for the next batch
+ */
+public class TcpAlertSink implements AlertSink {
+    private final String host;
+    private final int port;
+    private Socket socket; //null if not connected
+    private BufferedWriter writer;
+
+    /**
+     * @param host host to connect to
+     * @param port port to connect to
+     */
+    public TcpAlertSink(String host, int port) {
+        this.host = host;
+        this.port = port;
+    }
+
+    @Override
+    public synchronized void deliver(List<? extends Alert> alerts) throws IOException {
+        if (socket == null) {
+            socket = new Socket(host, port);
+            writer = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+        }
+        try {
+            for (Alert alert : alerts) {
+                writer.write(alert.toString());
+                writer.write('\n');
+            }
+            writer.flush();
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (socket != null) {
+            Socket current = socket;
+            socket = null;
+            writer = null;
+            current.close();
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package com.alerts.AlertSinks;
+
+import com.alerts.Alert;
+import org.java_websocket.server.WebSocketServer;
+
+import java.util.List;
+
+/**
+ * sink that sends alerts to all clients of a websocket server, e.g. the dashboards of a ward.
+ * a batch is sent as one text message with a line per alert
+ */
+public class WebSocketAlertSink implements AlertSink {
+    private final WebSocketServer server;
+
+    /**
+     * @param server the server, which is started and stopped by the caller
+     */
+    public WebSocketAlertSink(WebSocketServer server) {
+        this.server = server;
+    }
+
+    @Override
+    public void deliver(List<? extends Alert> alerts) {
+        StringBuilder message = new StringBuilder();
+        for (Alert alert : alerts) {
+            if (message.length() > 0) {
+                message.append('\n');
+            }
+            message.append(alert);
+        }
+        server.broadcast(message.toString());
+    }
+}
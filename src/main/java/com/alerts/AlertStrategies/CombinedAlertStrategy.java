@@ -1,6 +1,7 @@
 package com.alerts.AlertStrategies;
 
 import com.alerts.RecordType;
+import com.data_management.RecordTypeRegistry;
 
 public class CombinedAlertStrategy implements AlertStrategy {
     private double lastSaturation = 100;
@@ -13,12 +14,22 @@ public class CombinedAlertStrategy implements AlertStrategy {
      * @param recordType    record type of value. either saturation or systolic
      */
     public void setLastData(double value, String recordType) {
-        if (recordType.equals(RecordType.SATURATION)) {
+        setLastData(value, RecordTypeRegistry.register(recordType));
+    }
+
+    /**
+     * same as {@link #setLastData(double, String)}, with the code of the record type
+     * @param value new value
+     * @param recordTypeCode    code of the record type of value. either saturation or systolic
+     */
+    public void setLastData(double value, int recordTypeCode) {
+        if (recordTypeCode == RecordType.SATURATION_CODE) {
             lastSaturation = value;
-        } else if (recordType.equals(RecordType.SYSTOLIC)) {
+        } else if (recordTypeCode == RecordType.SYSTOLIC_CODE) {
             lastSystolicPressure = value;
         } else {
-            System.out.println("Unknown record type for updating combined alert strategy: " + recordType);
+            System.out.println("Unknown record type for updating combined alert strategy: "
+                    + RecordTypeRegistry.nameOf(recordTypeCode));
         }
     }
 
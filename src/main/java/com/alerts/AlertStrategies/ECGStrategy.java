@@ -1,13 +1,25 @@
 package com.alerts.AlertStrategies;
 
-import java.util.LinkedList;
-import java.util.Queue;
+import com.util.DoubleRingBuffer;
 
 public class ECGStrategy implements AlertStrategy {
-    private Queue<Double> lastECGs = new LinkedList<>();
-    private final int ECGSize = 5;
-    private final int ecgPeakThreshold = 30;
-    private double averageECG = 0;
+    private final DoubleRingBuffer lastECGs;
+    private final int ECGSize;
+    private final double ecgPeakThreshold;
+
+    public ECGStrategy() {
+        this(5, 30);
+    }
+
+    /**
+     * @param windowSize    number of samples in the moving average
+     * @param peakThreshold how far a sample can be from the moving average before it is an alert
+     */
+    public ECGStrategy(int windowSize, double peakThreshold) {
+        this.lastECGs = new DoubleRingBuffer(windowSize);
+        this.ECGSize = windowSize;
+        this.ecgPeakThreshold = peakThreshold;
+    }
 
     public int getECGSize() {
         return ECGSize;
@@ -15,16 +27,9 @@ public class ECGStrategy implements AlertStrategy {
 
     @Override
     public boolean checkAlert(double value, Long time) {
-        if (ECGSize == lastECGs.size()) {
-            //update average and dequeue
-            averageECG += value/ECGSize;
-            averageECG -= lastECGs.poll();
-            if (Math.abs(value - averageECG) > ecgPeakThreshold) {
-                lastECGs.offer(value); //enqueue
-                return true;
-            }
-        } //I assume we don't have to do checks if the window isnt full yet
-        lastECGs.offer(value); //enqueue
-        return false;
+        boolean full = lastECGs.isFull();
+        lastECGs.add(value); //replaces the oldest sample, so the average is of the last ECGSize samples
+        //I assume we don't have to do checks if the window isnt full yet
+        return full && Math.abs(value - lastECGs.average()) > ecgPeakThreshold;
     }
 }
@@ -0,0 +1,165 @@
+package com.alerts.AlertStrategies;
+
+import com.util.DoubleRingBuffer;
+
+import java.util.Arrays;
+
+/**
+ * Strategy for the heart rhythm of a continuous ECG (e.g. 250-500 samples per second): finds the beats with a
+ * {@link QrsDetector} and alerts when the heart rate (averaged over the last 8 beats) goes above the tachycardia
+ * or below the bradycardia limit, or when a beat comes more than a fraction of the average RR interval earlier or
+ * later than expected. It only alerts when a condition starts, not for every beat while it lasts.
+ *
+ * <p>The heart rate at every beat is kept until {@link #drainBeats}, so it can be stored as a record series.
+ * The strategy needs all ECG samples of one patient in order, so it can't be shared between patients.
+ */
+public class HeartRateStrategy implements AlertStrategy {
+    private static final int MIN_BEATS = 4; //RR intervals needed before the rhythm is judged
+
+    private final QrsDetector detector;
+    private final double bradycardiaBpm;
+    private final double tachycardiaBpm;
+    private final double irregularity;
+    private final DoubleRingBuffer rrIntervals = new DoubleRingBuffer(8);
+    private long samples;
+
+    private boolean tachycardia;
+    private boolean bradycardia;
+    private boolean irregular;
+    private double heartRate;
+    private String condition = "";
+
+    //the heart rates found since the last drainBeats()
+    private long[] beatTimes = new long[16];
+    private double[] beatRates = new double[16];
+    private int beatCount;
+    //the arrays of the last drainBeats(), reused by the next one, or null while a drain is visiting them
+    private long[] spareTimes = new long[16];
+    private double[] spareRates = new double[16];
+
+    public HeartRateStrategy() {
+        this(250, 50, 100, 0.2);
+    }
+
+    /**
+     * @param samplingRate   ECG samples per second
+     * @param bradycardiaBpm a heart rate below this is an alert
+     * @param tachycardiaBpm a heart rate above this is an alert
+     * @param irregularity   an RR interval that differs more than this fraction from the average is irregular
+     */
+    public HeartRateStrategy(double samplingRate, double bradycardiaBpm, double tachycardiaBpm, double irregularity) {
+        this.detector = new QrsDetector(samplingRate);
+        this.bradycardiaBpm = bradycardiaBpm;
+        this.tachycardiaBpm = tachycardiaBpm;
+        this.irregularity = irregularity;
+    }
+
+    /**
+     * @param value an ECG sample
+     * @param time  the time of the sample in milliseconds, if null it is derived from the sampling rate
+     * @return true if a beat started tachycardia, bradycardia or an irregular rhythm, see {@link #getCondition()}
+     */
+    @Override
+    public boolean checkAlert(double value, Long time) {
+        long sampleTime = time != null ? time : Math.round(samples * 1000 / detector.getSamplingRate());
+        samples++;
+        if (!detector.add(value, sampleTime)) {
+            return false;
+        }
+        long rr = detector.getRrInterval();
+        if (rr <= 0) {
+            return false; //the first beat
+        }
+        boolean judged = rrIntervals.size() >= MIN_BEATS;
+        boolean irregularBeat = judged && Math.abs(rr - rrIntervals.average()) > irregularity * rrIntervals.average();
+        rrIntervals.add(rr);
+        heartRate = 60000 / rrIntervals.average();
+        addBeat(detector.getBeatTime(), heartRate);
+        if (!judged) {
+            return false;
+        }
+
+        boolean wasTachycardia = tachycardia;
+        boolean wasBradycardia = bradycardia;
+        boolean wasIrregular = irregular;
+        tachycardia = heartRate > tachycardiaBpm;
+        bradycardia = heartRate < bradycardiaBpm;
+        irregular = irregularBeat;
+        if (tachycardia && !wasTachycardia) {
+            condition = "Tachycardia";
+        } else if (bradycardia && !wasBradycardia) {
+            condition = "Bradycardia";
+        } else if (irregular && !wasIrregular) {
+            condition = "IrregularRhythm";
+        } else {
+            return false;
+        }
+        return true;
+    }
+
+    private void addBeat(long time, double rate) {
+        if (beatCount == beatTimes.length) {
+            beatTimes = Arrays.copyOf(beatTimes, beatCount * 2);
+            beatRates = Arrays.copyOf(beatRates, beatCount * 2);
+        }
+        beatTimes[beatCount] = time;
+        beatRates[beatCount] = rate;
+        beatCount++;
+    }
+
+    /**
+     * @return the condition of the last alert (e.g. "Tachycardia") with the heart rate
+     */
+    public String getCondition() {
+        return condition + " HeartRate=" + Math.round(heartRate);
+    }
+
+    /**
+     * @return the heart rate in beats per minute, averaged over the last 8 beats, or 0 before the second beat
+     */
+    public double getHeartRate() {
+        return heartRate;
+    }
+
+    /**
+     * @return the number of beats with a heart rate that were found since the last {@link #drainBeats}
+     */
+    public int getBeatCount() {
+        return beatCount;
+    }
+
+    /**
+     * Passes the beats with a heart rate that were found since the last call to the visitor, from old to new,
+     * and forgets them. The visitor can cause more evaluations (e.g. by storing the beats), the beats they find are
+     * collected in other arrays and passed to the next call, so they don't overwrite the beats that are being visited.
+     *
+     * @param visitor called for every beat
+     */
+    public void drainBeats(BeatVisitor visitor) {
+        long[] times = beatTimes;
+        double[] rates = beatRates;
+        int count = beatCount;
+        beatTimes = spareTimes != null ? spareTimes : new long[16]; //a nested drain has the spare arrays
+        beatRates = spareRates != null ? spareRates : new double[16];
+        beatCount = 0;
+        spareTimes = null;
+        spareRates = null;
+        for (int i = 0; i < count; i++) {
+            visitor.visit(times[i], rates[i]);
+        }
+        spareTimes = times;
+        spareRates = rates;
+    }
+
+    /**
+     * Callback for the beats of {@link #drainBeats}
+     */
+    @FunctionalInterface
+    public interface BeatVisitor {
+        /**
+         * @param time      time of the beat in milliseconds
+         * @param heartRate heart rate at the beat in beats per minute
+         */
+        void visit(long time, double heartRate);
+    }
+}
@@ -0,0 +1,251 @@
+package com.alerts.AlertStrategies;
+
+import com.util.DoubleRingBuffer;
+
+/**
+ * Finds the heart beats (QRS complexes, the R-peaks) in a stream of ECG samples, one sample at a time,
+ * after Pan and Tompkins (1985). Every sample goes through:
+ * <ol>
+ *     <li>a 5-15 Hz band-pass (a high-pass and a low-pass biquad), which removes baseline wander, the P and T waves
+ *     and high frequency noise, and keeps the steep slopes of the QRS complex</li>
+ *     <li>a 5-point derivative, squaring (so all slopes are positive, and steep ones dominate)</li>
+ *     <li>a moving average over 150ms (the width of a QRS complex)</li>
+ * </ol>
+ * A beat is a part of the integrated signal above an adaptive threshold, at its highest sample. The threshold sits
+ * between running estimates of the signal peaks and the noise peaks, and after a beat there is a refractory period
+ * of 200ms in which there can't be another beat. If no beat was found for 1.66 times the average RR interval,
+ * the highest noise peak since the last beat is taken if it reaches half the threshold (search back).
+ * The first 2 seconds are used to learn the initial peak levels. A gap of more than 5 samples in the signal
+ * (or records that come much slower than the sampling rate) starts over, including the learning.
+ *
+ * <p>The filters have a delay, so a beat is reported about 100-200ms after the R-peak, with the time of the peak
+ * in the integrated signal, which is a constant offset from the R-peak and doesn't change RR intervals.
+ * Adding a sample doesn't allocate. Not thread safe.
+ */
+public class QrsDetector {
+    private static final double LOW_CUTOFF_HZ = 5;
+    private static final double HIGH_CUTOFF_HZ = 15;
+    private static final long REFRACTORY_MILLIS = 200;
+    private static final long LEARNING_MILLIS = 2000;
+    private static final double SEARCH_BACK_RR = 1.66;
+
+    /**
+     * a second order IIR filter, in direct form I
+     */
+    private static final class Biquad {
+        private final double b0, b1, b2, a1, a2;
+        private double x1, x2, y1, y2;
+
+        private Biquad(boolean highPass, double cutoff, double samplingRate) {
+            //coefficients from the audio EQ cookbook (R. Bristow-Johnson), Butterworth Q
+            double w0 = 2 * Math.PI * cutoff / samplingRate;
+            double cos = Math.cos(w0);
+            double alpha = Math.sin(w0) / (2 * Math.sqrt(0.5));
+            double a0 = 1 + alpha;
+            double b = highPass ? (1 + cos) / 2 : (1 - cos) / 2;
+            b0 = b / a0;
+            b1 = (highPass ? -2 * b : 2 * b) / a0;
+            b2 = b / a0;
+            a1 = -2 * cos / a0;
+            a2 = (1 - alpha) / a0;
+        }
+
+        private void reset() {
+            x1 = x2 = y1 = y2 = 0;
+        }
+
+        private double filter(double x) {
+            double y = b0 * x + b1 * x1 + b2 * x2 - a1 * y1 - a2 * y2;
+            x2 = x1;
+            x1 = x;
+            y2 = y1;
+            y1 = y;
+            return y;
+        }
+    }
+
+    private final double samplingRate;
+    private final long maxGapMillis; //a longer gap between samples restarts the detector
+    private final Biquad highPass;
+    private final Biquad lowPass;
+    //the last 4 band-passed samples, for the derivative
+    private double f1, f2, f3, f4;
+    private final DoubleRingBuffer integration;
+    private final DoubleRingBuffer rrIntervals = new DoubleRingBuffer(8);
+
+    private long startTime = Long.MIN_VALUE;
+    private boolean learning = true;
+    private double learningMax;
+    private double learningSum;
+    private long learningSamples;
+
+    private double signalPeak; //SPKI, running estimate of the height of the beats in the integrated signal
+    private double noisePeak; //NPKI, running estimate of the height of the noise peaks
+    private double threshold;
+
+    private double previous, beforePrevious; //the last integrated samples, for finding local maxima
+    private long previousTime;
+    private boolean inQrs;
+    private double qrsMax;
+    private long qrsMaxTime;
+    private double searchBackPeak; //highest noise peak since the last beat
+    private long searchBackTime;
+
+    private long lastBeatTime = Long.MIN_VALUE;
+    private long beatTime;
+    private long rrInterval;
+
+    /**
+     * @param samplingRate the number of samples per second, at least 100
+     */
+    public QrsDetector(double samplingRate) {
+        if (!(samplingRate >= 100)) {
+            throw new IllegalArgumentException("the sampling rate must be at least 100Hz, got " + samplingRate);
+        }
+        this.samplingRate = samplingRate;
+        this.maxGapMillis = Math.max(20, Math.round(5000 / samplingRate));
+        this.highPass = new Biquad(true, LOW_CUTOFF_HZ, samplingRate);
+        this.lowPass = new Biquad(false, HIGH_CUTOFF_HZ, samplingRate);
+        this.integration = new DoubleRingBuffer(Math.max(1, (int) Math.round(0.150 * samplingRate)));
+    }
+
+    /**
+     * Adds the next sample
+     *
+     * @param sample the ECG sample
+     * @param time   the time of the sample in milliseconds
+     * @return true if a beat was found, see {@link #getBeatTime()} and {@link #getRrInterval()}
+     */
+    public boolean add(double sample, long time) {
+        if (startTime != Long.MIN_VALUE && time - previousTime > maxGapMillis) {
+            reset();
+        }
+        double filtered = lowPass.filter(highPass.filter(sample));
+        double derivative = (2 * filtered + f1 - f3 - 2 * f4) * samplingRate / 8;
+        f4 = f3;
+        f3 = f2;
+        f2 = f1;
+        f1 = filtered;
+        integration.add(derivative * derivative);
+        double integrated = integration.average();
+
+        if (startTime == Long.MIN_VALUE) {
+            startTime = time;
+        }
+        if (learning) {
+            learningMax = Math.max(learningMax, integrated);
+            learningSum += integrated;
+            learningSamples++;
+            if (time - startTime >= LEARNING_MILLIS) {
+                learning = false;
+                signalPeak = learningMax / 3;
+                noisePeak = learningSum / learningSamples / 2;
+                updateThreshold();
+            }
+            remember(integrated, time);
+            return false;
+        }
+
+        boolean beat = false;
+        if (inQrs) {
+            if (integrated > qrsMax) {
+                qrsMax = integrated;
+                qrsMaxTime = time;
+            } else if (integrated < threshold) {
+                //the QRS complex ended, its highest point is the beat
+                inQrs = false;
+                signalPeak = 0.125 * qrsMax + 0.875 * signalPeak;
+                updateThreshold();
+                beat = beat(qrsMaxTime);
+            }
+        } else if (integrated > threshold && previous <= threshold && sinceLastBeat(time) > REFRACTORY_MILLIS) {
+            //the signal crossed the threshold, so a QRS complex starts (and not one that is already half over)
+            inQrs = true;
+            qrsMax = integrated;
+            qrsMaxTime = time;
+        } else {
+            if (previous > beforePrevious && previous >= integrated) {
+                //a local maximum below the threshold (or in the refractory period) is noise
+                noisePeak = 0.125 * previous + 0.875 * noisePeak;
+                updateThreshold();
+                if (previous > searchBackPeak && sinceLastBeat(previousTime) > REFRACTORY_MILLIS) {
+                    searchBackPeak = previous;
+                    searchBackTime = previousTime;
+                }
+            }
+            if (rrIntervals.size() > 0 && sinceLastBeat(time) > SEARCH_BACK_RR * rrIntervals.average()
+                    && searchBackPeak > threshold / 2) {
+                //a beat was missed, take the highest peak since the last beat
+                signalPeak = 0.25 * searchBackPeak + 0.75 * signalPeak;
+                updateThreshold();
+                beat = beat(searchBackTime);
+            }
+        }
+        remember(integrated, time);
+        return beat;
+    }
+
+    /**
+     * Forgets the signal, the next sample starts the learning again
+     */
+    public void reset() {
+        highPass.reset();
+        lowPass.reset();
+        f1 = f2 = f3 = f4 = 0;
+        integration.clear();
+        rrIntervals.clear();
+        startTime = Long.MIN_VALUE;
+        learning = true;
+        learningMax = learningSum = 0;
+        learningSamples = 0;
+        signalPeak = noisePeak = threshold = 0;
+        previous = beforePrevious = 0;
+        inQrs = false;
+        searchBackPeak = 0;
+        lastBeatTime = Long.MIN_VALUE;
+        rrInterval = 0;
+    }
+
+    private boolean beat(long time) {
+        rrInterval = lastBeatTime == Long.MIN_VALUE ? 0 : time - lastBeatTime;
+        if (rrInterval > 0) {
+            rrIntervals.add(rrInterval);
+        }
+        lastBeatTime = time;
+        beatTime = time;
+        searchBackPeak = 0;
+        return true;
+    }
+
+    private long sinceLastBeat(long time) {
+        return lastBeatTime == Long.MIN_VALUE ? Long.MAX_VALUE : time - lastBeatTime;
+    }
+
+    private void remember(double integrated, long time) {
+        beforePrevious = previous;
+        previous = integrated;
+        previousTime = time;
+    }
+
+    private void updateThreshold() {
+        threshold = noisePeak + 0.25 * (signalPeak - noisePeak);
+    }
+
+    /**
+     * @return the time of the last beat in milliseconds, delayed by the filters
+     */
+    public long getBeatTime() {
+        return beatTime;
+    }
+
+    /**
+     * @return the time between the last beat and the one before in milliseconds, 0 for the first beat
+     */
+    public long getRrInterval() {
+        return rrInterval;
+    }
+
+    public double getSamplingRate() {
+        return samplingRate;
+    }
+}
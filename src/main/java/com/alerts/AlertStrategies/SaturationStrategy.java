@@ -1,42 +1,43 @@
 package com.alerts.AlertStrategies;
 
-import java.util.LinkedList;
-import java.util.Queue;
+import com.util.SlidingWindowMax;
 
 public class SaturationStrategy implements AlertStrategy {
-    private Queue<Double> lastSaturations;
-    private Queue<Long> lastTimes;
+    private final SlidingWindowMax windowMax;
+    private final double lowSaturation;
+    private final double maxDrop;
     private long lastTime;
-    private long timeWindow = 600000; //10 minutes. assuming time is in miliseconds, since that is in discription of the generator
 
-    public long getWindowSize() {
-        return timeWindow;
+    public SaturationStrategy() {
+        //10 minutes. assuming time is in miliseconds, since that is in discription of the generator
+        this(600000, 92, 5);
     }
 
-    //Stack<Long> lastTimes, Stack<Double>lastSaturations, long lastTime
-    public SaturationStrategy() {
-        this.lastSaturations = new LinkedList<>();
-        this.lastTimes = new LinkedList<>();
-        this.lastTime = lastTime;
+    /**
+     * @param timeWindow    how far back a drop is measured, in milliseconds
+     * @param lowSaturation a saturation below this is an alert
+     * @param maxDrop       a drop of more than this from the highest saturation in the window is an alert
+     */
+    public SaturationStrategy(long timeWindow, double lowSaturation, double maxDrop) {
+        this.windowMax = new SlidingWindowMax(timeWindow);
+        this.lowSaturation = lowSaturation;
+        this.maxDrop = maxDrop;
+    }
 
+    public long getWindowSize() {
+        return windowMax.getWindowSize();
     }
 
     @Override
     public boolean checkAlert(double value, Long time) {
-        lastSaturations.offer(value);
-        lastTimes.offer(lastTime);
-
-        if (lastTime - lastTimes.peek() > timeWindow) {
-            //update the windows
-            lastTimes.poll();
-            lastSaturations.poll();
-        }
-        if (value < 92) {
-            return true;
+        if (time != null) {
+            lastTime = time;
         }
-        if (lastSaturations.peek() - value > 5) {
+        windowMax.add(lastTime, value);
+
+        if (value < lowSaturation) {
             return true;
         }
-        return false;
+        return windowMax.max() - value > maxDrop;
     }
 }
@@ -2,6 +2,7 @@ package com.alerts.Decorators;
 
 import com.alerts.Alert;
 import com.alerts.AlertStrategies.*;
+import com.data_management.RecordTypeRegistry;
 
 /**
  * A decorator for alert objects that should be repeated by re-checking alert conditions
@@ -11,11 +12,14 @@ import com.alerts.AlertStrategies.*;
 public class RepeatedAlertDecorator extends AlertDecorator {
     Alert alert;
     AlertStrategy alertStrategy;
-    String recordType;
+    int recordType; //code in the RecordTypeRegistry
     public RepeatedAlertDecorator(Alert alert, AlertStrategy alertStrategy, String recordType) {
+        this(alert, alertStrategy, RecordTypeRegistry.register(recordType));
+    }
+    public RepeatedAlertDecorator(Alert alert, AlertStrategy alertStrategy, int recordTypeCode) {
         super(alert);
         this.alertStrategy = alertStrategy;
-        this.recordType = recordType;
+        this.recordType = recordTypeCode;
     }
 
     @Override
@@ -27,6 +31,9 @@ public class RepeatedAlertDecorator extends AlertDecorator {
         return alertStrategy;
     }
     public String getRecordType() {
+        return RecordTypeRegistry.nameOf(recordType);
+    }
+    public int getRecordTypeCode() {
         return recordType;
     }
 }
@@ -0,0 +1,91 @@
+package com.alerts;
+
+import com.alerts.AlertStrategies.*;
+import com.data_management.RecordTypeRegistry;
+
+import java.util.Arrays;
+
+/**
+ * A set of alert strategies with the data they keep between records: the ECG window, the saturation window,
+ * the blood pressure trends and the last values of the combined strategy.
+ * States of a single patient also find the heart beats in the ECG ({@link HeartRateStrategy}), which needs every
+ * ECG sample of the patient, so a state that is prepared again for every evaluation doesn't.
+ * The strategies of a record type are found by the code of the record type (see {@link RecordTypeRegistry}),
+ * record types without strategies get none.
+ *
+ * It is not thread safe, the {@code AlertGenerator} synchronizes on it while records go through it.
+ */
+class PatientAlertState {
+    private static final AlertStrategy[] NO_STRATEGIES = new AlertStrategy[0];
+
+    final ECGStrategy ecgStrategy = new ECGStrategy();
+    final SaturationStrategy saturationStrategy = new SaturationStrategy();
+    final CombinedAlertStrategy combinedStrategy = new CombinedAlertStrategy();
+    final SystolicBloodPressureStrategy systolicStrategy = new SystolicBloodPressureStrategy();
+    final DiabolicBloodPressureStrategy diastolicStrategy = new DiabolicBloodPressureStrategy();
+    final TriggeredAlertStrategy triggeredStrategy = new TriggeredAlertStrategy();
+    final HeartRateStrategy heartRateStrategy = new HeartRateStrategy();
+
+    //one or more alert strategies for every record type, indexed by the code of the record type
+    private AlertStrategy[][] strategies = new AlertStrategy[0][];
+
+    //per record type code, the newest timestamp the strategies went over (only used in incremental mode)
+    private long[] evaluatedUpTo = new long[0];
+    private long initialEvaluatedUpTo = Long.MIN_VALUE; //for record types that weren't evaluated yet
+
+    /**
+     * @param singlePatient true if the state keeps the strategies of one patient for all its records
+     */
+    PatientAlertState(boolean singlePatient) {
+        setStrategies(RecordType.SYSTOLIC_CODE, systolicStrategy, combinedStrategy);
+        setStrategies(RecordType.DIASTOLIC_CODE, diastolicStrategy);
+        if (singlePatient) {
+            setStrategies(RecordType.ECG_CODE, ecgStrategy, heartRateStrategy);
+        } else {
+            setStrategies(RecordType.ECG_CODE, ecgStrategy);
+        }
+        setStrategies(RecordType.SATURATION_CODE, saturationStrategy, combinedStrategy);
+        setStrategies(RecordType.ALERT_CODE, triggeredStrategy);
+    }
+
+    private void setStrategies(int recordType, AlertStrategy... recordStrategies) {
+        if (recordType >= strategies.length) {
+            strategies = Arrays.copyOf(strategies, recordType + 1);
+        }
+        strategies[recordType] = recordStrategies;
+    }
+
+    /**
+     * @param recordType code of a record type
+     * @return the newest timestamp of that type the strategies went over
+     */
+    long getEvaluatedUpTo(int recordType) {
+        return recordType < evaluatedUpTo.length ? evaluatedUpTo[recordType] : initialEvaluatedUpTo;
+    }
+
+    void setEvaluatedUpTo(int recordType, long time) {
+        if (recordType >= evaluatedUpTo.length) {
+            int oldLength = evaluatedUpTo.length;
+            evaluatedUpTo = Arrays.copyOf(evaluatedUpTo, Math.max(recordType + 1, RecordTypeRegistry.size()));
+            Arrays.fill(evaluatedUpTo, oldLength, evaluatedUpTo.length, initialEvaluatedUpTo);
+        }
+        evaluatedUpTo[recordType] = time;
+    }
+
+    /**
+     * Sets how far the strategies were prepared from the history, for every record type
+     */
+    void setInitialEvaluatedUpTo(long time) {
+        initialEvaluatedUpTo = time;
+        Arrays.fill(evaluatedUpTo, time);
+    }
+
+    /**
+     * @param recordType code of a record type
+     * @return the strategies that check records of that type, empty if there are none
+     */
+    AlertStrategy[] getStrategies(int recordType) {
+        AlertStrategy[] recordStrategies = recordType < strategies.length ? strategies[recordType] : null;
+        return recordStrategies == null ? NO_STRATEGIES : recordStrategies;
+    }
+}
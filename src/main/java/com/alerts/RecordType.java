@@ -1,9 +1,20 @@
 package com.alerts;
 
+import com.data_management.RecordTypeRegistry;
+
 public final class RecordType {
     public static final String SYSTOLIC = "SystolicPressure";
     public static final String DIASTOLIC = "DiastolicPressure";
     public static final String ECG = "ECG";
     public static final String SATURATION = "Saturation";
     public static final String ALERT = "Alert";
+    public static final String HEART_RATE = "HeartRate"; //derived from the ECG by the HeartRateStrategy
+
+    //codes of the record types in the RecordTypeRegistry, for dispatching on them without comparing strings
+    public static final int SYSTOLIC_CODE = RecordTypeRegistry.register(SYSTOLIC);
+    public static final int DIASTOLIC_CODE = RecordTypeRegistry.register(DIASTOLIC);
+    public static final int ECG_CODE = RecordTypeRegistry.register(ECG);
+    public static final int SATURATION_CODE = RecordTypeRegistry.register(SATURATION);
+    public static final int ALERT_CODE = RecordTypeRegistry.register(ALERT);
+    public static final int HEART_RATE_CODE = RecordTypeRegistry.register(HEART_RATE);
 }
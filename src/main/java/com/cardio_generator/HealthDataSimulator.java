@@ -24,6 +24,7 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.stream.Collectors;
 
 /**
  *  A simulator for health data
@@ -37,6 +38,7 @@ import java.util.ArrayList;
 public class HealthDataSimulator {
 
     private static int patientCount = 50; // Default number of patients
+    private static boolean sparseIds = false; // Use random hospital numbers as patient IDs instead of 1 to patientCount
     private static ScheduledExecutorService scheduler;
     private static OutputStrategy outputStrategy = new ConsoleOutputStrategy(); // Default output strategy
     private static final Random random = new Random();
@@ -99,6 +101,9 @@ public class HealthDataSimulator {
                         }
                     }
                     break;
+                case "--sparse-ids":
+                    sparseIds = true;
+                    break;
                 case "--output":
                     if (i + 1 < args.length) {
                         String outputArg = args[++i];
@@ -150,6 +155,7 @@ public class HealthDataSimulator {
         System.out.println("  -h                       Show help and exit.");
         System.out.println(
                 "  --patient-count <count>  Specify the number of patients to simulate data for (default: 50).");
+        System.out.println("  --sparse-ids             Use random 9-digit patient IDs, like hospital numbers (default: 1 to count).");
         System.out.println("  --output <type>          Define the output method. Options are:");
         System.out.println("                             'console' for console output,");
         System.out.println("                             'file:<directory>' for file output,");
@@ -163,11 +169,19 @@ public class HealthDataSimulator {
 
     /**
      * Gives every patient a unique patient id
+     * These are 1 to patientCount, or random 9-digit numbers with --sparse-ids
      *
      * @param patientCount  The amount of patients
      * @return  A list with patientIds as integers
      */
     private static List<Integer> initializePatientIds(int patientCount) {
+        if (sparseIds) {
+            return new ArrayList<>(random.ints(100_000_000, 1_000_000_000)
+                    .distinct()
+                    .limit(patientCount)
+                    .boxed()
+                    .collect(Collectors.toList()));
+        }
         List<Integer> patientIds = new ArrayList<>();
         for (int i = 1; i <= patientCount; i++) {
             patientIds.add(i);
@@ -2,6 +2,7 @@ package com.cardio_generator.generators;
 
 import java.util.Random; //removed empty lines between the imports
 import com.cardio_generator.outputs.OutputStrategy;
+import com.util.ConcurrentIntMap;
 
 /** Generates and processes alert states for patients */
 public class AlertGenerator implements PatientDataGenerator {
@@ -10,10 +11,14 @@ public class AlertGenerator implements PatientDataGenerator {
     private static final Random randomGenerator = new Random();
 
     //fields should be lowerCamelCase, so I changed AlertStates to alertStates
-    private boolean[] alertStates; // false = resolved, true = pressed
+    // one-element array per patient ID, false = resolved, true = pressed. IDs can be sparse
+    private final ConcurrentIntMap<boolean[]> alertStates;
 
+    /**
+     * @param patientCount the expected number of patients, to size the state map
+     */
     public AlertGenerator(int patientCount) {
-        alertStates = new boolean[patientCount + 1];
+        alertStates = new ConcurrentIntMap<>(patientCount);
     }
 
     /**
@@ -26,9 +31,10 @@ public class AlertGenerator implements PatientDataGenerator {
     @Override
     public void generate(int patientId, OutputStrategy outputStrategy) {
         try {
-            if (alertStates[patientId]) {
+            boolean[] alertState = alertStates.computeIfAbsent(patientId, id -> new boolean[1]); // starts resolved
+            if (alertState[0]) {
                 if (randomGenerator.nextDouble() < 0.9) { // 90% chance to resolve
-                    alertStates[patientId] = false;
+                    alertState[0] = false;
                     // Output the alert
                     outputStrategy.output(patientId, System.currentTimeMillis(), "Alert", "resolved");
                 }
@@ -39,7 +45,7 @@ public class AlertGenerator implements PatientDataGenerator {
                 boolean alertTriggered = randomGenerator.nextDouble() < p;
 
                 if (alertTriggered) {
-                    alertStates[patientId] = true;
+                    alertState[0] = true;
                     // Output the alert
                     outputStrategy.output(patientId, System.currentTimeMillis(), "Alert", "triggered");
                 }
@@ -3,34 +3,35 @@ package com.cardio_generator.generators;
 import java.util.Random;
 
 import com.cardio_generator.outputs.OutputStrategy;
+import com.util.ConcurrentIntMap;
 
 public class BloodLevelsDataGenerator implements PatientDataGenerator {
     private static final Random random = new Random();
-    private final double[] baselineCholesterol;
-    private final double[] baselineWhiteCells;
-    private final double[] baselineRedCells;
+    // Baseline values per patient ID. IDs can be sparse, a patient gets its baseline when data is first generated for it.
+    private final ConcurrentIntMap<Baseline> baselines;
 
-    public BloodLevelsDataGenerator(int patientCount) {
-        // Initialize arrays to store baseline values for each patient
-        baselineCholesterol = new double[patientCount + 1];
-        baselineWhiteCells = new double[patientCount + 1];
-        baselineRedCells = new double[patientCount + 1];
+    /** Baseline blood levels of a patient */
+    private static final class Baseline {
+        final double cholesterol = 150 + random.nextDouble() * 50; // Initial random baseline
+        final double whiteCells = 4 + random.nextDouble() * 6; // Initial random baseline
+        final double redCells = 4.5 + random.nextDouble() * 1.5; // Initial random baseline
+    }
 
-        // Generate baseline values for each patient
-        for (int i = 1; i <= patientCount; i++) {
-            baselineCholesterol[i] = 150 + random.nextDouble() * 50; // Initial random baseline
-            baselineWhiteCells[i] = 4 + random.nextDouble() * 6; // Initial random baseline
-            baselineRedCells[i] = 4.5 + random.nextDouble() * 1.5; // Initial random baseline
-        }
+    /**
+     * @param patientCount the expected number of patients, to size the baseline map
+     */
+    public BloodLevelsDataGenerator(int patientCount) {
+        baselines = new ConcurrentIntMap<>(patientCount);
     }
 
     @Override
     public void generate(int patientId, OutputStrategy outputStrategy) {
         try {
             // Generate values around the baseline for realism
-            double cholesterol = baselineCholesterol[patientId] + (random.nextDouble() - 0.5) * 10; // Small variation
-            double whiteCells = baselineWhiteCells[patientId] + (random.nextDouble() - 0.5) * 1; // Small variation
-            double redCells = baselineRedCells[patientId] + (random.nextDouble() - 0.5) * 0.2; // Small variation
+            Baseline baseline = baselines.computeIfAbsent(patientId, id -> new Baseline());
+            double cholesterol = baseline.cholesterol + (random.nextDouble() - 0.5) * 10; // Small variation
+            double whiteCells = baseline.whiteCells + (random.nextDouble() - 0.5) * 1; // Small variation
+            double redCells = baseline.redCells + (random.nextDouble() - 0.5) * 0.2; // Small variation
 
             // Output the generated values
             outputStrategy.output(patientId, System.currentTimeMillis(), "Cholesterol", Double.toString(cholesterol));
@@ -3,22 +3,25 @@ package com.cardio_generator.generators;
 import java.util.Random;
 
 import com.cardio_generator.outputs.OutputStrategy;
+import com.util.ConcurrentIntMap;
 
 public class BloodPressureDataGenerator implements PatientDataGenerator {
     private static final Random random = new Random();
 
-    private int[] lastSystolicValues;
-    private int[] lastDiastolicValues;
+    // Last values per patient ID. IDs can be sparse, a patient gets its state when data is first generated for it.
+    private final ConcurrentIntMap<Pressure> lastValues;
 
-    public BloodPressureDataGenerator(int patientCount) {
-        lastSystolicValues = new int[patientCount + 1];
-        lastDiastolicValues = new int[patientCount + 1];
+    /** Last blood pressure of a patient */
+    private static final class Pressure {
+        int systolic = 110 + random.nextInt(20); // Random baseline between 110 and 130
+        int diastolic = 70 + random.nextInt(15); // Random baseline between 70 and 85
+    }
 
-        // Initialize with baseline values for each patient
-        for (int i = 1; i <= patientCount; i++) {
-            lastSystolicValues[i] = 110 + random.nextInt(20); // Random baseline between 110 and 130
-            lastDiastolicValues[i] = 70 + random.nextInt(15); // Random baseline between 70 and 85
-        }
+    /**
+     * @param patientCount the expected number of patients, to size the state map
+     */
+    public BloodPressureDataGenerator(int patientCount) {
+        lastValues = new ConcurrentIntMap<>(patientCount);
     }
 
     @Override
@@ -26,13 +29,14 @@ public class BloodPressureDataGenerator implements PatientDataGenerator {
         try {
             int systolicVariation = random.nextInt(5) - 2; // -2, -1, 0, 1, or 2
             int diastolicVariation = random.nextInt(5) - 2;
-            int newSystolicValue = lastSystolicValues[patientId] + systolicVariation;
-            int newDiastolicValue = lastDiastolicValues[patientId] + diastolicVariation;
+            Pressure last = lastValues.computeIfAbsent(patientId, id -> new Pressure());
+            int newSystolicValue = last.systolic + systolicVariation;
+            int newDiastolicValue = last.diastolic + diastolicVariation;
             // Ensure the blood pressure stays within a realistic and safe range
             newSystolicValue = Math.min(Math.max(newSystolicValue, 90), 180);
             newDiastolicValue = Math.min(Math.max(newDiastolicValue, 60), 120);
-            lastSystolicValues[patientId] = newSystolicValue;
-            lastDiastolicValues[patientId] = newDiastolicValue;
+            last.systolic = newSystolicValue;
+            last.diastolic = newDiastolicValue;
 
             outputStrategy.output(patientId, System.currentTimeMillis(), "SystolicPressure",
                     Double.toString(newSystolicValue));
@@ -3,28 +3,24 @@ package com.cardio_generator.generators;
 import java.util.Random;
 
 import com.cardio_generator.outputs.OutputStrategy;
+import com.util.ConcurrentIntMap;
 
 /**
  * Generates blood saturation data for patients
- * When an instance of this class is made, it will give every patient an initial value, which can later be regenerated
+ * The first time data is generated for a patient, it gives the patient an initial value, which is later regenerated.
+ * Patient IDs don't have to be dense, the values are kept in a map on patient ID
  */
 public class BloodSaturationDataGenerator implements PatientDataGenerator {
     private static final Random random = new Random();
-    private int[] lastSaturationValues;
+    private final ConcurrentIntMap<int[]> lastSaturationValues; // one-element arrays, so they can be updated in place
 
     /**
      * Class constructor
-     * It gives every patient a random initial saturation value (a value between 95 and 100)
      *
-     * @param patientCount  The number of patients
+     * @param patientCount  The expected number of patients, to size the map
      */
     public BloodSaturationDataGenerator(int patientCount) {
-        lastSaturationValues = new int[patientCount + 1];
-
-        // Initialize with baseline saturation values for each patient
-        for (int i = 1; i <= patientCount; i++) {
-            lastSaturationValues[i] = 95 + random.nextInt(6); // Initializes with a value between 95 and 100
-        }
+        lastSaturationValues = new ConcurrentIntMap<>(patientCount);
     }
 
     /**
@@ -39,11 +35,14 @@ public class BloodSaturationDataGenerator implements PatientDataGenerator {
         try {
             // Simulate blood saturation values
             int variation = random.nextInt(3) - 1; // -1, 0, or 1 to simulate small fluctuations
-            int newSaturationValue = lastSaturationValues[patientId] + variation;
+            // A new patient gets a random initial saturation value (a value between 95 and 100)
+            int[] lastSaturationValue = lastSaturationValues.computeIfAbsent(patientId,
+                    id -> new int[]{95 + random.nextInt(6)});
+            int newSaturationValue = lastSaturationValue[0] + variation;
 
             // Ensure the saturation stays within a realistic and healthy range
             newSaturationValue = Math.min(Math.max(newSaturationValue, 90), 100);
-            lastSaturationValues[patientId] = newSaturationValue;
+            lastSaturationValue[0] = newSaturationValue;
             outputStrategy.output(patientId, System.currentTimeMillis(), "Saturation",
                     Double.toString(newSaturationValue) + "%");
         } catch (Exception e) {
@@ -3,27 +3,30 @@ package com.cardio_generator.generators;
 import java.util.Random;
 
 import com.cardio_generator.outputs.OutputStrategy;
+import com.util.ConcurrentIntMap;
 
 public class ECGDataGenerator implements PatientDataGenerator {
     private static final Random random = new Random();
-    private double[] lastEcgValues;
+    // Last ECG value per patient ID, in a one-element array so it can be updated in place.
+    // IDs can be sparse, a patient gets its state when data is first generated for it.
+    private final ConcurrentIntMap<double[]> lastEcgValues;
     private static final double PI = Math.PI;
 
+    /**
+     * @param patientCount the expected number of patients, to size the state map
+     */
     public ECGDataGenerator(int patientCount) {
-        lastEcgValues = new double[patientCount + 1];
-        // Initialize the last ECG value for each patient
-        for (int i = 1; i <= patientCount; i++) {
-            lastEcgValues[i] = 0; // Initial ECG value can be set to 0
-        }
+        lastEcgValues = new ConcurrentIntMap<>(patientCount);
     }
 
     @Override
     public void generate(int patientId, OutputStrategy outputStrategy) {
         // TODO Check how realistic this data is and make it more realistic if necessary
         try {
-            double ecgValue = simulateEcgWaveform(patientId, lastEcgValues[patientId]);
+            double[] lastEcgValue = lastEcgValues.computeIfAbsent(patientId, id -> new double[1]); // Initial ECG value is 0
+            double ecgValue = simulateEcgWaveform(patientId, lastEcgValue[0]);
             outputStrategy.output(patientId, System.currentTimeMillis(), "ECG", Double.toString(ecgValue));
-            lastEcgValues[patientId] = ecgValue;
+            lastEcgValue[0] = ecgValue;
         } catch (Exception e) {
             System.err.println("An error occurred while generating ECG data for patient " + patientId);
             e.printStackTrace(); // This will print the stack trace to help identify where the error occurred.
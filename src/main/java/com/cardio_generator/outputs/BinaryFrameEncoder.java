@@ -0,0 +1,117 @@
+package com.cardio_generator.outputs;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Encodes samples into binary frames, a compact alternative to the text lines
+ * ("Patient ID: 1, Timestamp: ..., Label: ..., Data: ...") that doesn't have to be formatted or parsed.
+ * A frame (big-endian) of version 1 looks like:
+ * <pre>
+ * byte    version (1)
+ * ushort  number of label definitions, then per definition:
+ *           ushort code, ushort length, UTF-8 bytes of the label
+ * int     number of samples, then per sample (22 bytes):
+ *           int patient ID, long timestamp, ushort label code, double value
+ * </pre>
+ * Labels get a code when they are first used. The codes of an encoder never change, so a frame only has to define
+ * the codes that the receiver doesn't know yet, see {@link #encode(int)}.
+ *
+ * <p>A receiver asks for binary frames by sending {@link #HELLO} as a text message, receivers that don't keep
+ * getting text lines. An encoder is not thread safe.
+ */
+public class BinaryFrameEncoder {
+    public static final byte VERSION = 1;
+    public static final String HELLO = "accept-frames: binary/1"; //sent by a client that can decode frames
+    public static final int SAMPLE_BYTES = 4 + 8 + 2 + 8;
+    private static final int MAX_LABELS = 0xFFFF;
+
+    private final Map<String, Integer> codes = new HashMap<>();
+    private final List<byte[]> labels = new ArrayList<>(); //UTF-8 bytes, indexed on code
+    private ByteBuffer samples = ByteBuffer.allocate(64 * SAMPLE_BYTES);
+    private int sampleCount;
+
+    /**
+     * Adds a sample to the next frame
+     *
+     * @param patientId ID of the patient
+     * @param timestamp Timestamp at which the data was generated
+     * @param label     Label describing the type of data
+     * @param value     The measurement value
+     */
+    public void add(int patientId, long timestamp, String label, double value) {
+        Integer code = codes.get(label);
+        if (code == null) {
+            if (labels.size() == MAX_LABELS) {
+                throw new IllegalStateException("more than " + MAX_LABELS + " labels");
+            }
+            byte[] bytes = label.getBytes(StandardCharsets.UTF_8);
+            if (bytes.length > 0xFFFF) {
+                throw new IllegalArgumentException("label is longer than " + 0xFFFF + " bytes");
+            }
+            code = labels.size();
+            codes.put(label, code);
+            labels.add(bytes);
+        }
+        if (samples.remaining() < SAMPLE_BYTES) {
+            ByteBuffer larger = ByteBuffer.allocate(samples.capacity() * 2);
+            samples.flip();
+            larger.put(samples);
+            samples = larger;
+        }
+        samples.putInt(patientId).putLong(timestamp).putShort((short) (int) code).putDouble(value);
+        sampleCount++;
+    }
+
+    /**
+     * @return the number of samples that were added since the last {@link #clear()}
+     */
+    public int getSampleCount() {
+        return sampleCount;
+    }
+
+    /**
+     * @return the number of labels that have a code, which is what a receiver knows after a frame from
+     *         {@link #encode(int)}
+     */
+    public int getLabelCount() {
+        return labels.size();
+    }
+
+    /**
+     * Encodes the samples that were added into a frame
+     *
+     * @param knownLabels the number of label codes the receiver already knows (0 for a new receiver),
+     *                    the frame defines the codes from there on
+     * @return the frame, ready to be sent
+     */
+    public ByteBuffer encode(int knownLabels) {
+        int size = 1 + 2 + 4 + samples.position();
+        for (int code = knownLabels; code < labels.size(); code++) {
+            size += 4 + labels.get(code).length;
+        }
+        ByteBuffer frame = ByteBuffer.allocate(size);
+        frame.put(VERSION);
+        frame.putShort((short) (labels.size() - knownLabels));
+        for (int code = knownLabels; code < labels.size(); code++) {
+            byte[] label = labels.get(code);
+            frame.putShort((short) code).putShort((short) label.length).put(label);
+        }
+        frame.putInt(sampleCount);
+        frame.put(samples.array(), 0, samples.position());
+        frame.flip();
+        return frame;
+    }
+
+    /**
+     * Removes the samples, the label codes are kept
+     */
+    public void clear() {
+        samples.clear();
+        sampleCount = 0;
+    }
+}
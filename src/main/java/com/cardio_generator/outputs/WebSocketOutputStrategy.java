@@ -1,22 +1,51 @@
 package com.cardio_generator.outputs;
 
+import com.data_management.DataParser;
+import com.data_management.RecordTypeRegistry;
 import org.java_websocket.WebSocket;
 import org.java_websocket.server.WebSocketServer;
 import java.net.InetSocketAddress;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
-public class WebSocketOutputStrategy implements OutputStrategy {
+/**
+ * Outputs patient data to the clients of a websocket server.
+ * Clients get text lines, unless they asked for binary frames (see {@link BinaryFrameEncoder}). Samples for binary
+ * clients are packed into frames of up to {@value #MAX_SAMPLES_PER_FRAME} samples, which are sent when they are full
+ * or at most {@value #FLUSH_MILLIS} ms after their first sample.
+ */
+public class WebSocketOutputStrategy implements OutputStrategy, AutoCloseable {
+    private static final int MAX_SAMPLES_PER_FRAME = 512;
+    private static final long FLUSH_MILLIS = 10;
+    private static final int STOP_TIMEOUT_MILLIS = 1000;
 
     private WebSocketServer server;
+    private final ScheduledExecutorService flusher;
+    //clients that asked for binary frames, with the number of label codes they know
+    private final Map<WebSocket, int[]> binaryClients = new ConcurrentHashMap<>();
+    private final BinaryFrameEncoder encoder = new BinaryFrameEncoder(); //guarded by this
 
     public WebSocketOutputStrategy(int port) {
-        server = new SimpleWebSocketServer(new InetSocketAddress(port));
+        server = new SimpleWebSocketServer(new InetSocketAddress(port), binaryClients);
         System.out.println("WebSocket server created on port: " + port + ", listening for connections...");
         server.start();
+        flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "websocket-flush");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleAtFixedRate(this::flush, FLUSH_MILLIS, FLUSH_MILLIS, TimeUnit.MILLISECONDS);
     }
 
     /**
      * Outputs patient data to a websocket.
      * Assumes that lines should look like (in example): Patient ID: 123, Timestamp: 1713345600000, Label: Saturation, Data: 78
+     * Binary clients get exactly the samples that the hospital side would store from the text line, converted by
+     * {@link DataParser}: "triggered" is 0, and resolved alerts and data that isn't a number (e.g. "97.0%")
+     * are not sent to them.
      *
      * @param patientId ID of the patient
      * @param timestamp Timestamp at which the data was generated
@@ -25,17 +54,35 @@ public class WebSocketOutputStrategy implements OutputStrategy {
      */
     @Override
     public void output(int patientId, long timestamp, String label, String data) {
+        if (!binaryClients.isEmpty()) {
+            int recordType = DataParser.recordTypeOf(label);
+            double value = DataParser.parseData(data);
+            if (DataParser.isStored(recordType, data, value)) {
+                synchronized (this) {
+                    encoder.add(patientId, timestamp, RecordTypeRegistry.nameOf(recordType), value);
+                    if (encoder.getSampleCount() >= MAX_SAMPLES_PER_FRAME) {
+                        flush();
+                    }
+                }
+            }
+        }
+        if (binaryClients.size() == server.getConnections().size()) {
+            return;
+        }
         String message = String.format("Patient ID: %d, Timestamp: %d, Label: %s, Data: %s", patientId, timestamp, label, data);
         // Broadcast the message to all connected clients
         System.out.println(message + ", server clients: " + server.getConnections().size());
         for (WebSocket conn : server.getConnections()) {
-            conn.send(message);
+            if (!binaryClients.containsKey(conn)) {
+                conn.send(message);
+            }
         }
         System.out.println("outputted");
     }
 
 
     public void outputString(String data) {
+        flush(); //so the text doesn't overtake samples that are waiting for their frame
         String message = String.format(data);
         // Broadcast the message to all connected clients
         System.out.print("output: " + message + ", server clients: " + server.getConnections().size());
@@ -45,10 +92,46 @@ public class WebSocketOutputStrategy implements OutputStrategy {
         System.out.println(", message send");
     }
 
+    /**
+     * Stops the periodic flush, sends the samples that are still waiting and stops the server.
+     * An interrupt while the server stops stays set on the thread.
+     */
+    @Override
+    public void close() {
+        flusher.shutdown();
+        flush();
+        try {
+            server.stop(STOP_TIMEOUT_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Sends the waiting samples to the binary clients, every client gets the label definitions it doesn't know yet
+     */
+    private synchronized void flush() {
+        if (encoder.getSampleCount() == 0) {
+            return;
+        }
+        for (Map.Entry<WebSocket, int[]> client : binaryClients.entrySet()) {
+            int[] knownLabels = client.getValue();
+            try {
+                client.getKey().send(encoder.encode(knownLabels[0]));
+                knownLabels[0] = encoder.getLabelCount();
+            } catch (RuntimeException e) {
+                System.err.println("Error sending frame to " + client.getKey().getRemoteSocketAddress() + ": " + e);
+            }
+        }
+        encoder.clear();
+    }
+
     private static class SimpleWebSocketServer extends WebSocketServer {
+        private final Map<WebSocket, int[]> binaryClients;
 
-        public SimpleWebSocketServer(InetSocketAddress address) {
+        public SimpleWebSocketServer(InetSocketAddress address, Map<WebSocket, int[]> binaryClients) {
             super(address);
+            this.binaryClients = binaryClients;
         }
 
         @Override
@@ -58,12 +141,18 @@ public class WebSocketOutputStrategy implements OutputStrategy {
 
         @Override
         public void onClose(WebSocket conn, int code, String reason, boolean remote) {
+            binaryClients.remove(conn);
             System.out.println("Closed connection: " + conn.getRemoteSocketAddress());
         }
 
+        /**
+         * The only message a client sends is a request for binary frames
+         */
         @Override
         public void onMessage(WebSocket conn, String message) {
-            // Not used in this context
+            if (message.equals(BinaryFrameEncoder.HELLO)) {
+                binaryClients.putIfAbsent(conn, new int[1]);
+            }
         }
 
         @Override
@@ -0,0 +1,90 @@
+package com.data_management;
+
+/**
+ * Statistics of the samples of one record type within a time range, e.g. the min/max/mean of
+ * SystolicPressure over the last 6 hours. NaN values are left out.
+ * If there are no samples the count is 0 and all values are NaN.
+ *
+ * @see DataStorage#aggregate(int, String, long, long)
+ */
+public final class Aggregate {
+    static final Aggregate EMPTY = new Aggregate(0, Double.NaN, Double.NaN, 0, Double.NaN, Double.NaN,
+            0, Double.NaN, 0, Double.NaN);
+
+    private final int count;
+    private final double min;
+    private final double max;
+    private final double sum;
+    private final double mean;
+    private final double standardDeviation;
+    private final long firstTimestamp;
+    private final double firstValue;
+    private final long lastTimestamp;
+    private final double lastValue;
+
+    Aggregate(int count, double min, double max, double sum, double mean, double standardDeviation,
+              long firstTimestamp, double firstValue, long lastTimestamp, double lastValue) {
+        this.count = count;
+        this.min = min;
+        this.max = max;
+        this.sum = sum;
+        this.mean = mean;
+        this.standardDeviation = standardDeviation;
+        this.firstTimestamp = firstTimestamp;
+        this.firstValue = firstValue;
+        this.lastTimestamp = lastTimestamp;
+        this.lastValue = lastValue;
+    }
+
+    /**
+     * @return the number of samples
+     */
+    public int getCount() {
+        return count;
+    }
+
+    public double getMin() {
+        return min;
+    }
+
+    public double getMax() {
+        return max;
+    }
+
+    public double getSum() {
+        return sum;
+    }
+
+    public double getMean() {
+        return mean;
+    }
+
+    /**
+     * @return the population standard deviation of the samples
+     */
+    public double getStandardDeviation() {
+        return standardDeviation;
+    }
+
+    /**
+     * @return timestamp of the oldest sample, only valid if the count isn't 0
+     */
+    public long getFirstTimestamp() {
+        return firstTimestamp;
+    }
+
+    public double getFirstValue() {
+        return firstValue;
+    }
+
+    /**
+     * @return timestamp of the newest sample, only valid if the count isn't 0
+     */
+    public long getLastTimestamp() {
+        return lastTimestamp;
+    }
+
+    public double getLastValue() {
+        return lastValue;
+    }
+}
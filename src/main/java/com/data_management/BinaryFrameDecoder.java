@@ -0,0 +1,73 @@
+package com.data_management;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Decodes the binary frames of the simulator ({@code BinaryFrameEncoder}) into records, without any text in between.
+ * The layout is described there; the constants here have to match it.
+ * A decoder remembers the label codes that earlier frames defined, so every connection needs its own decoder.
+ * It is not thread safe.
+ */
+public class BinaryFrameDecoder {
+    public static final byte VERSION = 1;
+    public static final String HELLO = "accept-frames: binary/1"; //sent to the server to get binary frames
+
+    private static final int ALERT = RecordTypeRegistry.register("alert");
+
+    private int[] labels = new int[0]; //RecordTypeRegistry code per frame code, -1 if not defined yet
+
+    /**
+     * Decodes a frame and adds its valid records to a batch. Like the text parser, records without a positive
+     * patient ID and timestamp, or without a value (except alerts), are left out.
+     *
+     * @param frame the frame, from its position to its limit
+     * @param batch the batch to add the records to
+     * @return the number of records that were added
+     * @throws IllegalArgumentException if the frame has another version, is cut off, or uses an unknown label code
+     */
+    public int decode(ByteBuffer frame, RecordBatch batch) {
+        try {
+            byte version = frame.get();
+            if (version != VERSION) {
+                throw new IllegalArgumentException("unsupported frame version " + version);
+            }
+            int definitions = Short.toUnsignedInt(frame.getShort());
+            for (int i = 0; i < definitions; i++) {
+                int code = Short.toUnsignedInt(frame.getShort());
+                byte[] label = new byte[Short.toUnsignedInt(frame.getShort())];
+                frame.get(label);
+                if (code >= labels.length) {
+                    int oldLength = labels.length;
+                    labels = Arrays.copyOf(labels, Math.max(code + 1, oldLength * 2));
+                    Arrays.fill(labels, oldLength, labels.length, -1);
+                }
+                labels[code] = RecordTypeRegistry.register(new String(label, StandardCharsets.UTF_8));
+            }
+            int samples = frame.getInt();
+            int added = 0;
+            for (int i = 0; i < samples; i++) {
+                int patientId = frame.getInt();
+                long timestamp = frame.getLong();
+                int code = Short.toUnsignedInt(frame.getShort());
+                double value = frame.getDouble();
+                int recordType = code < labels.length ? labels[code] : -1;
+                if (recordType == -1) {
+                    throw new IllegalArgumentException("label code " + code + " is not defined");
+                }
+                if (patientId <= 0 || timestamp <= 0 || (Double.isNaN(value) && recordType != ALERT)) {
+                    System.out.println("invalid sample in frame: patient " + patientId + ", timestamp " + timestamp
+                            + ", " + RecordTypeRegistry.nameOf(recordType) + " " + value);
+                    continue;
+                }
+                batch.add(patientId, value, recordType, timestamp);
+                added++;
+            }
+            return added;
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("frame is cut off", e);
+        }
+    }
+}
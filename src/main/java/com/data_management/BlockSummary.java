@@ -0,0 +1,104 @@
+package com.data_management;
+
+/**
+ * Running statistics over a block of samples: count, min, max, sum, mean and the sum of squared
+ * deviations from the mean (for the standard deviation), and the first and last sample.
+ * Summaries of consecutive blocks can be merged, so a {@link SealedChunk} keeps one for its samples and an
+ * aggregation over a time range only has to scan the chunks at the edges of the range.
+ * NaN values are left out, like in the rollups.
+ */
+final class BlockSummary {
+    private int count;
+    private double min = Double.POSITIVE_INFINITY;
+    private double max = Double.NEGATIVE_INFINITY;
+    private double sum;
+    private double mean;
+    private double squaredDeviations; //sum of (value - mean)^2, updated with Welford's method
+    private long firstTimestamp;
+    private double firstValue = Double.NaN;
+    private long lastTimestamp;
+    private double lastValue = Double.NaN;
+
+    /**
+     * Summarizes a run of sorted samples
+     *
+     * @param timestamps sorted timestamps
+     * @param values     values, at the same index as their timestamp
+     * @param from       index of the first sample
+     * @param to         index after the last sample
+     * @return the summary
+     */
+    static BlockSummary of(long[] timestamps, double[] values, int from, int to) {
+        BlockSummary summary = new BlockSummary();
+        for (int i = from; i < to; i++) {
+            summary.add(timestamps[i], values[i]);
+        }
+        return summary;
+    }
+
+    /**
+     * Adds a sample that is newer than all samples in the summary
+     */
+    void add(long timestamp, double value) {
+        if (Double.isNaN(value)) {
+            return;
+        }
+        if (count == 0) {
+            firstTimestamp = timestamp;
+            firstValue = value;
+        }
+        lastTimestamp = timestamp;
+        lastValue = value;
+        count++;
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+        sum += value;
+        double delta = value - mean;
+        mean += delta / count;
+        squaredDeviations += delta * (value - mean);
+    }
+
+    /**
+     * Adds the samples of another summary, e.g. of the next chunk or of another patient.
+     * The first and last sample are picked on timestamp, so the summaries can be merged in any order.
+     *
+     * @return this summary
+     */
+    BlockSummary merge(BlockSummary other) {
+        if (other.count == 0) {
+            return this;
+        }
+        if (count == 0 || other.firstTimestamp < firstTimestamp) {
+            firstTimestamp = other.firstTimestamp;
+            firstValue = other.firstValue;
+        }
+        if (count == 0 || other.lastTimestamp > lastTimestamp) {
+            lastTimestamp = other.lastTimestamp;
+            lastValue = other.lastValue;
+        }
+        int total = count + other.count;
+        double delta = other.mean - mean;
+        squaredDeviations += other.squaredDeviations + delta * delta * ((double) count * other.count / total);
+        mean += delta * other.count / total;
+        count = total;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+        sum += other.sum;
+        return this;
+    }
+
+    /**
+     * @return the statistics as an immutable result
+     */
+    Aggregate toAggregate() {
+        if (count == 0) {
+            return Aggregate.EMPTY;
+        }
+        return new Aggregate(count, min, max, sum, mean, Math.sqrt(squaredDeviations / count),
+                firstTimestamp, firstValue, lastTimestamp, lastValue);
+    }
+
+    static long estimateBytes() {
+        return 16 + Integer.BYTES + 9 * Double.BYTES;
+    }
+}
@@ -1,10 +1,28 @@
 package com.data_management;
 
+import java.util.Arrays;
+
 /**
  * this class is responsible for parsing a line into a record before adding it to the data storage.
  * It can be used by any DataReader.
+ *
+ * <p>Parsing is a single pass over the characters of the line (or the ASCII bytes of a line in a buffer), without
+ * making intermediate strings: whitespace is skipped instead of removed, numbers are parsed in place
+ * (see {@link DecimalParser}), and labels are looked up in a small cache of record type codes
+ * (see {@link RecordTypeRegistry}). So a valid line
+ * makes no garbage. Invalid lines are reported the same way as before, building the message only then.
  */
 public class DataParser {
+    private static final long NOT_A_NUMBER = Long.MIN_VALUE; //result of parseWholeNumber for invalid input
+    private static final int LABEL_CACHE_SIZE = 256; //power of two
+    //record type codes, indexed on hash, -1 if empty. A hit is checked against the name, so slots can be read
+    //and replaced without locking
+    private static final int[] labelCache = new int[LABEL_CACHE_SIZE];
+    private static final int ALERT = RecordTypeRegistry.register("alert"); //the only type without a value
+
+    static {
+        Arrays.fill(labelCache, -1);
+    }
 
     /**
      * Parses a lines with a patient record to variable values, and puts it into data storage
@@ -14,84 +32,212 @@ public class DataParser {
      * @param line  a line from the file
      * @param dataStorage   data storage where the data should be added to
      */
-    public static void parseLine(String line, DataStorage dataStorage) {
+    public static void parseLine(CharSequence line, DataStorage dataStorage) {
+        parse(line, null, 0, line.length(), dataStorage, null);
+    }
+
+    /**
+     * Parses a line that is stored as ASCII (or UTF-8) bytes in a buffer, e.g. a file that is read in blocks,
+     * and puts it into data storage. See {@link #parseLine(CharSequence, DataStorage)} for the format.
+     *
+     * @param bytes       buffer with the line
+     * @param from        index of the first byte of the line
+     * @param to          index after the last byte of the line (without the line separator)
+     * @param dataStorage data storage where the data should be added to
+     */
+    public static void parseLine(byte[] bytes, int from, int to, DataStorage dataStorage) {
+        parse(null, bytes, from, to, dataStorage, null);
+    }
+
+    /**
+     * Parses a block of lines separated by line breaks, and puts them into data storage with one
+     * {@link DataStorage#addBatch(RecordBatch)}. Empty lines are skipped.
+     *
+     * @param lines       the lines, e.g. a block of a file or a message with multiple records
+     * @param dataStorage data storage where the data should be added to
+     */
+    public static void parseLines(CharSequence lines, DataStorage dataStorage) {
+        RecordBatch batch = new RecordBatch();
+        parseLines(lines, batch);
+        dataStorage.addBatch(batch);
+    }
+
+    /**
+     * Parses a block of lines separated by line breaks, and adds the valid records to a batch.
+     * Empty lines are skipped, invalid lines are reported like in {@link #parseLine(CharSequence, DataStorage)}.
+     *
+     * @param lines the lines
+     * @param batch the batch to add the records to
+     */
+    public static void parseLines(CharSequence lines, RecordBatch batch) {
+        splitLines(lines, null, 0, lines.length(), batch);
+    }
+
+    /**
+     * Parses a block of lines that are stored as ASCII (or UTF-8) bytes in a buffer, and adds the valid records to
+     * a batch. Empty lines are skipped.
+     *
+     * @param bytes buffer with the lines
+     * @param from  index of the first byte of the first line
+     * @param to    index after the last byte of the last line
+     * @param batch the batch to add the records to
+     */
+    public static void parseLines(byte[] bytes, int from, int to, RecordBatch batch) {
+        splitLines(null, bytes, from, to, batch);
+    }
+
+    /**
+     * Gets the record type code of a label the way the lines are parsed, e.g. whitespace is left out.
+     * This and {@link #parseData(CharSequence)} and {@link #isStored(int, CharSequence, double)} are for
+     * a sender that has the fields of a line separately (e.g. the binary frames of {@code WebSocketOutputStrategy}),
+     * so it sends exactly the records that the text lines would give.
+     *
+     * @param label the Label field of a line
+     * @return the record type code, see {@link RecordTypeRegistry}
+     */
+    public static int recordTypeOf(CharSequence label) {
+        return internLabel(label, null, 0, label.length());
+    }
+
+    /**
+     * Parses the Data field of a line the way the lines are parsed: "triggered" is 0, and text that isn't a
+     * number (e.g. "resolved", or "97%") is NaN. Unlike in a line, nothing is reported for invalid text.
+     *
+     * @param data the Data field of a line
+     * @return the measurement value, or NaN
+     */
+    public static double parseData(CharSequence data) {
+        if (matches(data, null, 0, data.length(), "triggered")) {
+            return 0.0;
+        }
+        return parseMeasurement(data, null, 0, data.length(), false);
+    }
+
+    /**
+     * Tells if a line with this label and Data field is stored: a resolved alert is left out,
+     * and a value that isn't a number is only stored for the "alert" type
+     *
+     * @param recordType the code of the label, from {@link #recordTypeOf(CharSequence)}
+     * @param data       the Data field
+     * @param value      the value from {@link #parseData(CharSequence)}
+     * @return true if the record is stored
+     */
+    public static boolean isStored(int recordType, CharSequence data, double value) {
+        return !matches(data, null, 0, data.length(), "resolved") && isValidValue(recordType, value);
+    }
+
+    private static boolean isValidValue(int recordType, double value) {
+        return !Double.isNaN(value) || recordType == ALERT;
+    }
+
+    private static void splitLines(CharSequence text, byte[] bytes, int from, int to, RecordBatch batch) {
+        int lineStart = from;
+        for (int i = from; i <= to; i++) {
+            if (i == to || charAt(text, bytes, i) == '\n') {
+                if (!isBlank(text, bytes, lineStart, i)) {
+                    parse(text, bytes, lineStart, i, null, batch);
+                }
+                lineStart = i + 1;
+            }
+        }
+    }
+
+    private static boolean isBlank(CharSequence text, byte[] bytes, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (charAt(text, bytes, i) > ' ') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Parses a line from either a CharSequence or a byte array (the other one is null).
+     * The line is a list of label-value pairs separated by commas, and a label is separated from its value by
+     * the first colon. Whitespace anywhere is ignored, and so are more colons in a value.
+     * A valid record is added to the batch if there is one, otherwise to the data storage.
+     */
+    private static void parse(CharSequence text, byte[] bytes, int from, int to, DataStorage dataStorage,
+                              RecordBatch batch) {
 
         //variable initialization with invalid data
         int patientId = -1;
         double measurementValue = Double.NaN;
-        String recordType = null;
+        int recordType = -1; //code in the RecordTypeRegistry
         long timestamp = -1;
 
-        //pre-process the line
-        line = line.trim();
-        line = line.replaceAll("\\s+", ""); //remove all whitespace
-        line = line + ","; //put a comma to the end of the line so , is always the indicator of the end of a label-value pair
-
-        StringBuilder label = new StringBuilder();
-        StringBuilder value = new StringBuilder();
-        boolean readValue = false;
-
-        for (char nextChar: line.toCharArray()) {
-            if (nextChar == ':') {
-                readValue = true;
-            } else if (nextChar == ',') { //at the end of every label-value pair, update the corresponding variable
-                if (label.toString().equals("PatientID")) {
-                    try {
-                        patientId = Integer.parseInt(value.toString());
-                    } catch (NumberFormatException e) {
-                        System.out.println("could not parse patient id: " + value);
-                    }
-                }else if (label.toString().equals("Timestamp")) {
-                    try {
-                        timestamp = Long.parseLong(value.toString().replace("L", "")); //replace L suffix that (often there to let java know it is type long, but invalid for parsing)
-                    } catch (NumberFormatException e) {
-                        System.out.println("could not parse timestamp: " + value);
-                    }
-                }else if (label.toString().equals("Label"))
-                    recordType = value.toString();
-                else if (label.toString().equals("Data")) {
-
-                    //if the type is an alert: if it is triggered, we will put measurementValue = 0.0. If resolved, the alert won't be pushed
-                    if (value.toString().equals("triggered")) {
-                            measurementValue = 0.0;
-                    } else if (value.toString().equals("resolved")) {
-                            return;
-                    } else {
-                        try {
-                            measurementValue = Double.parseDouble(value.toString());
-                        } catch (NumberFormatException e) {
-                            System.out.println("could not parse measurement value: " + value);
-                        }
-                    }
-                } else
-                    System.out.println("Unknown data variable" + label);
+        //the same characters as String.trim()
+        while (from < to && charAt(text, bytes, from) <= ' ') {
+            from++;
+        }
+        while (to > from && charAt(text, bytes, to - 1) <= ' ') {
+            to--;
+        }
+
+        //the text after the last comma is a pair as well, also if it is empty
+        for (int pairStart = from; pairStart <= to; ) {
+            int pairEnd = pairStart;
+            int colon = -1;
+            while (pairEnd < to) {
+                char c = charAt(text, bytes, pairEnd);
+                if (c == ',') {
+                    break;
+                }
+                if (c == ':' && colon < 0) {
+                    colon = pairEnd;
+                }
+                pairEnd++;
+            }
+            int labelEnd = colon < 0 ? pairEnd : colon;
+            int valueStart = colon < 0 ? pairEnd : colon + 1;
 
-                //after label-value pair is parsed, reset the label and value to ""
-                label.delete(0, label.length());
-                value.delete(0, value.length());
-                readValue = false;
-            } else if (readValue)
-                value.append(nextChar);
-            else
-                label.append(nextChar);
+            if (matches(text, bytes, pairStart, labelEnd, "PatientID")) {
+                long value = parseWholeNumber(text, bytes, valueStart, pairEnd, false, Integer.MIN_VALUE, Integer.MAX_VALUE);
+                if (value == NOT_A_NUMBER) {
+                    System.out.println("could not parse patient id: " + strip(text, bytes, valueStart, pairEnd, true));
+                } else {
+                    patientId = (int) value;
+                }
+            } else if (matches(text, bytes, pairStart, labelEnd, "Timestamp")) {
+                //skips the L suffix (often there to let java know it is type long, but invalid for parsing)
+                long value = parseWholeNumber(text, bytes, valueStart, pairEnd, true, Long.MIN_VALUE, Long.MAX_VALUE);
+                if (value == NOT_A_NUMBER) {
+                    System.out.println("could not parse timestamp: " + strip(text, bytes, valueStart, pairEnd, true));
+                } else {
+                    timestamp = value;
+                }
+            } else if (matches(text, bytes, pairStart, labelEnd, "Label")) {
+                recordType = internLabel(text, bytes, valueStart, pairEnd);
+            } else if (matches(text, bytes, pairStart, labelEnd, "Data")) {
+                //if the type is an alert: if it is triggered, we will put measurementValue = 0.0. If resolved, the alert won't be pushed
+                if (matches(text, bytes, valueStart, pairEnd, "triggered")) {
+                    measurementValue = 0.0;
+                } else if (matches(text, bytes, valueStart, pairEnd, "resolved")) {
+                    return;
+                } else {
+                    measurementValue = parseMeasurement(text, bytes, valueStart, pairEnd, true);
+                }
+            } else {
+                System.out.println("Unknown data variable" + strip(text, bytes, pairStart, labelEnd, false));
+            }
+            pairStart = pairEnd + 1;
         }
-        //System.out.println("ended parsing");
 
         //check if any of the variables isn't correctly set. If everything is valid, make a new record and add it to dataStorage
-
-        if (checkValidity(recordType, measurementValue, patientId, timestamp, dataStorage)) {
-            //System.out.println("adding to data storage: patient ID: " + patientId + " measurement value: " + measurementValue+ " record type: " + recordType + " timestamp: " + timestamp);
-            dataStorage.addPatientData(patientId, measurementValue, recordType, timestamp);
-            //System.out.println("added to data storage");
+        if (!checkValidity(recordType, measurementValue, patientId, timestamp)) {
+            System.out.println(" Line - " + strip(text, bytes, from, to, false) + ",");
+        } else if (batch != null) {
+            batch.add(patientId, measurementValue, recordType, timestamp);
         } else {
-            System.out.println(" Line - " + line);
+            dataStorage.addPatientData(patientId, measurementValue, recordType, timestamp);
         }
     }
-    private static boolean checkValidity(String recordType, double measurementValue, int patientId, long timestamp, DataStorage dataStorage) {
-        if (recordType == null) {
+
+    private static boolean checkValidity(int recordType, double measurementValue, int patientId, long timestamp) {
+        if (recordType == -1) {
             System.out.print("did not parse record type correctly.");
             return false;
-        }else if ((Double.isNaN(measurementValue) && !recordType.equals("alert"))) {
+        }else if (!isValidValue(recordType, measurementValue)) {
             System.out.print("did not parse measurement value correctly.");
             return false;
         }else if (patientId <= 0) {
@@ -103,4 +249,192 @@ public class DataParser {
         }
         return true;
     }
+
+    private static char charAt(CharSequence text, byte[] bytes, int index) {
+        return bytes != null ? (char) (bytes[index] & 0xFF) : text.charAt(index);
+    }
+
+    /**
+     * @return true for the characters that are left out of labels and values: whitespace (as in the regex \s)
+     *         and colons (only the first colon of a pair separates the label from the value)
+     */
+    private static boolean isIgnored(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '\f' || c == 0x0B || c == ':';
+    }
+
+    /**
+     * Compares a part of the line with a string, leaving out the ignored characters of the part
+     */
+    private static boolean matches(CharSequence text, byte[] bytes, int from, int to, String expected) {
+        int matched = 0;
+        for (int i = from; i < to; i++) {
+            char c = charAt(text, bytes, i);
+            if (isIgnored(c)) {
+                continue;
+            }
+            if (matched == expected.length() || expected.charAt(matched) != c) {
+                return false;
+            }
+            matched++;
+        }
+        return matched == expected.length();
+    }
+
+    /**
+     * Parses an integer like {@link Long#parseLong(String)} (an optional sign and digits), leaving out the
+     * ignored characters, and checks that it is within the bounds
+     *
+     * @param skipL true to leave out L characters as well
+     * @return the number, or {@link #NOT_A_NUMBER} if the text isn't a valid number within the bounds
+     */
+    private static long parseWholeNumber(CharSequence text, byte[] bytes, int from, int to, boolean skipL,
+                                         long min, long max) {
+        boolean negative = false;
+        boolean signAllowed = true;
+        boolean hasDigits = false;
+        long limit = -max;
+        long result = 0; //accumulated as a negative number, which has more room than a positive one
+        for (int i = from; i < to; i++) {
+            char c = charAt(text, bytes, i);
+            if (isIgnored(c) || (skipL && c == 'L')) {
+                continue;
+            }
+            if (signAllowed && (c == '-' || c == '+')) {
+                negative = c == '-';
+                limit = negative ? min : -max;
+                signAllowed = false;
+                continue;
+            }
+            signAllowed = false;
+            if (c < '0' || c > '9') {
+                return NOT_A_NUMBER;
+            }
+            int digit = c - '0';
+            if (result < limit / 10) {
+                return NOT_A_NUMBER;
+            }
+            result *= 10;
+            if (result < limit + digit) {
+                return NOT_A_NUMBER;
+            }
+            result -= digit;
+            hasDigits = true;
+        }
+        if (!hasDigits) {
+            return NOT_A_NUMBER;
+        }
+        return negative ? result : -result;
+    }
+
+    /**
+     * Parses a measurement value like {@link Double#parseDouble(String)}, leaving out the ignored characters.
+     * Plain decimal numbers (with an optional sign, fraction and exponent) are parsed in place, anything else
+     * (e.g. NaN, hexadecimal, more than 19 significant digits, or invalid text) goes through Double.parseDouble.
+     *
+     * @param report true to report a value that isn't a valid number
+     * @return the value, or NaN if it isn't a valid number
+     */
+    private static double parseMeasurement(CharSequence text, byte[] bytes, int from, int to, boolean report) {
+        boolean negative = false;
+        boolean signAllowed = true;
+        boolean hasDigits = false;
+        boolean inFraction = false;
+        long mantissa = 0;
+        int significantDigits = 0;
+        int exponent = 0;
+        int i = from;
+        for (; i < to; i++) {
+            char c = charAt(text, bytes, i);
+            if (isIgnored(c)) {
+                continue;
+            }
+            if (signAllowed && (c == '-' || c == '+')) {
+                negative = c == '-';
+                signAllowed = false;
+                continue;
+            }
+            signAllowed = false;
+            if (c >= '0' && c <= '9') {
+                hasDigits = true;
+                if (mantissa != 0 || c != '0') {
+                    if (++significantDigits > 19) {
+                        return parseMeasurementSlowly(text, bytes, from, to, report);
+                    }
+                    mantissa = mantissa * 10 + (c - '0');
+                }
+                if (inFraction) {
+                    exponent--;
+                }
+            } else if (c == '.' && !inFraction) {
+                inFraction = true;
+            } else if ((c == 'e' || c == 'E') && hasDigits) {
+                break;
+            } else {
+                return parseMeasurementSlowly(text, bytes, from, to, report);
+            }
+        }
+        if (!hasDigits) {
+            return parseMeasurementSlowly(text, bytes, from, to, report);
+        }
+        if (i < to) { //exponent
+            long value = parseWholeNumber(text, bytes, i + 1, to, false, -100_000, 100_000);
+            if (value == NOT_A_NUMBER) {
+                return parseMeasurementSlowly(text, bytes, from, to, report);
+            }
+            exponent += (int) value;
+        }
+        double result = DecimalParser.toDouble(mantissa, exponent, negative);
+        if (Double.isNaN(result)) {
+            return parseMeasurementSlowly(text, bytes, from, to, report);
+        }
+        return result;
+    }
+
+    private static double parseMeasurementSlowly(CharSequence text, byte[] bytes, int from, int to, boolean report) {
+        String value = strip(text, bytes, from, to, true);
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            if (report) {
+                System.out.println("could not parse measurement value: " + value);
+            }
+            return Double.NaN;
+        }
+    }
+
+    /**
+     * Finds the record type code of a label in the cache, or registers it. Only a label that isn't cached makes a string.
+     */
+    private static int internLabel(CharSequence text, byte[] bytes, int from, int to) {
+        int hash = 0;
+        for (int i = from; i < to; i++) {
+            char c = charAt(text, bytes, i);
+            if (!isIgnored(c)) {
+                hash = 31 * hash + c;
+            }
+        }
+        int slot = (hash ^ (hash >>> 16)) & (LABEL_CACHE_SIZE - 1);
+        int cached = labelCache[slot];
+        if (cached != -1 && matches(text, bytes, from, to, RecordTypeRegistry.nameOf(cached))) {
+            return cached;
+        }
+        int code = RecordTypeRegistry.register(strip(text, bytes, from, to, true));
+        labelCache[slot] = code;
+        return code;
+    }
+
+    /**
+     * Makes a string of a part of the line without whitespace, and optionally without colons.
+     * Only used for new labels and for messages about invalid lines.
+     */
+    private static String strip(CharSequence text, byte[] bytes, int from, int to, boolean withoutColons) {
+        StringBuilder builder = new StringBuilder(to - from);
+        for (int i = from; i < to; i++) {
+            char c = charAt(text, bytes, i);
+            if (!isIgnored(c) || (c == ':' && !withoutColons)) {
+                builder.append(c);
+            }
+        }
+        return builder.toString();
+    }
 }
@@ -1,32 +1,86 @@
 package com.data_management;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.stream.IntStream;
 import com.alerts.AlertGenerator;
+import com.util.ConcurrentIntMap;
 
 /**
  * Manages storage and retrieval of patient data within a healthcare monitoring
  * system.
  * This class serves as a repository for all patient records, organized by
  * patient IDs.
+ *
+ * <p>The storage can be written and read from multiple threads at the same time
+ * (e.g. the websocket thread ingesting data and the alert scheduler reading it).
+ * There is no global lock: the patient map is a concurrent map keyed on the primitive patient ID
+ * (lookups don't lock or box the ID), and every {@link Patient} locks only its own records.
+ *
+ * <p>Ward-wide queries ({@link #forEachPatientParallel(Consumer)}, {@link #findPatients(String, long, long, Predicate)}
+ * and {@link #aggregateAcrossPatients(String, long, long)}) split the patient map over the cores with a parallel stream,
+ * and only read the series of the requested record type within the requested time range.
+ *
+ * <p>Readers that have many records at once (a block of a file, a message with multiple lines) should add them with
+ * {@link #addBatch(RecordBatch)}, which locks every patient once per batch and appends sorted runs in bulk.
+ *
+ * <p>Consumers that should react to new records as soon as they are stored (e.g. alert evaluation) can register
+ * an {@link IngestListener} with {@link #addIngestListener(IngestListener)} instead of polling.
+ *
+ * <p>By default everything is kept in memory only. With {@link #enablePersistence(Path, long)} every added record
+ * is also written to a write-ahead log, and periodic snapshots are made, so the storage can be restored
+ * quickly after a restart.
+ *
+ * <p>History is kept forever unless a {@link RetentionPolicy} is set for a record type with
+ * {@link #setRetentionPolicy(String, RetentionPolicy)}, then old raw samples are dropped in the background
+ * and downsampled rollups can be kept for longer.
+ *
+ * <p>With {@link #setMemoryBudget(long, Path)} the heap usage of the records is kept under a limit: when it's over,
+ * the sealed history of the least recently used patients is moved to a spill file, and read back from there
+ * when it is queried. {@link #getResidentBytes()} reports the current usage.
  */
 public class DataStorage {
-    private Map<Integer, Patient> patientMap; // Stores patient objects indexed by their unique patient ID.
-    private static DataStorage INSTANCE;
+    private final ConcurrentIntMap<Patient> patientMap; // Stores patient objects indexed by their unique patient ID.
+    private static final long RETENTION_SWEEP_MILLIS = 60_000;
+    private static final long MEMORY_CHECK_MILLIS = 1000;
+
+    private volatile StoragePersistence persistence; // null if the storage is only kept in memory
+    private final SeriesOptions seriesOptions = new SeriesOptions(); // compression and retention per record type
+    private ScheduledExecutorService maintenance; // background tasks, started when the first one is scheduled
+    private boolean retentionScheduled;
+    private volatile long memoryBudget = Long.MAX_VALUE; // max resident bytes of the records
+    private SpillFile spillFile; // null until a memory budget is set
+    private volatile IngestListener[] ingestListeners = new IngestListener[0]; // replaced when one is added or removed
+
+    /**
+     * Holder for the shared instance, the class is only loaded (so the instance only made)
+     * when getInstance() is called for the first time, and class loading is thread safe
+     */
+    private static final class InstanceHolder {
+        private static final DataStorage INSTANCE = new DataStorage();
+    }
+
     /**
      * Constructs a new instance of DataStorage, initializing the underlying storage
      * structure.
+     * The application should use the shared instance from {@link #getInstance()},
+     * separate instances are meant for tools like benchmarks.
      */
-    private DataStorage() {
-        this.patientMap = new HashMap<>();
+    public DataStorage() {
+        this.patientMap = new ConcurrentIntMap<>();
     }
 
     public static DataStorage getInstance() {
-        if (INSTANCE == null)
-            INSTANCE = new DataStorage();
-        return INSTANCE;
+        return InstanceHolder.INSTANCE;
     }
 
     /**
@@ -43,12 +97,276 @@ public class DataStorage {
      *                         milliseconds since the Unix epoch
      */
     public void addPatientData(int patientId, double measurementValue, String recordType, long timestamp) {
+        addPatientData(patientId, measurementValue, RecordTypeRegistry.register(recordType), timestamp);
+    }
+
+    /**
+     * Adds or updates patient data in the storage, with the code of the record type instead of its name
+     *
+     * @param patientId        the unique identifier of the patient
+     * @param measurementValue the value of the health metric being recorded
+     * @param recordTypeCode   the code of the record type, from {@link RecordTypeRegistry#register(String)}
+     * @param timestamp        the time at which the measurement was taken, in
+     *                         milliseconds since the Unix epoch
+     */
+    public void addPatientData(int patientId, double measurementValue, int recordTypeCode, long timestamp) {
         Patient patient = patientMap.get(patientId);
         if (patient == null) {
-            patient = new Patient(patientId);
-            patientMap.put(patientId, patient);
+            patient = patientMap.computeIfAbsent(patientId, id -> new Patient(id, seriesOptions));
         }
-        patient.addRecord(measurementValue, recordType, timestamp);
+        patient.addRecord(measurementValue, recordTypeCode, timestamp, persistence);
+        notifyIngestListeners(patientId);
+    }
+
+    /**
+     * Adds all records of a batch, with the same result as adding them one by one with
+     * {@link #addPatientData(int, double, String, long)} in the order of the batch.
+     * The records are grouped per patient and record type and sorted on timestamp first, so every patient is locked
+     * only once per batch and every series gets one bulk append. The batch can be cleared and reused afterwards.
+     *
+     * @param batch the records to add
+     */
+    public void addBatch(RecordBatch batch) {
+        int size = batch.size();
+        long[] order = batch.sortByPatient();
+        StoragePersistence log = persistence;
+        for (int from = 0; from < size; ) {
+            int to = from + 1;
+            while (to < size && (order[to] >>> 32) == (order[from] >>> 32)) {
+                to++;
+            }
+            int patientId = batch.patientId(RecordBatch.index(order, from));
+            Patient patient = patientMap.get(patientId);
+            if (patient == null) {
+                patient = patientMap.computeIfAbsent(patientId, id -> new Patient(id, seriesOptions));
+            }
+            patient.addBatch(batch, order, from, to, log);
+            notifyIngestListeners(patientId);
+            from = to;
+        }
+    }
+
+    /**
+     * Registers a listener that is called every time records of a patient are stored
+     *
+     * @param listener the listener
+     */
+    public synchronized void addIngestListener(IngestListener listener) {
+        IngestListener[] listeners = Arrays.copyOf(ingestListeners, ingestListeners.length + 1);
+        listeners[listeners.length - 1] = listener;
+        ingestListeners = listeners;
+    }
+
+    /**
+     * Removes a listener that was added with {@link #addIngestListener(IngestListener)}
+     *
+     * @param listener the listener
+     */
+    public synchronized void removeIngestListener(IngestListener listener) {
+        IngestListener[] listeners = ingestListeners;
+        for (int i = 0; i < listeners.length; i++) {
+            if (listeners[i] == listener) {
+                IngestListener[] remaining = Arrays.copyOf(listeners, listeners.length - 1);
+                System.arraycopy(listeners, i + 1, remaining, i, listeners.length - i - 1);
+                ingestListeners = remaining;
+                return;
+            }
+        }
+    }
+
+    private void notifyIngestListeners(int patientId) {
+        for (IngestListener listener : ingestListeners) {
+            listener.recordsAdded(patientId);
+        }
+    }
+
+    /**
+     * Enables Gorilla compression for the history of a record type, e.g. for high-frequency types like "ECG".
+     * Only the settled part of a series (older than the lateness window) is compressed, in chunks,
+     * and reading decodes it transparently. Applies to series that are created after this call,
+     * so it should be called before data is added.
+     *
+     * @param recordType the type of record to compress
+     */
+    public void enableCompression(String recordType) {
+        seriesOptions.enableCompression(recordType);
+    }
+
+    /**
+     * Sets how long the history of a record type is kept, and which rollups are kept for it.
+     * Applies to series that are created after this call, so it should be called before data is added.
+     * Rollups are updated when samples are added; old raw samples and buckets are dropped by a
+     * background sweep every {@value #RETENTION_SWEEP_MILLIS} ms, or when {@link #sweepRetention()} is called.
+     *
+     * @param recordType the type of record, e.g. "ECG"
+     * @param policy     the retention policy
+     */
+    public synchronized void setRetentionPolicy(String recordType, RetentionPolicy policy) {
+        seriesOptions.setRetentionPolicy(recordType, policy);
+        if (!retentionScheduled) {
+            retentionScheduled = true;
+            scheduleMaintenance(this::sweepRetention, RETENTION_SWEEP_MILLIS);
+        }
+    }
+
+    /**
+     * Runs a task periodically on the background thread of the storage, which is started the first time
+     */
+    private synchronized void scheduleMaintenance(Runnable task, long periodMillis) {
+        if (maintenance == null) {
+            maintenance = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "storage-maintenance");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        maintenance.scheduleWithFixedDelay(task, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Drops the history of all patients that is older than their retention policies allow.
+     * Patients are locked one at a time, so ingest for other patients continues meanwhile.
+     */
+    public void sweepRetention() {
+        if (!seriesOptions.hasRetentionPolicies()) {
+            return;
+        }
+        patientMap.forEachValue(Patient::applyRetention);
+    }
+
+    /**
+     * Limits the heap usage of the records. Every {@value #MEMORY_CHECK_MILLIS} ms (or when
+     * {@link #enforceMemoryBudget()} is called) the resident bytes are counted, and if they are over the budget the
+     * sealed history of the least recently accessed patients is spilled to a file in the directory, until the usage is
+     * under the budget again. The newest samples of every series (the head) always stay on the heap, so the budget
+     * can't be met if it's smaller than those. Spilled history is read back from the file when it is queried;
+     * aggregations over it mostly use the summaries that stay on the heap.
+     *
+     * @param maxBytes       the budget in bytes, as counted by {@link #getResidentBytes()}
+     * @param spillDirectory directory for the spill file, created if it doesn't exist. The directory of the first call
+     *                       is kept, later calls only change the budget
+     * @throws IOException if the spill file can't be created
+     */
+    public synchronized void setMemoryBudget(long maxBytes, Path spillDirectory) throws IOException {
+        if (spillFile == null) {
+            spillFile = SpillFile.open(spillDirectory);
+            scheduleMaintenance(this::enforceMemoryBudgetQuietly, MEMORY_CHECK_MILLIS);
+        }
+        memoryBudget = maxBytes;
+    }
+
+    /**
+     * Spills the history of the least recently accessed patients until the resident bytes are under the memory budget.
+     * Does nothing if no budget is set.
+     *
+     * @throws IOException if writing to the spill file fails
+     */
+    public synchronized void enforceMemoryBudget() throws IOException {
+        if (spillFile == null) {
+            return;
+        }
+        List<Patient> patients = patientMap.values();
+        long total = 0;
+        long[] lastAccess = new long[patients.size()];
+        for (int i = 0; i < patients.size(); i++) {
+            total += patients.get(i).estimateBytes();
+            lastAccess[i] = patients.get(i).getLastAccess(); //copied, the patients are used while they are sorted
+        }
+        if (total <= memoryBudget) {
+            return;
+        }
+        int[] leastRecentFirst = IntStream.range(0, patients.size()).boxed()
+                .sorted(Comparator.comparingLong(i -> lastAccess[i]))
+                .mapToInt(Integer::intValue)
+                .toArray();
+        for (int i = 0; i < leastRecentFirst.length && total > memoryBudget; i++) {
+            total -= patients.get(leastRecentFirst[i]).spillChunks(spillFile);
+        }
+    }
+
+    private void enforceMemoryBudgetQuietly() {
+        try {
+            enforceMemoryBudget();
+        } catch (IOException e) {
+            System.err.println("Error spilling patient history: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Approximate number of bytes the records of all patients take on the heap
+     *
+     * @return estimated size in bytes
+     */
+    public long getResidentBytes() {
+        long[] total = new long[1];
+        patientMap.forEachValue(patient -> total[0] += patient.estimateBytes());
+        return total[0];
+    }
+
+    /**
+     * Approximate number of bytes the records of a patient take on the heap, history that is spilled doesn't count
+     *
+     * @param patientId the unique identifier of the patient
+     * @return estimated size in bytes, or 0 if the patient is unknown
+     */
+    public long getResidentBytes(int patientId) {
+        Patient patient = patientMap.get(patientId);
+        return patient == null ? 0 : patient.estimateBytes();
+    }
+
+    SeriesOptions getSeriesOptions() {
+        return seriesOptions;
+    }
+
+    /**
+     * Makes the storage persistent in a directory.
+     * First restores the data that is already there (the newest snapshot plus the write-ahead log after it),
+     * then logs every record added from now on, and makes a new snapshot every snapshotPeriodMillis.
+     * Should be called before any data is added.
+     *
+     * @param directory            directory for the log and snapshot files, created if it doesn't exist
+     * @param snapshotPeriodMillis time between snapshots, or 0 to only make snapshots by calling {@link #snapshot()}
+     * @throws IOException if the existing data can't be restored or the log can't be created
+     */
+    public synchronized void enablePersistence(Path directory, long snapshotPeriodMillis) throws IOException {
+        if (persistence != null) {
+            throw new IllegalStateException("persistence is already enabled");
+        }
+        persistence = StoragePersistence.open(directory, this, snapshotPeriodMillis);
+    }
+
+    /**
+     * Writes a snapshot of all patients now, and removes the log and snapshot files it replaces
+     *
+     * @throws IOException if writing the snapshot fails
+     */
+    public void snapshot() throws IOException {
+        StoragePersistence current = persistence;
+        if (current == null) {
+            throw new IllegalStateException("persistence is not enabled");
+        }
+        current.snapshot();
+    }
+
+    /**
+     * Flushes the write-ahead log and stops logging. The data stays in memory.
+     * Should be called after ingest has stopped, records that are added at the same time might not be logged.
+     *
+     * @throws IOException if flushing fails
+     */
+    public synchronized void disablePersistence() throws IOException {
+        if (persistence != null) {
+            StoragePersistence current = persistence;
+            persistence = null;
+            current.close();
+        }
+    }
+
+    /**
+     * Puts a patient that is read from a snapshot into the storage, helper method for restoring
+     */
+    void restorePatient(Patient patient) {
+        patientMap.put(patient.getPatientId(), patient);
     }
 
     /**
@@ -63,6 +381,7 @@ public class DataStorage {
      *                  epoch
      * @return a list of PatientRecord objects that fall within the specified time
      *         range
+     * @see #forEachRecord(int, long, long, RecordVisitor)
      */
     public List<PatientRecord> getRecords(int patientId, long startTime, long endTime) {
         Patient patient = patientMap.get(patientId);
@@ -72,19 +391,228 @@ public class DataStorage {
         return new ArrayList<>(); // return an empty list if no patient is found
     }
 
+    /**
+     * Streams over a patient's records of all types within a time range, sorted on timestamp,
+     * without copying them into a list. Does nothing if the patient is unknown.
+     *
+     * @param patientId the unique identifier of the patient
+     * @param startTime the start of the time range (inclusive), in milliseconds since the Unix epoch
+     * @param endTime   the end of the time range (inclusive), in milliseconds since the Unix epoch
+     * @param visitor   called for every record in the range
+     */
+    public void forEachRecord(int patientId, long startTime, long endTime, RecordVisitor visitor) {
+        Patient patient = patientMap.get(patientId);
+        if (patient != null) {
+            patient.forEachRecord(startTime, endTime, visitor);
+        }
+    }
+
+    /**
+     * Streams over a patient's records of all types within a time range, sorted on timestamp, with the codes of
+     * the record types (see {@link RecordTypeRegistry}). Does nothing if the patient is unknown.
+     *
+     * @param patientId the unique identifier of the patient
+     * @param startTime the start of the time range (inclusive), in milliseconds since the Unix epoch
+     * @param endTime   the end of the time range (inclusive), in milliseconds since the Unix epoch
+     * @param visitor   called for every record in the range
+     */
+    public void forEachTypedRecord(int patientId, long startTime, long endTime, TypedRecordVisitor visitor) {
+        Patient patient = patientMap.get(patientId);
+        if (patient != null) {
+            patient.forEachTypedRecord(startTime, endTime, visitor);
+        }
+    }
+
+    /**
+     * Streams over a patient's (timestamp, value) samples of one record type within a time range,
+     * from old to new, without copying them into a list. Does nothing if the patient is unknown.
+     *
+     * @param patientId  the unique identifier of the patient
+     * @param recordType the type of record, e.g., "Saturation"
+     * @param startTime  the start of the time range (inclusive), in milliseconds since the Unix epoch
+     * @param endTime    the end of the time range (inclusive), in milliseconds since the Unix epoch
+     * @param visitor    called for every sample in the range
+     */
+    public void forEachRecord(int patientId, String recordType, long startTime, long endTime, SampleVisitor visitor) {
+        Patient patient = patientMap.get(patientId);
+        if (patient != null) {
+            patient.forEachRecord(recordType, startTime, endTime, visitor);
+        }
+    }
+
+    /**
+     * Computes statistics of a patient's samples of one record type within a time range, e.g.
+     * min/max/mean/count of SystolicPressure over the last 6 hours, without copying the records.
+     * Sealed history has precomputed summaries per chunk, so this costs O(log n + chunks) instead of O(n).
+     *
+     * @param patientId  the unique identifier of the patient
+     * @param recordType the type of record, e.g., "SystolicPressure"
+     * @param startTime  the start of the time range (inclusive), in milliseconds since the Unix epoch
+     * @param endTime    the end of the time range (inclusive), in milliseconds since the Unix epoch
+     * @return the statistics, with count 0 if the patient is unknown or has no samples in the range
+     */
+    public Aggregate aggregate(int patientId, String recordType, long startTime, long endTime) {
+        Patient patient = patientMap.get(patientId);
+        if (patient != null) {
+            return patient.aggregate(recordType, startTime, endTime);
+        }
+        return Aggregate.EMPTY;
+    }
+
+    /**
+     * Streams over a patient's history of one record type at a lower resolution, e.g. a week of ECG for a chart.
+     * Uses the coarsest rollup tier of the type's retention policy that isn't coarser than the requested resolution,
+     * and the raw samples (as buckets of one sample) if there is no such tier. The part of the range that is older
+     * than the retention of that tier comes from the next coarser tier that still holds it.
+     * Does nothing if the patient is unknown.
+     *
+     * @param patientId        the unique identifier of the patient
+     * @param recordType       the type of record, e.g., "ECG"
+     * @param startTime        the start of the time range (inclusive), in milliseconds since the Unix epoch
+     * @param endTime          the end of the time range (inclusive), in milliseconds since the Unix epoch
+     * @param resolutionMillis the largest bucket size that is fine for the caller
+     * @param visitor          called for every bucket in the range
+     */
+    public void forEachRollup(int patientId, String recordType, long startTime, long endTime, long resolutionMillis,
+                              RollupVisitor visitor) {
+        Patient patient = patientMap.get(patientId);
+        if (patient != null) {
+            patient.forEachRollup(recordType, startTime, endTime, resolutionMillis, visitor);
+        }
+    }
+
+    /**
+     * Retrieves a patient's history of one record type at a lower resolution, as records that hold the mean of
+     * every bucket at the bucket's start time.
+     *
+     * @param patientId        the unique identifier of the patient
+     * @param recordType       the type of record, e.g., "ECG"
+     * @param startTime        the start of the time range (inclusive), in milliseconds since the Unix epoch
+     * @param endTime          the end of the time range (inclusive), in milliseconds since the Unix epoch
+     * @param resolutionMillis the largest bucket size that is fine for the caller
+     * @return the records, sorted on timestamp
+     * @see #forEachRollup(int, String, long, long, long, RollupVisitor)
+     */
+    public List<PatientRecord> getRecords(int patientId, String recordType, long startTime, long endTime,
+                                          long resolutionMillis) {
+        List<PatientRecord> records = new ArrayList<>();
+        forEachRollup(patientId, recordType, startTime, endTime, resolutionMillis,
+                (bucketStart, min, max, mean, count) ->
+                        records.add(new PatientRecord(patientId, mean, recordType, bucketStart)));
+        return records;
+    }
+
+    /**
+     * Gets the most recent record of a given type for a patient.
+     * Reads the end of the patient's series for that type, so no records are copied.
+     *
+     * @param patientId  the unique identifier of the patient
+     * @param recordType the type of record, e.g., "Saturation"
+     * @return the most recent record of that type, or null if the patient or record type is unknown
+     */
     public PatientRecord getLastRecordOfType(int patientId, String recordType) {
         Patient patient = patientMap.get(patientId);
         if (patient != null) {
-            List<PatientRecord> records = patient.getRecords(Long.MIN_VALUE, Long.MAX_VALUE);
-            for (int i = records.size()-1; i >= 0; i--) {
-                if (records.get(i).getRecordType().equals(recordType)) {
-                    return records.get(i);
-                }
-            }
+            return patient.getLastRecordOfType(recordType);
         }
         return null;
     }
 
+    /**
+     * Gets the most recent record of a given record type code for a patient
+     *
+     * @param patientId      the unique identifier of the patient
+     * @param recordTypeCode the code of the record type, see {@link RecordTypeRegistry}
+     * @return the most recent record of that type, or null if the patient or record type is unknown
+     */
+    public PatientRecord getLastRecordOfType(int patientId, int recordTypeCode) {
+        Patient patient = patientMap.get(patientId);
+        if (patient != null) {
+            return patient.getLastRecordOfType(recordTypeCode);
+        }
+        return null;
+    }
+
+    /**
+     * Gets the timestamp of the newest sample of every record type of a patient
+     *
+     * @param patientId the unique identifier of the patient
+     * @return the timestamps, indexed by the code of the record type ({@link RecordTypeRegistry}),
+     *         Long.MIN_VALUE for types without samples. Empty if the patient is unknown
+     */
+    public long[] getLastTimestamps(int patientId) {
+        Patient patient = patientMap.get(patientId);
+        if (patient != null) {
+            return patient.getLastTimestamps();
+        }
+        return new long[0];
+    }
+
+    /**
+     * Gets the most recent record of a given type for many patients at once, e.g. for a ward dashboard.
+     * Every lookup is O(1), the same as {@link #getLastRecordOfType(int, String)}.
+     *
+     * @param patientIds the patients to look up
+     * @param recordType the type of record, e.g., "Saturation"
+     * @return an array with the most recent record for every patient, at the same index as in patientIds.
+     *         An entry is null if the patient or record type is unknown
+     */
+    public PatientRecord[] getLastRecordsOfType(int[] patientIds, String recordType) {
+        PatientRecord[] records = new PatientRecord[patientIds.length];
+        for (int i = 0; i < patientIds.length; i++) {
+            records[i] = getLastRecordOfType(patientIds[i], recordType);
+        }
+        return records;
+    }
+
+    /**
+     * Runs an action for every patient, in parallel on the common fork/join pool, without copying the patient map.
+     * Returns when the action has run for all patients. Patients that are added meanwhile might not be visited.
+     *
+     * @param action called for every patient, from multiple threads at the same time
+     */
+    public void forEachPatientParallel(Consumer<Patient> action) {
+        patientMap.valueStream(true).forEach(action);
+    }
+
+    /**
+     * Finds the patients whose samples of a record type within a time range match a condition, in parallel.
+     * For example all patients whose latest saturation of the last 10 minutes is below 92:
+     * {@code findPatients("Saturation", now - 600_000, now, a -> a.getCount() > 0 && a.getLastValue() < 92)}.
+     * Only the series of the record type is read, using its precomputed summaries.
+     *
+     * @param recordType the type of record, e.g., "Saturation"
+     * @param startTime  the start of the time range (inclusive), in milliseconds since the Unix epoch
+     * @param endTime    the end of the time range (inclusive), in milliseconds since the Unix epoch
+     * @param condition  tested with the statistics of every patient in the range, from multiple threads at the same time
+     * @return the ids of the matching patients, sorted
+     */
+    public int[] findPatients(String recordType, long startTime, long endTime, Predicate<Aggregate> condition) {
+        return patientMap.valueStream(true)
+                .filter(patient -> condition.test(patient.aggregate(recordType, startTime, endTime)))
+                .mapToInt(Patient::getPatientId)
+                .sorted()
+                .toArray();
+    }
+
+    /**
+     * Computes statistics over the samples of a record type within a time range of all patients together,
+     * e.g. the mean heart rate of the ward over the last hour. Patients are summarized in parallel and the
+     * summaries are merged, so no samples are copied.
+     *
+     * @param recordType the type of record, e.g., "HeartRate"
+     * @param startTime  the start of the time range (inclusive), in milliseconds since the Unix epoch
+     * @param endTime    the end of the time range (inclusive), in milliseconds since the Unix epoch
+     * @return the statistics of all samples, with count 0 if there are none
+     */
+    public Aggregate aggregateAcrossPatients(String recordType, long startTime, long endTime) {
+        return patientMap.valueStream(true)
+                .map(patient -> patient.summarize(recordType, startTime, endTime))
+                .reduce(BlockSummary::merge) //every summary is a new object, so merging into the left one is safe
+                .map(BlockSummary::toAggregate)
+                .orElse(Aggregate.EMPTY);
+    }
+
     public long getPatientScannedTime(int patientId) {
         return patientMap.get(patientId).getScannedUpTo();
     }
@@ -100,7 +628,7 @@ public class DataStorage {
      * @return a list of all patients
      */
     public List<Patient> getAllPatients() {
-        return new ArrayList<>(patientMap.values());
+        return patientMap.values();
     }
 
     /**
@@ -0,0 +1,121 @@
+package com.data_management;
+
+import java.math.BigInteger;
+
+/**
+ * Turns a decimal number that is already split into digits and an exponent (mantissa * 10^exponent)
+ * into the nearest double, the same result as {@link Double#parseDouble(String)} but without making a String.
+ *
+ * <p>Small numbers take Clinger's fast path (both the mantissa and the power of ten are exact doubles,
+ * so one multiplication or division rounds correctly). Other numbers use the Eisel-Lemire algorithm with a table of
+ * 128-bit powers of ten, which is made once when the class is loaded. In the rare cases where that algorithm can't
+ * decide the rounding, NaN is returned and the caller should fall back to {@link Double#parseDouble(String)}.
+ */
+final class DecimalParser {
+    private static final long MAX_EXACT_MANTISSA = 1L << 53;
+    private static final double[] EXACT_POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+    private static final int MIN_EXPONENT = -348;
+    private static final int MAX_EXPONENT = 347;
+    //10^e as a 128-bit number with the highest bit set, rounded down, split in high and low 64 bits
+    private static final long[] POWER_HIGH = new long[MAX_EXPONENT - MIN_EXPONENT + 1];
+    private static final long[] POWER_LOW = new long[MAX_EXPONENT - MIN_EXPONENT + 1];
+
+    static {
+        BigInteger mask = BigInteger.ONE.shiftLeft(64).subtract(BigInteger.ONE);
+        for (int exponent = MIN_EXPONENT; exponent <= MAX_EXPONENT; exponent++) {
+            BigInteger power;
+            if (exponent >= 0) {
+                power = BigInteger.TEN.pow(exponent);
+            } else {
+                BigInteger divisor = BigInteger.TEN.pow(-exponent);
+                power = BigInteger.ONE.shiftLeft(128 + divisor.bitLength()).divide(divisor);
+            }
+            int shift = power.bitLength() - 128;
+            power = shift > 0 ? power.shiftRight(shift) : power.shiftLeft(-shift);
+            POWER_HIGH[exponent - MIN_EXPONENT] = power.shiftRight(64).longValue();
+            POWER_LOW[exponent - MIN_EXPONENT] = power.and(mask).longValue();
+        }
+    }
+
+    private DecimalParser() {
+    }
+
+    /**
+     * Computes the double closest to mantissa * 10^exponent
+     *
+     * @param mantissa the significant digits, as an unsigned number (at most 19 digits)
+     * @param exponent the power of ten
+     * @param negative true for a negative number
+     * @return the double, or NaN if it can't be computed exactly here
+     */
+    static double toDouble(long mantissa, int exponent, boolean negative) {
+        double result;
+        if (mantissa == 0) {
+            result = 0;
+        } else if (mantissa > 0 && mantissa <= MAX_EXACT_MANTISSA && exponent >= -22 && exponent <= 22) {
+            result = exponent >= 0 ? mantissa * EXACT_POWERS_OF_TEN[exponent] : mantissa / EXACT_POWERS_OF_TEN[-exponent];
+        } else {
+            result = eiselLemire(mantissa, exponent);
+        }
+        return negative ? -result : result;
+    }
+
+    /**
+     * The Eisel-Lemire algorithm: multiplies the normalized mantissa with the truncated 128-bit power of ten, and
+     * checks that the truncation can't change the rounding to 53 bits
+     *
+     * @return the (positive) double, or NaN if the rounding is ambiguous or the result is subnormal or infinite
+     */
+    private static double eiselLemire(long mantissa, int exponent) {
+        if (exponent < MIN_EXPONENT || exponent > MAX_EXPONENT) {
+            return Double.NaN;
+        }
+        int leadingZeros = Long.numberOfLeadingZeros(mantissa);
+        mantissa <<= leadingZeros;
+        long binaryExponent = ((217706L * exponent) >> 16) + 64 + 1023 - leadingZeros; //217706 / 2^16 ~ log2(10)
+        int index = exponent - MIN_EXPONENT;
+
+        long high = unsignedMultiplyHigh(mantissa, POWER_HIGH[index]);
+        long low = mantissa * POWER_HIGH[index];
+        if ((high & 0x1FF) == 0x1FF && Long.compareUnsigned(low + mantissa, mantissa) < 0) {
+            //the lower 64 bits of the power could carry into the result, so take them into account
+            long extraHigh = unsignedMultiplyHigh(mantissa, POWER_LOW[index]);
+            long extraLow = mantissa * POWER_LOW[index];
+            long mergedHigh = high;
+            long mergedLow = low + extraHigh;
+            if (Long.compareUnsigned(mergedLow, low) < 0) {
+                mergedHigh++;
+            }
+            if ((mergedHigh & 0x1FF) == 0x1FF && mergedLow == -1
+                    && Long.compareUnsigned(extraLow + mantissa, mantissa) < 0) {
+                return Double.NaN;
+            }
+            high = mergedHigh;
+            low = mergedLow;
+        }
+
+        int topBit = (int) (high >>> 63);
+        long result = high >>> (topBit + 9); //54 bits
+        binaryExponent -= 1 ^ topBit;
+        if (low == 0 && (high & 0x1FF) == 0 && (result & 3) == 1) {
+            return Double.NaN; //exactly halfway between two doubles, can't tell how to round
+        }
+        result += result & 1; //round to 53 bits
+        result >>>= 1;
+        if ((result >>> 53) > 0) {
+            result >>>= 1;
+            binaryExponent++;
+        }
+        if (binaryExponent <= 0 || binaryExponent >= 0x7FF) {
+            return Double.NaN;
+        }
+        return Double.longBitsToDouble(binaryExponent << 52 | result & 0x000FFFFFFFFFFFFFL);
+    }
+
+    private static long unsignedMultiplyHigh(long a, long b) {
+        return Math.multiplyHigh(a, b) + ((a >> 63) & b) + ((b >> 63) & a);
+    }
+}
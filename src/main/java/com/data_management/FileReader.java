@@ -1,38 +1,461 @@
 package com.data_management;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
-import java.util.Scanner;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * Reads the files of a directory that {@code FileOutputStrategy} writes to.
+ *
+ * <p>By default the files are read one after the other, in blocks. For large directories there is a parallel mode
+ * ({@link #FileReader(String, int)}): every file is memory-mapped and split into chunks that end at a line break,
+ * the chunks are parsed on a pool of worker threads, and the parsed chunks of a file are added to the storage
+ * in the order of the file, so the records of a patient are added in the same order as with a serial read.
+ *
+ * <p>To keep up with a simulator that is still writing, {@link #follow(DataStorage)} only reads the bytes that were
+ * appended since the last read, of existing and new files. How far every file was read is checkpointed in a sidecar
+ * file in the directory, so after a restart following continues where it stopped.
+ */
 public class FileReader implements DataReader {
+    private static final int BLOCK_SIZE = 1 << 16; //characters that are read at once
+    private static final int CHUNK_SIZE = 8 << 20; //default bytes of a file that are parsed by one task in parallel mode
+    static final String OFFSETS_FILE = ".offsets"; //sidecar with the read offsets of follow mode, not a data file
+    private static final long RESCAN_MILLIS = 1000; //all files are checked if no change was reported for this long
+    private static final long CHECKPOINT_MILLIS = 1000; //the offsets are saved at most this often
+    private static final int CHUNKS_PER_THREAD = 2; //parsed or waiting chunks in parallel mode, per thread
     private String outputDir;
+    private final int threads;
+    private final int chunkSize;
+    private volatile ReadStats lastReadStats;
+
     public FileReader(String outputDir) {
+        this(outputDir, 1);
+    }
+
+    /**
+     * Makes a file reader that reads in parallel if more than one thread is given
+     *
+     * @param outputDir the directory with the output files
+     * @param threads   the number of threads that parse the files, 1 to read serially
+     */
+    public FileReader(String outputDir, int threads) {
+        this(outputDir, threads, CHUNK_SIZE);
+    }
+
+    /**
+     * Makes a file reader that reads in parallel if more than one thread is given
+     *
+     * @param outputDir the directory with the output files
+     * @param threads   the number of threads that parse the files, 1 to read serially
+     * @param chunkSize the number of bytes of a file that are parsed by one task in parallel mode
+     */
+    public FileReader(String outputDir, int threads, int chunkSize) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("threads must be at least 1, got " + threads);
+        }
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("chunkSize must be at least 1, got " + chunkSize);
+        }
         this.outputDir = outputDir;
+        this.threads = threads;
+        this.chunkSize = chunkSize;
     }
 
     /**
-     * Reads data from an output file generated using the --output file:<output_dir> argument
+     * Reads data from an output file generated using the --output file:<output_dir> argument.
+     * Files are read in blocks, and the complete lines of every block are added to the storage as one batch.
+     * When it is done, the number of lines and bytes per second is available from {@link #getLastReadStats()}.
      *
      * @param dataStorage the storage where data will be stored
      * @throws IOException if there is an error reading the data
      */
     public void readData(DataStorage dataStorage) throws IOException {
+        long begin = System.nanoTime();
         File dir = new File(outputDir);
-        File[] files = dir.listFiles();
+        File[] files = dir.listFiles(file -> isDataFile(file.toPath()));
 
         if (files == null || files.length == 0) {
             System.out.println("No files in directory");
+            lastReadStats = new ReadStats(0, 0, System.nanoTime() - begin);
             return;
         }
 
+        if (threads > 1) {
+            long[] linesAndBytes = readParallel(files, dataStorage);
+            lastReadStats = new ReadStats(linesAndBytes[0], linesAndBytes[1], System.nanoTime() - begin);
+            return;
+        }
+        long lines = 0;
+        long bytes = 0;
+        RecordBatch batch = new RecordBatch();
+        char[] buffer = new char[BLOCK_SIZE];
+        StringBuilder text = new StringBuilder();
         for (File file : files) {
-            Scanner scanner = new Scanner(file);
+            bytes += file.length();
+            try (Reader reader = new InputStreamReader(new FileInputStream(file))) {
+                int read;
+                while ((read = reader.read(buffer)) >= 0) {
+                    lines += countLineBreaks(buffer, read);
+                    text.append(buffer, 0, read);
+                    //an incomplete line at the end stays in the text until the rest is read
+                    int end = text.lastIndexOf("\n") + 1;
+                    if (end > 0) {
+                        addLines(CharBuffer.wrap(text, 0, end), batch, dataStorage);
+                        text.delete(0, end);
+                    }
+                }
+            }
+            if (text.length() > 0) {
+                lines++; //the last line of the file without a line break
+            }
+            addLines(text, batch, dataStorage);
+            text.setLength(0);
+        }
+        lastReadStats = new ReadStats(lines, bytes, System.nanoTime() - begin);
+    }
 
-            while (scanner.hasNextLine()) {
-                String line = scanner.nextLine(); //extract line with data from file
-                DataParser.parseLine(line, dataStorage); //give it to data parser, that will put it into data storage
+    private static int countLineBreaks(char[] buffer, int length) {
+        int count = 0;
+        for (int i = 0; i < length; i++) {
+            if (buffer[i] == '\n') {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return the lines, bytes and time of the last {@link #readData(DataStorage)}, or null if it wasn't called
+     */
+    public ReadStats getLastReadStats() {
+        return lastReadStats;
+    }
+
+    private static void addLines(CharSequence lines, RecordBatch batch, DataStorage dataStorage) {
+        DataParser.parseLines(lines, batch); //give them to the data parser, the batch is put into data storage at once
+        dataStorage.addBatch(batch);
+        batch.clear();
+    }
+
+    /**
+     * Parses the chunks of all files on a pool of threads. Every chunk is added to the storage after the chunk
+     * before it in the same file, by the thread that finishes last of the two.
+     * A parsed chunk waits on the heap until the chunks before it are added, so only a few chunks per thread are
+     * submitted at a time: a chunk is submitted when an earlier one is added (or failed). The chunks in flight
+     * always include the oldest one that isn't added yet, so this can't wait forever.
+     *
+     * @return the number of lines and the number of bytes
+     */
+    private long[] readParallel(File[] files, DataStorage dataStorage) throws IOException {
+        ThreadLocal<byte[]> buffers = ThreadLocal.withInitial(() -> new byte[0]); //one per worker, reused per chunk
+        AtomicLong lines = new AtomicLong();
+        long bytes = 0;
+        Semaphore inFlight = new Semaphore(CHUNKS_PER_THREAD * threads);
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<FileChannel> channels = new ArrayList<>();
+        try {
+            List<CompletableFuture<Void>> added = new ArrayList<>();
+            for (File file : files) {
+                if (!file.isFile()) {
+                    continue;
+                }
+                FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+                channels.add(channel);
+                long size = channel.size();
+                bytes += size;
+                CompletableFuture<Void> previous = CompletableFuture.completedFuture(null);
+                for (long start = 0; start < size && !previous.isCompletedExceptionally(); ) {
+                    long end = lineEndAfter(channel, Math.min(start + chunkSize, size), size);
+                    long chunkStart = start;
+                    inFlight.acquire();
+                    CompletableFuture<RecordBatch> parsed = CompletableFuture.supplyAsync(
+                            () -> parseChunk(channel, chunkStart, end, buffers, lines), pool);
+                    previous = previous.thenCombine(parsed, (done, batch) -> {
+                        dataStorage.addBatch(batch);
+                        return null;
+                    });
+                    previous.whenComplete((done, error) -> inFlight.release());
+                    start = end;
+                }
+                added.add(previous);
+            }
+            CompletableFuture.allOf(added.toArray(CompletableFuture<?>[]::new)).join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while reading " + outputDir);
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) e.getCause()).getCause();
+            }
+            throw e;
+        } finally {
+            pool.shutdownNow();
+            for (FileChannel channel : channels) {
+                channel.close();
+            }
+        }
+        return new long[]{lines.get(), bytes};
+    }
+
+    /**
+     * Finds the end of the line that contains a position, so chunks never split a line
+     *
+     * @return the position after the first line break at or after the position, or the size of the file
+     */
+    private static long lineEndAfter(FileChannel channel, long position, long size) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(4096);
+        while (position < size) {
+            buffer.clear();
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                if (buffer.get(i) == '\n') {
+                    return position + i + 1;
+                }
+            }
+            position += read;
+        }
+        return size;
+    }
+
+    /**
+     * Maps a chunk of a file and parses its lines into a new batch.
+     * The mapped chunk is copied into the worker's buffer in bulk first: the parser is about 2.5 times as fast on
+     * a byte array as through a CharSequence view of the mapping, and the bulk copy takes only a few percent of
+     * the time of parsing the chunk.
+     */
+    private RecordBatch parseChunk(FileChannel channel, long start, long end, ThreadLocal<byte[]> buffers,
+                                   AtomicLong lines) {
+        int length = (int) (end - start);
+        byte[] bytes = buffers.get();
+        if (bytes.length < length) {
+            bytes = new byte[Math.max(length, chunkSize)];
+            buffers.set(bytes);
+        }
+        try {
+            channel.map(FileChannel.MapMode.READ_ONLY, start, length).get(bytes, 0, length);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        int lineCount = 0;
+        for (int i = 0; i < length; i++) {
+            if (bytes[i] == '\n') {
+                lineCount++;
+            }
+        }
+        if (length > 0 && bytes[length - 1] != '\n') {
+            lineCount++; //the last line of the file without a line break
+        }
+        lines.addAndGet(lineCount);
+        RecordBatch batch = new RecordBatch();
+        DataParser.parseLines(bytes, 0, length, batch);
+        return batch;
+    }
+
+    /**
+     * Follows the output directory: reads all files from their saved offsets (or from the beginning), and then keeps
+     * reading what is appended to them, and files that are created later, as the directory changes.
+     * Only complete lines are read, a line that is still being written is read when its line break arrives.
+     * A file that got shorter than its offset was replaced, and is read from the beginning again.
+     * The offsets are saved at most every {@value #CHECKPOINT_MILLIS} ms, and when following stops.
+     * This method blocks until the thread is interrupted.
+     *
+     * @param dataStorage the storage where data will be stored
+     * @throws IOException          if the directory can't be watched or a file can't be read
+     * @throws InterruptedException when the thread is interrupted, which is the way to stop following
+     */
+    public void follow(DataStorage dataStorage) throws IOException, InterruptedException {
+        Path dir = Paths.get(outputDir);
+        Files.createDirectories(dir);
+        Follower follower = new Follower(dir, dataStorage);
+        try (WatchService watcher = dir.getFileSystem().newWatchService()) {
+            //registered before the first scan, so nothing that is written during the scan is missed
+            dir.register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+            follower.readAll();
+            long lastCheckpoint = System.nanoTime();
+            try {
+                while (true) {
+                    WatchKey key = watcher.poll(RESCAN_MILLIS, TimeUnit.MILLISECONDS);
+                    if (key == null) {
+                        follower.readAll(); //some file systems only report changes after a while
+                    } else {
+                        for (WatchEvent<?> event : key.pollEvents()) {
+                            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                                follower.readAll();
+                            } else {
+                                follower.read(dir.resolve((Path) event.context()));
+                            }
+                        }
+                        if (!key.reset()) {
+                            throw new IOException("directory " + dir + " can no longer be watched");
+                        }
+                    }
+                    if (System.nanoTime() - lastCheckpoint >= TimeUnit.MILLISECONDS.toNanos(CHECKPOINT_MILLIS)) {
+                        follower.saveOffsets();
+                        lastCheckpoint = System.nanoTime();
+                    }
+                }
+            } catch (ClosedByInterruptException e) {
+                //interrupted while reading a file, which is a normal way to stop as well
+                Thread.interrupted(); //cleared, like when InterruptedException is thrown by a wait
+                InterruptedException interrupted = new InterruptedException("interrupted while reading");
+                interrupted.initCause(e);
+                throw interrupted;
+            } finally {
+                //file channels refuse to write while the interrupt flag is set, so clear it to save the offsets
+                boolean interrupted = Thread.interrupted();
+                try {
+                    follower.saveOffsets();
+                } finally {
+                    if (interrupted) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }
+        }
+    }
+
+    private static boolean isDataFile(Path file) {
+        return !file.getFileName().toString().startsWith(OFFSETS_FILE) && Files.isRegularFile(file);
+    }
+
+    /**
+     * The state of follow mode: the offset of every file (the position after the last complete line that was read)
+     */
+    private static final class Follower {
+        private final Path dir;
+        private final Path offsetsFile;
+        private final DataStorage dataStorage;
+        private final Map<String, Long> offsets = new HashMap<>();
+        private final RecordBatch batch = new RecordBatch();
+        private byte[] buffer = new byte[BLOCK_SIZE];
+        private boolean changed; //offsets changed since they were saved
+
+        Follower(Path dir, DataStorage dataStorage) throws IOException {
+            this.dir = dir;
+            this.offsetsFile = dir.resolve(OFFSETS_FILE);
+            this.dataStorage = dataStorage;
+            if (Files.exists(offsetsFile)) {
+                Properties saved = new Properties();
+                try (Reader reader = Files.newBufferedReader(offsetsFile)) {
+                    saved.load(reader);
+                }
+                for (String name : saved.stringPropertyNames()) {
+                    offsets.put(name, Long.parseLong(saved.getProperty(name)));
+                }
+            }
+        }
+
+        void readAll() throws IOException {
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+                for (Path file : files) {
+                    read(file);
+                }
+            }
+        }
+
+        /**
+         * Reads the complete lines that were appended to a file since its offset, and adds them in batches
+         */
+        void read(Path file) throws IOException {
+            if (!isDataFile(file)) {
+                return;
+            }
+            String name = file.getFileName().toString();
+            long offset = offsets.getOrDefault(name, 0L);
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                long size = channel.size();
+                if (size < offset) {
+                    System.out.println("file " + name + " got shorter, reading it from the beginning");
+                    offset = 0;
+                }
+                int pending = 0; //bytes at the start of the buffer that are part of an incomplete line
+                while (offset + pending < size) {
+                    if (pending == buffer.length) {
+                        buffer = Arrays.copyOf(buffer, buffer.length * 2); //a very long line
+                    }
+                    ByteBuffer target = ByteBuffer.wrap(buffer, pending, buffer.length - pending);
+                    int read = channel.read(target, offset + pending);
+                    if (read <= 0) {
+                        break;
+                    }
+                    int filled = pending + read;
+                    int end = filled;
+                    while (end > 0 && buffer[end - 1] != '\n') {
+                        end--;
+                    }
+                    if (end > 0) {
+                        DataParser.parseLines(buffer, 0, end, batch);
+                        dataStorage.addBatch(batch);
+                        batch.clear();
+                        offset += end;
+                        offsets.put(name, offset);
+                        changed = true;
+                    }
+                    pending = filled - end;
+                    System.arraycopy(buffer, end, buffer, 0, pending);
+                }
+            } catch (NoSuchFileException e) {
+                changed |= offsets.remove(name) != null; //deleted since it was reported
+                return;
+            }
+            if (offset == 0 && offsets.remove(name) != null) {
+                changed = true; //truncated to nothing
+            }
+        }
+
+        /**
+         * Writes the offsets to the sidecar file, replacing the old one at once so it is never half written
+         */
+        void saveOffsets() throws IOException {
+            if (!changed) {
+                return;
+            }
+            Properties saved = new Properties();
+            for (Map.Entry<String, Long> entry : offsets.entrySet()) {
+                saved.setProperty(entry.getKey(), Long.toString(entry.getValue()));
+            }
+            Path temporary = dir.resolve(OFFSETS_FILE + ".tmp");
+            try (Writer writer = Files.newBufferedWriter(temporary)) {
+                saved.store(writer, "read offsets of FileReader.follow, in bytes per file");
             }
-            scanner.close();
+            Files.move(temporary, offsetsFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            changed = false;
         }
     }
 }
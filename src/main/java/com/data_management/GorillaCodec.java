@@ -0,0 +1,214 @@
+package com.data_management;
+
+import java.util.Arrays;
+
+/**
+ * Compresses a run of (timestamp, value) samples the way Facebook's Gorilla time series database does.
+ *
+ * <p>Timestamps are stored as delta-of-deltas: for a regular cadence the delta between samples hardly changes,
+ * so most timestamps take a single bit. Values are XOR-ed with the previous value: equal values take one bit, and
+ * for values that are close, only the bits that differ are stored. The first timestamp and value are stored in full.
+ */
+final class GorillaCodec {
+
+    private GorillaCodec() {
+    }
+
+    /**
+     * Encodes samples
+     *
+     * @param timestamps sorted timestamps
+     * @param values     values, at the same index as their timestamp
+     * @param from       index of the first sample to encode
+     * @param count      number of samples to encode
+     * @return the encoded bits
+     */
+    static byte[] encode(long[] timestamps, double[] values, int from, int count) {
+        BitWriter out = new BitWriter(count * 2 + 16);
+        long previousTime = 0;
+        long previousDelta = 0;
+        long previousBits = 0;
+        int previousLeading = Integer.MAX_VALUE; //no previous window yet
+        int previousTrailing = 0;
+
+        for (int i = from; i < from + count; i++) {
+            long time = timestamps[i];
+            long bits = Double.doubleToRawLongBits(values[i]);
+            if (i == from) {
+                out.write(time, 64);
+                out.write(bits, 64);
+            } else {
+                long delta = time - previousTime;
+                writeDeltaOfDelta(out, delta - previousDelta);
+                previousDelta = delta;
+
+                long xor = bits ^ previousBits;
+                if (xor == 0) {
+                    out.writeBit(false);
+                } else {
+                    out.writeBit(true);
+                    int leading = Math.min(Long.numberOfLeadingZeros(xor), 31);
+                    int trailing = Long.numberOfTrailingZeros(xor);
+                    if (leading >= previousLeading && trailing >= previousTrailing) {
+                        //the changed bits fit in the previous window, so only store those
+                        out.writeBit(false);
+                        out.write(xor >>> previousTrailing, 64 - previousLeading - previousTrailing);
+                    } else {
+                        int length = 64 - leading - trailing;
+                        out.writeBit(true);
+                        out.write(leading, 5);
+                        out.write(length - 1, 6);
+                        out.write(xor >>> trailing, length);
+                        previousLeading = leading;
+                        previousTrailing = trailing;
+                    }
+                }
+            }
+            previousTime = time;
+            previousBits = bits;
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Writes a delta-of-delta in the smallest bucket whose two's complement field holds it
+     */
+    private static void writeDeltaOfDelta(BitWriter out, long deltaOfDelta) {
+        if (deltaOfDelta == 0) {
+            out.writeBit(false);
+        } else if (deltaOfDelta >= -64 && deltaOfDelta <= 63) {
+            out.write(0b10, 2);
+            out.write(deltaOfDelta, 7);
+        } else if (deltaOfDelta >= -256 && deltaOfDelta <= 255) {
+            out.write(0b110, 3);
+            out.write(deltaOfDelta, 9);
+        } else if (deltaOfDelta >= -2048 && deltaOfDelta <= 2047) {
+            out.write(0b1110, 4);
+            out.write(deltaOfDelta, 12);
+        } else {
+            out.write(0b1111, 4);
+            out.write(deltaOfDelta, 64);
+        }
+    }
+
+    /**
+     * Decodes samples that were encoded with {@link #encode(long[], double[], int, int)}
+     *
+     * @param encoded    the encoded bits
+     * @param count      number of encoded samples
+     * @param timestamps array to decode the timestamps into, from index 0
+     * @param values     array to decode the values into, from index 0
+     */
+    static void decode(byte[] encoded, int count, long[] timestamps, double[] values) {
+        BitReader in = new BitReader(encoded);
+        long time = 0;
+        long delta = 0;
+        long bits = 0;
+        int leading = 0;
+        int trailing = 0;
+
+        for (int i = 0; i < count; i++) {
+            if (i == 0) {
+                time = in.read(64);
+                bits = in.read(64);
+            } else {
+                delta += readDeltaOfDelta(in);
+                time += delta;
+                if (in.readBit()) {
+                    if (in.readBit()) {
+                        leading = (int) in.read(5);
+                        int length = (int) in.read(6) + 1;
+                        trailing = 64 - leading - length;
+                    }
+                    bits ^= in.read(64 - leading - trailing) << trailing;
+                }
+            }
+            timestamps[i] = time;
+            values[i] = Double.longBitsToDouble(bits);
+        }
+    }
+
+    private static long readDeltaOfDelta(BitReader in) {
+        if (!in.readBit()) {
+            return 0;
+        } else if (!in.readBit()) {
+            return signExtend(in.read(7), 7);
+        } else if (!in.readBit()) {
+            return signExtend(in.read(9), 9);
+        } else if (!in.readBit()) {
+            return signExtend(in.read(12), 12);
+        }
+        return in.read(64);
+    }
+
+    private static long signExtend(long value, int bits) {
+        return value << (64 - bits) >> (64 - bits);
+    }
+
+    /**
+     * Appends bits to a growing byte array, most significant bit first
+     */
+    private static final class BitWriter {
+        private byte[] bytes;
+        private long bitCount;
+
+        BitWriter(int initialBytes) {
+            bytes = new byte[initialBytes];
+        }
+
+        void writeBit(boolean bit) {
+            write(bit ? 1 : 0, 1);
+        }
+
+        /**
+         * Writes the lowest {@code bits} bits of the value, filling up one byte at a time
+         */
+        void write(long value, int bits) {
+            while (bits > 0) {
+                int index = (int) (bitCount >>> 3);
+                if (index == bytes.length) {
+                    bytes = Arrays.copyOf(bytes, bytes.length * 2);
+                }
+                int free = 8 - (int) (bitCount & 7);
+                int n = Math.min(free, bits);
+                int chunk = (int) (value >>> (bits - n)) & ((1 << n) - 1);
+                bytes[index] |= (byte) (chunk << (free - n));
+                bits -= n;
+                bitCount += n;
+            }
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(bytes, (int) ((bitCount + 7) >>> 3));
+        }
+    }
+
+    /**
+     * Reads bits from a byte array, most significant bit first
+     */
+    private static final class BitReader {
+        private final byte[] bytes;
+        private long position;
+
+        BitReader(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        boolean readBit() {
+            return read(1) != 0;
+        }
+
+        long read(int bits) {
+            long value = 0;
+            while (bits > 0) {
+                int available = 8 - (int) (position & 7);
+                int n = Math.min(available, bits);
+                int chunk = ((bytes[(int) (position >>> 3)] & 0xFF) >>> (available - n)) & ((1 << n) - 1);
+                value = (value << n) | chunk;
+                bits -= n;
+                position += n;
+            }
+            return value;
+        }
+    }
+}
@@ -8,6 +8,8 @@ import org.java_websocket.handshake.ServerHandshake;
 
 public class HospitalWebSocketClient extends WebSocketClient {
     DataStorage dataStorage;
+    private final RecordBatch batch = new RecordBatch(); // reused for every message, messages arrive on one thread
+    private final BinaryFrameDecoder decoder = new BinaryFrameDecoder(); // label codes of this connection
 
     public HospitalWebSocketClient(URI serverURI, DataStorage dataStorage) {
         super(serverURI);
@@ -17,6 +19,7 @@ public class HospitalWebSocketClient extends WebSocketClient {
     @Override
     public void onOpen(ServerHandshake handshakedata) {
         System.out.println("new connection to websocket");
+        send(BinaryFrameDecoder.HELLO); //servers that support binary frames switch to them, others keep sending text
     }
 
     @Override
@@ -26,19 +29,34 @@ public class HospitalWebSocketClient extends WebSocketClient {
 
     /**
      * When a new message is received, this message will pass it to the data parser.
-     * The data parser will update the dataStorage
+     * The data parser will update the dataStorage. A message can have multiple lines,
+     * which are added to the dataStorage as one batch.
      *
      * @param message   the new message with patient data
      */
     @Override
     public void onMessage(String message) {
         System.out.println("received message: " + message);
-        DataParser.parseLine(message, dataStorage);
+        DataParser.parseLines(message, batch);
+        dataStorage.addBatch(batch);
+        batch.clear();
     }
 
+    /**
+     * A binary frame with samples, which is decoded and added to the dataStorage directly
+     *
+     * @param message the frame
+     */
     @Override
     public void onMessage(ByteBuffer message) {
-        System.out.println("received ByteBuffer");
+        try {
+            decoder.decode(message, batch);
+            dataStorage.addBatch(batch);
+        } catch (IllegalArgumentException e) {
+            System.out.println("could not decode frame: " + e.getMessage());
+        } finally {
+            batch.clear();
+        }
     }
 
     @Override
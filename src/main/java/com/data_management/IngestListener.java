@@ -0,0 +1,19 @@
+package com.data_management;
+
+/**
+ * Callback for being told right away when records are stored, instead of polling the storage for new records.
+ *
+ * @see DataStorage#addIngestListener(IngestListener)
+ */
+@FunctionalInterface
+public interface IngestListener {
+    /**
+     * Called after new records of a patient are stored: once for every record that is added on its own, and once
+     * per patient for the records of that patient in a batch. It's called on the thread that added the records,
+     * after the patient is unlocked, so the listener can read the storage (e.g. evaluate the patient), but
+     * ingest waits until it returns.
+     *
+     * @param patientId the patient that has new records
+     */
+    void recordsAdded(int patientId);
+}
@@ -1,18 +1,40 @@
 package com.data_management;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
  * Represents a patient and manages their medical records.
  * This class stores patient-specific data, allowing for the addition and
  * retrieval
  * of medical records based on specified criteria.
+ *
+ * <p>Records are not stored as {@code PatientRecord} objects. Every record type has its own
+ * {@link TimeSeries} with primitive timestamp and value arrays, and {@code PatientRecord}
+ * objects are only made when records are requested.
+ *
+ * <p>Series are found by the code of their record type (see {@link RecordTypeRegistry}) with an array lookup.
+ * The methods that take the name of a record type look its code up first.
+ *
+ * <p>A patient is safe to use from multiple threads. Every patient has its own read-write lock,
+ * so threads that ingest or evaluate different patients never wait on each other, and
+ * multiple readers of the same patient can read at the same time.
  */
 public class Patient {
     private int patientId;
-    private List<PatientRecord> patientRecords;
-    private long scannedUpTo;
+    private TimeSeries[] seriesByCode; // one series per record type, indexed by its code. guarded by lock
+    private final List<TimeSeries> seriesList = new ArrayList<>(); // the same series, in order of first arrival
+    private final SeriesOptions seriesOptions; // how new series are made, shared with the storage
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private boolean hasLateSamples; // true if any series has samples in its reorder buffer. guarded by lock
+    private volatile long scannedUpTo;
+    private volatile long lastAccess = System.nanoTime(); // when records were last added or read, for the memory budget
 
     public long getScannedUpTo() {
         return scannedUpTo;
@@ -23,38 +45,30 @@ public class Patient {
 
     /**
      * Constructs a new Patient with a specified ID.
-     * Initializes an empty list of patient records.
+     * Initializes an empty set of record series.
      *
      * @param patientId the unique identifier for the patient
      */
     public Patient(int patientId) {
-        this.patientId = patientId;
-        this.patientRecords = new ArrayList<>();
+        this(patientId, new SeriesOptions());
     }
 
     /**
-     * checks if the newRecord has a duplicate regarding timestamp and record type.
-     * if so, it removes the duplicate record and adds the new one (so updates the measurement value)
-     * @param newRecord the new record
-     * @return returns true if a record is updated
+     * Constructs a new Patient whose series are made with the given options (compression and retention)
+     *
+     * @param patientId     the unique identifier for the patient
+     * @param seriesOptions the options of the storage, which may change later
      */
-    public boolean checkDuplicate(PatientRecord newRecord) {
-        int i = findTimeIndex(newRecord.getTimestamp(), 0, patientRecords.size()-1, true); //get the first index with the specific timestamp
-        while (i<patientRecords.size() && patientRecords.get(i).getTimestamp() == newRecord.getTimestamp()) {
-            if (patientRecords.get(i).getRecordType().equals(newRecord.getRecordType())) {
-                patientRecords.remove(i);
-                patientRecords.add(i, newRecord);
-                return true;
-            }
-            i++;
-        }
-        return false;
+    Patient(int patientId, SeriesOptions seriesOptions) {
+        this.patientId = patientId;
+        this.seriesByCode = new TimeSeries[RecordTypeRegistry.size()];
+        this.seriesOptions = seriesOptions;
     }
 
     /**
-     * Adds a new record to this patient's list of medical records.
-     * The record is created with the specified measurement value, record type, and
-     * timestamp.
+     * Adds a new record to this patient's medical records.
+     * If there already is a record with the same timestamp and record type,
+     * its measurement value is updated instead.
      *
      * @param measurementValue the measurement value to store in the record
      * @param recordType       the type of record, e.g., "HeartRate",
@@ -63,88 +77,129 @@ public class Patient {
      *                         milliseconds since UNIX epoch
      */
     public void addRecord(double measurementValue, String recordType, long timestamp) {
-        PatientRecord record = new PatientRecord(this.patientId, measurementValue, recordType, timestamp);
-        if (patientRecords.isEmpty()) {
-            patientRecords.add(record);
-            return;
-        }
-
-        //check if there are records with the same timestamp and record type. if so, edit their measurement value
-        if (checkDuplicate(record))
-            return;
-        //else add record to patientRecords (at right index)
-
-        //if the timestamp is later than the last record, then it can be added to the end of the list
-        if (patientRecords.get(patientRecords.size()-1).getTimestamp() < record.getTimestamp()) {
-            this.patientRecords.add(record);
-        } else {
-            //else insert the record at the correct index by using findTimeIndex
-            patientRecords.add(findTimeIndex(record.getTimestamp(), 0, patientRecords.size()-1, false), record);
-        }
+        addRecord(measurementValue, RecordTypeRegistry.register(recordType), timestamp, null);
     }
 
-
     /**
-     * Finds the index in the list of records such that the time at that index is equal to the given time(or the smallest alternative)
-     * Assumes patientRecords is correctly sorted based on timestamps
-     * uses a binary search approach
+     * Adds a new record with the code of its record type, see {@link #addRecord(double, String, long)}
      *
-     * @param timestamp target time to search for
-     * @param minIndex   minimal index it could be at (often 0)
-     * @param maxIndex   maximal index it could be at (often size of list)
-     * @param firstIndex    determines whether to give the first index with the timestamp or the last if multiple
-     * @return  index at which the time is equal to the target time(or the smallest alternative)
+     * @param recordTypeCode the code of the record type, from {@link RecordTypeRegistry#register(String)}
      */
-    private int findTimeIndex(long timestamp, int minIndex, int maxIndex, boolean firstIndex) {
-        int mid;
-        int min = minIndex;
-        int max = maxIndex;
-        boolean found = false;
-        int foundIndex = 0;
-
-        while (min <= max && !found) {
-            mid = min + (max - min) / 2;
-            long thisTimestamp = patientRecords.get(mid).getTimestamp();
+    public void addRecord(double measurementValue, int recordTypeCode, long timestamp) {
+        addRecord(measurementValue, recordTypeCode, timestamp, null);
+    }
 
-            if (thisTimestamp == timestamp) {
-                foundIndex = mid;
-                found = true;
-            } else if (thisTimestamp < timestamp) {
-                min = mid + 1;
-            } else {
-                max = mid - 1;
+    /**
+     * Adds a new record, and logs it to the write-ahead log while the patient is still locked
+     *
+     * @param log the write-ahead log, or null if the storage isn't persistent
+     */
+    void addRecord(double measurementValue, int recordTypeCode, long timestamp, StoragePersistence log) {
+        lastAccess = System.nanoTime();
+        lock.writeLock().lock();
+        try {
+            if (log != null) {
+                log.append(patientId, recordTypeCode, timestamp, measurementValue);
             }
+            TimeSeries series = getOrAddSeries(recordTypeCode);
+            series.add(timestamp, measurementValue);
+            hasLateSamples |= series.hasLateSamples();
+        } finally {
+            lock.writeLock().unlock();
         }
+    }
 
-        //if an index is found with target timestamp, check to find the first/last index with that target time
-        if (found) {
-            while (0 <= foundIndex && foundIndex <=maxIndex && patientRecords.get(foundIndex).getTimestamp() == timestamp) {
-                if (firstIndex) {
-                    foundIndex--;
-                } else {
-                    foundIndex++;
+    /**
+     * Adds the records of this patient in a batch, taking the lock once for all of them.
+     * The records of every record type are sorted on timestamp and added to its series in one bulk operation.
+     *
+     * @param batch the batch
+     * @param order the order of the batch from {@link RecordBatch#sortByPatient()}
+     * @param from  first position in the order with a record of this patient
+     * @param to    position after the last record of this patient
+     * @param log   the write-ahead log, or null if the storage isn't persistent
+     */
+    void addBatch(RecordBatch batch, long[] order, int from, int to, StoragePersistence log) {
+        lastAccess = System.nanoTime();
+        lock.writeLock().lock();
+        try {
+            if (log != null) {
+                for (int position = from; position < to; position++) {
+                    int index = RecordBatch.index(order, position);
+                    log.append(patientId, batch.recordType(index), batch.timestamp(index), batch.value(index));
                 }
             }
-            if (firstIndex) {
-                return Math.max(0,Math.min(foundIndex+1, maxIndex));
-            } else {
-                return Math.max(0,foundIndex-1);
+            for (int position = from; position < to; position++) {
+                if (RecordBatch.isCollected(order, position)) {
+                    continue;
+                }
+                int recordTypeCode = batch.recordType(RecordBatch.index(order, position));
+                int count = batch.collectSorted(order, position, to, recordTypeCode);
+                TimeSeries series = getOrAddSeries(recordTypeCode);
+                series.addSorted(batch.sortedTimestamps(), batch.sortedValues(), count);
+                hasLateSamples |= series.hasLateSamples();
             }
+        } finally {
+            lock.writeLock().unlock();
         }
+    }
+
+    /**
+     * @return the series of a record type code, or null if this patient has no records of that type
+     *         (or the code is -1 for a type that was never registered). The caller must hold the lock
+     */
+    private TimeSeries getSeries(int recordTypeCode) {
+        TimeSeries[] series = seriesByCode;
+        return recordTypeCode >= 0 && recordTypeCode < series.length ? series[recordTypeCode] : null;
+    }
 
-        // if no exact match found, return the smallest index > timestamp (for firstIndex)
-        //(because the while loop stopped when min>max)
-        if (firstIndex) {
-            return Math.max(0,max);
+    /**
+     * @return the series of a record type code, which is made if this patient has no records of that type yet.
+     *         The caller must hold the write lock
+     */
+    private TimeSeries getOrAddSeries(int recordTypeCode) {
+        TimeSeries series = getSeries(recordTypeCode);
+        if (series == null) {
+            if (recordTypeCode >= seriesByCode.length) {
+                seriesByCode = Arrays.copyOf(seriesByCode, Math.max(recordTypeCode + 1, RecordTypeRegistry.size()));
+            }
+            series = seriesOptions.newSeries(recordTypeCode);
+            seriesByCode[recordTypeCode] = series;
+            seriesList.add(series);
         }
-        // or largest index < timestamp (for !firstIndex)
-        return Math.min(maxIndex,min);
+        return series;
     }
 
+    /**
+     * Acquires the read lock, after merging the reorder buffers of all series so every sample is visible.
+     * Merging needs the write lock, so that is only taken when there are buffered samples.
+     */
+    private void lockForRead() {
+        lastAccess = System.nanoTime();
+        lock.readLock().lock();
+        if (!hasLateSamples) {
+            return;
+        }
+        lock.readLock().unlock();
+        lock.writeLock().lock();
+        try {
+            if (hasLateSamples) {
+                for (TimeSeries series : seriesList) {
+                    series.mergeLateSamples();
+                }
+                hasLateSamples = false;
+            }
+            lock.readLock().lock(); //downgrade to the read lock before releasing the write lock
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
 
     /**
      * Retrieves a list of PatientRecord objects for this patient that fall within a
      * specified time range.
+     * The series of all record types are merged, so the list is sorted on timestamp.
+     * This is an adapter around {@link #forEachRecord(long, long, RecordVisitor)}.
      *
      * @param startTime the start of the time range, in milliseconds since UNIX
      *                  epoch
@@ -154,14 +209,345 @@ public class Patient {
      */
     public List<PatientRecord> getRecords(long startTime, long endTime) {
         List<PatientRecord> records = new ArrayList<>();
-        int startIndex = findTimeIndex(startTime, 0, patientRecords.size()-1, true); //get the first index with the specific timestamp
-        int endIndex = findTimeIndex(endTime, startIndex, patientRecords.size()-1, false); //get the last index with the specific timestamp
-        for (int i = startIndex; i <= endIndex; i++) {
-            records.add(patientRecords.get(i));
-        }
+        forEachRecord(startTime, endTime,
+                (recordType, timestamp, value) -> records.add(new PatientRecord(patientId, value, recordType, timestamp)));
         return records;
     }
 
+    /**
+     * Streams over the records of all record types within a time range, sorted on timestamp.
+     * Nothing is copied, the visitor reads directly from the series.
+     *
+     * @param startTime the start of the time range (inclusive), in milliseconds since UNIX epoch
+     * @param endTime   the end of the time range (inclusive), in milliseconds since UNIX epoch
+     * @param visitor   called for every record in the range
+     */
+    public void forEachRecord(long startTime, long endTime, RecordVisitor visitor) {
+        forEachTypedRecord(startTime, endTime,
+                (recordTypeCode, timestamp, value) -> visitor.visit(RecordTypeRegistry.nameOf(recordTypeCode), timestamp, value));
+    }
+
+    /**
+     * Streams over the records of all record types within a time range, sorted on timestamp, like
+     * {@link #forEachRecord(long, long, RecordVisitor)} but with the codes of the record types
+     *
+     * @param startTime the start of the time range (inclusive), in milliseconds since UNIX epoch
+     * @param endTime   the end of the time range (inclusive), in milliseconds since UNIX epoch
+     * @param visitor   called for every record in the range
+     */
+    public void forEachTypedRecord(long startTime, long endTime, TypedRecordVisitor visitor) {
+        if (startTime > endTime) {
+            return;
+        }
+        lockForRead();
+        try {
+            mergeRecords(startTime, endTime, visitor);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Streams over the samples of one record type within a time range, from old to new.
+     * This only touches the series of that type, so it's cheaper than filtering the records of all types.
+     *
+     * @param recordType the record type, e.g. "Saturation"
+     * @param startTime  the start of the time range (inclusive), in milliseconds since UNIX epoch
+     * @param endTime    the end of the time range (inclusive), in milliseconds since UNIX epoch
+     * @param visitor    called for every sample in the range
+     */
+    public void forEachRecord(String recordType, long startTime, long endTime, SampleVisitor visitor) {
+        forEachRecord(RecordTypeRegistry.codeOf(recordType), startTime, endTime, visitor);
+    }
+
+    /**
+     * Streams over the samples of one record type within a time range, from old to new
+     *
+     * @param recordTypeCode the code of the record type, see {@link RecordTypeRegistry}
+     * @param startTime      the start of the time range (inclusive), in milliseconds since UNIX epoch
+     * @param endTime        the end of the time range (inclusive), in milliseconds since UNIX epoch
+     * @param visitor        called for every sample in the range
+     */
+    public void forEachRecord(int recordTypeCode, long startTime, long endTime, SampleVisitor visitor) {
+        if (startTime > endTime) {
+            return;
+        }
+        lockForRead();
+        try {
+            TimeSeries series = getSeries(recordTypeCode);
+            if (series == null) {
+                return;
+            }
+            for (TimeSeries.Cursor cursor = series.cursor(startTime, endTime); cursor.hasSample(); cursor.advance()) {
+                visitor.visit(cursor.timestamp(), cursor.value());
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Computes min, max, sum, mean, count, standard deviation and the first and last sample of one record type
+     * within a time range. Uses the precomputed summaries of the sealed history, so it doesn't visit every sample.
+     *
+     * @param recordType the record type, e.g. "SystolicPressure"
+     * @param startTime  the start of the time range (inclusive), in milliseconds since UNIX epoch
+     * @param endTime    the end of the time range (inclusive), in milliseconds since UNIX epoch
+     * @return the statistics, with count 0 if there are no samples in the range
+     */
+    public Aggregate aggregate(String recordType, long startTime, long endTime) {
+        return summarize(recordType, startTime, endTime).toAggregate();
+    }
+
+    /**
+     * The mergeable form of {@link #aggregate(String, long, long)}, for combining the statistics of many patients
+     *
+     * @return a new summary of the samples in the range
+     */
+    BlockSummary summarize(String recordType, long startTime, long endTime) {
+        if (startTime > endTime) {
+            return new BlockSummary();
+        }
+        lockForRead();
+        try {
+            TimeSeries series = getSeries(RecordTypeRegistry.codeOf(recordType));
+            if (series == null) {
+                return new BlockSummary();
+            }
+            return series.aggregate(startTime, endTime);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Streams over one record type within a time range at a requested resolution: the coarsest rollup tier
+     * of the type's retention policy that isn't coarser than the resolution, or the raw samples.
+     *
+     * @param recordType the record type, e.g. "ECG"
+     * @param startTime  the start of the time range (inclusive), in milliseconds since UNIX epoch
+     * @param endTime    the end of the time range (inclusive), in milliseconds since UNIX epoch
+     * @param resolution the largest bucket size that is fine for the caller, in milliseconds
+     * @param visitor    called for every bucket (or raw sample) in the range
+     */
+    public void forEachRollup(String recordType, long startTime, long endTime, long resolution, RollupVisitor visitor) {
+        if (startTime > endTime) {
+            return;
+        }
+        lockForRead();
+        try {
+            TimeSeries series = getSeries(RecordTypeRegistry.codeOf(recordType));
+            if (series != null) {
+                series.forEachAtResolution(startTime, endTime, resolution, visitor);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Drops history that is older than the retention policies of the series allow
+     */
+    void applyRetention() {
+        lock.writeLock().lock();
+        try {
+            for (TimeSeries series : seriesList) {
+                series.applyRetention();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Passes the records of all series within the time range to the visitor, sorted on timestamp.
+     * Helper method for forEachTypedRecord(), the caller must hold the read lock
+     */
+    private void mergeRecords(long startTime, long endTime, TypedRecordVisitor visitor) {
+        TimeSeries.Cursor[] cursors = new TimeSeries.Cursor[seriesList.size()];
+        int[] types = new int[cursors.length];
+        int s = 0;
+        for (TimeSeries series : seriesList) {
+            cursors[s] = series.cursor(startTime, endTime);
+            types[s++] = series.getTypeCode();
+        }
+
+        //k-way merge: repeatedly take the earliest remaining sample of all series
+        while (true) {
+            int earliest = -1;
+            for (s = 0; s < cursors.length; s++) {
+                if (cursors[s].hasSample() && (earliest == -1
+                        || cursors[s].timestamp() < cursors[earliest].timestamp())) {
+                    earliest = s;
+                }
+            }
+            if (earliest == -1) {
+                return;
+            }
+            TimeSeries.Cursor from = cursors[earliest];
+            visitor.visit(types[earliest], from.timestamp(), from.value());
+            from.advance();
+        }
+    }
+
+    /**
+     * Gets the most recent record (based on timestamp) of a given record type.
+     * This is one array lookup and reads the end of the series, so it's O(1) and doesn't copy any records.
+     *
+     * @param recordType the record type
+     * @return the most recent record of that type, or null if there is none
+     */
+    public PatientRecord getLastRecordOfType(String recordType) {
+        return getLastRecordOfType(RecordTypeRegistry.codeOf(recordType));
+    }
+
+    /**
+     * Gets the most recent record (based on timestamp) of a given record type code.
+     *
+     * @param recordTypeCode the code of the record type, see {@link RecordTypeRegistry}
+     * @return the most recent record of that type, or null if there is none
+     */
+    public PatientRecord getLastRecordOfType(int recordTypeCode) {
+        lastAccess = System.nanoTime(); //a patient whose latest values are polled (e.g. by alert rechecks) is hot
+        //buffered late samples are always older than the last sample of the main arrays, so no merge is needed
+        lock.readLock().lock();
+        try {
+            TimeSeries series = getSeries(recordTypeCode);
+            if (series == null || series.isEmpty()) {
+                return null;
+            }
+            return new PatientRecord(patientId, series.lastValue(), recordTypeCode, series.lastTimestamp());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Gets the timestamp of the newest sample of every record type, e.g. to see which types got new records
+     *
+     * @return the timestamps, indexed by the code of the record type, Long.MIN_VALUE for types without samples
+     */
+    public long[] getLastTimestamps() {
+        lock.readLock().lock();
+        try {
+            long[] lastTimestamps = new long[seriesByCode.length];
+            Arrays.fill(lastTimestamps, Long.MIN_VALUE);
+            for (TimeSeries series : seriesList) {
+                if (!series.isEmpty()) {
+                    lastTimestamps[series.getTypeCode()] = series.lastTimestamp();
+                }
+            }
+            return lastTimestamps;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Gets the most recent record of every record type this patient has, e.g. for showing on a dashboard
+     *
+     * @return one record per record type, in order of first arrival of the type
+     */
+    public List<PatientRecord> getLastRecords() {
+        lastAccess = System.nanoTime();
+        lock.readLock().lock();
+        try {
+            List<PatientRecord> records = new ArrayList<>(seriesList.size());
+            for (TimeSeries series : seriesList) {
+                records.add(new PatientRecord(patientId, series.lastValue(), series.getTypeCode(), series.lastTimestamp()));
+            }
+            return records;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the {@link System#nanoTime()} at which records of this patient were last added or read
+     */
+    long getLastAccess() {
+        return lastAccess;
+    }
+
+    /**
+     * Moves the sealed history of all series to a spill file, only the newest samples stay on the heap.
+     * Reading the history later reads it from the file.
+     *
+     * @param file the spill file
+     * @return the number of heap bytes that are freed (estimated)
+     * @throws IOException if writing fails
+     */
+    long spillChunks(SpillFile file) throws IOException {
+        lock.writeLock().lock();
+        try {
+            long freed = 0;
+            for (TimeSeries series : seriesList) {
+                freed += series.spillChunks(file);
+            }
+            return freed;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Approximate number of bytes this patient's records take on the heap.
+     * History that is spilled to disk only counts with its summaries.
+     *
+     * @return estimated size in bytes
+     */
+    public long estimateBytes() {
+        lock.readLock().lock();
+        try {
+            long bytes = 0;
+            for (TimeSeries series : seriesList) {
+                bytes += series.estimateBytes();
+            }
+            return bytes;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Writes the patient and all its series in binary form, for a snapshot
+     *
+     * @param out stream to write to
+     * @throws IOException if writing fails
+     */
+    void writeTo(DataOutputStream out) throws IOException {
+        lockForRead();
+        try {
+            out.writeInt(patientId);
+            out.writeLong(scannedUpTo);
+            out.writeInt(seriesList.size());
+            for (TimeSeries series : seriesList) {
+                series.writeTo(out);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Reads a patient that was written with {@link #writeTo(DataOutputStream)}
+     *
+     * @param in            stream to read from
+     * @param seriesOptions the options of the storage, see {@link #Patient(int, SeriesOptions)}
+     * @return the patient
+     * @throws IOException if reading fails
+     */
+    static Patient readFrom(DataInputStream in, SeriesOptions seriesOptions) throws IOException {
+        Patient patient = new Patient(in.readInt(), seriesOptions);
+        patient.scannedUpTo = in.readLong();
+        int seriesCount = in.readInt();
+        for (int i = 0; i < seriesCount; i++) {
+            TimeSeries series = patient.getOrAddSeries(RecordTypeRegistry.register(in.readUTF()));
+            series.readFrom(in);
+        }
+        return patient;
+    }
+
     public int getPatientId() {
         return patientId;
     }
@@ -12,6 +12,7 @@ package com.data_management;
 public class PatientRecord {
     private int patientId;
     private String recordType; // Example: ECG, blood pressure, etc.
+    private int recordTypeCode; // code of the record type in the RecordTypeRegistry
     private double measurementValue; // Example: heart rate
     private long timestamp;
 
@@ -29,6 +30,24 @@ public class PatientRecord {
         this.patientId = patientId;
         this.measurementValue = measurementValue;
         this.recordType = recordType;
+        this.recordTypeCode = RecordTypeRegistry.register(recordType);
+        this.timestamp = timestamp;
+    }
+
+    /**
+     * Constructs a new patient record with a record type code from the {@link RecordTypeRegistry}
+     *
+     * @param patientId        the unique identifier for the patient
+     * @param measurementValue the numerical value of the recorded measurement
+     * @param recordTypeCode   the code of the type of measurement
+     * @param timestamp        the time at which the measurement was recorded, in
+     *                         milliseconds since epoch
+     */
+    public PatientRecord(int patientId, double measurementValue, int recordTypeCode, long timestamp) {
+        this.patientId = patientId;
+        this.measurementValue = measurementValue;
+        this.recordType = RecordTypeRegistry.nameOf(recordTypeCode);
+        this.recordTypeCode = recordTypeCode;
         this.timestamp = timestamp;
     }
 
@@ -67,4 +86,13 @@ public class PatientRecord {
     public String getRecordType() {
         return recordType;
     }
+
+    /**
+     * Returns the code of the record type, see {@link RecordTypeRegistry}.
+     *
+     * @return the record type code
+     */
+    public int getRecordTypeCode() {
+        return recordTypeCode;
+    }
 }
@@ -0,0 +1,51 @@
+package com.data_management;
+
+/**
+ * The throughput of one {@link FileReader#readData(DataStorage)}: the lines and bytes that were read,
+ * and how long it took.
+ *
+ * @see FileReader#getLastReadStats()
+ */
+public final class ReadStats {
+    private final long lines;
+    private final long bytes;
+    private final long nanos;
+
+    ReadStats(long lines, long bytes, long nanos) {
+        this.lines = lines;
+        this.bytes = bytes;
+        this.nanos = nanos;
+    }
+
+    /**
+     * @return the number of lines, including invalid ones
+     */
+    public long getLines() {
+        return lines;
+    }
+
+    public long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * @return the time from the start of the read until all records were added to the storage
+     */
+    public long getNanos() {
+        return nanos;
+    }
+
+    public double getLinesPerSecond() {
+        return lines / Math.max(nanos / 1e9, 1e-9);
+    }
+
+    public double getMegabytesPerSecond() {
+        return bytes / 1e6 / Math.max(nanos / 1e9, 1e-9);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("read %,d lines (%,.1f MB) in %.2f s: %,.0f lines/s, %,.1f MB/s",
+                lines, bytes / 1e6, nanos / 1e9, getLinesPerSecond(), getMegabytesPerSecond());
+    }
+}
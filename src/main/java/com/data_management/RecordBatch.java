@@ -0,0 +1,241 @@
+package com.data_management;
+
+import java.util.Arrays;
+
+/**
+ * A reusable buffer of records that are added to a {@link DataStorage} together with {@link DataStorage#addBatch(RecordBatch)},
+ * e.g. all lines of a block of a file. Records are kept in parallel primitive arrays, so adding a record doesn't
+ * allocate once the arrays are large enough, and after {@link #clear()} the same batch can be filled again.
+ * A batch is not thread safe, every reader should use its own.
+ */
+public class RecordBatch {
+    private static final int INITIAL_CAPACITY = 256;
+    private static final long COLLECTED = 1L << 31; //mark in the order of collectSorted
+
+    private int[] patientIds;
+    private int[] recordTypes; //codes from the RecordTypeRegistry
+    private long[] timestamps;
+    private double[] values;
+    private int size;
+
+    //working space of DataStorage.addBatch, kept so a reused batch doesn't allocate
+    private long[] order = new long[0];
+    private long[] mergeOrder = new long[0];
+    private long[] sortedTimestamps = new long[0];
+    private double[] sortedValues = new double[0];
+    private long[] mergeTimestamps = new long[0];
+    private double[] mergeValues = new double[0];
+
+    public RecordBatch() {
+        patientIds = new int[INITIAL_CAPACITY];
+        recordTypes = new int[INITIAL_CAPACITY];
+        timestamps = new long[INITIAL_CAPACITY];
+        values = new double[INITIAL_CAPACITY];
+    }
+
+    /**
+     * Adds a record to the batch, with the same arguments as {@link DataStorage#addPatientData(int, double, String, long)}
+     */
+    public void add(int patientId, double measurementValue, String recordType, long timestamp) {
+        add(patientId, measurementValue, RecordTypeRegistry.register(recordType), timestamp);
+    }
+
+    /**
+     * Adds a record to the batch, with the code of its record type from {@link RecordTypeRegistry#register(String)}
+     */
+    public void add(int patientId, double measurementValue, int recordTypeCode, long timestamp) {
+        if (size == patientIds.length) {
+            int newCapacity = size + (size >> 1);
+            patientIds = Arrays.copyOf(patientIds, newCapacity);
+            recordTypes = Arrays.copyOf(recordTypes, newCapacity);
+            timestamps = Arrays.copyOf(timestamps, newCapacity);
+            values = Arrays.copyOf(values, newCapacity);
+        }
+        patientIds[size] = patientId;
+        recordTypes[size] = recordTypeCode;
+        timestamps[size] = timestamp;
+        values[size] = measurementValue;
+        size++;
+    }
+
+    /**
+     * @return the number of records in the batch
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Removes all records, keeping the arrays for the next records
+     */
+    public void clear() {
+        size = 0;
+    }
+
+    int patientId(int index) {
+        return patientIds[index];
+    }
+
+    int recordType(int index) {
+        return recordTypes[index];
+    }
+
+    long timestamp(int index) {
+        return timestamps[index];
+    }
+
+    double value(int index) {
+        return values[index];
+    }
+
+    /**
+     * Sorts the records on patient ID, keeping the order of the records of the same patient
+     *
+     * @return for every position in sorted order, the patient ID in the high 32 bits and the index of the record
+     *         in the low 31 bits (bit 31 is used by {@link #collectSorted(long[], int, int, int)})
+     */
+    long[] sortByPatient() {
+        if (order.length < size) {
+            order = new long[patientIds.length];
+        }
+        boolean sorted = true;
+        for (int i = 0; i < size; i++) {
+            //flipping the sign bit makes the signed IDs sort as unsigned keys
+            order[i] = ((long) (patientIds[i] ^ Integer.MIN_VALUE) << 32) | i;
+            sorted &= i == 0 || patientIds[i - 1] <= patientIds[i];
+        }
+        if (!sorted) {
+            radixSort();
+        }
+        return order;
+    }
+
+    /**
+     * Stable LSD radix sort of the order on the patient ID, one byte per pass.
+     * Passes where all IDs have the same byte are skipped, so a batch with a few hundred patients
+     * only needs one or two passes.
+     */
+    private void radixSort() {
+        if (mergeOrder.length < order.length) {
+            mergeOrder = new long[order.length];
+        }
+        int[] counts = new int[257];
+        long[] from = order;
+        long[] to = mergeOrder;
+        for (int shift = 32; shift < 64; shift += 8) {
+            Arrays.fill(counts, 0);
+            for (int i = 0; i < size; i++) {
+                counts[(int) (from[i] >>> shift & 0xFF) + 1]++;
+            }
+            if (counts[(int) (from[0] >>> shift & 0xFF) + 1] == size) {
+                continue;
+            }
+            for (int b = 0; b < 256; b++) {
+                counts[b + 1] += counts[b];
+            }
+            for (int i = 0; i < size; i++) {
+                to[counts[(int) (from[i] >>> shift & 0xFF)]++] = from[i];
+            }
+            long[] swap = from;
+            from = to;
+            to = swap;
+        }
+        order = from;
+        mergeOrder = to;
+    }
+
+    /**
+     * Collects the samples of one record type among some records of one patient, sorted on timestamp.
+     * Samples with the same timestamp keep their order in the batch, so the last one wins when they are added.
+     * The collected records are marked as done in the order, so the first record that isn't marked
+     * has the next record type to collect.
+     *
+     * @param order      positions from {@link #sortByPatient()}
+     * @param from       first position of the patient's records
+     * @param to         position after the patient's records
+     * @param recordType the code of the record type to collect
+     * @return the number of samples, which are in {@link #sortedTimestamps()} and {@link #sortedValues()}
+     */
+    int collectSorted(long[] order, int from, int to, int recordType) {
+        if (sortedTimestamps.length < to - from) {
+            sortedTimestamps = new long[patientIds.length];
+            sortedValues = new double[patientIds.length];
+        }
+        int count = 0;
+        boolean sorted = true;
+        for (int position = from; position < to; position++) {
+            if (isCollected(order, position)) {
+                continue;
+            }
+            int index = index(order, position);
+            if (recordTypes[index] == recordType) {
+                order[position] |= COLLECTED;
+                sorted &= count == 0 || sortedTimestamps[count - 1] <= timestamps[index];
+                sortedTimestamps[count] = timestamps[index];
+                sortedValues[count] = values[index];
+                count++;
+            }
+        }
+        if (!sorted) {
+            mergeSort(count);
+        }
+        return count;
+    }
+
+    static boolean isCollected(long[] order, int position) {
+        return (order[position] & COLLECTED) != 0;
+    }
+
+    static int index(long[] order, int position) {
+        return (int) order[position] & Integer.MAX_VALUE;
+    }
+
+    long[] sortedTimestamps() {
+        return sortedTimestamps;
+    }
+
+    double[] sortedValues() {
+        return sortedValues;
+    }
+
+    /**
+     * Stable bottom-up merge sort of the collected samples on timestamp
+     */
+    private void mergeSort(int count) {
+        if (mergeTimestamps.length < count) {
+            mergeTimestamps = new long[sortedTimestamps.length];
+            mergeValues = new double[sortedTimestamps.length];
+        }
+        long[] fromTimestamps = sortedTimestamps;
+        double[] fromValues = sortedValues;
+        long[] toTimestamps = mergeTimestamps;
+        double[] toValues = mergeValues;
+        for (int width = 1; width < count; width *= 2) {
+            for (int left = 0; left < count; left += 2 * width) {
+                int middle = Math.min(left + width, count);
+                int right = Math.min(left + 2 * width, count);
+                int i = left;
+                int j = middle;
+                for (int k = left; k < right; k++) {
+                    if (i < middle && (j >= right || fromTimestamps[i] <= fromTimestamps[j])) {
+                        toTimestamps[k] = fromTimestamps[i];
+                        toValues[k] = fromValues[i++];
+                    } else {
+                        toTimestamps[k] = fromTimestamps[j];
+                        toValues[k] = fromValues[j++];
+                    }
+                }
+            }
+            long[] swapTimestamps = fromTimestamps;
+            fromTimestamps = toTimestamps;
+            toTimestamps = swapTimestamps;
+            double[] swapValues = fromValues;
+            fromValues = toValues;
+            toValues = swapValues;
+        }
+        sortedTimestamps = fromTimestamps;
+        sortedValues = fromValues;
+        mergeTimestamps = toTimestamps;
+        mergeValues = toValues;
+    }
+}
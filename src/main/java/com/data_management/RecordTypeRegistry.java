@@ -0,0 +1,72 @@
+package com.data_management;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Gives every record type (label) a small int code, so the parser, the storage and the alert strategies can
+ * look record types up by array index instead of comparing or hashing strings per sample.
+ * Codes start at 0 and are given out in order of registration. A label that wasn't seen before (e.g. a new
+ * generator output) is registered when it is first parsed or added, so unknown types get a code as well.
+ *
+ * <p>Codes are only valid within one JVM: anything that is written to disk or sent over the network uses the names.
+ * Looking up the name of a code doesn't lock, registering a new name does.
+ */
+public final class RecordTypeRegistry {
+    private static final ConcurrentHashMap<String, Integer> codes = new ConcurrentHashMap<>();
+    private static volatile String[] names = new String[16]; //name per code, replaced when it grows
+
+    private RecordTypeRegistry() {
+    }
+
+    /**
+     * Gets the code of a record type, and registers it if it is new
+     *
+     * @param name the record type, e.g. "ECG"
+     * @return its code
+     */
+    public static int register(String name) {
+        Integer code = codes.get(name);
+        if (code != null) {
+            return code;
+        }
+        synchronized (RecordTypeRegistry.class) {
+            code = codes.get(name);
+            if (code == null) {
+                code = codes.size();
+                String[] current = names;
+                if (code == current.length) {
+                    current = Arrays.copyOf(current, current.length * 2);
+                }
+                current[code] = name.intern();
+                names = current; //publishes the name before the code can be found in the map
+                codes.put(name, code);
+            }
+            return code;
+        }
+    }
+
+    /**
+     * @param name the record type
+     * @return its code, or -1 if no record of this type was ever added
+     */
+    public static int codeOf(String name) {
+        Integer code = codes.get(name);
+        return code == null ? -1 : code;
+    }
+
+    /**
+     * @param code a code from {@link #register(String)}
+     * @return the (interned) name of the record type
+     */
+    public static String nameOf(int code) {
+        return names[code];
+    }
+
+    /**
+     * @return the number of registered record types, all codes are below it
+     */
+    public static int size() {
+        return codes.size();
+    }
+}
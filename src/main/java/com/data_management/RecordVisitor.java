@@ -0,0 +1,20 @@
+package com.data_management;
+
+/**
+ * Callback for streaming over the records of all record types of a patient,
+ * without making {@code PatientRecord} objects or lists.
+ *
+ * @see DataStorage#forEachRecord(int, long, long, RecordVisitor)
+ */
+@FunctionalInterface
+public interface RecordVisitor {
+    /**
+     * Called once for every record in the queried range, sorted on timestamp.
+     * It's called while the patient is locked for reading, so it shouldn't add data to the storage.
+     *
+     * @param recordType type of the record, e.g. "ECG"
+     * @param timestamp  time of the record, in milliseconds since UNIX epoch
+     * @param value      measurement value of the record
+     */
+    void visit(String recordType, long timestamp, double value);
+}
@@ -0,0 +1,84 @@
+package com.data_management;
+
+import java.util.Arrays;
+
+/**
+ * Says how long the history of a record type is kept, and at which resolutions.
+ * Raw samples are kept for a while, and optionally rollup tiers keep the min/max/mean/count
+ * per fixed time bucket for longer. For example raw ECG for 1 hour, 1-second rollups for 24 hours
+ * and 1-minute rollups after that:
+ * <pre>
+ * new RetentionPolicy(60 * 60_000L)
+ *         .withRollup(1000, 24 * 60 * 60_000L)
+ *         .withRollup(60_000, Long.MAX_VALUE)
+ * </pre>
+ * Ages are measured from the newest sample of the series, so replayed or historical data is trimmed the same way
+ * as live data. A policy is immutable, {@link #withRollup(long, long)} returns a new one.
+ */
+public final class RetentionPolicy {
+    private final long rawRetentionMillis;
+    private final long[] rollupResolutions; //sorted from fine to coarse
+    private final long[] rollupRetentions;
+
+    /**
+     * Constructs a policy without rollups
+     *
+     * @param rawRetentionMillis how long raw samples are kept, or Long.MAX_VALUE to keep them forever
+     */
+    public RetentionPolicy(long rawRetentionMillis) {
+        this(rawRetentionMillis, new long[0], new long[0]);
+    }
+
+    private RetentionPolicy(long rawRetentionMillis, long[] rollupResolutions, long[] rollupRetentions) {
+        if (rawRetentionMillis <= 0) {
+            throw new IllegalArgumentException("raw retention must be positive: " + rawRetentionMillis);
+        }
+        this.rawRetentionMillis = rawRetentionMillis;
+        this.rollupResolutions = rollupResolutions;
+        this.rollupRetentions = rollupRetentions;
+    }
+
+    /**
+     * Adds a rollup tier. Tiers must be added from fine to coarse resolution, and the resolution must be a multiple
+     * of the one before, so a query that reaches past the retention of a tier can continue in the next coarser tier
+     * at a bucket boundary of both.
+     *
+     * @param resolutionMillis size of a bucket
+     * @param retentionMillis  how long buckets are kept, or Long.MAX_VALUE to keep them forever
+     * @return a new policy with the extra tier
+     */
+    public RetentionPolicy withRollup(long resolutionMillis, long retentionMillis) {
+        int tiers = rollupResolutions.length;
+        if (resolutionMillis <= 0 || retentionMillis <= 0) {
+            throw new IllegalArgumentException("rollup resolution and retention must be positive");
+        }
+        if (tiers > 0 && resolutionMillis <= rollupResolutions[tiers - 1]) {
+            throw new IllegalArgumentException("rollups must be added from fine to coarse resolution");
+        }
+        if (tiers > 0 && resolutionMillis % rollupResolutions[tiers - 1] != 0) {
+            throw new IllegalArgumentException("a rollup resolution must be a multiple of the one before: "
+                    + resolutionMillis + " after " + rollupResolutions[tiers - 1]);
+        }
+        long[] resolutions = Arrays.copyOf(rollupResolutions, tiers + 1);
+        long[] retentions = Arrays.copyOf(rollupRetentions, tiers + 1);
+        resolutions[tiers] = resolutionMillis;
+        retentions[tiers] = retentionMillis;
+        return new RetentionPolicy(rawRetentionMillis, resolutions, retentions);
+    }
+
+    public long getRawRetentionMillis() {
+        return rawRetentionMillis;
+    }
+
+    public int getRollupCount() {
+        return rollupResolutions.length;
+    }
+
+    public long getRollupResolution(int tier) {
+        return rollupResolutions[tier];
+    }
+
+    public long getRollupRetention(int tier) {
+        return rollupRetentions[tier];
+    }
+}
@@ -0,0 +1,206 @@
+package com.data_management;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * One rollup tier of a {@link TimeSeries}: min, max, sum and count per fixed-size time bucket,
+ * stored in parallel arrays sorted on bucket start. It's maintained incrementally when samples are added.
+ * NaN values are left out of the rollups.
+ */
+class RollupSeries {
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final long resolution;
+    private final long retention;
+    private long[] starts;
+    private double[] mins;
+    private double[] maxs;
+    private double[] sums;
+    private int[] counts;
+    private int size;
+
+    /**
+     * Constructs an empty tier
+     *
+     * @param resolution size of a bucket, in milliseconds
+     * @param retention  how long buckets are kept, in milliseconds
+     */
+    RollupSeries(long resolution, long retention) {
+        this.resolution = resolution;
+        this.retention = retention;
+        starts = new long[INITIAL_CAPACITY];
+        mins = new double[INITIAL_CAPACITY];
+        maxs = new double[INITIAL_CAPACITY];
+        sums = new double[INITIAL_CAPACITY];
+        counts = new int[INITIAL_CAPACITY];
+    }
+
+    /**
+     * Adds a new sample to its bucket. In-order samples hit the last bucket or start a new one in O(1).
+     */
+    void add(long timestamp, double value) {
+        if (Double.isNaN(value)) {
+            return;
+        }
+        int index = bucketIndex(timestamp);
+        mins[index] = Math.min(mins[index], value);
+        maxs[index] = Math.max(maxs[index], value);
+        sums[index] += value;
+        counts[index]++;
+    }
+
+    /**
+     * Updates the bucket of a sample whose value is overwritten by a duplicate.
+     * The sum is corrected, but the old value can't be taken out of the min and max, so those only get wider.
+     */
+    void replace(long timestamp, double oldValue, double value) {
+        if (Double.isNaN(oldValue)) {
+            add(timestamp, value);
+            return;
+        }
+        int index = bucketIndex(timestamp);
+        if (Double.isNaN(value)) {
+            sums[index] -= oldValue;
+            counts[index]--;
+            return;
+        }
+        mins[index] = Math.min(mins[index], value);
+        maxs[index] = Math.max(maxs[index], value);
+        sums[index] += value - oldValue;
+    }
+
+    /**
+     * Finds the bucket of a timestamp, and makes it if it doesn't exist yet
+     *
+     * @return index of the bucket
+     */
+    private int bucketIndex(long timestamp) {
+        long start = Math.floorDiv(timestamp, resolution) * resolution;
+        if (size > 0 && starts[size - 1] == start) {
+            return size - 1;
+        }
+        int index = size > 0 && starts[size - 1] < start ? size : lowerBound(start);
+        if (index < size && starts[index] == start) {
+            return index;
+        }
+        ensureCapacity(size + 1);
+        System.arraycopy(starts, index, starts, index + 1, size - index);
+        System.arraycopy(mins, index, mins, index + 1, size - index);
+        System.arraycopy(maxs, index, maxs, index + 1, size - index);
+        System.arraycopy(sums, index, sums, index + 1, size - index);
+        System.arraycopy(counts, index, counts, index + 1, size - index);
+        starts[index] = start;
+        mins[index] = Double.POSITIVE_INFINITY;
+        maxs[index] = Double.NEGATIVE_INFINITY;
+        sums[index] = 0;
+        counts[index] = 0;
+        size++;
+        return index;
+    }
+
+    private int lowerBound(long start) {
+        int index = Arrays.binarySearch(starts, 0, size, start);
+        return index >= 0 ? index : -index - 1;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > starts.length) {
+            int newCapacity = Math.max(capacity, starts.length + (starts.length >> 1));
+            starts = Arrays.copyOf(starts, newCapacity);
+            mins = Arrays.copyOf(mins, newCapacity);
+            maxs = Arrays.copyOf(maxs, newCapacity);
+            sums = Arrays.copyOf(sums, newCapacity);
+            counts = Arrays.copyOf(counts, newCapacity);
+        }
+    }
+
+    /**
+     * Removes the buckets that are older than the retention
+     *
+     * @param newest timestamp of the newest sample of the series
+     */
+    void applyRetention(long newest) {
+        if (retention == Long.MAX_VALUE || size == 0) {
+            return;
+        }
+        int expired = lowerBound(newest - retention);
+        if (expired == 0) {
+            return;
+        }
+        size -= expired;
+        System.arraycopy(starts, expired, starts, 0, size);
+        System.arraycopy(mins, expired, mins, 0, size);
+        System.arraycopy(maxs, expired, maxs, 0, size);
+        System.arraycopy(sums, expired, sums, 0, size);
+        System.arraycopy(counts, expired, counts, 0, size);
+    }
+
+    /**
+     * Passes the buckets that overlap the time range to the visitor, from old to new. Empty buckets are skipped.
+     */
+    void forEach(long startTime, long endTime, RollupVisitor visitor) {
+        for (int i = lowerBound(Math.floorDiv(startTime, resolution) * resolution); i < size && starts[i] <= endTime; i++) {
+            if (counts[i] > 0) {
+                visitor.visit(starts[i], mins[i], maxs[i], sums[i] / counts[i], counts[i]);
+            }
+        }
+    }
+
+    long getResolution() {
+        return resolution;
+    }
+
+    long getRetention() {
+        return retention;
+    }
+
+    /**
+     * Writes the tier in binary form: resolution, number of buckets and then the buckets
+     */
+    void writeTo(DataOutputStream out) throws IOException {
+        out.writeLong(resolution);
+        out.writeInt(size);
+        for (int i = 0; i < size; i++) {
+            out.writeLong(starts[i]);
+            out.writeDouble(mins[i]);
+            out.writeDouble(maxs[i]);
+            out.writeDouble(sums[i]);
+            out.writeInt(counts[i]);
+        }
+    }
+
+    /**
+     * Reads the buckets that were written with {@link #writeTo(DataOutputStream)} into this (empty) tier.
+     * The resolution is read by the caller first.
+     */
+    void readBuckets(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        ensureCapacity(count);
+        for (int i = 0; i < count; i++) {
+            starts[i] = in.readLong();
+            mins[i] = in.readDouble();
+            maxs[i] = in.readDouble();
+            sums[i] = in.readDouble();
+            counts[i] = in.readInt();
+        }
+        size = count;
+    }
+
+    /**
+     * Skips a tier that was written with {@link #writeTo(DataOutputStream)}, after its resolution
+     */
+    static void skip(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        in.readFully(new byte[count * (Long.BYTES + 3 * Double.BYTES + Integer.BYTES)]);
+    }
+
+    /**
+     * @return estimated heap size in bytes
+     */
+    long estimateBytes() {
+        return 48 + 5 * 16 + (long) starts.length * (Long.BYTES + 3 * Double.BYTES + Integer.BYTES);
+    }
+}
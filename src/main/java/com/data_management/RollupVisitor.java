@@ -0,0 +1,22 @@
+package com.data_management;
+
+/**
+ * Callback for streaming over time buckets of a record type, at a requested resolution.
+ *
+ * @see DataStorage#forEachRollup(int, String, long, long, long, RollupVisitor)
+ */
+@FunctionalInterface
+public interface RollupVisitor {
+    /**
+     * Called once for every bucket in the queried range, from old to new.
+     * When raw samples are visited, every sample is a bucket of its own (count 1, min = max = mean).
+     * It's called while the patient is locked for reading, so it shouldn't add data to the storage.
+     *
+     * @param bucketStart start time of the bucket, in milliseconds since UNIX epoch
+     * @param min         smallest value in the bucket
+     * @param max         largest value in the bucket
+     * @param mean        average value in the bucket
+     * @param count       number of samples in the bucket
+     */
+    void visit(long bucketStart, double min, double max, double mean, int count);
+}
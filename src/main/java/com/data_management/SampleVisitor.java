@@ -0,0 +1,19 @@
+package com.data_management;
+
+/**
+ * Callback for streaming over the samples of one record type of a patient,
+ * without making {@code PatientRecord} objects or lists.
+ *
+ * @see DataStorage#forEachRecord(int, String, long, long, SampleVisitor)
+ */
+@FunctionalInterface
+public interface SampleVisitor {
+    /**
+     * Called once for every sample in the queried range, from old to new.
+     * It's called while the patient is locked for reading, so it shouldn't add data to the storage.
+     *
+     * @param timestamp time of the sample, in milliseconds since UNIX epoch
+     * @param value     measurement value of the sample
+     */
+    void visit(long timestamp, double value);
+}
@@ -0,0 +1,187 @@
+package com.data_management;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * A settled, read-mostly run of samples of a {@link TimeSeries}.
+ * A chunk either keeps its samples in raw timestamp and value arrays, or Gorilla-compressed
+ * (see {@link GorillaCodec}), in which case reading it decodes the samples into a scratch buffer.
+ * Every chunk has a {@link BlockSummary} of its samples, so aggregations don't have to read chunks that are
+ * completely inside their time range.
+ *
+ * <p>To stay within a memory budget a chunk can be spilled to a {@link SpillFile}: the spilled chunk keeps only
+ * its summary and the position of its Gorilla-encoded samples on disk, which are read back whenever it is decoded.
+ */
+final class SealedChunk {
+    private final long firstTimestamp;
+    private final long lastTimestamp;
+    private final int count;
+    private final long[] timestamps; //null if compressed
+    private final double[] values; //null if compressed
+    private final byte[] encoded; //null if raw or spilled
+    private final BlockSummary summary;
+    private final SpillFile spillFile; //null if the samples are on the heap
+    private final long spillPosition;
+    private final int spillLength;
+
+    private SealedChunk(long[] timestamps, double[] values, byte[] encoded, BlockSummary summary,
+                        long firstTimestamp, long lastTimestamp, int count) {
+        this(timestamps, values, encoded, summary, null, 0, 0, firstTimestamp, lastTimestamp, count);
+    }
+
+    private SealedChunk(long[] timestamps, double[] values, byte[] encoded, BlockSummary summary,
+                        SpillFile spillFile, long spillPosition, int spillLength,
+                        long firstTimestamp, long lastTimestamp, int count) {
+        this.timestamps = timestamps;
+        this.summary = summary;
+        this.spillFile = spillFile;
+        this.spillPosition = spillPosition;
+        this.spillLength = spillLength;
+        this.values = values;
+        this.encoded = encoded;
+        this.firstTimestamp = firstTimestamp;
+        this.lastTimestamp = lastTimestamp;
+        this.count = count;
+    }
+
+    /**
+     * Makes a chunk from a run of sorted samples. The samples are copied, so the arrays can be reused
+     *
+     * @param timestamps sorted timestamps
+     * @param values     values, at the same index as their timestamp
+     * @param from       index of the first sample
+     * @param count      number of samples, at least 1
+     * @param compress   true to Gorilla-compress the samples, false to keep them raw
+     * @return the chunk
+     */
+    static SealedChunk of(long[] timestamps, double[] values, int from, int count, boolean compress) {
+        long first = timestamps[from];
+        long last = timestamps[from + count - 1];
+        BlockSummary summary = BlockSummary.of(timestamps, values, from, from + count);
+        if (compress) {
+            return new SealedChunk(null, null, GorillaCodec.encode(timestamps, values, from, count), summary,
+                    first, last, count);
+        }
+        return new SealedChunk(Arrays.copyOfRange(timestamps, from, from + count),
+                Arrays.copyOfRange(values, from, from + count), null, summary, first, last, count);
+    }
+
+    /**
+     * Makes a new chunk that also has the given sample, or where its value is updated if the timestamp is already there.
+     * Chunks are sealed, so this is the slow path for samples that arrive very late.
+     *
+     * @param replaced if the timestamp was already there, its old value is put in replaced[0]
+     * @param compress true to Gorilla-compress the new chunk. It is on the heap, also if this chunk is spilled
+     * @return the new chunk
+     */
+    SealedChunk withSample(long timestamp, double value, double[] replaced, boolean compress) {
+        long[] newTimestamps = new long[count + 1];
+        double[] newValues = new double[count + 1];
+        decode(newTimestamps, newValues);
+        int index = Arrays.binarySearch(newTimestamps, 0, count, timestamp);
+        if (index >= 0) {
+            replaced[0] = newValues[index];
+            newValues[index] = value; //duplicate, so update the measurement value
+            return of(newTimestamps, newValues, 0, count, compress);
+        }
+        index = -index - 1;
+        System.arraycopy(newTimestamps, index, newTimestamps, index + 1, count - index);
+        System.arraycopy(newValues, index, newValues, index + 1, count - index);
+        newTimestamps[index] = timestamp;
+        newValues[index] = value;
+        return of(newTimestamps, newValues, 0, count + 1, compress);
+    }
+
+    /**
+     * Writes the samples of this chunk to a spill file (Gorilla-encoded, also if the chunk is raw),
+     * and makes a chunk that reads them from there
+     *
+     * @param file the spill file
+     * @return the spilled chunk
+     * @throws IOException if writing fails
+     */
+    SealedChunk spill(SpillFile file) throws IOException {
+        byte[] bytes = encoded;
+        if (bytes == null) {
+            bytes = GorillaCodec.encode(timestamps, values, 0, count);
+        }
+        long position = file.append(bytes);
+        return new SealedChunk(null, null, null, summary, file, position, bytes.length,
+                firstTimestamp, lastTimestamp, count);
+    }
+
+    boolean isSpilled() {
+        return spillFile != null;
+    }
+
+    /**
+     * Copies (or decodes) all samples of the chunk into the arrays, from index 0.
+     * A spilled chunk is read from its spill file first.
+     */
+    void decode(long[] timestampsOut, double[] valuesOut) {
+        if (encoded != null) {
+            GorillaCodec.decode(encoded, count, timestampsOut, valuesOut);
+        } else if (spillFile != null) {
+            GorillaCodec.decode(spillFile.read(spillPosition, spillLength), count, timestampsOut, valuesOut);
+        } else {
+            System.arraycopy(timestamps, 0, timestampsOut, 0, count);
+            System.arraycopy(values, 0, valuesOut, 0, count);
+        }
+    }
+
+    /**
+     * @return true if the samples have to be decoded, because the chunk is compressed or spilled
+     */
+    boolean isCompressed() {
+        return timestamps == null;
+    }
+
+    /**
+     * @return the raw timestamps, only valid if the chunk isn't compressed
+     */
+    long[] rawTimestamps() {
+        return timestamps;
+    }
+
+    /**
+     * @return the raw values, only valid if the chunk isn't compressed
+     */
+    double[] rawValues() {
+        return values;
+    }
+
+    /**
+     * @return the statistics of all samples in the chunk
+     */
+    BlockSummary summary() {
+        return summary;
+    }
+
+    long firstTimestamp() {
+        return firstTimestamp;
+    }
+
+    long lastTimestamp() {
+        return lastTimestamp;
+    }
+
+    int count() {
+        return count;
+    }
+
+    /**
+     * Approximate heap usage of this chunk, spilled samples don't count
+     *
+     * @return estimated size in bytes
+     */
+    long estimateBytes() {
+        if (spillFile != null) {
+            return 72 + BlockSummary.estimateBytes();
+        }
+        if (encoded != null) {
+            return 56 + 16 + encoded.length + BlockSummary.estimateBytes();
+        }
+        return 56 + 16 + 16 + (long) count * (Long.BYTES + Double.BYTES) + BlockSummary.estimateBytes();
+    }
+}
@@ -0,0 +1,45 @@
+package com.data_management;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The per record type settings of a {@link DataStorage} that decide how a new {@link TimeSeries} is made:
+ * whether its sealed history is compressed, and its retention policy.
+ * One instance is shared by the storage and all its patients, so changes apply to series made after them.
+ */
+class SeriesOptions {
+    private final Set<String> compressedTypes = ConcurrentHashMap.newKeySet();
+    private final Map<String, RetentionPolicy> retentionPolicies = new ConcurrentHashMap<>();
+
+    void enableCompression(String recordType) {
+        compressedTypes.add(recordType);
+    }
+
+    void setRetentionPolicy(String recordType, RetentionPolicy policy) {
+        retentionPolicies.put(recordType, policy);
+    }
+
+    boolean hasRetentionPolicies() {
+        return !retentionPolicies.isEmpty();
+    }
+
+    /**
+     * Makes an empty series for a record type with the current settings
+     *
+     * @param recordType the record type of the series
+     * @return the series
+     */
+    TimeSeries newSeries(String recordType) {
+        return new TimeSeries(recordType, compressedTypes.contains(recordType), retentionPolicies.get(recordType));
+    }
+
+    /**
+     * @param typeCode the code of the record type of the series, see {@link RecordTypeRegistry}
+     * @return an empty series with the current settings
+     */
+    TimeSeries newSeries(int typeCode) {
+        return newSeries(RecordTypeRegistry.nameOf(typeCode));
+    }
+}
@@ -0,0 +1,92 @@
+package com.data_management;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * An append-only file for sealed chunks that are moved out of the heap to stay within the memory budget
+ * (see {@link DataStorage#setMemoryBudget(long, Path)}). Appends are serialized, reads use positional reads,
+ * so chunks can be read from multiple threads at the same time.
+ *
+ * <p>The file is an extension of the heap and not a form of persistence: it is emptied when it's opened and
+ * deleted when the JVM exits. Space of chunks that are dropped later (by retention or because a very late sample
+ * changed them) is not reused.
+ */
+final class SpillFile {
+    private final Path path;
+    private final FileChannel channel;
+    private long end; //guarded by this
+
+    private SpillFile(Path path, FileChannel channel) {
+        this.path = path;
+        this.channel = channel;
+    }
+
+    /**
+     * Opens an empty spill file in a directory
+     *
+     * @param directory the directory, created if it doesn't exist
+     * @return the spill file
+     * @throws IOException if the file can't be created
+     */
+    static SpillFile open(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        Path path = directory.resolve("chunks.spill");
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        path.toFile().deleteOnExit();
+        return new SpillFile(path, channel);
+    }
+
+    /**
+     * Appends bytes to the file
+     *
+     * @param bytes the bytes to write
+     * @return the position they are written at
+     * @throws IOException if writing fails
+     */
+    synchronized long append(byte[] bytes) throws IOException {
+        long position = end;
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, position + buffer.position());
+        }
+        end += bytes.length;
+        return position;
+    }
+
+    /**
+     * Reads bytes that were written with {@link #append(byte[])}.
+     * Reading happens while a patient is locked for reading, and its callers can't handle checked exceptions,
+     * so failures are thrown as {@link UncheckedIOException}.
+     *
+     * @param position the position returned by append
+     * @param length   the number of bytes that were written
+     * @return the bytes
+     */
+    byte[] read(long position, int length) {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        try {
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, position + buffer.position()) < 0) {
+                    throw new IOException("spill file " + path + " ends before position " + (position + length));
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return buffer.array();
+    }
+
+    /**
+     * @return the number of bytes written, including space of chunks that are no longer used
+     */
+    synchronized long size() {
+        return end;
+    }
+}
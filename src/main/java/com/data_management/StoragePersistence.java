@@ -0,0 +1,238 @@
+package com.data_management;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps a {@link DataStorage} durable in a directory, using a write-ahead log plus periodic snapshots.
+ *
+ * <p>The directory holds log segments {@code wal-<n>.log} and snapshots {@code snapshot-<n>.snap}.
+ * Snapshot n contains every sample of the segments before segment n, so a restart loads the newest
+ * snapshot and only replays the segments from n on. Making a snapshot first starts a new segment, then writes
+ * all series, and then deletes the older segments and snapshots. The snapshot file and the directory are forced
+ * to disk before anything is deleted, so a crash at any point leaves either the old or the new files complete.
+ *
+ * <p>Samples are logged while the patient is locked for writing, and the snapshot reads every patient with its
+ * read lock, so a sample logged in a segment before the snapshot is always in the snapshot. Samples in the newer
+ * segment might also be in the snapshot already, replaying those is harmless because a duplicate
+ * timestamp just sets the same value again.
+ */
+class StoragePersistence implements AutoCloseable {
+    static final long FLUSH_INTERVAL_MILLIS = 10;
+    private static final int SNAPSHOT_MAGIC = 0x534E4150; //"SNAP"
+    private static final short SNAPSHOT_VERSION = 3;
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final Path directory;
+    private final DataStorage storage;
+    private final ScheduledExecutorService scheduler;
+    private volatile WriteAheadLog log;
+    private long segment; //number of the current log segment. guarded by this
+
+    private StoragePersistence(Path directory, DataStorage storage, long segment) throws IOException {
+        this.directory = directory;
+        this.storage = storage;
+        this.segment = segment;
+        this.log = new WriteAheadLog(segmentFile(segment));
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "storage-persistence");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::flushQuietly, FLUSH_INTERVAL_MILLIS, FLUSH_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Restores the storage from the newest snapshot and the log segments after it,
+     * and then starts a new log segment for everything added from now on.
+     *
+     * @param directory            the persistence directory, created if it doesn't exist
+     * @param storage              the (empty) storage to restore into
+     * @param snapshotPeriodMillis how often to make a snapshot, or 0 to only make them by calling {@link #snapshot()}
+     * @return the persistence, which should be closed when the storage is no longer used
+     * @throws IOException if restoring fails
+     */
+    static StoragePersistence open(Path directory, DataStorage storage, long snapshotPeriodMillis) throws IOException {
+        Files.createDirectories(directory);
+        long snapshot = newestFile(directory, "snapshot-", ".snap");
+        if (snapshot > 0) {
+            readSnapshot(snapshotFile(directory, snapshot), storage);
+        }
+        long lastSegment = newestFile(directory, "wal-", ".log");
+        for (long n = Math.max(snapshot, 1); n <= lastSegment; n++) {
+            Path file = directory.resolve("wal-" + n + ".log");
+            if (Files.exists(file)) {
+                WriteAheadLog.replay(file, storage);
+            }
+        }
+        //never append to an old segment, its last entry might be torn
+        StoragePersistence persistence = new StoragePersistence(directory, storage, Math.max(snapshot, lastSegment + 1));
+        if (snapshotPeriodMillis > 0) {
+            persistence.scheduler.scheduleWithFixedDelay(persistence::snapshotQuietly,
+                    snapshotPeriodMillis, snapshotPeriodMillis, TimeUnit.MILLISECONDS);
+        }
+        return persistence;
+    }
+
+    /**
+     * Logs a sample. Must be called while the patient is locked for writing (see the class comment).
+     * If a snapshot just closed the segment that was read, the sample goes to the new segment.
+     */
+    void append(int patientId, int recordType, long timestamp, double value) {
+        try {
+            WriteAheadLog current = log;
+            while (!current.append(patientId, recordType, timestamp, value)) {
+                if (current == log) {
+                    throw new IllegalStateException("the write-ahead log is closed");
+                }
+                current = log;
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("could not write to the write-ahead log", e);
+        }
+    }
+
+    /**
+     * Makes a snapshot of all series and removes the log segments and snapshots it replaces
+     *
+     * @throws IOException if writing the snapshot fails, the older files are kept in that case
+     */
+    synchronized void snapshot() throws IOException {
+        WriteAheadLog old = log;
+        segment++;
+        log = new WriteAheadLog(segmentFile(segment));
+        old.close();
+
+        Path file = snapshotFile(directory, segment);
+        Path temp = directory.resolve(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE));
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeShort(SNAPSHOT_VERSION);
+            for (Patient patient : storage.getAllPatients()) {
+                out.writeBoolean(true);
+                patient.writeTo(out);
+            }
+            out.writeBoolean(false);
+            out.flush();
+            channel.force(true); //the snapshot must be on disk before the segments it replaces are deleted
+        }
+        Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        //makes the rename durable, and the creation of the new segment
+        forceDirectory(directory);
+
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path path : files) {
+                String name = path.getFileName().toString();
+                long n = Math.max(fileNumber(name, "wal-", ".log"), fileNumber(name, "snapshot-", ".snap"));
+                if ((n > 0 && n < segment) || name.endsWith(".tmp")) {
+                    Files.delete(path);
+                }
+            }
+        }
+    }
+
+    /**
+     * Forces everything logged so far to disk, without waiting for the next periodic flush
+     *
+     * @throws IOException if writing fails
+     */
+    void flush() throws IOException {
+        log.flush();
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (IOException e) {
+            System.err.println("Error flushing the write-ahead log: " + e.getMessage());
+        }
+    }
+
+    private void snapshotQuietly() {
+        try {
+            snapshot();
+        } catch (IOException e) {
+            System.err.println("Error writing a snapshot: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        scheduler.shutdown();
+        log.close();
+    }
+
+    private static void readSnapshot(Path file, DataStorage storage) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), BUFFER_SIZE))) {
+            if (in.readInt() != SNAPSHOT_MAGIC || in.readShort() != SNAPSHOT_VERSION) {
+                throw new IOException("not a snapshot: " + file);
+            }
+            while (in.readBoolean()) {
+                storage.restorePatient(Patient.readFrom(in, storage.getSeriesOptions()));
+            }
+        }
+    }
+
+    /**
+     * Forces the entries of a directory (created, renamed and deleted files) to disk.
+     * Windows can't open a directory as a file, and it doesn't need this, so it is skipped there.
+     */
+    private static void forceDirectory(Path directory) throws IOException {
+        if (System.getProperty("os.name").startsWith("Windows")) {
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        }
+    }
+
+    private Path segmentFile(long n) {
+        return directory.resolve("wal-" + n + ".log");
+    }
+
+    private static Path snapshotFile(Path directory, long n) {
+        return directory.resolve("snapshot-" + n + ".snap");
+    }
+
+    /**
+     * @return the highest number of the files with the given prefix and suffix, or 0 if there are none
+     */
+    private static long newestFile(Path directory, String prefix, String suffix) throws IOException {
+        long newest = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path path : files) {
+                newest = Math.max(newest, fileNumber(path.getFileName().toString(), prefix, suffix));
+            }
+        }
+        return newest;
+    }
+
+    /**
+     * @return the number in a file name like prefix + number + suffix, or 0 if the name doesn't look like that
+     */
+    private static long fileNumber(String name, String prefix, String suffix) {
+        if (!name.startsWith(prefix) || !name.endsWith(suffix)) {
+            return 0;
+        }
+        try {
+            return Long.parseLong(name.substring(prefix.length(), name.length() - suffix.length()));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,749 @@
+package com.data_management;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A growable, time-sorted series of samples for one record type of one patient.
+ * Timestamps and values are kept in two parallel primitive arrays (columnar layout),
+ * so a sample costs 16 bytes instead of a separate {@code PatientRecord} object.
+ * Within a series a timestamp occurs at most once: adding a sample with an existing
+ * timestamp overwrites its value (same timestamp + same record type = duplicate).
+ *
+ * <p>Samples that arrive slightly out of order (at most {@link #LATENESS_WINDOW} ms older than the newest sample)
+ * are not inserted into the main arrays right away, because that shifts everything after them.
+ * They are collected in a small sorted reorder buffer, which is merged into the main arrays in one pass
+ * when it is full, when its samples fall out of the lateness window, or before the series is read.
+ *
+ * <p>The main arrays are only the head of the series. Once {@link #CHUNK_SIZE} samples are older than the lateness
+ * window they are settled, and sealed into a {@link SealedChunk}, which is Gorilla-compressed if compression is
+ * enabled for the series. Reading goes through a {@link Cursor}, which decodes compressed chunks transparently.
+ * Aggregations use the {@link BlockSummary} of every chunk that is completely inside their range, so they
+ * only scan the chunks at the edges of the range and the head.
+ *
+ * <p>If the series has a {@link RetentionPolicy}, every added sample also updates its {@link RollupSeries} tiers,
+ * and {@link #applyRetention()} drops sealed chunks and rollup buckets that are older than the policy allows.
+ *
+ * <p>To stay within a memory budget, {@link #spillChunks(SpillFile)} moves the sealed chunks to disk.
+ * Cursors read spilled chunks back transparently.
+ */
+class TimeSeries {
+    private static final int INITIAL_CAPACITY = 16;
+    private static final int IO_CHUNK = 4096; //samples per chunk when writing or reading a series in binary form
+    static final int REORDER_CAPACITY = 64;
+    static final long LATENESS_WINDOW = 10_000; //10 seconds, in milliseconds
+    static final int CHUNK_SIZE = 1024; //samples per sealed chunk
+
+    private final String recordType;
+    private final int typeCode; //code of the record type in the RecordTypeRegistry
+    private final boolean compress;
+    private final RetentionPolicy policy; //null if the history is kept forever
+    private final RollupSeries[] rollups; //one per rollup tier of the policy, from fine to coarse
+    private final List<SealedChunk> chunks = new ArrayList<>(); //sealed samples, sorted and older than the head
+    private int sealedSize; //number of samples in all chunks
+
+    //head of the series
+    private long[] timestamps;
+    private double[] values;
+    private int size;
+
+    //reorder buffer for late samples, sorted on timestamp. only allocated when a late sample arrives
+    private long[] lateTimestamps;
+    private double[] lateValues;
+    private int lateSize;
+
+    /**
+     * Constructs an empty series
+     *
+     * @param recordType the record type of all samples in this series
+     * @param compress   true to Gorilla-compress the sealed chunks of this series
+     * @param policy     retention policy of the series, or null to keep all raw samples forever
+     */
+    TimeSeries(String recordType, boolean compress, RetentionPolicy policy) {
+        this.recordType = recordType;
+        this.typeCode = RecordTypeRegistry.register(recordType);
+        this.compress = compress;
+        this.policy = policy;
+        this.rollups = new RollupSeries[policy == null ? 0 : policy.getRollupCount()];
+        for (int tier = 0; tier < rollups.length; tier++) {
+            rollups[tier] = new RollupSeries(policy.getRollupResolution(tier), policy.getRollupRetention(tier));
+        }
+        this.timestamps = new long[INITIAL_CAPACITY];
+        this.values = new double[INITIAL_CAPACITY];
+    }
+
+    /**
+     * Adds a sample to the series, keeping it sorted on timestamp.
+     * In-order samples are appended in O(1) and a sample with an existing timestamp updates the value.
+     * A late sample within the lateness window goes into the reorder buffer,
+     * a sample later than that is inserted at the right index directly (re-sealing its chunk if it is that old).
+     *
+     * @param timestamp time of the sample
+     * @param value     measurement value of the sample
+     */
+    void add(long timestamp, double value) {
+        if (size == 0 || timestamps[size - 1] < timestamp) {
+            append(timestamp, value);
+            rollUp(timestamp, value);
+            if (lateSize > 0 && timestamp - lateTimestamps[0] > LATENESS_WINDOW) {
+                mergeLateSamples(); //the buffered samples are settled
+            }
+            if (size > CHUNK_SIZE && timestamps[CHUNK_SIZE - 1] < timestamp - LATENESS_WINDOW) {
+                sealSettledSamples();
+            }
+            return;
+        }
+        //sealed samples are all older than the lateness window, so within the window only the head can have duplicates
+        int index = lowerBound(timestamp);
+        if (timestamps[index] == timestamp) {
+            rollUpReplaced(timestamp, values[index], value);
+            values[index] = value; //duplicate, so update the measurement value
+            return;
+        }
+        if (timestamps[size - 1] - timestamp <= LATENESS_WINDOW) {
+            bufferLateSample(timestamp, value);
+            return;
+        }
+        //too late for the buffer: merge the buffer first, so it can't hold the same timestamp, and insert directly
+        mergeLateSamples();
+        if (!chunks.isEmpty() && timestamp <= chunks.get(chunks.size() - 1).lastTimestamp()) {
+            int chunk = firstChunkEndingAtOrAfter(timestamp);
+            SealedChunk old = chunks.get(chunk);
+            double[] replaced = new double[1];
+            SealedChunk updated = old.withSample(timestamp, value, replaced, compress);
+            chunks.set(chunk, updated);
+            sealedSize += updated.count() - old.count();
+            if (updated.count() == old.count()) {
+                rollUpReplaced(timestamp, replaced[0], value);
+            } else {
+                rollUp(timestamp, value);
+            }
+            return;
+        }
+        index = lowerBound(timestamp);
+        ensureCapacity(size + 1);
+        System.arraycopy(timestamps, index, timestamps, index + 1, size - index);
+        System.arraycopy(values, index, values, index + 1, size - index);
+        timestamps[index] = timestamp;
+        values[index] = value;
+        size++;
+        rollUp(timestamp, value);
+    }
+
+    /**
+     * Adds samples that are sorted on timestamp, e.g. a batch read from a file.
+     * The samples that are newer than the whole series are appended to the head with one array copy, and the
+     * settled part is sealed once afterwards. Older samples go through {@link #add(long, double)}.
+     * Samples with the same timestamp are allowed, the last one wins.
+     *
+     * @param sampleTimestamps timestamps of the samples, sorted
+     * @param sampleValues     measurement values of the samples
+     * @param count            number of samples, from the start of the arrays
+     */
+    void addSorted(long[] sampleTimestamps, double[] sampleValues, int count) {
+        int first = 0;
+        while (first < count && size > 0 && sampleTimestamps[first] <= timestamps[size - 1]) {
+            add(sampleTimestamps[first], sampleValues[first]);
+            first++;
+        }
+        if (first == count) {
+            return;
+        }
+        boolean distinct = true;
+        for (int i = first + 1; i < count && distinct; i++) {
+            distinct = sampleTimestamps[i - 1] != sampleTimestamps[i];
+        }
+        int start = size;
+        ensureCapacity(size + count - first);
+        if (distinct) {
+            System.arraycopy(sampleTimestamps, first, timestamps, size, count - first);
+            System.arraycopy(sampleValues, first, values, size, count - first);
+            size += count - first;
+        } else {
+            for (int i = first; i < count; i++) {
+                if (size > start && timestamps[size - 1] == sampleTimestamps[i]) {
+                    values[size - 1] = sampleValues[i]; //duplicate within the batch
+                } else {
+                    timestamps[size] = sampleTimestamps[i];
+                    values[size] = sampleValues[i];
+                    size++;
+                }
+            }
+        }
+        for (int i = start; i < size && rollups.length > 0; i++) {
+            rollUp(timestamps[i], values[i]);
+        }
+        long newest = timestamps[size - 1];
+        if (lateSize > 0 && newest - lateTimestamps[0] > LATENESS_WINDOW) {
+            mergeLateSamples();
+        }
+        if (size > CHUNK_SIZE && timestamps[CHUNK_SIZE - 1] < newest - LATENESS_WINDOW) {
+            sealSettledSamples();
+        }
+    }
+
+    private void rollUp(long timestamp, double value) {
+        for (RollupSeries rollup : rollups) {
+            rollup.add(timestamp, value);
+        }
+    }
+
+    private void rollUpReplaced(long timestamp, double oldValue, double value) {
+        for (RollupSeries rollup : rollups) {
+            rollup.replace(timestamp, oldValue, value);
+        }
+    }
+
+    private void append(long timestamp, double value) {
+        ensureCapacity(size + 1);
+        timestamps[size] = timestamp;
+        values[size] = value;
+        size++;
+    }
+
+    /**
+     * Seals every full chunk at the start of the head whose samples are all older than the lateness window,
+     * and moves the rest of the head to the front in one copy. The newest sample always stays in the head.
+     */
+    private void sealSettledSamples() {
+        long settledBefore = timestamps[size - 1] - LATENESS_WINDOW;
+        int sealed = 0;
+        while (sealed + CHUNK_SIZE < size && timestamps[sealed + CHUNK_SIZE - 1] < settledBefore) {
+            chunks.add(SealedChunk.of(timestamps, values, sealed, CHUNK_SIZE, compress));
+            sealed += CHUNK_SIZE;
+        }
+        if (sealed == 0) {
+            return;
+        }
+        System.arraycopy(timestamps, sealed, timestamps, 0, size - sealed);
+        System.arraycopy(values, sealed, values, 0, size - sealed);
+        size -= sealed;
+        sealedSize += sealed;
+    }
+
+    /**
+     * Puts a late sample in the reorder buffer, at its sorted position.
+     * If the buffer already has a sample with that timestamp, its value is updated.
+     */
+    private void bufferLateSample(long timestamp, double value) {
+        if (lateTimestamps == null) {
+            lateTimestamps = new long[REORDER_CAPACITY];
+            lateValues = new double[REORDER_CAPACITY];
+        }
+        int index = lateSize - 1;
+        while (index >= 0 && lateTimestamps[index] > timestamp) {
+            index--;
+        }
+        if (index >= 0 && lateTimestamps[index] == timestamp) {
+            rollUpReplaced(timestamp, lateValues[index], value);
+            lateValues[index] = value;
+            return;
+        }
+        if (lateSize == REORDER_CAPACITY) {
+            mergeLateSamples();
+            bufferLateSample(timestamp, value);
+            return;
+        }
+        rollUp(timestamp, value);
+        index++;
+        System.arraycopy(lateTimestamps, index, lateTimestamps, index + 1, lateSize - index);
+        System.arraycopy(lateValues, index, lateValues, index + 1, lateSize - index);
+        lateTimestamps[index] = timestamp;
+        lateValues[index] = value;
+        lateSize++;
+    }
+
+    /**
+     * Merges the reorder buffer into the head in a single pass.
+     * The merge goes from the back, so only the part of the series after the oldest buffered sample is moved.
+     * The buffer never has a timestamp that is also in the head, so there are no duplicates to resolve,
+     * and buffered samples are always newer than the sealed chunks.
+     */
+    void mergeLateSamples() {
+        if (lateSize == 0) {
+            return;
+        }
+        ensureCapacity(size + lateSize);
+        int main = size - 1;
+        int late = lateSize - 1;
+        int write = size + lateSize - 1;
+        while (late >= 0) {
+            if (main >= 0 && timestamps[main] > lateTimestamps[late]) {
+                timestamps[write] = timestamps[main];
+                values[write] = values[main];
+                main--;
+            } else {
+                timestamps[write] = lateTimestamps[late];
+                values[write] = lateValues[late];
+                late--;
+            }
+            write--;
+        }
+        size += lateSize;
+        lateSize = 0;
+    }
+
+    /**
+     * @return true if there are samples in the reorder buffer, which aren't visible to cursors yet
+     */
+    boolean hasLateSamples() {
+        return lateSize > 0;
+    }
+
+    /**
+     * Binary search in the head for the first index with a timestamp >= the given time
+     *
+     * @param timestamp target time
+     * @return the first index with timestamp >= target, or size if there is none
+     */
+    private int lowerBound(long timestamp) {
+        return lowerBound(timestamps, size, timestamp);
+    }
+
+    private static int lowerBound(long[] sorted, int length, long timestamp) {
+        int min = 0;
+        int max = length;
+        while (min < max) {
+            int mid = (min + max) >>> 1;
+            if (sorted[mid] < timestamp) {
+                min = mid + 1;
+            } else {
+                max = mid;
+            }
+        }
+        return min;
+    }
+
+    /**
+     * Binary search for the first chunk whose last timestamp is >= the given time
+     *
+     * @return the index of that chunk, or the number of chunks if there is none
+     */
+    private int firstChunkEndingAtOrAfter(long timestamp) {
+        int min = 0;
+        int max = chunks.size();
+        while (min < max) {
+            int mid = (min + max) >>> 1;
+            if (chunks.get(mid).lastTimestamp() < timestamp) {
+                min = mid + 1;
+            } else {
+                max = mid;
+            }
+        }
+        return min;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > timestamps.length) {
+            int newCapacity = Math.max(capacity, timestamps.length + (timestamps.length >> 1));
+            timestamps = Arrays.copyOf(timestamps, newCapacity);
+            values = Arrays.copyOf(values, newCapacity);
+        }
+    }
+
+    /**
+     * Drops the sealed chunks and rollup buckets that are older than the retention policy allows,
+     * measured from the newest sample. Raw samples are dropped per whole chunk, the head is always kept.
+     */
+    void applyRetention() {
+        if (policy == null || size == 0) {
+            return;
+        }
+        long newest = timestamps[size - 1];
+        if (policy.getRawRetentionMillis() != Long.MAX_VALUE) {
+            long keepFrom = newest - policy.getRawRetentionMillis();
+            int expired = 0;
+            while (expired < chunks.size() && chunks.get(expired).lastTimestamp() < keepFrom) {
+                sealedSize -= chunks.get(expired).count();
+                expired++;
+            }
+            chunks.subList(0, expired).clear();
+        }
+        for (RollupSeries rollup : rollups) {
+            rollup.applyRetention(newest);
+        }
+    }
+
+    /**
+     * Moves the samples of all sealed chunks that are still on the heap to a spill file. The head stays on the heap.
+     *
+     * @param file the spill file
+     * @return the number of heap bytes that are freed (estimated)
+     * @throws IOException if writing fails, the chunks that are spilled until then stay spilled
+     */
+    long spillChunks(SpillFile file) throws IOException {
+        long freed = 0;
+        for (int i = 0; i < chunks.size(); i++) {
+            SealedChunk chunk = chunks.get(i);
+            if (!chunk.isSpilled()) {
+                SealedChunk spilled = chunk.spill(file);
+                chunks.set(i, spilled);
+                freed += chunk.estimateBytes() - spilled.estimateBytes();
+            }
+        }
+        return freed;
+    }
+
+    /**
+     * Visits the samples of a time range at a resolution: the coarsest rollup tier whose buckets are not larger than
+     * the requested resolution is used, or the raw samples if there is no such tier.
+     * The part of the range that is older than the retention of that tier comes from the next coarser tier
+     * (and so on), so a range that reaches back past the retention isn't cut off. The reorder buffer must be
+     * merged first.
+     *
+     * @param startTime  start of the range (inclusive)
+     * @param endTime    end of the range (inclusive)
+     * @param resolution the largest bucket size the caller accepts, in milliseconds
+     * @param visitor    called for every bucket (or raw sample), from old to new
+     */
+    void forEachAtResolution(long startTime, long endTime, long resolution, RollupVisitor visitor) {
+        int tier = rollups.length - 1;
+        while (tier >= 0 && rollups[tier].getResolution() > resolution) {
+            tier--;
+        }
+        forEachFromTier(tier, startTime, endTime, visitor);
+    }
+
+    /**
+     * Visits a time range from a rollup tier, or from the raw samples if the tier is -1. If the tier's retention
+     * horizon is inside the range, the range up to the end of the next coarser tier's bucket that holds the horizon
+     * is visited from that tier, and this tier continues after it. The resolutions are multiples of each other
+     * (see {@link RetentionPolicy#withRollup}), so that is also the start of a bucket of this tier.
+     */
+    private void forEachFromTier(int tier, long startTime, long endTime, RollupVisitor visitor) {
+        long from = startTime;
+        if (tier + 1 < rollups.length && size > 0) {
+            long retention = tier < 0 ? policy.getRawRetentionMillis() : rollups[tier].getRetention();
+            if (retention != Long.MAX_VALUE) {
+                long coarse = rollups[tier + 1].getResolution();
+                long horizon = timestamps[size - 1] - retention; //older data is (or will be) dropped from this tier
+                long covered = horizon > startTime ? Math.floorDiv(horizon + coarse - 1, coarse) * coarse : startTime;
+                if (covered > startTime) {
+                    forEachFromTier(tier + 1, startTime, Math.min(endTime, covered - 1), visitor);
+                    from = covered;
+                }
+            }
+        }
+        if (from > endTime) {
+            return;
+        }
+        if (tier >= 0) {
+            rollups[tier].forEach(from, endTime, visitor);
+            return;
+        }
+        for (Cursor cursor = cursor(from, endTime); cursor.hasSample(); cursor.advance()) {
+            double value = cursor.value();
+            visitor.visit(cursor.timestamp(), value, value, value, 1);
+        }
+    }
+
+    /**
+     * Computes the statistics of the samples within a time range in O(log n + chunks in the range):
+     * the summaries of the chunks inside the range are merged, only the samples in partly covered chunks
+     * and in the head are read. The reorder buffer must be merged first.
+     *
+     * @param startTime start of the range (inclusive)
+     * @param endTime   end of the range (inclusive)
+     * @return the statistics of the range
+     */
+    BlockSummary aggregate(long startTime, long endTime) {
+        BlockSummary result = new BlockSummary();
+        int chunk = firstChunkEndingAtOrAfter(startTime);
+        for (; chunk < chunks.size() && chunks.get(chunk).firstTimestamp() <= endTime; chunk++) {
+            SealedChunk sealed = chunks.get(chunk);
+            if (sealed.firstTimestamp() >= startTime && sealed.lastTimestamp() <= endTime) {
+                result.merge(sealed.summary());
+            } else {
+                for (Cursor cursor = new Cursor(chunk, Math.max(startTime, sealed.firstTimestamp()),
+                        Math.min(endTime, sealed.lastTimestamp())); cursor.hasSample(); cursor.advance()) {
+                    result.add(cursor.timestamp(), cursor.value());
+                }
+            }
+        }
+        for (int i = lowerBound(startTime); i < size && timestamps[i] <= endTime; i++) {
+            result.add(timestamps[i], values[i]);
+        }
+        return result;
+    }
+
+    /**
+     * Makes a cursor over the samples within a time range. The reorder buffer must be merged first,
+     * and the series must not change while the cursor is used.
+     *
+     * @param startTime start of the range (inclusive)
+     * @param endTime   end of the range (inclusive)
+     * @return a cursor at the first sample in the range
+     */
+    Cursor cursor(long startTime, long endTime) {
+        return new Cursor(startTime, endTime);
+    }
+
+    /**
+     * Walks over the samples of a time range, from old to new: first the chunks that overlap the range
+     * (decoding them if they are compressed), then the head. Raw chunks and the head are read in place.
+     */
+    final class Cursor {
+        private final long endTime;
+        private int nextChunk;
+        private boolean headLoaded;
+        private long[] runTimestamps = timestamps;
+        private double[] runValues = values;
+        private int position;
+        private int limit;
+        private long[] scratchTimestamps; //decode buffer for compressed chunks
+        private double[] scratchValues;
+
+        private Cursor(long startTime, long endTime) {
+            this(firstChunkEndingAtOrAfter(startTime), startTime, endTime);
+        }
+
+        /**
+         * Makes a cursor that starts at a known chunk (or at the head if it is the number of chunks)
+         */
+        private Cursor(int firstChunk, long startTime, long endTime) {
+            this.endTime = endTime;
+            this.nextChunk = firstChunk;
+            if (loadNextRun()) {
+                position = lowerBound(runTimestamps, limit, startTime);
+                skipFinishedRuns();
+            }
+        }
+
+        /**
+         * @return true if the cursor is at a sample, false if all samples in the range are visited
+         */
+        boolean hasSample() {
+            return position < limit && runTimestamps[position] <= endTime;
+        }
+
+        long timestamp() {
+            return runTimestamps[position];
+        }
+
+        double value() {
+            return runValues[position];
+        }
+
+        /**
+         * Moves to the next sample
+         */
+        void advance() {
+            position++;
+            skipFinishedRuns();
+        }
+
+        private void skipFinishedRuns() {
+            while (position == limit && loadNextRun()) {
+                position = 0;
+            }
+        }
+
+        /**
+         * Loads the next chunk, or the head after the last chunk
+         *
+         * @return false if there is nothing left to load
+         */
+        private boolean loadNextRun() {
+            if (nextChunk < chunks.size()) {
+                SealedChunk chunk = chunks.get(nextChunk++);
+                if (chunk.firstTimestamp() > endTime) {
+                    nextChunk = chunks.size(); //this chunk and everything after it is past the range
+                    headLoaded = true;
+                    limit = 0;
+                    return false;
+                }
+                if (chunk.isCompressed()) {
+                    if (scratchTimestamps == null || scratchTimestamps.length < chunk.count()) {
+                        scratchTimestamps = new long[chunk.count()];
+                        scratchValues = new double[chunk.count()];
+                    }
+                    chunk.decode(scratchTimestamps, scratchValues);
+                    runTimestamps = scratchTimestamps;
+                    runValues = scratchValues;
+                } else {
+                    runTimestamps = chunk.rawTimestamps();
+                    runValues = chunk.rawValues();
+                }
+                limit = chunk.count();
+                return true;
+            }
+            if (!headLoaded) {
+                headLoaded = true;
+                runTimestamps = timestamps;
+                runValues = values;
+                limit = size;
+                return true;
+            }
+            return false;
+        }
+    }
+
+    String getRecordType() {
+        return recordType;
+    }
+
+    int getTypeCode() {
+        return typeCode;
+    }
+
+    /**
+     * @return true if the series has no samples at all
+     */
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @return the number of sealed and head samples (excluding the reorder buffer)
+     */
+    int size() {
+        return sealedSize + size;
+    }
+
+    /**
+     * The newest sample is always the end of the head, late samples in the reorder buffer are older than it.
+     * So the latest value is kept up to date by add() without a separate index.
+     *
+     * @return timestamp of the newest sample, only valid if the series isn't empty
+     */
+    long lastTimestamp() {
+        return timestamps[size - 1];
+    }
+
+    /**
+     * @return value of the newest sample, only valid if the series isn't empty
+     */
+    double lastValue() {
+        return values[size - 1];
+    }
+
+    /**
+     * Writes the series in binary form: the record type, and then runs of samples (a count, all timestamps
+     * and then all values of the run), ending with a run of 0 samples, followed by the rollup tiers.
+     * The reorder buffer must be merged first.
+     *
+     * @param out stream to write to
+     * @throws IOException if writing fails
+     */
+    void writeTo(DataOutputStream out) throws IOException {
+        assert lateSize == 0 : "merge the late samples before writing the series";
+        out.writeUTF(recordType);
+        ByteBuffer buffer = ByteBuffer.allocate(IO_CHUNK * Long.BYTES);
+        long[] chunkTimestamps = new long[CHUNK_SIZE];
+        double[] chunkValues = new double[CHUNK_SIZE];
+        for (SealedChunk chunk : chunks) {
+            if (chunkTimestamps.length < chunk.count()) {
+                chunkTimestamps = new long[chunk.count()];
+                chunkValues = new double[chunk.count()];
+            }
+            chunk.decode(chunkTimestamps, chunkValues);
+            writeRun(out, buffer, chunkTimestamps, chunkValues, chunk.count());
+        }
+        writeRun(out, buffer, timestamps, values, size);
+        out.writeInt(0);
+        out.writeInt(rollups.length);
+        for (RollupSeries rollup : rollups) {
+            rollup.writeTo(out);
+        }
+    }
+
+    private static void writeRun(DataOutputStream out, ByteBuffer buffer, long[] runTimestamps, double[] runValues,
+                                 int count) throws IOException {
+        if (count == 0) {
+            return;
+        }
+        out.writeInt(count);
+        for (int from = 0; from < count; from += IO_CHUNK) {
+            int n = Math.min(IO_CHUNK, count - from);
+            buffer.clear();
+            buffer.asLongBuffer().put(runTimestamps, from, n);
+            out.write(buffer.array(), 0, n * Long.BYTES);
+        }
+        for (int from = 0; from < count; from += IO_CHUNK) {
+            int n = Math.min(IO_CHUNK, count - from);
+            buffer.clear();
+            buffer.asDoubleBuffer().put(runValues, from, n);
+            out.write(buffer.array(), 0, n * Double.BYTES);
+        }
+    }
+
+    /**
+     * Reads the samples and rollups of a series that was written with {@link #writeTo(DataOutputStream)}
+     * into this (empty) series. The record type is read by the caller first, to make the series with the right options.
+     * All runs are read into the head, and then the settled samples are sealed again.
+     * Stored rollup tiers that the current policy still has are kept, other tiers are rebuilt from the raw samples.
+     *
+     * @param in stream to read from, positioned after the record type
+     * @throws IOException if reading fails
+     */
+    void readFrom(DataInputStream in) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(IO_CHUNK * Long.BYTES);
+        for (int count = in.readInt(); count > 0; count = in.readInt()) {
+            ensureCapacity(size + count);
+            for (int from = 0; from < count; from += IO_CHUNK) {
+                int n = Math.min(IO_CHUNK, count - from);
+                in.readFully(buffer.array(), 0, n * Long.BYTES);
+                buffer.clear();
+                buffer.asLongBuffer().get(timestamps, size + from, n);
+            }
+            for (int from = 0; from < count; from += IO_CHUNK) {
+                int n = Math.min(IO_CHUNK, count - from);
+                in.readFully(buffer.array(), 0, n * Double.BYTES);
+                buffer.clear();
+                buffer.asDoubleBuffer().get(values, size + from, n);
+            }
+            size += count;
+        }
+        if (size > CHUNK_SIZE) {
+            sealSettledSamples();
+        }
+
+        boolean[] loaded = new boolean[rollups.length];
+        int storedTiers = in.readInt();
+        for (int i = 0; i < storedTiers; i++) {
+            long resolution = in.readLong();
+            int tier = 0;
+            while (tier < rollups.length && rollups[tier].getResolution() != resolution) {
+                tier++;
+            }
+            if (tier < rollups.length && !loaded[tier]) {
+                rollups[tier].readBuckets(in);
+                loaded[tier] = true;
+            } else {
+                RollupSeries.skip(in);
+            }
+        }
+        for (int tier = 0; tier < rollups.length; tier++) {
+            if (!loaded[tier]) {
+                for (Cursor cursor = cursor(Long.MIN_VALUE, Long.MAX_VALUE); cursor.hasSample(); cursor.advance()) {
+                    rollups[tier].add(cursor.timestamp(), cursor.value());
+                }
+            }
+        }
+    }
+
+    /**
+     * Approximate heap usage of this series: object headers, the sealed chunks plus the (partly unused) head arrays
+     *
+     * @return estimated size in bytes
+     */
+    long estimateBytes() {
+        long bytes = 56 + 16 + 16 + (long) timestamps.length * Long.BYTES + (long) values.length * Double.BYTES;
+        if (lateTimestamps != null) {
+            bytes += 16 + 16 + REORDER_CAPACITY * (Long.BYTES + Double.BYTES);
+        }
+        bytes += 24 + 16 + (long) chunks.size() * 4; //the chunk list
+        for (SealedChunk chunk : chunks) {
+            bytes += chunk.estimateBytes();
+        }
+        for (RollupSeries rollup : rollups) {
+            bytes += rollup.estimateBytes();
+        }
+        return bytes;
+    }
+}
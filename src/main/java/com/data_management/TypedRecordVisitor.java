@@ -0,0 +1,21 @@
+package com.data_management;
+
+/**
+ * Callback for streaming over the records of all record types of a patient, like {@link RecordVisitor},
+ * but with the code of the record type instead of its name, so the visitor can dispatch on it with an array lookup.
+ *
+ * @see DataStorage#forEachTypedRecord(int, long, long, TypedRecordVisitor)
+ * @see RecordTypeRegistry
+ */
+@FunctionalInterface
+public interface TypedRecordVisitor {
+    /**
+     * Called once for every record in the queried range, sorted on timestamp.
+     * It's called while the patient is locked for reading, so it shouldn't add data to the storage.
+     *
+     * @param recordTypeCode code of the type of the record
+     * @param timestamp      time of the record, in milliseconds since UNIX epoch
+     * @param value          measurement value of the record
+     */
+    void visit(int recordTypeCode, long timestamp, double value);
+}
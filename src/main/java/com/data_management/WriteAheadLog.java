@@ -0,0 +1,216 @@
+package com.data_management;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * One segment of the append-only binary write-ahead log of a {@link DataStorage}.
+ *
+ * <p>A segment starts with a header (magic number and version), followed by entries:
+ * <ul>
+ *     <li>a record type definition: byte 1, short type code, the type name (short length + UTF-8 bytes)</li>
+ *     <li>a sample: byte 2, int patient ID, short type code, long timestamp, double value (23 bytes)</li>
+ * </ul>
+ * Type codes are only valid within their segment, so a segment can be replayed on its own.
+ * A type can be defined more than once in a segment, always with the same code.
+ *
+ * <p>Appending only copies the entry into a buffer. The buffers are written to the file and forced to disk
+ * by {@link #flush()}, which the owner calls periodically, so one disk sync commits a whole group of samples.
+ * A crash loses at most the samples appended since the last flush.
+ *
+ * <p>Samples are appended while their patient is locked for writing, so there is no lock shared by all patients
+ * on the way into the log: the patients are spread over stripes, which each have their own buffer and lock.
+ * The samples of a patient stay in order, since they all go through the same stripe, and a stripe defines
+ * a type before its first sample of that type. Only the bytes of a full buffer and {@link #flush()} take
+ * the lock of the file.
+ */
+class WriteAheadLog implements AutoCloseable {
+    static final int MAGIC = 0x57414C31; //"WAL1"
+    static final short VERSION = 1;
+    private static final byte TYPE_ENTRY = 1;
+    private static final byte SAMPLE_ENTRY = 2;
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final int STRIPE_BITS = 4;
+    private static final int STRIPES = 1 << STRIPE_BITS;
+    private static final int STRIPE_BUFFER_SIZE = 1 << 14;
+
+    /**
+     * The buffer of the patients that hash onto it, guarded by itself
+     */
+    private static final class Stripe {
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(STRIPE_BUFFER_SIZE);
+        private boolean[] defined = new boolean[0]; //per RecordTypeRegistry code, if this stripe defined the type
+    }
+
+    private final FileChannel channel; //writes to it are guarded by the channel
+    private final Stripe[] stripes = new Stripe[STRIPES];
+    private volatile boolean closed;
+
+    /**
+     * Creates a new, empty segment
+     *
+     * @param file the segment file, must not exist yet
+     * @throws IOException if the file can't be created
+     */
+    WriteAheadLog(Path file) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        ByteBuffer header = ByteBuffer.allocate(6).putInt(MAGIC).putShort(VERSION);
+        header.flip();
+        write(header);
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe();
+        }
+    }
+
+    /**
+     * Appends a sample to the buffer of the patient's stripe. If the buffer is full it is written to the file first
+     * (without a sync). Must be called while the patient is locked for writing, so its samples stay in order.
+     *
+     * @return false if the segment is already closed, so the sample should go to the next segment
+     * @throws IOException if writing the buffer fails
+     */
+    boolean append(int patientId, int recordType, long timestamp, double value) throws IOException {
+        Stripe stripe = stripes[(patientId * 0x9E3779B9) >>> (32 - STRIPE_BITS)]; //Fibonacci hashing
+        synchronized (stripe) {
+            if (closed) {
+                return false;
+            }
+            if (recordType >= stripe.defined.length) {
+                stripe.defined = Arrays.copyOf(stripe.defined, Math.max(recordType + 1, RecordTypeRegistry.size()));
+            }
+            //the registry codes only hold within this JVM, which is also the lifetime of the segment, so they are
+            //the codes of the segment, and the segment defines them by name
+            if (!stripe.defined[recordType]) {
+                stripe.defined[recordType] = true;
+                byte[] name = RecordTypeRegistry.nameOf(recordType).getBytes(StandardCharsets.UTF_8);
+                ensureRoom(stripe, 1 + 2 + 2 + name.length);
+                stripe.buffer.put(TYPE_ENTRY).putShort((short) recordType).putShort((short) name.length).put(name);
+            }
+            ensureRoom(stripe, 23);
+            stripe.buffer.put(SAMPLE_ENTRY).putInt(patientId).putShort((short) recordType).putLong(timestamp)
+                    .putDouble(value);
+            return true;
+        }
+    }
+
+    private void ensureRoom(Stripe stripe, int bytes) throws IOException {
+        if (stripe.buffer.remaining() < bytes) {
+            writeBuffer(stripe);
+        }
+    }
+
+    /**
+     * Writes the buffer of a stripe to the file. The caller holds the lock of the stripe.
+     */
+    private void writeBuffer(Stripe stripe) throws IOException {
+        stripe.buffer.flip();
+        write(stripe.buffer);
+        stripe.buffer.clear();
+    }
+
+    private void write(ByteBuffer bytes) throws IOException {
+        synchronized (channel) { //the entries of one buffer must not be split by those of another
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+        }
+    }
+
+    /**
+     * Group commit: writes everything appended so far to the file and forces it to disk
+     *
+     * @throws IOException if writing or syncing fails
+     */
+    synchronized void flush() throws IOException {
+        if (closed) {
+            return;
+        }
+        writeBuffers();
+        channel.force(false);
+    }
+
+    private void writeBuffers() throws IOException {
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                writeBuffer(stripe);
+            }
+        }
+    }
+
+    /**
+     * Writes and syncs everything appended so far and closes the file. An append that comes after this has
+     * set the closed flag returns false; one that came before is in a stripe that is only written after it.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        writeBuffers();
+        channel.force(false);
+        channel.close();
+    }
+
+    /**
+     * Replays all samples of a segment into the storage, in the order they were appended.
+     * A torn entry at the end of the segment (from a crash during a write) is ignored.
+     *
+     * @param file    the segment file
+     * @param storage the storage to add the samples to
+     * @return the number of replayed samples
+     * @throws IOException if the file can't be read, isn't a log segment or is corrupt before its last entry
+     */
+    static long replay(Path file, DataStorage storage) throws IOException {
+        long samples = 0;
+        long offset = 6; //of the entry that is read, after the header
+        Map<Short, Integer> types = new HashMap<>();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), BUFFER_SIZE))) {
+            if (in.readInt() != MAGIC || in.readShort() != VERSION) {
+                throw new IOException("not a write-ahead log segment: " + file);
+            }
+            while (true) {
+                int kind = in.read();
+                if (kind == -1) {
+                    break;
+                } else if (kind == TYPE_ENTRY) {
+                    short code = in.readShort();
+                    byte[] name = new byte[in.readShort()];
+                    in.readFully(name);
+                    types.put(code, RecordTypeRegistry.register(new String(name, StandardCharsets.UTF_8)));
+                    offset += 1 + 2 + 2 + name.length;
+                } else if (kind == SAMPLE_ENTRY) {
+                    int patientId = in.readInt();
+                    short code = in.readShort();
+                    long timestamp = in.readLong();
+                    double value = in.readDouble();
+                    Integer recordType = types.get(code);
+                    if (recordType == null) {
+                        throw new IOException("corrupt write-ahead log segment " + file + ": the sample at offset "
+                                + offset + " has type code " + code + ", which isn't defined before it");
+                    }
+                    storage.addPatientData(patientId, value, recordType, timestamp);
+                    samples++;
+                    offset += 23;
+                } else {
+                    throw new IOException("corrupt write-ahead log segment " + file + ": unknown entry " + kind
+                            + " at offset " + offset + ", after " + samples + " samples");
+                }
+            }
+        } catch (EOFException e) {
+            //the last entry was only partly written before a crash, everything before it is replayed
+        }
+        return samples;
+    }
+}
@@ -0,0 +1,121 @@
+package com.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A bounded lock-free queue for multiple producers and multiple consumers (Vyukov's array queue).
+ * Every slot has a sequence number that says whether the slot is free for the offer at a position or holds the
+ * element for the poll at a position. Offering and polling claim a position with one compare-and-set on the tail
+ * or head, so threads never block each other, and a full or empty queue is noticed without locking.
+ *
+ * <p>The capacity is rounded up to a power of two. Null elements are not allowed.
+ *
+ * @param <E> type of the elements
+ */
+public final class BoundedMpmcQueue<E> {
+    private final AtomicReferenceArray<E> elements;
+    private final AtomicLongArray sequences;
+    private final int mask;
+    private final AtomicLong head = new AtomicLong(); //position of the next poll
+    private final AtomicLong tail = new AtomicLong(); //position of the next offer
+
+    /**
+     * @param capacity the minimum number of elements the queue can hold
+     */
+    public BoundedMpmcQueue(int capacity) {
+        if (capacity < 1 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("capacity out of range: " + capacity);
+        }
+        int size = 1;
+        while (size < capacity) {
+            size <<= 1;
+        }
+        elements = new AtomicReferenceArray<>(size);
+        sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+        mask = size - 1;
+    }
+
+    /**
+     * Adds an element at the tail, if there is room
+     *
+     * @param element the element, not null
+     * @return false if the queue is full
+     */
+    public boolean offer(E element) {
+        if (element == null) {
+            throw new NullPointerException("null elements are not allowed");
+        }
+        long position = tail.get();
+        while (true) {
+            int index = (int) position & mask;
+            long difference = sequences.getAcquire(index) - position;
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    elements.setRelease(index, element);
+                    sequences.setRelease(index, position + 1); //publishes the element to the poll at this position
+                    return true;
+                }
+                position = tail.get();
+            } else if (difference < 0) {
+                return false; //the slot still holds the element of the previous round
+            } else {
+                position = tail.get(); //another producer took this position
+            }
+        }
+    }
+
+    /**
+     * Removes the element at the head
+     *
+     * @return the element, or null if the queue is empty
+     */
+    public E poll() {
+        long position = head.get();
+        while (true) {
+            int index = (int) position & mask;
+            long difference = sequences.getAcquire(index) - (position + 1);
+            if (difference == 0) {
+                if (head.compareAndSet(position, position + 1)) {
+                    E element = elements.getAcquire(index);
+                    elements.setRelease(index, null);
+                    sequences.setRelease(index, position + mask + 1); //frees the slot for the next round
+                    return element;
+                }
+                position = head.get();
+            } else if (difference < 0) {
+                return null; //the element of this position isn't offered yet
+            } else {
+                position = head.get(); //another consumer took this position
+            }
+        }
+    }
+
+    /**
+     * @return the number of elements, which may already be outdated when there are other threads
+     */
+    public int size() {
+        while (true) {
+            long currentHead = head.get();
+            long currentTail = tail.get();
+            if (head.get() == currentHead) {
+                return (int) Math.max(0, Math.min(currentTail - currentHead, capacity()));
+            }
+        }
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * @return the number of elements the queue can hold
+     */
+    public int capacity() {
+        return mask + 1;
+    }
+}
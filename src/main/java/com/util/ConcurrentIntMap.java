@@ -0,0 +1,282 @@
+package com.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * A concurrent map from primitive int keys to values, e.g. from patient ID to patient, so lookups don't box the key.
+ * Keys and values are kept in two parallel arrays with open addressing and linear probing, so a lookup is
+ * a hash and usually one or two neighbouring slots, and any int is a valid key (IDs don't have to be dense).
+ *
+ * <p>Reads never lock. Writes are serialized by a lock, and when the table is more than half full it is copied
+ * into a table twice the size, which is then published. Entries can't be removed, which keeps the lock-free
+ * reads simple: a slot that is taken stays taken. Null values are not allowed.
+ *
+ * @param <V> type of the values
+ */
+public final class ConcurrentIntMap<V> {
+    private static final int MIN_CAPACITY = 16;
+
+    /**
+     * One table, a new one replaces it when it is full. A slot is empty as long as its value is null,
+     * the key is written before the value is published (with release semantics), so a reader that sees the value
+     * (with acquire semantics) also sees the key.
+     */
+    private static final class Table<V> {
+        final int[] keys;
+        final AtomicReferenceArray<V> values;
+        final int mask;
+
+        Table(int capacity) {
+            keys = new int[capacity];
+            values = new AtomicReferenceArray<>(capacity);
+            mask = capacity - 1;
+        }
+    }
+
+    private volatile Table<V> table;
+    private int size; //only changed while holding the lock
+    private volatile int publishedSize;
+
+    public ConcurrentIntMap() {
+        this(MIN_CAPACITY / 2);
+    }
+
+    /**
+     * Constructs a map that can hold the expected number of entries without growing
+     *
+     * @param expectedSize the expected number of entries
+     */
+    public ConcurrentIntMap(int expectedSize) {
+        int capacity = MIN_CAPACITY;
+        while (capacity < expectedSize * 2L) {
+            capacity <<= 1;
+        }
+        table = new Table<>(capacity);
+    }
+
+    /**
+     * Spreads the bits of the key (Fibonacci hashing), so sequential and clustered IDs land far apart
+     */
+    private static int slot(int key, int mask) {
+        int hash = key * 0x9E3779B9;
+        return (hash ^ (hash >>> 16)) & mask;
+    }
+
+    /**
+     * @param key the key
+     * @return the value of the key, or null if the key isn't in the map
+     */
+    public V get(int key) {
+        Table<V> current = table;
+        for (int i = slot(key, current.mask); ; i = (i + 1) & current.mask) {
+            V value = current.values.getAcquire(i);
+            if (value == null) {
+                return null;
+            }
+            if (current.keys[i] == key) {
+                return value;
+            }
+        }
+    }
+
+    /**
+     * Gets the value of a key, and adds a new value made by the factory if the key isn't in the map yet.
+     * The factory is called at most once per key, while holding the lock, so it should be cheap.
+     *
+     * @param key     the key
+     * @param factory makes the value for the key
+     * @return the value of the key
+     */
+    public V computeIfAbsent(int key, IntFunction<? extends V> factory) {
+        V value = get(key);
+        if (value != null) {
+            return value;
+        }
+        synchronized (this) {
+            value = get(key);
+            if (value == null) {
+                value = factory.apply(key);
+                insert(key, value);
+            }
+            return value;
+        }
+    }
+
+    /**
+     * Sets the value of a key
+     *
+     * @param key   the key
+     * @param value the new value, not null
+     * @return the previous value of the key, or null if there was none
+     */
+    public synchronized V put(int key, V value) {
+        if (value == null) {
+            throw new NullPointerException("null values are not allowed");
+        }
+        Table<V> current = table;
+        for (int i = slot(key, current.mask); ; i = (i + 1) & current.mask) {
+            V old = current.values.get(i);
+            if (old == null) {
+                break;
+            }
+            if (current.keys[i] == key) {
+                current.values.setRelease(i, value);
+                return old;
+            }
+        }
+        insert(key, value);
+        return null;
+    }
+
+    /**
+     * Adds a key that isn't in the map yet, must be called while holding the lock
+     */
+    private void insert(int key, V value) {
+        if ((size + 1) * 2 > table.keys.length) {
+            grow();
+        }
+        store(table, key, value);
+        size++;
+        publishedSize = size;
+    }
+
+    private static <V> void store(Table<V> target, int key, V value) {
+        int i = slot(key, target.mask);
+        while (target.values.get(i) != null) {
+            i = (i + 1) & target.mask;
+        }
+        target.keys[i] = key;
+        target.values.setRelease(i, value);
+    }
+
+    /**
+     * Copies all entries into a table of twice the size and publishes it. Readers still on the old table see the
+     * same entries there, and the old table isn't changed anymore.
+     */
+    private void grow() {
+        Table<V> old = table;
+        Table<V> bigger = new Table<>(old.keys.length * 2);
+        for (int i = 0; i < old.keys.length; i++) {
+            V value = old.values.get(i);
+            if (value != null) {
+                store(bigger, old.keys[i], value);
+            }
+        }
+        table = bigger;
+    }
+
+    /**
+     * @return the number of entries
+     */
+    public int size() {
+        return publishedSize;
+    }
+
+    public boolean isEmpty() {
+        return publishedSize == 0;
+    }
+
+    /**
+     * Runs an action for every value. Values that are added meanwhile might not be visited.
+     *
+     * @param action called for every value
+     */
+    public void forEachValue(Consumer<? super V> action) {
+        Table<V> current = table;
+        for (int i = 0; i < current.keys.length; i++) {
+            V value = current.values.getAcquire(i);
+            if (value != null) {
+                action.accept(value);
+            }
+        }
+    }
+
+    /**
+     * @return a new list with all values
+     */
+    public List<V> values() {
+        List<V> values = new ArrayList<>(size());
+        forEachValue(values::add);
+        return values;
+    }
+
+    /**
+     * Makes a stream over the values. A parallel stream splits the table into ranges of slots,
+     * which are processed by fork/join tasks, without copying the values first.
+     *
+     * @param parallel true for a parallel stream
+     * @return the stream
+     */
+    public Stream<V> valueStream(boolean parallel) {
+        Table<V> current = table;
+        return StreamSupport.stream(new ValueSpliterator<>(current, 0, current.keys.length), parallel);
+    }
+
+    /**
+     * Walks over a range of slots of one table, and splits in halves for parallel streams
+     */
+    private static final class ValueSpliterator<V> implements Spliterator<V> {
+        private static final int MIN_SPLIT = 64; //slots
+
+        private final Table<V> table;
+        private int index;
+        private final int end;
+
+        ValueSpliterator(Table<V> table, int from, int end) {
+            this.table = table;
+            this.index = from;
+            this.end = end;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super V> action) {
+            while (index < end) {
+                V value = table.values.getAcquire(index++);
+                if (value != null) {
+                    action.accept(value);
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public void forEachRemaining(Consumer<? super V> action) {
+            for (; index < end; index++) {
+                V value = table.values.getAcquire(index);
+                if (value != null) {
+                    action.accept(value);
+                }
+            }
+        }
+
+        @Override
+        public Spliterator<V> trySplit() {
+            int remaining = end - index;
+            if (remaining < MIN_SPLIT) {
+                return null;
+            }
+            int middle = index + remaining / 2;
+            ValueSpliterator<V> prefix = new ValueSpliterator<>(table, index, middle);
+            index = middle;
+            return prefix;
+        }
+
+        @Override
+        public long estimateSize() {
+            return end - index;
+        }
+
+        @Override
+        public int characteristics() {
+            return NONNULL | CONCURRENT;
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.util;
+
+/**
+ * A window of the last n doubles, e.g. the last samples of a signal. The values are kept in a primitive array
+ * that is used as a ring, so adding a value doesn't box it or allocate, and when the window is full the
+ * new value overwrites the oldest one. The sum of the window is kept up to date, for moving averages.
+ *
+ * <p>Not thread safe.
+ */
+public final class DoubleRingBuffer {
+    private final double[] values;
+    private int head; //index of the oldest value
+    private int size;
+    private double sum;
+
+    /**
+     * @param capacity the number of values in a full window
+     */
+    public DoubleRingBuffer(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be positive, got " + capacity);
+        }
+        values = new double[capacity];
+    }
+
+    /**
+     * Adds a value as the newest, and removes the oldest if the window is full
+     *
+     * @param value the value
+     * @return the value that was removed, or NaN if the window wasn't full
+     */
+    public double add(double value) {
+        double removed = Double.NaN;
+        int tail = head + size;
+        if (tail >= values.length) {
+            tail -= values.length;
+        }
+        if (size == values.length) {
+            removed = values[head];
+            sum -= removed;
+            head = head + 1 == values.length ? 0 : head + 1;
+        } else {
+            size++;
+        }
+        values[tail] = value;
+        sum += value;
+        return removed;
+    }
+
+    /**
+     * @param index 0 for the oldest value, size() - 1 for the newest
+     * @return the value at that position in the window
+     */
+    public double get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("index " + index + " for size " + size);
+        }
+        int i = head + index;
+        return values[i >= values.length ? i - values.length : i];
+    }
+
+    public double sum() {
+        return sum;
+    }
+
+    /**
+     * @return the mean of the values in the window, or NaN if it is empty
+     */
+    public double average() {
+        return size == 0 ? Double.NaN : sum / size;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return values.length;
+    }
+
+    public boolean isFull() {
+        return size == values.length;
+    }
+
+    public void clear() {
+        head = 0;
+        size = 0;
+        sum = 0;
+    }
+}
@@ -0,0 +1,162 @@
+package com.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Runs tasks after a delay, for many timers with coarse deadlines (e.g. rechecking alerts after seconds).
+ * Time is divided into ticks, and a wheel of buckets holds the timers by the tick they expire in (modulo the wheel
+ * size), so scheduling and cancelling are O(1) instead of the O(log n) of a heap-ordered scheduler.
+ * A timer that is more than one rotation away counts down the rotations it still has to wait.
+ *
+ * <p>One worker thread advances the wheel every tick and runs the tasks that expired, so tasks should be short.
+ * New timers are handed to the worker through a lock-free queue. Timers fire up to one tick late, never early.
+ */
+public final class HashedTimingWheel implements AutoCloseable {
+
+    /**
+     * A scheduled task, which can be cancelled until it runs
+     */
+    public static final class Timeout {
+        private final Runnable task;
+        private final long deadline; //in nanos, relative to the start of the wheel
+        private long remainingRounds; //only used by the worker
+        private volatile boolean cancelled;
+
+        private Timeout(Runnable task, long deadline) {
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        /**
+         * Makes sure the task doesn't run, if it didn't run yet. The timer is removed from the wheel lazily.
+         */
+        public void cancel() {
+            cancelled = true;
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+    }
+
+    private final long tickNanos;
+    private final List<List<Timeout>> wheel;
+    private final int mask;
+    private final ConcurrentLinkedQueue<Timeout> newTimeouts = new ConcurrentLinkedQueue<>();
+    private final long startTime = System.nanoTime();
+    private final Thread worker;
+    private volatile boolean running = true;
+    private long tick; //the next tick to process, only used by the worker
+
+    /**
+     * Starts the wheel and its worker thread
+     *
+     * @param tickDuration the length of a tick, which is the precision of the timers
+     * @param unit         the unit of the tick duration
+     * @param wheelSize    the number of buckets (rounded up to a power of two), timers up to
+     *                     wheelSize ticks away don't have to count rotations
+     * @param name         the name of the worker thread
+     */
+    public HashedTimingWheel(long tickDuration, TimeUnit unit, int wheelSize, String name) {
+        if (tickDuration <= 0 || wheelSize < 1 || wheelSize > 1 << 30) {
+            throw new IllegalArgumentException("invalid tick duration or wheel size");
+        }
+        this.tickNanos = unit.toNanos(tickDuration);
+        int size = 1;
+        while (size < wheelSize) {
+            size <<= 1;
+        }
+        this.mask = size - 1;
+        this.wheel = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            wheel.add(new ArrayList<>());
+        }
+        worker = new Thread(this::run, name);
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /**
+     * Runs a task once after a delay
+     *
+     * @param task  the task, runs on the worker thread
+     * @param delay the delay
+     * @param unit  the unit of the delay
+     * @return the timer, for cancelling it
+     */
+    public Timeout schedule(Runnable task, long delay, TimeUnit unit) {
+        if (!running) {
+            throw new IllegalStateException("the timing wheel is stopped");
+        }
+        Timeout timeout = new Timeout(task, System.nanoTime() - startTime + unit.toNanos(Math.max(0, delay)));
+        newTimeouts.add(timeout);
+        return timeout;
+    }
+
+    private void run() {
+        while (running) {
+            long tickEnd = (tick + 1) * tickNanos;
+            long sleep = tickEnd - (System.nanoTime() - startTime);
+            if (sleep > 0) {
+                LockSupport.parkNanos(sleep);
+                continue;
+            }
+            addNewTimeouts();
+            expire(wheel.get((int) (tick & mask)));
+            tick++;
+        }
+    }
+
+    /**
+     * Puts the timers that were scheduled since the last tick into their buckets
+     */
+    private void addNewTimeouts() {
+        Timeout timeout;
+        while ((timeout = newTimeouts.poll()) != null) {
+            if (timeout.cancelled) {
+                continue;
+            }
+            //the tick in which the deadline passes, or the current one if it already passed
+            long expiryTick = Math.max(timeout.deadline / tickNanos, tick);
+            timeout.remainingRounds = (expiryTick - tick) / wheel.size();
+            wheel.get((int) (expiryTick & mask)).add(timeout);
+        }
+    }
+
+    /**
+     * Runs the timers of a bucket that are in this rotation, and keeps the others
+     */
+    private void expire(List<Timeout> bucket) {
+        int kept = 0;
+        for (int i = 0; i < bucket.size(); i++) {
+            Timeout timeout = bucket.get(i);
+            if (timeout.cancelled) {
+                continue;
+            }
+            if (timeout.remainingRounds > 0) {
+                timeout.remainingRounds--;
+                bucket.set(kept++, timeout);
+                continue;
+            }
+            try {
+                timeout.task.run();
+            } catch (RuntimeException e) {
+                System.err.println("timer task failed: " + e);
+            }
+        }
+        bucket.subList(kept, bucket.size()).clear();
+    }
+
+    /**
+     * Stops the worker, timers that didn't run yet are dropped
+     */
+    @Override
+    public void close() {
+        running = false;
+        LockSupport.unpark(worker);
+    }
+}
@@ -0,0 +1,92 @@
+package com.util;
+
+/**
+ * The maximum of the values of the last t milliseconds (or any other time unit), e.g. the highest saturation
+ * of the last 10 minutes. It is a monotonic deque: a value is only kept while no newer value is at least as high,
+ * so the values from oldest to newest are decreasing and the maximum is the oldest one that is still in the window.
+ * Every value is added and removed once, so keeping the maximum is O(1) amortized per value,
+ * however many values the window holds.
+ *
+ * <p>Times and values are kept in primitive arrays used as a ring, which only grow when the deque is full.
+ * Times are expected to not go backwards. Not thread safe.
+ */
+public final class SlidingWindowMax {
+    private static final int MIN_CAPACITY = 8;
+
+    private final long windowSize;
+    private long[] times;
+    private double[] values;
+    private int head; //index of the oldest value, the maximum
+    private int size;
+
+    /**
+     * @param windowSize values older than this, compared to the newest time, leave the window
+     */
+    public SlidingWindowMax(long windowSize) {
+        if (windowSize < 0) {
+            throw new IllegalArgumentException("the window size can't be negative, got " + windowSize);
+        }
+        this.windowSize = windowSize;
+        times = new long[MIN_CAPACITY];
+        values = new double[MIN_CAPACITY];
+    }
+
+    /**
+     * Adds the newest value, and removes the values that are now outside the window
+     *
+     * @param time  the time of the value
+     * @param value the value
+     */
+    public void add(long time, double value) {
+        //values that are not higher than the new one can never be the maximum again
+        while (size > 0 && values[index(size - 1)] <= value) {
+            size--;
+        }
+        if (size == times.length) {
+            grow();
+        }
+        int tail = index(size);
+        times[tail] = time;
+        values[tail] = value;
+        size++;
+        //the newest value stays, so this stops before the deque is empty
+        while (time - times[head] > windowSize) {
+            head = index(1);
+            size--;
+        }
+    }
+
+    /**
+     * @return the highest value in the window, or NaN if nothing was added yet
+     */
+    public double max() {
+        return size == 0 ? Double.NaN : values[head];
+    }
+
+    /**
+     * @return the number of values that are kept, at most the number of values in the window
+     */
+    public int size() {
+        return size;
+    }
+
+    public long getWindowSize() {
+        return windowSize;
+    }
+
+    private int index(int offset) {
+        return (head + offset) & (times.length - 1);
+    }
+
+    private void grow() {
+        long[] newTimes = new long[times.length * 2];
+        double[] newValues = new double[values.length * 2];
+        for (int i = 0; i < size; i++) {
+            newTimes[i] = times[index(i)];
+            newValues[i] = values[index(i)];
+        }
+        times = newTimes;
+        values = newValues;
+        head = 0;
+    }
+}
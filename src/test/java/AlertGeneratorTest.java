@@ -1,8 +1,14 @@
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import com.alerts.Alert;
 import com.alerts.AlertGenerator;
+import com.alerts.AlertLanes;
+import com.alerts.AlertSinks.InMemoryAlertSink;
 import com.alerts.AlertStrategies.AlertStrategy;
+import com.alerts.AlertStrategies.ECGStrategy;
 import com.alerts.AlertStrategies.SaturationStrategy;
 import com.alerts.BasisAlert;
 import com.alerts.Decorators.AlertDecorator;
@@ -10,6 +16,10 @@ import com.alerts.Decorators.PriorityAlertDecorator;
 import com.alerts.Decorators.RepeatedAlertDecorator;
 import org.junit.jupiter.api.Test;
 
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.List;
+
 import com.data_management.DataStorage;
 
 public class AlertGeneratorTest {
@@ -59,6 +69,186 @@ public class AlertGeneratorTest {
         assertEquals("1", repeatedAlertDecorator.getPatientId());
     }
 
+    @Test
+    void testSaturationWindow() {
+        SaturationStrategy strategy = new SaturationStrategy();
+        long minute = 60000;
+        assertFalse(strategy.checkAlert(95, 0L));
+        assertFalse(strategy.checkAlert(99, minute));
+        assertFalse(strategy.checkAlert(96, 2 * minute));
+        assertTrue(strategy.checkAlert(93, 3 * minute)); //more than 5 below the 99, which isn't the oldest
+        assertTrue(strategy.checkAlert(91, 4 * minute)); //below 92
+        //the 99 is more than 10 minutes old, the highest left is 96
+        assertFalse(strategy.checkAlert(93, 12 * minute));
+        //all readings before are out of the window
+        assertFalse(strategy.checkAlert(92, 30 * minute));
+    }
+
+    @Test
+    void testECGWindow() {
+        ECGStrategy strategy = new ECGStrategy(3, 20);
+        assertFalse(strategy.checkAlert(0, null));
+        assertFalse(strategy.checkAlert(0, null));
+        assertFalse(strategy.checkAlert(100, null)); //the window isn't full yet
+        assertFalse(strategy.checkAlert(30, null)); //average of 0, 100, 30
+        assertTrue(strategy.checkAlert(0, null)); //average of 100, 30, 0
+        assertFalse(strategy.checkAlert(10, null)); //average of 30, 0, 10
+    }
+
+    @Test
+    void testUnknownRecordType() {
+        DataStorage dataStorage = DataStorage.getInstance();
+        long timestamp = System.currentTimeMillis();
+        dataStorage.addPatientData(71, 5.2, "Cholesterol", timestamp);
+        dataStorage.addPatientData(71, 98, "Saturation", timestamp + 1);
+
+        //a record type without strategies is skipped, and the records after it are still evaluated
+        AlertGenerator alertGenerator = new AlertGenerator(dataStorage);
+        alertGenerator.evaluateData(71);
+        assertEquals(timestamp + 1, dataStorage.getPatientScannedTime(71));
+    }
+
+    /**
+     * evaluates after every record, the trend alert needs the strategies of the patient to remember the earlier records
+     */
+    @Test
+    void testIncrementalEvaluation() {
+        DataStorage dataStorage = new DataStorage();
+        AlertGenerator alertGenerator = new AlertGenerator(dataStorage, true);
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(output, true));
+        try {
+            long timestamp = 1714376789050L;
+            for (double systolic : new double[]{100, 115, 130, 145}) {
+                dataStorage.addPatientData(72, systolic, "SystolicPressure", timestamp++);
+                alertGenerator.evaluateData(72);
+            }
+            alertGenerator.evaluateData(72); //no new records
+        } finally {
+            System.setOut(out);
+        }
+        assertEquals(1, output.toString().split("patientId=72", -1).length - 1);
+        assertEquals(1714376789053L, dataStorage.getPatientScannedTime(72));
+    }
+
+    @Test
+    void testEvaluateOnIngest() {
+        DataStorage dataStorage = new DataStorage();
+        AlertGenerator alertGenerator = new AlertGenerator(dataStorage, true);
+        alertGenerator.subscribe();
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(output, true));
+        try {
+            dataStorage.addPatientData(73, 89, "SystolicPressure", 1714376789050L);
+            //evaluated while adding, without calling evaluateData()
+            assertEquals(1, output.toString().split("patientId=73", -1).length - 1);
+            assertEquals(1714376789050L, dataStorage.getPatientScannedTime(73));
+
+            alertGenerator.unsubscribe();
+            dataStorage.addPatientData(73, 88, "SystolicPressure", 1714376789051L);
+            assertEquals(1, output.toString().split("patientId=73", -1).length - 1);
+        } finally {
+            System.setOut(out);
+        }
+    }
+
+    @Test
+    void testAlertLanes() throws InterruptedException {
+        DataStorage dataStorage = new DataStorage();
+        AlertGenerator alertGenerator = new AlertGenerator(dataStorage, true);
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(output, true));
+        try (AlertLanes lanes = new AlertLanes(alertGenerator, 4)) {
+            lanes.subscribe();
+            long timestamp = 1714376789050L;
+            for (double systolic : new double[]{100, 115, 130, 145}) {
+                for (int id = 101; id <= 120; id++) {
+                    dataStorage.addPatientData(id, systolic, "SystolicPressure", timestamp);
+                }
+                timestamp++;
+            }
+            lanes.awaitSubmitted();
+        } finally {
+            System.setOut(out);
+        }
+        //every patient has its own trend, which needs all its records in order
+        for (int id = 101; id <= 120; id++) {
+            assertEquals(1, output.toString().split("patientId=" + id + ",", -1).length - 1);
+            assertEquals(1714376789053L, dataStorage.getPatientScannedTime(id));
+        }
+    }
+
+    /**
+     * records with the same timestamp as the last evaluated one, or late records of another type,
+     * are still evaluated in incremental mode
+     */
+    @Test
+    void testIncrementalSameTimestampAndLateRecords() {
+        DataStorage dataStorage = new DataStorage();
+        AlertGenerator alertGenerator = new AlertGenerator(dataStorage, true);
+        InMemoryAlertSink sink = new InMemoryAlertSink();
+        alertGenerator.setAlertSink(sink);
+        alertGenerator.subscribe();
+        long timestamp = 1714376789000L;
+
+        dataStorage.addPatientData(1, 110, "SystolicPressure", timestamp);
+        dataStorage.addPatientData(1, 130, "DiastolicPressure", timestamp); //same millisecond, too high
+        assertEquals(1, sink.getAlerts().size());
+
+        dataStorage.addPatientData(1, 115, "SystolicPressure", timestamp + 5000);
+        dataStorage.addPatientData(1, 89, "Saturation", timestamp + 2000); //late, but the first saturation
+        List<Alert> alerts = sink.getAlerts();
+        assertTrue(alerts.size() > 1);
+        assertTrue(alerts.get(alerts.size() - 1).getCondition().contains("Saturation=89.0"));
+    }
+
+    @Test
+    void testSubscribeNeedsIncrementalMode() {
+        AlertGenerator alertGenerator = new AlertGenerator(new DataStorage());
+        assertThrows(IllegalStateException.class, alertGenerator::subscribe);
+    }
+
+    /**
+     * a repeated alert is rechecked every 3 seconds, alerts of the same patient and record type share one recheck,
+     * and the recheck stops when the condition cleared
+     *
+     * @throws InterruptedException if thread.sleep() gets interrupted
+     */
+    @Test
+    void testRepeatedAlertRechecks() throws InterruptedException {
+        DataStorage dataStorage = new DataStorage();
+        AlertGenerator alertGenerator = new AlertGenerator(dataStorage, true);
+        InMemoryAlertSink sink = new InMemoryAlertSink();
+        alertGenerator.setAlertSink(sink);
+        alertGenerator.subscribe();
+        long timestamp = System.currentTimeMillis();
+        //patient 1 stays low
+        dataStorage.addPatientData(1, 89, "Saturation", timestamp);
+        dataStorage.addPatientData(1, 88, "Saturation", timestamp + 1000);
+        //patient 2 recovers before the recheck
+        dataStorage.addPatientData(2, 89, "Saturation", timestamp);
+        dataStorage.addPatientData(2, 99, "Saturation", timestamp + 1000);
+        assertEquals(2, countRepeated(sink, "1"));
+        assertEquals(1, countRepeated(sink, "2"));
+
+        Thread.sleep(3500);
+        assertEquals(3, countRepeated(sink, "1")); //one recheck for both alerts
+        assertEquals(1, countRepeated(sink, "2"));
+    }
+
+    private static int countRepeated(InMemoryAlertSink sink, String patientId) {
+        int count = 0;
+        for (Alert alert : sink.getAlerts()) {
+            if (alert instanceof RepeatedAlertDecorator && alert.getPatientId().equals(patientId)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
     /**
      * tests if the alert decorators are triggered correctly(especially if repeated alert triggering logic is correct)
      * to test it, I put in evaluate data that saturation should make and trigger a priority and repeated alert
@@ -0,0 +1,132 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.alerts.Alert;
+import com.alerts.AlertGenerator;
+import com.alerts.AlertSinks.AlertPipeline;
+import com.alerts.AlertSinks.AlertSink;
+import com.alerts.AlertSinks.InMemoryAlertSink;
+import com.alerts.BasisAlert;
+import com.alerts.Decorators.PriorityAlertDecorator;
+import com.data_management.DataStorage;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+public class AlertPipelineTest {
+
+    /**
+     * sink that holds up the delivery thread in its first delivery until it is released, so the queue fills up
+     */
+    private static class BlockingSink extends InMemoryAlertSink {
+        final CountDownLatch entered = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+
+        @Override
+        public void deliver(List<? extends Alert> alerts) {
+            entered.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            super.deliver(alerts);
+        }
+    }
+
+    private static List<String> conditions(List<Alert> alerts) {
+        List<String> conditions = new ArrayList<>();
+        for (Alert alert : alerts) {
+            conditions.add(alert.getCondition());
+        }
+        return conditions;
+    }
+
+    @Test
+    void testDeliversInOrder() throws IOException {
+        InMemoryAlertSink sink = new InMemoryAlertSink();
+        List<String> expected = new ArrayList<>();
+        AlertPipeline pipeline = new AlertPipeline(64, 16, AlertPipeline.Backpressure.BLOCK, sink);
+        for (int i = 0; i < 1000; i++) {
+            pipeline.offer(new BasisAlert("1", "alert " + i, i));
+            expected.add("alert " + i);
+        }
+        pipeline.close();
+        assertEquals(expected, conditions(sink.getAlerts()));
+        assertEquals(1000, pipeline.getDeliveredCount());
+        assertEquals(0, pipeline.getDroppedCount());
+        assertEquals(0, pipeline.getQueueDepth());
+        assertTrue(pipeline.getMaxDeliveryLatencyNanos() >= pipeline.getMeanDeliveryLatencyNanos());
+    }
+
+    @Test
+    void testDropOldest() throws Exception {
+        BlockingSink sink = new BlockingSink();
+        AlertPipeline pipeline = new AlertPipeline(4, 16, AlertPipeline.Backpressure.DROP_OLDEST, sink);
+        pipeline.offer(new BasisAlert("1", "alert 0", 0));
+        sink.entered.await();
+        for (int i = 1; i <= 6; i++) {
+            pipeline.offer(new BasisAlert("1", "alert " + i, i));
+        }
+        assertEquals(4, pipeline.getQueueDepth());
+        assertEquals(2, pipeline.getDroppedCount());
+        sink.release.countDown();
+        pipeline.close();
+        assertEquals(List.of("alert 0", "alert 3", "alert 4", "alert 5", "alert 6"), conditions(sink.getAlerts()));
+    }
+
+    @Test
+    void testShedByPriority() throws Exception {
+        BlockingSink sink = new BlockingSink();
+        AlertPipeline pipeline = new AlertPipeline(8, 16, AlertPipeline.Backpressure.SHED_BY_PRIORITY, sink);
+        pipeline.offer(new BasisAlert("1", "alert 0", 0));
+        sink.entered.await();
+        for (int i = 1; i <= 8; i++) {
+            pipeline.offer(new BasisAlert("1", "alert " + i, i));
+        }
+        //only 3/4 of the queue is used by alerts without priority
+        assertEquals(6, pipeline.getQueueDepth());
+        assertEquals(2, pipeline.getDroppedCount());
+        for (int i = 1; i <= 3; i++) {
+            pipeline.offer(new PriorityAlertDecorator(new BasisAlert("1", "priority " + i, i)));
+        }
+        assertEquals(3, pipeline.getDroppedCount()); //the last one dropped the oldest alert
+        sink.release.countDown();
+        pipeline.close();
+        List<String> delivered = conditions(sink.getAlerts());
+        assertTrue(delivered.containsAll(List.of("priority 1", "priority 2", "priority 3")));
+        assertEquals(9, delivered.size());
+    }
+
+    @Test
+    void testGeneratorDeliversToSink() throws IOException {
+        DataStorage dataStorage = new DataStorage();
+        AlertGenerator alertGenerator = new AlertGenerator(dataStorage, true);
+        InMemoryAlertSink sink = new InMemoryAlertSink();
+        AlertPipeline pipeline = new AlertPipeline(1024, 64, AlertPipeline.Backpressure.BLOCK, sink);
+        alertGenerator.setAlertSink(pipeline);
+        alertGenerator.subscribe();
+        for (int id = 1; id <= 50; id++) {
+            dataStorage.addPatientData(id, 200, "SystolicPressure", 1714376789050L);
+        }
+        pipeline.close();
+        assertEquals(50, sink.getAlerts().size());
+        assertEquals("1", sink.getAlerts().get(0).getPatientId());
+    }
+
+    @Test
+    void testFailingSink() throws IOException {
+        InMemoryAlertSink working = new InMemoryAlertSink();
+        AlertSink failing = alerts -> {
+            throw new IOException("connection refused");
+        };
+        AlertPipeline pipeline = new AlertPipeline(16, 16, AlertPipeline.Backpressure.BLOCK, failing, working);
+        pipeline.offer(new BasisAlert("1", "alert", 1));
+        pipeline.close();
+        assertEquals(1, working.getAlerts().size());
+        assertEquals(1, pipeline.getFailedBatchCount());
+    }
+}
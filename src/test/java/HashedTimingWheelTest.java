@@ -0,0 +1,54 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.util.HashedTimingWheel;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class HashedTimingWheelTest {
+
+    @Test
+    void testRunsInDeadlineOrder() throws InterruptedException {
+        List<Integer> order = new CopyOnWriteArrayList<>();
+        CountDownLatch done = new CountDownLatch(3);
+        try (HashedTimingWheel wheel = new HashedTimingWheel(5, TimeUnit.MILLISECONDS, 8, "test-wheel")) {
+            long start = System.nanoTime();
+            //the last delay is more than one rotation of the wheel (8 * 5ms)
+            wheel.schedule(() -> { order.add(3); done.countDown(); }, 100, TimeUnit.MILLISECONDS);
+            wheel.schedule(() -> { order.add(1); done.countDown(); }, 10, TimeUnit.MILLISECONDS);
+            wheel.schedule(() -> { order.add(2); done.countDown(); }, 30, TimeUnit.MILLISECONDS);
+            assertTrue(done.await(2, TimeUnit.SECONDS));
+            assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(100)); //never early
+        }
+        assertEquals(List.of(1, 2, 3), order);
+    }
+
+    @Test
+    void testCancel() throws InterruptedException {
+        List<String> ran = new CopyOnWriteArrayList<>();
+        CountDownLatch done = new CountDownLatch(1);
+        try (HashedTimingWheel wheel = new HashedTimingWheel(5, TimeUnit.MILLISECONDS, 8, "test-wheel")) {
+            HashedTimingWheel.Timeout cancelled = wheel.schedule(() -> ran.add("cancelled"), 20, TimeUnit.MILLISECONDS);
+            wheel.schedule(() -> { ran.add("kept"); done.countDown(); }, 40, TimeUnit.MILLISECONDS);
+            cancelled.cancel();
+            assertTrue(cancelled.isCancelled());
+            assertTrue(done.await(2, TimeUnit.SECONDS));
+        }
+        assertEquals(List.of("kept"), ran);
+    }
+
+    @Test
+    void testScheduleAfterClose() {
+        HashedTimingWheel wheel = new HashedTimingWheel(5, TimeUnit.MILLISECONDS, 8, "test-wheel");
+        HashedTimingWheel.Timeout timeout = wheel.schedule(() -> { }, 1, TimeUnit.SECONDS);
+        assertFalse(timeout.isCancelled());
+        wheel.close();
+        assertThrows(IllegalStateException.class, () -> wheel.schedule(() -> { }, 1, TimeUnit.SECONDS));
+    }
+}
@@ -0,0 +1,183 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.alerts.Alert;
+import com.alerts.AlertGenerator;
+import com.alerts.AlertSinks.InMemoryAlertSink;
+import com.alerts.AlertStrategies.HeartRateStrategy;
+import com.alerts.AlertStrategies.QrsDetector;
+import com.data_management.DataStorage;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+public class HeartRateStrategyTest {
+    private static final double SAMPLING_RATE = 250;
+
+    /**
+     * makes an ECG with a P wave, QRS complex and T wave per beat, baseline wander and noise
+     *
+     * @param rrIntervals the time between the beats in seconds, the first beat is at 1 second
+     * @return the samples
+     */
+    private static double[] ecg(double[] rrIntervals) {
+        double[] beats = new double[rrIntervals.length + 1];
+        beats[0] = 1;
+        for (int i = 0; i < rrIntervals.length; i++) {
+            beats[i + 1] = beats[i] + rrIntervals[i];
+        }
+        Random random = new Random(7);
+        double[] samples = new double[(int) ((beats[beats.length - 1] + 1) * SAMPLING_RATE)];
+        for (int i = 0; i < samples.length; i++) {
+            double t = i / SAMPLING_RATE;
+            double value = 0.15 * Math.sin(2 * Math.PI * 0.3 * t) + 0.02 * random.nextGaussian();
+            for (double beat : beats) {
+                value += 0.1 * wave(t - beat + 0.16, 0.025) + wave(t - beat, 0.012) + 0.3 * wave(t - beat - 0.25, 0.04);
+            }
+            samples[i] = value;
+        }
+        return samples;
+    }
+
+    private static double wave(double offset, double width) {
+        return Math.exp(-offset * offset / (2 * width * width));
+    }
+
+    private static double[] regular(double bpm, int beats) {
+        double[] rrIntervals = new double[beats];
+        Arrays.fill(rrIntervals, 60 / bpm);
+        return rrIntervals;
+    }
+
+    private static List<String> run(HeartRateStrategy strategy, double[] samples) {
+        List<String> conditions = new ArrayList<>();
+        for (int i = 0; i < samples.length; i++) {
+            if (strategy.checkAlert(samples[i], Math.round(i * 1000 / SAMPLING_RATE))) {
+                conditions.add(strategy.getCondition());
+            }
+        }
+        return conditions;
+    }
+
+    @Test
+    void testFindsEveryBeat() {
+        QrsDetector detector = new QrsDetector(SAMPLING_RATE);
+        double[] samples = ecg(regular(72, 60));
+        int beats = 0;
+        for (int i = 0; i < samples.length; i++) {
+            if (detector.add(samples[i], Math.round(i * 1000 / SAMPLING_RATE))) {
+                beats++;
+                if (detector.getRrInterval() > 0) {
+                    assertEquals(833, detector.getRrInterval(), 15);
+                }
+            }
+        }
+        //the beats in the first 2 seconds are used to learn the levels of the signal
+        assertTrue(beats >= 58 && beats <= 61, "beats: " + beats);
+    }
+
+    @Test
+    void testSlowRecords() {
+        //one record per second isn't an ECG signal the detector can use
+        QrsDetector detector = new QrsDetector(SAMPLING_RATE);
+        Random random = new Random(3);
+        for (int i = 0; i < 600; i++) {
+            assertFalse(detector.add(random.nextGaussian(), i * 1000L));
+        }
+    }
+
+    @Test
+    void testNormalRhythm() {
+        HeartRateStrategy strategy = new HeartRateStrategy();
+        assertEquals(List.of(), run(strategy, ecg(regular(72, 60))));
+        assertEquals(72, strategy.getHeartRate(), 1);
+    }
+
+    @Test
+    void testTachycardiaAndBradycardia() {
+        HeartRateStrategy tachycardia = new HeartRateStrategy();
+        List<String> conditions = run(tachycardia, ecg(regular(130, 60)));
+        assertEquals(1, conditions.size()); //only when it starts
+        assertTrue(conditions.get(0).startsWith("Tachycardia"), conditions.get(0));
+        assertEquals(130, tachycardia.getHeartRate(), 2);
+
+        HeartRateStrategy bradycardia = new HeartRateStrategy();
+        conditions = run(bradycardia, ecg(regular(40, 30)));
+        assertEquals(1, conditions.size());
+        assertTrue(conditions.get(0).startsWith("Bradycardia"), conditions.get(0));
+    }
+
+    @Test
+    void testIrregularRhythm() {
+        double[] rrIntervals = regular(70, 40);
+        rrIntervals[20] = 0.5; //a premature beat
+        rrIntervals[21] = 1.2; //and the pause after it
+        List<String> conditions = run(new HeartRateStrategy(), ecg(rrIntervals));
+        assertFalse(conditions.isEmpty());
+        assertTrue(conditions.get(0).startsWith("IrregularRhythm"), conditions.get(0));
+    }
+
+    /**
+     * storing the drained beats evaluates again, and the beats found then must not overwrite the ones being drained
+     */
+    @Test
+    void testNestedDrain() {
+        double[] samples = ecg(regular(72, 40));
+        HeartRateStrategy reference = new HeartRateStrategy();
+        run(reference, samples);
+        List<Long> expected = new ArrayList<>();
+        reference.drainBeats((time, heartRate) -> expected.add(time));
+
+        HeartRateStrategy strategy = new HeartRateStrategy();
+        int half = samples.length / 2;
+        for (int i = 0; i < half; i++) {
+            strategy.checkAlert(samples[i], Math.round(i * 1000 / SAMPLING_RATE));
+        }
+        List<Long> drained = new ArrayList<>();
+        strategy.drainBeats((time, heartRate) -> {
+            drained.add(time);
+            if (drained.size() == 1) {
+                for (int i = half; i < samples.length; i++) {
+                    strategy.checkAlert(samples[i], Math.round(i * 1000 / SAMPLING_RATE));
+                }
+                strategy.drainBeats((nestedTime, nestedHeartRate) -> drained.add(nestedTime));
+            }
+        });
+        drained.sort(null);
+        assertEquals(expected, drained);
+        assertEquals(0, strategy.getBeatCount());
+    }
+
+    @Test
+    void testHeartRateSeries() {
+        DataStorage dataStorage = new DataStorage();
+        AlertGenerator alertGenerator = new AlertGenerator(dataStorage, true);
+        InMemoryAlertSink sink = new InMemoryAlertSink();
+        alertGenerator.setAlertSink(sink);
+        alertGenerator.subscribe();
+        double[] samples = ecg(regular(130, 40));
+        long start = 1714376789050L;
+        for (int i = 0; i < samples.length; i++) {
+            dataStorage.addPatientData(1, samples[i], "ECG", start + Math.round(i * 1000 / SAMPLING_RATE));
+        }
+
+        List<Double> heartRates = new ArrayList<>();
+        dataStorage.forEachRecord(1, "HeartRate", Long.MIN_VALUE, Long.MAX_VALUE,
+                (timestamp, value) -> heartRates.add(value));
+        assertTrue(heartRates.size() >= 35, "heart rates: " + heartRates.size());
+        assertEquals(130, heartRates.get(heartRates.size() - 1), 2);
+
+        List<String> heartRateAlerts = new ArrayList<>();
+        for (Alert alert : sink.getAlerts()) {
+            if (alert.getCondition().startsWith("HeartRateAlert")) {
+                heartRateAlerts.add(alert.getCondition());
+            }
+        }
+        assertEquals(1, heartRateAlerts.size());
+        assertTrue(heartRateAlerts.get(0).startsWith("HeartRateAlert -> Tachycardia"), heartRateAlerts.get(0));
+    }
+}
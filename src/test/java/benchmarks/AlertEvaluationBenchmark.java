@@ -0,0 +1,65 @@
+package benchmarks;
+
+import com.alerts.AlertGenerator;
+import com.data_management.DataStorage;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.Random;
+
+/**
+ * Measures the cost of {@code AlertGenerator.evaluateData} when it is called after every few new records, with
+ * the strategies prepared from the history on every call and with the incremental mode (strategies per patient).
+ * The history grows during the run, so the first gets slower over time and the second shouldn't.
+ * Alerts are printed, so the output is dropped while measuring.
+ *
+ * <p>Run it with e.g. {@code java -cp target/classes:target/test-classes benchmarks.AlertEvaluationBenchmark}
+ */
+public class AlertEvaluationBenchmark {
+    private static final int PATIENTS = 100;
+    private static final int ROUNDS = 400;
+    private static final String[] LABELS = {"ECG", "Saturation", "SystolicPressure", "DiastolicPressure"};
+    private static final double[] NORMAL_VALUES = {0, 97, 120, 80}; //per label, so there are few alerts
+
+    public static void main(String[] args) {
+        run(false);
+        run(true);
+        run(false);
+        run(true);
+        System.exit(0); //the generators have scheduled rechecks of repeated alerts
+    }
+
+    private static void run(boolean incremental) {
+        DataStorage storage = new DataStorage();
+        AlertGenerator generator = new AlertGenerator(storage, incremental);
+        Random random = new Random(11);
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        long nanos = 0;
+        long lastRoundNanos = 0;
+        long records = 0;
+        try {
+            long time = 1714376789050L;
+            for (int round = 0; round < ROUNDS; round++) {
+                for (int id = 1; id <= PATIENTS; id++) {
+                    for (int label = 0; label < LABELS.length; label++) {
+                        storage.addPatientData(id, NORMAL_VALUES[label] + random.nextGaussian(), LABELS[label], time);
+                        records++;
+                    }
+                }
+                time += 1000;
+                long start = System.nanoTime();
+                for (int id = 1; id <= PATIENTS; id++) {
+                    generator.evaluateData(id);
+                }
+                lastRoundNanos = System.nanoTime() - start;
+                nanos += lastRoundNanos;
+            }
+        } finally {
+            System.setOut(out);
+        }
+        System.out.printf("%-12s %8.0f ns/record on average, %8.0f ns/record in the last round (%d records of history)%n",
+                incremental ? "incremental" : "rescan", (double) nanos / records,
+                (double) lastRoundNanos / (PATIENTS * LABELS.length), records / PATIENTS);
+    }
+}
@@ -0,0 +1,65 @@
+package benchmarks;
+
+import com.alerts.AlertGenerator;
+import com.alerts.AlertLanes;
+import com.data_management.DataStorage;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.Random;
+
+/**
+ * Measures how many records per second {@link AlertLanes} evaluates for 1, 2, 4, ... lanes (up to twice the
+ * number of cores). The records are stored first, then every patient is submitted once and the time until all lanes
+ * are done is measured. Every run uses a new generator, so all records are evaluated again.
+ *
+ * <p>Run it with e.g. {@code java -cp target/classes:target/test-classes benchmarks.AlertLanesBenchmark}
+ */
+public class AlertLanesBenchmark {
+    private static final int PATIENTS = 2000;
+    private static final int RECORDS_PER_TYPE = 250;
+    private static final String[] LABELS = {"ECG", "Saturation", "SystolicPressure", "DiastolicPressure"};
+    private static final double[] NORMAL_VALUES = {0, 97, 120, 80}; //per label, so there are few alerts
+
+    public static void main(String[] args) throws InterruptedException {
+        DataStorage storage = new DataStorage();
+        Random random = new Random(3);
+        for (int id = 1; id <= PATIENTS; id++) {
+            for (int i = 0; i < RECORDS_PER_TYPE; i++) {
+                for (int label = 0; label < LABELS.length; label++) {
+                    storage.addPatientData(id, NORMAL_VALUES[label] + random.nextGaussian(), LABELS[label],
+                            1714376789050L + i * 1000L);
+                }
+            }
+        }
+        long records = (long) PATIENTS * RECORDS_PER_TYPE * LABELS.length;
+        int cores = Runtime.getRuntime().availableProcessors();
+        System.out.printf("cores: %d, records: %,d%n", cores, records);
+
+        PrintStream out = System.out;
+        run(storage, 1, out); //warm-up
+        for (int lanes = 1; lanes <= 2 * cores; lanes *= 2) {
+            double seconds = run(storage, lanes, out);
+            System.out.printf("%2d lanes: %,12.0f records/s%n", lanes, records / seconds);
+        }
+        System.exit(0); //the generators have scheduled rechecks of repeated alerts
+    }
+
+    private static double run(DataStorage storage, int laneCount, PrintStream out) throws InterruptedException {
+        for (int id = 1; id <= PATIENTS; id++) {
+            storage.setPatientScannedTime(id, 0);
+        }
+        AlertGenerator generator = new AlertGenerator(storage, true);
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        try (AlertLanes lanes = new AlertLanes(generator, laneCount)) {
+            long start = System.nanoTime();
+            for (int id = 1; id <= PATIENTS; id++) {
+                lanes.submit(id);
+            }
+            lanes.awaitSubmitted();
+            return (System.nanoTime() - start) / 1e9;
+        } finally {
+            System.setOut(out);
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package benchmarks;
+
+import com.alerts.Alert;
+import com.alerts.AlertGenerator;
+import com.data_management.DataStorage;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Measures the time from storing a record to its alert being triggered, when a poller calls
+ * {@code evaluateData} for all patients every {@value #POLL_MILLIS} ms, and when the generator is subscribed to
+ * the storage and evaluates on ingest. The alerts are printed, so the time of an alert is taken when it's printed.
+ *
+ * <p>Run it with e.g. {@code java -cp target/classes:target/test-classes benchmarks.AlertLatencyBenchmark}
+ */
+public class AlertLatencyBenchmark {
+    private static final int PATIENTS = 500;
+    private static final long POLL_MILLIS = 10;
+    private static final int POLLED_SAMPLES = 300;
+    private static final int PUSHED_SAMPLES = 100_000;
+
+    /**
+     * Drops the output, but remembers when the last alert was printed
+     */
+    private static class AlertClock extends PrintStream {
+        volatile long lastAlert;
+
+        AlertClock() {
+            super(OutputStream.nullOutputStream());
+        }
+
+        @Override
+        public void println(Object x) {
+            if (x instanceof Alert) {
+                lastAlert = System.nanoTime();
+            }
+        }
+    }
+
+    public static void main(String[] args) {
+        PrintStream out = System.out;
+        AlertClock clock = new AlertClock();
+        System.setOut(clock);
+        long[] polled;
+        long[] pushed;
+        try {
+            polled = poll(clock);
+            pushed = push(clock);
+        } finally {
+            System.setOut(out);
+        }
+        print("polling", polled);
+        print("push", pushed);
+        System.exit(0); //the generators have scheduled rechecks of repeated alerts
+    }
+
+    private static DataStorage newStorage() {
+        DataStorage storage = new DataStorage();
+        for (int id = 1; id <= PATIENTS; id++) {
+            storage.addPatientData(id, 120, "SystolicPressure", 1);
+        }
+        return storage;
+    }
+
+    private static long[] poll(AlertClock clock) {
+        DataStorage storage = newStorage();
+        AlertGenerator generator = new AlertGenerator(storage, true);
+        ScheduledExecutorService poller = Executors.newSingleThreadScheduledExecutor();
+        poller.scheduleAtFixedRate(() -> {
+            for (int id = 1; id <= PATIENTS; id++) {
+                generator.evaluateData(id);
+            }
+        }, 0, POLL_MILLIS, TimeUnit.MILLISECONDS);
+        Random random = new Random(5);
+        long[] latencies = new long[POLLED_SAMPLES];
+        for (int i = 0; i < POLLED_SAMPLES; i++) {
+            LockSupport.parkNanos(random.nextInt((int) TimeUnit.MILLISECONDS.toNanos(POLL_MILLIS)));
+            long arrival = System.nanoTime();
+            storage.addPatientData(1 + random.nextInt(PATIENTS), 200, "SystolicPressure", 2 + i);
+            while (clock.lastAlert < arrival) {
+                LockSupport.parkNanos(20_000);
+            }
+            latencies[i] = clock.lastAlert - arrival;
+        }
+        poller.shutdownNow();
+        return latencies;
+    }
+
+    private static long[] push(AlertClock clock) {
+        DataStorage storage = newStorage();
+        AlertGenerator generator = new AlertGenerator(storage, true);
+        generator.subscribe();
+        Random random = new Random(5);
+        long[] latencies = new long[PUSHED_SAMPLES];
+        for (int i = 0; i < PUSHED_SAMPLES; i++) {
+            int id = 1 + random.nextInt(PATIENTS);
+            storage.addPatientData(id, 120, "SystolicPressure", 2 + 2L * i);
+            long arrival = System.nanoTime();
+            storage.addPatientData(id, 200, "SystolicPressure", 3 + 2L * i);
+            latencies[i] = clock.lastAlert - arrival;
+        }
+        return latencies;
+    }
+
+    private static void print(String mode, long[] latencies) {
+        Arrays.sort(latencies);
+        System.out.printf("%-8s ingest to alert: p50 %9.1f us, p99 %9.1f us, max %9.1f us (%d alerts)%n", mode,
+                latencies[latencies.length / 2] / 1000.0, latencies[latencies.length * 99 / 100] / 1000.0,
+                latencies[latencies.length - 1] / 1000.0, latencies.length);
+    }
+}
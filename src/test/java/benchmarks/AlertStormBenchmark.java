@@ -0,0 +1,60 @@
+package benchmarks;
+
+import com.alerts.AlertGenerator;
+import com.alerts.AlertSinks.AlertPipeline;
+import com.alerts.AlertSinks.AlertSink;
+import com.alerts.AlertSinks.FileAlertSink;
+import com.data_management.DataStorage;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Simulates an alert storm (every record of a ward triggers an alert) and measures how long ingest with evaluation
+ * on the ingest thread takes per alert, when alerts are written to a file by the evaluating thread and when they
+ * go through an {@link AlertPipeline} to the same file sink.
+ *
+ * <p>Run it with e.g. {@code java -cp target/classes:target/test-classes benchmarks.AlertStormBenchmark}
+ */
+public class AlertStormBenchmark {
+    private static final int PATIENTS = 1000;
+    private static final int ROUNDS = 100;
+
+    public static void main(String[] args) throws IOException {
+        Path directory = Files.createTempDirectory("alert-storm");
+        for (int run = 0; run < 2; run++) { //the first run is a warm-up
+            Path file = directory.resolve("direct-" + run + ".log");
+            try (FileAlertSink sink = new FileAlertSink(file)) {
+                double nanos = storm(sink);
+                System.out.printf("%-9s %8.0f ns/alert on the ingest thread%n", "direct", nanos);
+            }
+            file = directory.resolve("pipeline-" + run + ".log");
+            AlertPipeline pipeline = new AlertPipeline(1 << 16, 512, AlertPipeline.Backpressure.BLOCK,
+                    new FileAlertSink(file));
+            double nanos = storm(pipeline);
+            pipeline.close();
+            System.out.printf("%-9s %8.0f ns/alert on the ingest thread, delivery latency mean %.0f us, max %.0f us,"
+                            + " %d delivered%n", "pipeline", nanos, pipeline.getMeanDeliveryLatencyNanos() / 1000,
+                    pipeline.getMaxDeliveryLatencyNanos() / 1000.0, pipeline.getDeliveredCount());
+        }
+        System.exit(0); //the generators have scheduled rechecks of repeated alerts
+    }
+
+    /**
+     * @return the time per alert of adding records that all trigger an alert, with evaluation on ingest
+     */
+    private static double storm(AlertSink sink) {
+        DataStorage storage = new DataStorage();
+        AlertGenerator generator = new AlertGenerator(storage, true);
+        generator.setAlertSink(sink);
+        generator.subscribe();
+        long start = System.nanoTime();
+        for (int round = 0; round < ROUNDS; round++) {
+            for (int id = 1; id <= PATIENTS; id++) {
+                storage.addPatientData(id, 200, "SystolicPressure", 1714376789050L + round);
+            }
+        }
+        return (double) (System.nanoTime() - start) / (PATIENTS * ROUNDS);
+    }
+}
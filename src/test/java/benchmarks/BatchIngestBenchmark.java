@@ -0,0 +1,101 @@
+package benchmarks;
+
+import com.data_management.DataStorage;
+import com.data_management.RecordBatch;
+
+/**
+ * Compares adding records one by one with {@code DataStorage.addPatientData} against
+ * {@code DataStorage.addBatch}, for a sorted bulk load (e.g. reading back a file) of a few patients with
+ * high-frequency series, and for a batch where the patients are interleaved like in a live stream.
+ * As a reference it also times copying the same timestamps and values with {@code System.arraycopy}.
+ *
+ * <p>Run it with e.g. {@code java -Xmx2g -cp target/classes:target/test-classes benchmarks.BatchIngestBenchmark}
+ */
+public class BatchIngestBenchmark {
+    private static final int PATIENTS = 10;
+    private static final int SAMPLES_PER_PATIENT = 200_000;
+    private static final int BATCH_SIZE = 65_536;
+    private static final int ROUNDS = 5;
+
+    public static void main(String[] args) {
+        int total = PATIENTS * SAMPLES_PER_PATIENT;
+        int[] ids = new int[total];
+        long[] times = new long[total];
+        double[] values = new double[total];
+        long start = 1714376789050L;
+        for (int i = 0; i < total; i++) {
+            ids[i] = 1 + i / SAMPLES_PER_PATIENT; //sorted on patient, then on time
+            times[i] = start + (i % SAMPLES_PER_PATIENT) * 4L;
+            values[i] = Math.sin(i * 0.01);
+        }
+        System.out.printf("records: %,d%n", total);
+
+        time("memcpy of timestamps and values", () -> {
+            long[] copiedTimes = new long[total];
+            double[] copiedValues = new double[total];
+            System.arraycopy(times, 0, copiedTimes, 0, total);
+            System.arraycopy(values, 0, copiedValues, 0, total);
+            return copiedTimes[total - 1] + copiedValues[total - 1];
+        });
+        time("sorted, addPatientData", () -> {
+            DataStorage storage = new DataStorage();
+            for (int i = 0; i < total; i++) {
+                storage.addPatientData(ids[i], values[i], "ECG", times[i]);
+            }
+            return storage.getAllPatients().size();
+        });
+        time("sorted, addBatch", () -> addInBatches(total, i -> i, ids, times, values));
+        //round-robin over the patients, like the generators send them
+        time("interleaved, addPatientData", () -> {
+            DataStorage storage = new DataStorage();
+            for (int n = 0; n < total; n++) {
+                int i = interleaved(n);
+                storage.addPatientData(ids[i], values[i], "ECG", times[i]);
+            }
+            return storage.getAllPatients().size();
+        });
+        time("interleaved, addBatch", () -> addInBatches(total, BatchIngestBenchmark::interleaved, ids, times, values));
+    }
+
+    private interface Order {
+        int index(int n);
+    }
+
+    private interface Run {
+        double run();
+    }
+
+    private static int interleaved(int n) {
+        return (n % PATIENTS) * SAMPLES_PER_PATIENT + n / PATIENTS;
+    }
+
+    private static double addInBatches(int total, Order order, int[] ids, long[] times, double[] values) {
+        DataStorage storage = new DataStorage();
+        RecordBatch batch = new RecordBatch();
+        for (int n = 0; n < total; n++) {
+            int i = order.index(n);
+            batch.add(ids[i], values[i], "ECG", times[i]);
+            if (batch.size() == BATCH_SIZE) {
+                storage.addBatch(batch);
+                batch.clear();
+            }
+        }
+        storage.addBatch(batch);
+        return storage.getAllPatients().size();
+    }
+
+    private static void time(String name, Run run) {
+        double sink = run.run(); //warm up
+        long best = Long.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; round++) {
+            long begin = System.nanoTime();
+            sink += run.run();
+            best = Math.min(best, System.nanoTime() - begin);
+        }
+        System.out.printf("%-32s %8.2f ms %6.1f ns/record%n", name, best / 1e6,
+                (double) best / (PATIENTS * SAMPLES_PER_PATIENT));
+        if (sink == 42) {
+            System.out.println();
+        }
+    }
+}
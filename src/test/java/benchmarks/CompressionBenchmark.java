@@ -0,0 +1,79 @@
+package benchmarks;
+
+import com.data_management.DataStorage;
+import com.data_management.Patient;
+
+import java.util.Random;
+
+/**
+ * Measures the Gorilla compression of sealed series chunks: bytes per sample with and without compression,
+ * and how fast a compressed history is decoded by a range query.
+ * The data looks like the simulator's: ECG (a sum of sinusoids plus noise) and Saturation
+ * (whole percentages that change by at most 1), both once per second with a few ms of jitter.
+ *
+ * <p>Run it with e.g. {@code java -Xmx2g -cp target/classes:target/test-classes benchmarks.CompressionBenchmark}
+ */
+public class CompressionBenchmark {
+    private static final int SAMPLES = 1_000_000; //per record type
+    private static final int QUERY_RUNS = 5;
+
+    public static void main(String[] args) {
+        for (String type : new String[]{"ECG", "Saturation"}) {
+            DataStorage plain = new DataStorage();
+            DataStorage compressed = new DataStorage();
+            compressed.enableCompression(type);
+            fill(plain, type);
+            fill(compressed, type);
+
+            long plainBytes = bytesOf(plain);
+            long compressedBytes = bytesOf(compressed);
+            System.out.printf("%-10s raw: %5.2f bytes/sample, compressed: %5.2f bytes/sample, ratio %.1fx%n", type,
+                    (double) plainBytes / SAMPLES, (double) compressedBytes / SAMPLES, (double) plainBytes / compressedBytes);
+            System.out.printf("%-10s scan raw: %,6.1f M samples/s, scan compressed: %,6.1f M samples/s%n", type,
+                    scanRate(plain, type), scanRate(compressed, type));
+        }
+    }
+
+    private static void fill(DataStorage storage, String type) {
+        Random random = new Random(1);
+        long time = 1714376789000L;
+        double saturation = 97;
+        for (int i = 0; i < SAMPLES; i++) {
+            time += 1000 + random.nextInt(5) - 2;
+            double value;
+            if (type.equals("ECG")) {
+                double t = time / 1000.0;
+                value = 0.1 * Math.sin(2 * Math.PI * t) + 0.5 * Math.sin(6 * Math.PI * t) + random.nextDouble() * 0.05;
+            } else {
+                saturation = Math.min(Math.max(saturation + random.nextInt(3) - 1, 90), 100);
+                value = saturation;
+            }
+            storage.addPatientData(1, value, type, time);
+        }
+    }
+
+    private static long bytesOf(DataStorage storage) {
+        long bytes = 0;
+        for (Patient patient : storage.getAllPatients()) {
+            bytes += patient.estimateBytes();
+        }
+        return bytes;
+    }
+
+    /**
+     * @return millions of samples per second visited by a full range query, best of a few runs
+     */
+    private static double scanRate(DataStorage storage, String type) {
+        double[] sum = new double[1];
+        long best = Long.MAX_VALUE;
+        for (int run = 0; run < QUERY_RUNS; run++) {
+            long begin = System.nanoTime();
+            storage.forEachRecord(1, type, Long.MIN_VALUE, Long.MAX_VALUE, (timestamp, value) -> sum[0] += value);
+            best = Math.min(best, System.nanoTime() - begin);
+        }
+        if (Double.isNaN(sum[0])) {
+            System.out.println(); //use the sum, so the scan can't be optimized away
+        }
+        return SAMPLES / (best / 1000.0);
+    }
+}
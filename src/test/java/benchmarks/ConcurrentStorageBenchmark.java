@@ -0,0 +1,95 @@
+package benchmarks;
+
+import com.data_management.DataStorage;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Measures {@code DataStorage} throughput with several ingest threads and evaluator threads at the same time.
+ * For every thread count there are that many ingest threads (each writing its own patients, like one socket per ward)
+ * and that many evaluator threads (reading the latest saturation of random patients).
+ * Every thread count is run in memory only, and with the write-ahead log enabled, where every write is also logged.
+ *
+ * <p>Run it with e.g. {@code java -cp target/classes:target/test-classes benchmarks.ConcurrentStorageBenchmark}
+ */
+public class ConcurrentStorageBenchmark {
+    private static final int PATIENTS = 2000;
+    private static final long RUN_MILLIS = 2000;
+
+    public static void main(String[] args) throws InterruptedException, IOException {
+        int cores = Runtime.getRuntime().availableProcessors();
+        System.out.println("cores: " + cores);
+        for (boolean persistent : new boolean[]{false, true}) {
+            System.out.println(persistent ? "with write-ahead log:" : "in memory:");
+            for (int threads = 1; threads <= cores; threads *= 2) {
+                run(threads, persistent);
+            }
+        }
+    }
+
+    private static void run(int threads, boolean persistent) throws InterruptedException, IOException {
+        DataStorage storage = new DataStorage();
+        Path directory = null;
+        if (persistent) {
+            directory = Files.createTempDirectory("concurrent-storage");
+            storage.enablePersistence(directory, 0);
+        }
+        for (int id = 1; id <= PATIENTS; id++) {
+            storage.addPatientData(id, 97, "Saturation", 1);
+        }
+        LongAdder writes = new LongAdder();
+        LongAdder reads = new LongAdder();
+        AtomicBoolean running = new AtomicBoolean(true);
+        CountDownLatch done = new CountDownLatch(threads * 2);
+
+        for (int t = 0; t < threads; t++) {
+            int lane = t;
+            new Thread(() -> {
+                long time = 2;
+                long count = 0;
+                while (running.get()) {
+                    for (int id = 1 + lane; id <= PATIENTS; id += threads) {
+                        storage.addPatientData(id, 90 + (time % 10), "Saturation", time);
+                        count++;
+                    }
+                    time++;
+                }
+                writes.add(count);
+                done.countDown();
+            }).start();
+            new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                long count = 0;
+                while (running.get()) {
+                    storage.getLastRecordOfType(1 + random.nextInt(PATIENTS), "Saturation");
+                    count++;
+                }
+                reads.add(count);
+                done.countDown();
+            }).start();
+        }
+        Thread.sleep(RUN_MILLIS);
+        running.set(false);
+        done.await();
+        if (persistent) {
+            storage.disablePersistence();
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+                for (Path file : files) {
+                    Files.delete(file);
+                }
+            }
+            Files.delete(directory);
+        }
+
+        double seconds = RUN_MILLIS / 1000.0;
+        System.out.printf("%2d ingest + %2d evaluator threads: %,12.0f writes/s %,12.0f reads/s%n",
+                threads, threads, writes.sum() / seconds, reads.sum() / seconds);
+    }
+}
@@ -0,0 +1,63 @@
+package benchmarks;
+
+import com.data_management.DataStorage;
+import com.data_management.FileReader;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Measures the lines and megabytes per second of {@code FileReader}, reading the text files of
+ * {@code FileOutputStrategy} serially and in parallel mode with an increasing number of threads.
+ *
+ * <p>Run it with e.g. {@code java -Xmx4g -cp target/classes:target/test-classes benchmarks.FileReaderBenchmark}
+ */
+public class FileReaderBenchmark {
+    private static final int PATIENTS = 100;
+    private static final int SAMPLES_PER_PATIENT = 10_000; //per record type
+    private static final String[] TYPES = {"ECG", "Saturation", "SystolicPressure", "DiastolicPressure"};
+    private static final int ROUNDS = 3;
+
+    public static void main(String[] args) throws IOException {
+        long start = 1714376789050L;
+        Path dir = Files.createTempDirectory("file-reader");
+        try {
+            for (String type : TYPES) {
+                try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(dir.resolve(type + ".txt")))) {
+                    for (int i = 0; i < SAMPLES_PER_PATIENT; i++) {
+                        for (int id = 1; id <= PATIENTS; id++) {
+                            out.printf("Patient ID: %d, Timestamp: %d, Label: %s, Data: %s%n",
+                                    id, start + i * 1000L, type, 90 + (i + id) % 10);
+                        }
+                    }
+                }
+            }
+            long lines = (long) PATIENTS * SAMPLES_PER_PATIENT * TYPES.length;
+            long bytes = 0;
+            for (String type : TYPES) {
+                bytes += Files.size(dir.resolve(type + ".txt"));
+            }
+            System.out.printf("lines: %,d (%,.1f MB)%n", lines, bytes / 1e6);
+
+            int cores = Math.max(2, Runtime.getRuntime().availableProcessors());
+            for (int threads = 1; threads <= cores; threads *= 2) {
+                long bestNanos = Long.MAX_VALUE;
+                for (int round = 0; round < ROUNDS; round++) {
+                    long begin = System.nanoTime();
+                    new FileReader(dir.toString(), threads).readData(new DataStorage());
+                    bestNanos = Math.min(bestNanos, System.nanoTime() - begin);
+                }
+                double seconds = bestNanos / 1e9;
+                System.out.printf("%2d thread(s): %6.2f s %,12.0f lines/s %8.1f MB/s%n",
+                        threads, seconds, lines / seconds, bytes / 1e6 / seconds);
+            }
+        } finally {
+            for (String type : TYPES) {
+                Files.deleteIfExists(dir.resolve(type + ".txt"));
+            }
+            Files.deleteIfExists(dir);
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package benchmarks;
+
+import com.alerts.AlertStrategies.HeartRateStrategy;
+
+import java.util.Random;
+
+/**
+ * Measures how many ECG samples per second one core runs through {@link HeartRateStrategy} (QRS detection,
+ * heart rate and rhythm alerts), and so how many channels at 250 and 500Hz it can keep up with. Every channel
+ * has its own strategy and they are fed round-robin in blocks of 50ms, like records of many patients arriving,
+ * so the states don't all stay in the cache. The ECG is synthetic, with the heart rate of every channel between
+ * 60 and 100 bpm, and the detected beats are counted to check the detector keeps up with the signal.
+ *
+ * <p>Run it with e.g. {@code java -cp target/classes:target/test-classes benchmarks.HeartRateBenchmark}
+ */
+public class HeartRateBenchmark {
+    private static final int CHANNELS = 500;
+    private static final int SECONDS = 60;
+    private static final int ROUNDS = 4;
+
+    public static void main(String[] args) {
+        for (int samplingRate : new int[]{250, 500}) {
+            double[][] signals = new double[CHANNELS][];
+            double expectedBeats = 0;
+            Random random = new Random(11);
+            for (int channel = 0; channel < CHANNELS; channel++) {
+                double bpm = 60 + 40 * random.nextDouble();
+                signals[channel] = ecg(samplingRate, bpm, random);
+                expectedBeats += bpm * (SECONDS - 2) / 60 - 1; //the detector learns for 2s, the first beat has no rate
+            }
+            int block = samplingRate / 20;
+            for (int round = 0; round < ROUNDS; round++) { //the first rounds are warm-up
+                HeartRateStrategy[] strategies = new HeartRateStrategy[CHANNELS];
+                for (int channel = 0; channel < CHANNELS; channel++) {
+                    strategies[channel] = new HeartRateStrategy(samplingRate, 50, 100, 0.2);
+                }
+                long beats = 0;
+                long start = System.nanoTime();
+                for (int from = 0; from < signals[0].length; from += block) {
+                    for (int channel = 0; channel < CHANNELS; channel++) {
+                        HeartRateStrategy strategy = strategies[channel];
+                        double[] signal = signals[channel];
+                        for (int i = from; i < from + block && i < signal.length; i++) {
+                            strategy.checkAlert(signal[i], i * 1000L / samplingRate);
+                        }
+                        beats += strategy.getBeatCount();
+                        strategy.drainBeats((time, heartRate) -> { });
+                    }
+                }
+                double seconds = (System.nanoTime() - start) / 1e9;
+                double samplesPerSecond = (double) CHANNELS * signals[0].length / seconds;
+                System.out.printf("%dHz: %,12.0f samples/s, %5.0f channels per core, %.1f%% of the beats found%n",
+                        samplingRate, samplesPerSecond, samplesPerSecond / samplingRate,
+                        100.0 * beats / expectedBeats);
+            }
+        }
+    }
+
+    /**
+     * a P wave, QRS complex and T wave per beat, with baseline wander and noise
+     */
+    private static double[] ecg(int samplingRate, double bpm, Random random) {
+        double[] samples = new double[SECONDS * samplingRate];
+        double rr = 60 / bpm;
+        for (int i = 0; i < samples.length; i++) {
+            double t = i / (double) samplingRate;
+            double sinceBeat = t % rr;
+            double value = 0.15 * Math.sin(2 * Math.PI * 0.3 * t) + 0.02 * random.nextGaussian();
+            for (double offset = -rr; offset <= rr; offset += rr) { //the neighbouring beats overlap a bit
+                double x = sinceBeat - offset - rr / 2;
+                value += 0.1 * wave(x + 0.16, 0.025) + wave(x, 0.012) + 0.3 * wave(x - 0.25, 0.04);
+            }
+            samples[i] = value;
+        }
+        return samples;
+    }
+
+    private static double wave(double offset, double width) {
+        return Math.exp(-offset * offset / (2 * width * width));
+    }
+}
@@ -0,0 +1,161 @@
+package benchmarks;
+
+import com.data_management.DataParser;
+import com.data_management.DataStorage;
+
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Compares the single-pass {@code DataParser} with the previous parser (copied below as {@link #legacyParseLine}),
+ * on lines in the format of {@code FileOutputStrategy}: time per line, and bytes allocated per line.
+ * All lines are parsed once before measuring, so the measured rounds only overwrite existing samples
+ * and the storage itself doesn't allocate.
+ *
+ * <p>Run it with e.g. {@code java -cp target/classes:target/test-classes benchmarks.ParserBenchmark}
+ */
+public class ParserBenchmark {
+    private static final int PATIENTS = 2000;
+    private static final int LINES_PER_PATIENT = 500; //10 ms apart, so the samples stay in the head of the series
+    private static final int ROUNDS = 5;
+
+    private interface Parser {
+        void parseAll(DataStorage storage);
+    }
+
+    public static void main(String[] args) {
+        long start = 1714376789050L;
+        Random random = new Random(42);
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < LINES_PER_PATIENT; i++) {
+            for (int id = 1; id <= PATIENTS; id++) {
+                long time = start + i * 10L;
+                switch (id % 4) {
+                    case 0:
+                        lines.add(line(id, time + "L", "ECG", Double.toString(random.nextGaussian() * 0.3)));
+                        break;
+                    case 1:
+                        lines.add(line(id, Long.toString(time), "SystolicPressure", Double.toString(110 + random.nextInt(20))));
+                        break;
+                    case 2:
+                        lines.add(line(id, Long.toString(time), "WhiteBloodCells", Double.toString(4 + random.nextDouble() * 6)));
+                        break;
+                    default:
+                        lines.add(line(id, Long.toString(time), "alert", "triggered"));
+                }
+            }
+        }
+        byte[] buffer = String.join("\n", lines).getBytes(StandardCharsets.US_ASCII);
+        System.out.printf("lines: %,d%n", lines.size());
+
+        run("legacy parseLine(String)", storage -> {
+            for (String line : lines) {
+                legacyParseLine(line, storage);
+            }
+        });
+        run("parseLine(CharSequence)", storage -> {
+            for (String line : lines) {
+                DataParser.parseLine(line, storage);
+            }
+        });
+        run("parseLine(byte[], from, to)", storage -> {
+            int from = 0;
+            for (int i = 0; i <= buffer.length; i++) {
+                if (i == buffer.length || buffer[i] == '\n') {
+                    DataParser.parseLine(buffer, from, i, storage);
+                    from = i + 1;
+                }
+            }
+        });
+    }
+
+    private static String line(int id, String time, String label, String data) {
+        return String.format("Patient ID: %d, Timestamp: %s, Label: %s, Data: %s", id, time, label, data);
+    }
+
+    private static void run(String name, Parser parser) {
+        DataStorage storage = new DataStorage();
+        parser.parseAll(storage); //fills the storage and warms up
+        parser.parseAll(storage);
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        long lines = (long) PATIENTS * LINES_PER_PATIENT;
+        long bestNanos = Long.MAX_VALUE;
+        long allocated = 0;
+        for (int round = 0; round < ROUNDS; round++) {
+            long bytesBefore = threads.getThreadAllocatedBytes(thread);
+            long begin = System.nanoTime();
+            parser.parseAll(storage);
+            bestNanos = Math.min(bestNanos, System.nanoTime() - begin);
+            allocated += threads.getThreadAllocatedBytes(thread) - bytesBefore;
+        }
+        System.out.printf("%-30s %6.1f ns/line %8.1f bytes/line%n", name,
+                (double) bestNanos / lines, (double) allocated / ROUNDS / lines);
+    }
+
+    /**
+     * The parser before it was made single-pass, with its logging of invalid lines left out
+     */
+    static void legacyParseLine(String line, DataStorage dataStorage) {
+        int patientId = -1;
+        double measurementValue = Double.NaN;
+        String recordType = null;
+        long timestamp = -1;
+
+        line = line.trim();
+        line = line.replaceAll("\\s+", "");
+        line = line + ",";
+
+        StringBuilder label = new StringBuilder();
+        StringBuilder value = new StringBuilder();
+        boolean readValue = false;
+
+        for (char nextChar : line.toCharArray()) {
+            if (nextChar == ':') {
+                readValue = true;
+            } else if (nextChar == ',') {
+                if (label.toString().equals("PatientID")) {
+                    try {
+                        patientId = Integer.parseInt(value.toString());
+                    } catch (NumberFormatException e) {
+                        //invalid
+                    }
+                } else if (label.toString().equals("Timestamp")) {
+                    try {
+                        timestamp = Long.parseLong(value.toString().replace("L", ""));
+                    } catch (NumberFormatException e) {
+                        //invalid
+                    }
+                } else if (label.toString().equals("Label")) {
+                    recordType = value.toString();
+                } else if (label.toString().equals("Data")) {
+                    if (value.toString().equals("triggered")) {
+                        measurementValue = 0.0;
+                    } else if (value.toString().equals("resolved")) {
+                        return;
+                    } else {
+                        try {
+                            measurementValue = Double.parseDouble(value.toString());
+                        } catch (NumberFormatException e) {
+                            //invalid
+                        }
+                    }
+                }
+                label.delete(0, label.length());
+                value.delete(0, value.length());
+                readValue = false;
+            } else if (readValue) {
+                value.append(nextChar);
+            } else {
+                label.append(nextChar);
+            }
+        }
+        if (recordType != null && (!Double.isNaN(measurementValue) || recordType.equals("alert"))
+                && patientId > 0 && timestamp > 0) {
+            dataStorage.addPatientData(patientId, measurementValue, recordType, timestamp);
+        }
+    }
+}
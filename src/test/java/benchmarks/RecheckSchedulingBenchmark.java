@@ -0,0 +1,44 @@
+package benchmarks;
+
+import com.util.HashedTimingWheel;
+
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cost of scheduling the rechecks of repeated alerts: a {@link ScheduledThreadPoolExecutor} with
+ * three timers per alert (3, 6 and 9 seconds, how the rechecks used to be scheduled) against a
+ * {@link HashedTimingWheel} with one timer per alert. Both are stopped before the timers are due,
+ * so only scheduling is measured.
+ *
+ * <p>Run it with e.g. {@code java -cp target/classes:target/test-classes benchmarks.RecheckSchedulingBenchmark}
+ */
+public class RecheckSchedulingBenchmark {
+    private static final int ALERTS = 200_000;
+    private static final int ROUNDS = 5;
+
+    public static void main(String[] args) {
+        for (int round = 0; round < ROUNDS; round++) { //the first rounds are warm-up
+            ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1);
+            long start = System.nanoTime();
+            for (int i = 0; i < ALERTS; i++) {
+                for (int delay = 3; delay <= 9; delay += 3) {
+                    executor.schedule(() -> { }, delay, TimeUnit.SECONDS);
+                }
+            }
+            long executorNanos = System.nanoTime() - start;
+            executor.shutdownNow();
+
+            HashedTimingWheel wheel = new HashedTimingWheel(100, TimeUnit.MILLISECONDS, 64, "benchmark-wheel");
+            start = System.nanoTime();
+            for (int i = 0; i < ALERTS; i++) {
+                wheel.schedule(() -> { }, 3, TimeUnit.SECONDS);
+            }
+            long wheelNanos = System.nanoTime() - start;
+            wheel.close();
+
+            System.out.printf("executor: %6.0f ns/alert   wheel: %6.0f ns/alert%n",
+                    (double) executorNanos / ALERTS, (double) wheelNanos / ALERTS);
+        }
+    }
+}
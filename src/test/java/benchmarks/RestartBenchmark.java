@@ -0,0 +1,67 @@
+package benchmarks;
+
+import com.data_management.DataStorage;
+import com.data_management.FileReader;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Compares how long it takes to rebuild a {@code DataStorage} after a restart:
+ * re-parsing the text files of {@code FileOutputStrategy} with {@code FileReader}, against loading
+ * the newest snapshot and replaying the write-ahead log tail.
+ *
+ * <p>Run it with e.g. {@code java -Xmx2g -cp target/classes:target/test-classes benchmarks.RestartBenchmark}
+ */
+public class RestartBenchmark {
+    private static final int PATIENTS = 100;
+    private static final int SAMPLES_PER_PATIENT = 10_000; //per record type
+    private static final int TAIL_PER_PATIENT = 500; //samples per patient logged after the snapshot
+    private static final String[] TYPES = {"ECG", "Saturation"};
+
+    public static void main(String[] args) throws IOException {
+        long start = 1714376789050L;
+        Path textDir = Files.createTempDirectory("restart-text");
+        Path persistentDir = Files.createTempDirectory("restart-wal");
+
+        //the same data in both forms
+        DataStorage storage = new DataStorage();
+        storage.enablePersistence(persistentDir, 0);
+        for (String type : TYPES) {
+            try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(textDir.resolve(type + ".txt")))) {
+                for (int i = 0; i < SAMPLES_PER_PATIENT; i++) {
+                    for (int id = 1; id <= PATIENTS; id++) {
+                        double value = 90 + (i + id) % 10;
+                        long time = start + i * 1000L;
+                        out.printf("Patient ID: %d, Timestamp: %d, Label: %s, Data: %s%n", id, time, type, value);
+                        storage.addPatientData(id, value, type, time);
+                    }
+                    if (i == SAMPLES_PER_PATIENT - TAIL_PER_PATIENT) {
+                        storage.snapshot();
+                    }
+                }
+            }
+        }
+        storage.disablePersistence();
+        long samples = (long) PATIENTS * SAMPLES_PER_PATIENT * TYPES.length;
+        System.out.printf("samples: %,d%n", samples);
+
+        long textMillis = Long.MAX_VALUE;
+        long restoreMillis = Long.MAX_VALUE;
+        for (int run = 0; run < 3; run++) {
+            long begin = System.nanoTime();
+            new FileReader(textDir.toString()).readData(new DataStorage());
+            textMillis = Math.min(textMillis, (System.nanoTime() - begin) / 1_000_000);
+
+            begin = System.nanoTime();
+            DataStorage restored = new DataStorage();
+            restored.enablePersistence(persistentDir, 0);
+            restoreMillis = Math.min(restoreMillis, (System.nanoTime() - begin) / 1_000_000);
+            restored.disablePersistence();
+        }
+        System.out.printf("text re-parse (FileReader):  %,6d ms%n", textMillis);
+        System.out.printf("snapshot + log replay:       %,6d ms%n", restoreMillis);
+    }
+}
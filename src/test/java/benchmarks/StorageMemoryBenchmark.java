@@ -0,0 +1,57 @@
+package benchmarks;
+
+import com.data_management.Patient;
+import com.data_management.PatientRecord;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compares the heap needed for one million samples in the old layout
+ * (one {@code ArrayList<PatientRecord>} per patient) against the columnar {@code Patient} series.
+ *
+ * <p>Run it with e.g. {@code java -Xmx2g -cp target/classes:target/test-classes benchmarks.StorageMemoryBenchmark}
+ */
+public class StorageMemoryBenchmark {
+    private static final int SAMPLES = 1_000_000;
+    private static final String[] TYPES = {"ECG", "Saturation"};
+
+    public static void main(String[] args) {
+        long start = 1714376789050L;
+
+        long before = usedHeap();
+        List<PatientRecord> oldLayout = new ArrayList<>();
+        for (int i = 0; i < SAMPLES; i++) {
+            //new String per record, like the parser does for every parsed line
+            oldLayout.add(new PatientRecord(1, 90 + i % 10, new String(TYPES[i % 2]), start + i / 2 * 1000L));
+        }
+        long oldBytes = usedHeap() - before;
+
+        before = usedHeap();
+        Patient patient = new Patient(1);
+        for (int i = 0; i < SAMPLES; i++) {
+            patient.addRecord(90 + i % 10, new String(TYPES[i % 2]), start + i / 2 * 1000L);
+        }
+        long columnarBytes = usedHeap() - before;
+
+        System.out.printf("samples: %d%n", SAMPLES);
+        System.out.printf("ArrayList<PatientRecord>: %,d bytes (%.1f bytes/sample)%n",
+                oldBytes, (double) oldBytes / SAMPLES);
+        System.out.printf("columnar series (measured): %,d bytes (%.1f bytes/sample)%n",
+                columnarBytes, (double) columnarBytes / SAMPLES);
+        System.out.printf("columnar series (estimated): %,d bytes%n", patient.estimateBytes());
+
+        //keep both layouts reachable until they are measured
+        if (oldLayout.size() + patient.getPatientId() == 0) {
+            System.out.println();
+        }
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,107 @@
+package benchmarks;
+
+import com.alerts.AlertStrategies.ECGStrategy;
+import com.alerts.AlertStrategies.SaturationStrategy;
+
+import java.util.LinkedList;
+import java.util.Queue;
+import java.util.Random;
+
+/**
+ * Measures the cost per record of the windows of {@link ECGStrategy} and {@link SaturationStrategy} for a few
+ * window sizes, against windows kept in {@code LinkedList}s (how the strategies used to keep them, with an exact
+ * maximum added so both compute the same thing). ECG samples come every 4ms (250Hz), saturation every second,
+ * so a 10 minute window holds 600 readings.
+ *
+ * <p>Run it with e.g. {@code java -cp target/classes:target/test-classes benchmarks.StrategyWindowBenchmark}
+ */
+public class StrategyWindowBenchmark {
+    private static final int RECORDS = 500_000;
+    private static final int ROUNDS = 5;
+
+    public static void main(String[] args) {
+        double[] values = new double[RECORDS];
+        Random random = new Random(5);
+        for (int i = 0; i < RECORDS; i++) {
+            values[i] = 96 + 2 * random.nextGaussian();
+        }
+        int[] ecgWindows = {5, 50, 500};
+        long[] saturationWindows = {60_000, 600_000};
+        for (int round = 0; round < ROUNDS; round++) { //the first rounds are warm-up
+            System.out.println("round " + round);
+            for (int window : ecgWindows) {
+                double ring = time(() -> runEcg(new ECGStrategy(window, 30), values));
+                double list = time(() -> runLinkedListEcg(window, values));
+                System.out.printf("  ECG window %7d: ring buffer %6.1f ns/record, linked list %6.1f ns/record%n",
+                        window, ring, list);
+            }
+            for (long window : saturationWindows) {
+                double deque = time(() -> runSaturation(new SaturationStrategy(window, 92, 5), values));
+                double list = time(() -> runLinkedListSaturation(window, values));
+                System.out.printf("  saturation %5ds: monotonic deque %6.1f ns/record, linked list %6.1f ns/record%n",
+                        window / 1000, deque, list);
+            }
+        }
+    }
+
+    private static double time(Runnable run) {
+        long start = System.nanoTime();
+        run.run();
+        return (double) (System.nanoTime() - start) / RECORDS;
+    }
+
+    private static int alerts; //keeps the results alive
+
+    private static void runEcg(ECGStrategy strategy, double[] values) {
+        for (int i = 0; i < values.length; i++) {
+            if (strategy.checkAlert(values[i], (long) i * 4)) {
+                alerts++;
+            }
+        }
+    }
+
+    private static void runSaturation(SaturationStrategy strategy, double[] values) {
+        for (int i = 0; i < values.length; i++) {
+            if (strategy.checkAlert(values[i], (long) i * 1000)) {
+                alerts++;
+            }
+        }
+    }
+
+    private static void runLinkedListEcg(int window, double[] values) {
+        Queue<Double> lastECGs = new LinkedList<>();
+        double sum = 0;
+        for (int i = 0; i < values.length; i++) {
+            boolean full = lastECGs.size() == window;
+            if (full) {
+                sum -= lastECGs.poll();
+            }
+            lastECGs.offer(values[i]);
+            sum += values[i];
+            if (full && Math.abs(values[i] - sum / window) > 30) {
+                alerts++;
+            }
+        }
+    }
+
+    private static void runLinkedListSaturation(long window, double[] values) {
+        Queue<Double> lastSaturations = new LinkedList<>();
+        Queue<Long> lastTimes = new LinkedList<>();
+        for (int i = 0; i < values.length; i++) {
+            long time = (long) i * 1000;
+            lastSaturations.offer(values[i]);
+            lastTimes.offer(time);
+            while (time - lastTimes.peek() > window) {
+                lastTimes.poll();
+                lastSaturations.poll();
+            }
+            double max = Double.NEGATIVE_INFINITY;
+            for (double saturation : lastSaturations) {
+                max = Math.max(max, saturation);
+            }
+            if (values[i] < 92 || max - values[i] > 5) {
+                alerts++;
+            }
+        }
+    }
+}
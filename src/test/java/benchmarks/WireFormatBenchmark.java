@@ -0,0 +1,114 @@
+package benchmarks;
+
+import com.cardio_generator.outputs.BinaryFrameEncoder;
+import com.data_management.BinaryFrameDecoder;
+import com.data_management.DataParser;
+import com.data_management.DataStorage;
+import com.data_management.RecordBatch;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Compares the text lines that {@code WebSocketOutputStrategy} sends with the binary frames of
+ * {@code BinaryFrameEncoder}: bytes per sample on the wire, and CPU time per sample to encode on the simulator side
+ * and to decode into a {@code DataStorage} on the hospital side. The websocket itself is left out.
+ *
+ * <p>Run it with e.g. {@code java -cp target/classes:target/test-classes benchmarks.WireFormatBenchmark}
+ */
+public class WireFormatBenchmark {
+    private static final int PATIENTS = 1000;
+    private static final int SAMPLES = 1_000_000;
+    private static final int SAMPLES_PER_FRAME = 512;
+    private static final String[] LABELS = {"ECG", "Saturation", "SystolicPressure", "WhiteBloodCells"};
+    private static final int ROUNDS = 5;
+
+    public static void main(String[] args) {
+        Random random = new Random(17);
+        int[] ids = new int[SAMPLES];
+        long[] times = new long[SAMPLES];
+        String[] labels = new String[SAMPLES];
+        double[] values = new double[SAMPLES];
+        String[] data = new String[SAMPLES];
+        long start = 1714376789050L;
+        for (int i = 0; i < SAMPLES; i++) {
+            ids[i] = 1 + i % PATIENTS;
+            times[i] = start + i / PATIENTS * 10L;
+            labels[i] = LABELS[i % LABELS.length];
+            values[i] = Math.round(random.nextGaussian() * 1000) / 100.0;
+            data[i] = Double.toString(values[i]); //what the generators output
+        }
+
+        List<String> lines = new ArrayList<>(SAMPLES);
+        List<ByteBuffer> frames = new ArrayList<>();
+        double textEncode = cpuNanos(() -> {
+            lines.clear();
+            for (int i = 0; i < SAMPLES; i++) {
+                lines.add(String.format("Patient ID: %d, Timestamp: %d, Label: %s, Data: %s", ids[i], times[i], labels[i], data[i]));
+            }
+        });
+        double binaryEncode = cpuNanos(() -> {
+            frames.clear();
+            BinaryFrameEncoder encoder = new BinaryFrameEncoder();
+            int known = 0;
+            for (int i = 0; i < SAMPLES; i++) {
+                encoder.add(ids[i], times[i], labels[i], Double.parseDouble(data[i]));
+                if (encoder.getSampleCount() == SAMPLES_PER_FRAME || i == SAMPLES - 1) {
+                    frames.add(encoder.encode(known));
+                    known = encoder.getLabelCount();
+                    encoder.clear();
+                }
+            }
+        });
+        double textDecode = cpuNanos(() -> {
+            DataStorage storage = new DataStorage();
+            for (String line : lines) {
+                DataParser.parseLine(line, storage);
+            }
+        });
+        double binaryDecode = cpuNanos(() -> {
+            DataStorage storage = new DataStorage();
+            BinaryFrameDecoder decoder = new BinaryFrameDecoder();
+            RecordBatch batch = new RecordBatch();
+            for (ByteBuffer frame : frames) {
+                decoder.decode(frame.duplicate(), batch);
+                storage.addBatch(batch);
+                batch.clear();
+            }
+        });
+
+        long textBytes = 0;
+        for (String line : lines) {
+            textBytes += line.getBytes(StandardCharsets.UTF_8).length;
+        }
+        long binaryBytes = 0;
+        for (ByteBuffer frame : frames) {
+            binaryBytes += frame.remaining();
+        }
+        System.out.printf("samples: %,d, %d per frame%n", SAMPLES, SAMPLES_PER_FRAME);
+        System.out.printf("%-8s %6.1f bytes/sample, encode %6.1f ns/sample, decode into storage %6.1f ns/sample%n",
+                "text", (double) textBytes / SAMPLES, textEncode / SAMPLES, textDecode / SAMPLES);
+        System.out.printf("%-8s %6.1f bytes/sample, encode %6.1f ns/sample, decode into storage %6.1f ns/sample%n",
+                "binary", (double) binaryBytes / SAMPLES, binaryEncode / SAMPLES, binaryDecode / SAMPLES);
+    }
+
+    /**
+     * @return the lowest CPU time of the current thread over the rounds, after a warm-up round
+     */
+    private static double cpuNanos(Runnable run) {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        run.run();
+        long best = Long.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; round++) {
+            long begin = threads.getCurrentThreadCpuTime();
+            run.run();
+            best = Math.min(best, threads.getCurrentThreadCpuTime() - begin);
+        }
+        return best;
+    }
+}
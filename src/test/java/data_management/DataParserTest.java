@@ -40,4 +40,70 @@ public class DataParserTest {
 
         Assertions.assertEquals(1, records.size());
     }
+
+    @Test
+    void testParseBytesAndNumberFormats() {
+        DataStorage dataStorage = new DataStorage();
+        byte[] buffer = ("Patient ID: 7, Timestamp: 1714376789049L, Label: ECG, Data: 0.3767555945622643\n"
+                + "Patient ID: 7, Timestamp: 1714376789050, Label: Heart Rate, Data: -1.5e2\n"
+                + "Patient ID: 7, Timestamp: 1714376789051, Label: ECG, Data: 12345678901234567890123\n"
+                + "Patient ID: 7, Timestamp: 1714376789052, Label: alert, Data: triggered\n"
+                + "Patient ID: 7, Timestamp: 1714376789053, Label: Saturation, Data: 96.0%").getBytes();
+        int from = 0;
+        for (int i = 0; i <= buffer.length; i++) {
+            if (i == buffer.length || buffer[i] == '\n') {
+                DataParser.parseLine(buffer, from, i, dataStorage);
+                from = i + 1;
+            }
+        }
+
+        List<PatientRecord> records = dataStorage.getRecords(7, 0, Long.MAX_VALUE);
+        Assertions.assertEquals(4, records.size()); //the percentage is not a valid number
+        Assertions.assertEquals(0.3767555945622643, records.get(0).getMeasurementValue());
+        Assertions.assertEquals("HeartRate", records.get(1).getRecordType());
+        Assertions.assertEquals(-150, records.get(1).getMeasurementValue());
+        Assertions.assertEquals(12345678901234567890123.0, records.get(2).getMeasurementValue());
+        Assertions.assertEquals(0.0, records.get(3).getMeasurementValue());
+        Assertions.assertSame(records.get(0).getRecordType(), records.get(2).getRecordType());
+    }
+
+    @Test
+    void testParseLines() {
+        DataStorage dataStorage = new DataStorage();
+        DataParser.parseLines("Patient ID: 8, Timestamp: 1714376789052, Label: ECG, Data: 0.5\r\n"
+                + "\n"
+                + "Patient ID: 9, Timestamp: 1714376789050, Label: ECG, Data: 0.25\n"
+                + "Patient ID: 8, Timestamp: 1714376789051, Label: ECG, Data: invalid\n"
+                + "Patient ID: 8, Timestamp: 1714376789050, Label: ECG, Data: 0.75\n", dataStorage);
+
+        List<PatientRecord> records = dataStorage.getRecords(8, 0, Long.MAX_VALUE);
+        Assertions.assertEquals(2, records.size());
+        Assertions.assertEquals(0.75, records.get(0).getMeasurementValue());
+        Assertions.assertEquals(0.5, records.get(1).getMeasurementValue());
+        Assertions.assertEquals(0.25, dataStorage.getLastRecordOfType(9, "ECG").getMeasurementValue());
+    }
+
+    @Test
+    void testFieldHelpersMatchParsedLines() {
+        String[][] fields = {
+                {"Heart Rate", "72"}, {"Saturation", "97.0"}, {"Saturation", "97.0%"},
+                {"Alert", "triggered"}, {"Alert", "resolved"}, {"ECG", "abc"}};
+        for (int i = 0; i < fields.length; i++) {
+            String label = fields[i][0];
+            String data = fields[i][1];
+            DataStorage storage = new DataStorage();
+            DataParser.parseLine("Patient ID: 1, Timestamp: " + (1714376789049L + i) + ", Label: " + label + ", Data: " + data, storage);
+            List<PatientRecord> records = storage.getRecords(1, 0, Long.MAX_VALUE);
+
+            int recordType = DataParser.recordTypeOf(label);
+            double value = DataParser.parseData(data);
+            Assertions.assertEquals(records.size() == 1, DataParser.isStored(recordType, data, value), label + ": " + data);
+            if (records.size() == 1) {
+                Assertions.assertEquals(records.get(0).getMeasurementValue(), value);
+            }
+        }
+        Assertions.assertEquals(DataParser.recordTypeOf("HeartRate"), DataParser.recordTypeOf("Heart Rate"));
+        Assertions.assertEquals(0.0, DataParser.parseData("triggered"));
+        Assertions.assertTrue(Double.isNaN(DataParser.parseData("97.0%")));
+    }
 }
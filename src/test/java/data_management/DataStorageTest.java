@@ -3,10 +3,23 @@ package data_management;
 import static org.junit.jupiter.api.Assertions.*;
 import org.junit.jupiter.api.Test;
 
+import com.data_management.Aggregate;
 import com.data_management.DataStorage;
+import com.data_management.IngestListener;
 import com.data_management.PatientRecord;
+import com.data_management.RecordBatch;
+import com.data_management.RecordTypeRegistry;
+import com.data_management.RetentionPolicy;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Random;
 
 class DataStorageTest {
 
@@ -55,6 +68,50 @@ class DataStorageTest {
         assertEquals("WhiteBloodCells", record.getRecordType());
     }
 
+    @Test
+    void testRecordTypeCodes() {
+        DataStorage storage = new DataStorage();
+        int code = RecordTypeRegistry.register("Cholesterol");
+        assertEquals(code, RecordTypeRegistry.register("Cholesterol"));
+        assertEquals("Cholesterol", RecordTypeRegistry.nameOf(code));
+        assertEquals(-1, RecordTypeRegistry.codeOf("NeverAdded"));
+
+        storage.addPatientData(1, 5.2, code, 1714376789050L);
+        storage.addPatientData(1, 5.4, "Cholesterol", 1714376789051L);
+        storage.addPatientData(1, 98, "Saturation", 1714376789052L);
+
+        PatientRecord record = storage.getLastRecordOfType(1, code);
+        assertEquals(5.4, record.getMeasurementValue());
+        assertEquals("Cholesterol", record.getRecordType());
+        assertEquals(code, record.getRecordTypeCode());
+        assertNull(storage.getLastRecordOfType(1, "NeverAdded"));
+
+        List<Integer> codes = new ArrayList<>();
+        storage.forEachTypedRecord(1, 0, Long.MAX_VALUE, (recordType, timestamp, value) -> codes.add(recordType));
+        assertEquals(List.of(code, code, RecordTypeRegistry.codeOf("Saturation")), codes);
+    }
+
+    @Test
+    void testIngestListener() {
+        DataStorage storage = new DataStorage();
+        List<Integer> notified = new ArrayList<>();
+        IngestListener listener = notified::add;
+        storage.addIngestListener(listener);
+
+        storage.addPatientData(2, 98, "Saturation", 1714376789050L);
+        RecordBatch batch = new RecordBatch();
+        batch.add(3, 120, "SystolicPressure", 1714376789050L);
+        batch.add(2, 97, "Saturation", 1714376789051L);
+        batch.add(3, 80, "DiastolicPressure", 1714376789050L);
+        storage.addBatch(batch);
+        //once per record on its own, once per patient in a batch
+        assertEquals(List.of(2, 2, 3), notified);
+
+        storage.removeIngestListener(listener);
+        storage.addPatientData(2, 96, "Saturation", 1714376789052L);
+        assertEquals(3, notified.size());
+    }
+
     @Test
     void testDuplicateRecords() {
         DataStorage storage = DataStorage.getInstance();
@@ -72,4 +129,625 @@ class DataStorageTest {
         assertEquals(50.0, records.get(0).getMeasurementValue()); // Validate that the first record is updated
         assertEquals(1, records.get(0).getPatientId()); //validate patientID
     }
+
+    /**
+     * records of different types are stored in separate series, so check if they are merged on timestamp again
+     */
+    @Test
+    void testRecordsOfDifferentTypesAreMerged() {
+        DataStorage storage = DataStorage.getInstance();
+        storage.addPatientData(101, 98, "Saturation", 1714376789053L);
+        storage.addPatientData(101, 0.5, "ECG", 1714376789050L);
+        storage.addPatientData(101, 97, "Saturation", 1714376789051L);
+        storage.addPatientData(101, 0.7, "ECG", 1714376789052L);
+
+        List<PatientRecord> records = storage.getRecords(101, 1714376789051L, 1714376789053L);
+        assertEquals(3, records.size());
+        assertEquals(1714376789051L, records.get(0).getTimestamp());
+        assertEquals("ECG", records.get(1).getRecordType());
+        assertEquals(98, records.get(2).getMeasurementValue());
+
+        assertEquals(0.7, storage.getLastRecordOfType(101, "ECG").getMeasurementValue());
+        assertNull(storage.getLastRecordOfType(101, "SystolicPressure"));
+    }
+
+    /**
+     * several threads add records for the same patients at the same time, none of the records should get lost
+     */
+    @Test
+    void testConcurrentAddPatientData() throws InterruptedException {
+        DataStorage storage = DataStorage.getInstance();
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            int offset = t;
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 1000; i++) {
+                    storage.addPatientData(102, i, "ECG", 1714376789050L + i * threads.length + offset);
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        List<PatientRecord> records = storage.getRecords(102, 0, Long.MAX_VALUE);
+        assertEquals(4000, records.size());
+        for (int i = 1; i < records.size(); i++) {
+            assertTrue(records.get(i - 1).getTimestamp() < records.get(i).getTimestamp());
+        }
+    }
+
+    /**
+     * records that arrive out of order (a bit late, and very late) and duplicates of late records
+     * should still end up sorted, with the duplicate updating the value
+     */
+    @Test
+    void testOutOfOrderRecords() {
+        DataStorage storage = DataStorage.getInstance();
+        long start = 1714376789000L;
+        for (int i = 0; i < 200; i++) {
+            long time = start + (i % 2 == 0 ? i + 1 : i - 1) * 100L; //every pair of records is swapped
+            storage.addPatientData(103, i, "ECG", time);
+        }
+        storage.addPatientData(103, -1, "ECG", start + 500); //duplicate of a late record
+        storage.addPatientData(103, -2, "ECG", start - 60000); //much later than the lateness window
+
+        List<PatientRecord> records = storage.getRecords(103, 0, Long.MAX_VALUE);
+        assertEquals(201, records.size());
+        assertEquals(start - 60000, records.get(0).getTimestamp());
+        for (int i = 1; i < records.size(); i++) {
+            assertEquals(start + (i - 1) * 100L, records.get(i).getTimestamp());
+        }
+        assertEquals(-1, records.get(6).getMeasurementValue());
+        assertEquals(start + 19900, storage.getLastRecordOfType(103, "ECG").getTimestamp());
+    }
+
+    /**
+     * the latest record per type should follow in-order and late records, also for several patients at once
+     */
+    @Test
+    void testLastRecordsOfType() {
+        DataStorage storage = DataStorage.getInstance();
+        storage.addPatientData(104, 95, "Saturation", 1714376789050L);
+        storage.addPatientData(104, 120, "SystolicPressure", 1714376789051L);
+        storage.addPatientData(104, 93, "Saturation", 1714376789052L);
+        storage.addPatientData(104, 99, "Saturation", 1714376789049L); //late, shouldn't become the latest
+        storage.addPatientData(105, 97, "Saturation", 1714376789060L);
+
+        PatientRecord[] latest = storage.getLastRecordsOfType(new int[]{104, 105, -1}, "Saturation");
+        assertEquals(3, latest.length);
+        assertEquals(93, latest[0].getMeasurementValue());
+        assertEquals(104, latest[0].getPatientId());
+        assertEquals(1714376789060L, latest[1].getTimestamp());
+        assertNull(latest[2]);
+        assertNull(storage.getLastRecordsOfType(new int[]{105}, "SystolicPressure")[0]);
+    }
+
+    /**
+     * the visitor queries should give the same records as getRecords, without making a list
+     */
+    @Test
+    void testForEachRecord() {
+        DataStorage storage = DataStorage.getInstance();
+        storage.addPatientData(106, 0.5, "ECG", 1714376789050L);
+        storage.addPatientData(106, 98, "Saturation", 1714376789051L);
+        storage.addPatientData(106, 0.6, "ECG", 1714376789052L);
+        storage.addPatientData(106, 0.4, "ECG", 1714376789049L); //late
+
+        List<PatientRecord> expected = storage.getRecords(106, 1714376789049L, 1714376789051L);
+        List<PatientRecord> visited = new ArrayList<>();
+        storage.forEachRecord(106, 1714376789049L, 1714376789051L,
+                (recordType, timestamp, value) -> visited.add(new PatientRecord(106, value, recordType, timestamp)));
+        assertEquals(expected.size(), visited.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getTimestamp(), visited.get(i).getTimestamp());
+            assertEquals(expected.get(i).getRecordType(), visited.get(i).getRecordType());
+        }
+
+        double[] sum = {0};
+        int[] count = {0};
+        storage.forEachRecord(106, "ECG", 1714376789050L, Long.MAX_VALUE, (timestamp, value) -> {
+            sum[0] += value;
+            count[0]++;
+        });
+        assertEquals(2, count[0]);
+        assertEquals(1.1, sum[0], 1e-9);
+
+        storage.forEachRecord(-1, 0, Long.MAX_VALUE, (recordType, timestamp, value) -> count[0]++); //unknown patient
+        assertEquals(2, count[0]);
+    }
+
+    /**
+     * a restarted storage should get all records back, from the snapshot and from the log after it
+     */
+    @Test
+    void testRestoreFromSnapshotAndLog() throws IOException {
+        Path dir = Files.createTempDirectory("storage");
+        DataStorage storage = new DataStorage();
+        storage.enablePersistence(dir, 0);
+        storage.addPatientData(1, 97, "Saturation", 1714376789050L);
+        storage.addPatientData(1, 0.5, "ECG", 1714376789051L);
+        storage.addPatientData(2, 120, "SystolicPressure", 1714376789052L);
+        storage.setPatientScannedTime(1, 1714376789050L);
+        storage.snapshot();
+        storage.addPatientData(1, 96, "Saturation", 1714376789053L); //only in the log
+        storage.addPatientData(1, 95, "Saturation", 1714376789050L); //updates a record of the snapshot
+        storage.addPatientData(3, 80, "DiastolicPressure", 1714376789054L);
+        storage.disablePersistence();
+
+        DataStorage restored = new DataStorage();
+        restored.enablePersistence(dir, 0);
+        List<PatientRecord> records = restored.getRecords(1, 0, Long.MAX_VALUE);
+        assertEquals(3, records.size());
+        assertEquals(95, records.get(0).getMeasurementValue());
+        assertEquals(96, restored.getLastRecordOfType(1, "Saturation").getMeasurementValue());
+        assertEquals(1714376789050L, restored.getPatientScannedTime(1));
+        assertEquals(120, restored.getLastRecordOfType(2, "SystolicPressure").getMeasurementValue());
+        assertEquals(80, restored.getLastRecordOfType(3, "DiastolicPressure").getMeasurementValue());
+
+        restored.addPatientData(3, 81, "DiastolicPressure", 1714376789055L); //logged after the restart
+        restored.disablePersistence();
+        DataStorage restoredAgain = new DataStorage();
+        restoredAgain.enablePersistence(dir, 0);
+        assertEquals(2, restoredAgain.getRecords(3, 0, Long.MAX_VALUE).size());
+        restoredAgain.disablePersistence();
+    }
+
+    /**
+     * a segment that is corrupt before its end should stop the restore with an error that names it,
+     * while a torn last entry is ignored
+     */
+    @Test
+    void testCorruptLogSegment() throws IOException {
+        Path dir = Files.createTempDirectory("storage");
+        Path segment = dir.resolve("wal-1.log");
+        ByteBuffer bytes = ByteBuffer.allocate(6 + 23 + 10);
+        bytes.putInt(0x57414C31).putShort((short) 1); //the header
+        bytes.put((byte) 2).putInt(1).putShort((short) 7).putLong(1714376789050L).putDouble(97); //type 7 isn't defined
+        bytes.put(new byte[10]);
+        Files.write(segment, bytes.array());
+        IOException error = assertThrows(IOException.class, () -> new DataStorage().enablePersistence(dir, 0));
+        assertTrue(error.getMessage().contains("wal-1.log") && error.getMessage().contains("offset 6"), error.getMessage());
+
+        bytes = ByteBuffer.allocate(6 + 5 + 10 + 23 + 12);
+        bytes.putInt(0x57414C31).putShort((short) 1);
+        byte[] name = "Saturation".getBytes(StandardCharsets.UTF_8);
+        bytes.put((byte) 1).putShort((short) 7).putShort((short) name.length).put(name);
+        bytes.put((byte) 2).putInt(1).putShort((short) 7).putLong(1714376789050L).putDouble(97);
+        bytes.put((byte) 2).putInt(1).putShort((short) 7).put(new byte[5]); //torn by a crash
+        Files.write(segment, bytes.array());
+        DataStorage restored = new DataStorage();
+        restored.enablePersistence(dir, 0);
+        assertEquals(97, restored.getLastRecordOfType(1, "Saturation").getMeasurementValue());
+        restored.disablePersistence();
+        deleteDirectory(dir);
+    }
+
+    /**
+     * ingest threads log their patients' samples at the same time, a restore should get every sample back,
+     * with the last value of a timestamp that was written twice
+     */
+    @Test
+    void testConcurrentLogging() throws IOException, InterruptedException {
+        Path dir = Files.createTempDirectory("storage");
+        long start = 1714376789050L;
+        DataStorage storage = new DataStorage();
+        storage.enablePersistence(dir, 0);
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            int first = 1 + t;
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < 1000; i++) {
+                    for (int id = first; id <= 40; id += 4) {
+                        storage.addPatientData(id, i, "ECG", start + i);
+                        storage.addPatientData(id, 90, "Saturation", start + i);
+                    }
+                }
+                for (int id = first; id <= 40; id += 4) {
+                    storage.addPatientData(id, -id, "ECG", start);
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        storage.snapshot(); //while the threads are logging
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        storage.disablePersistence();
+
+        DataStorage restored = new DataStorage();
+        restored.enablePersistence(dir, 0);
+        for (int id = 1; id <= 40; id++) {
+            assertEquals(2000, restored.getRecords(id, 0, Long.MAX_VALUE).size());
+            double[] first = new double[1];
+            restored.forEachRecord(id, "ECG", start, start, (timestamp, value) -> first[0] = value);
+            assertEquals(-id, first[0]);
+            assertEquals(999, restored.getLastRecordOfType(id, "ECG").getMeasurementValue());
+        }
+        restored.disablePersistence();
+        deleteDirectory(dir);
+    }
+
+    private static void deleteDirectory(Path dir) throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+            for (Path file : files) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(dir);
+    }
+
+    /**
+     * with compression the sealed history is Gorilla encoded, reading it should give exactly the same records
+     * as without compression, also after very late inserts and duplicates in the sealed part
+     */
+    @Test
+    void testCompressedHistory() {
+        DataStorage plain = new DataStorage();
+        DataStorage compressed = new DataStorage();
+        compressed.enableCompression("ECG");
+        long start = 1714376789000L;
+        java.util.Random random = new java.util.Random(42);
+        for (int i = 0; i < 5000; i++) {
+            long time = start + i * 100L + (i % 7 == 0 ? 3 : 0); //mostly regular, with some jitter
+            double value = i % 500 == 0 ? Double.NaN : Math.sin(i / 10.0) + random.nextDouble() * 0.05;
+            plain.addPatientData(1, value, "ECG", time);
+            compressed.addPatientData(1, value, "ECG", time);
+        }
+        for (DataStorage storage : new DataStorage[]{plain, compressed}) {
+            storage.addPatientData(1, -7, "ECG", start + 50); //very late, between two sealed samples
+            storage.addPatientData(1, -8, "ECG", start + 100); //duplicate of a sealed sample
+            storage.addPatientData(1, -9, "ECG", start - 1000); //older than everything
+        }
+
+        List<PatientRecord> expected = plain.getRecords(1, 0, Long.MAX_VALUE);
+        List<PatientRecord> actual = compressed.getRecords(1, 0, Long.MAX_VALUE);
+        assertEquals(5002, actual.size());
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getTimestamp(), actual.get(i).getTimestamp());
+            assertEquals(expected.get(i).getMeasurementValue(), actual.get(i).getMeasurementValue());
+        }
+        assertEquals(-9, actual.get(0).getMeasurementValue());
+        assertEquals(-7, actual.get(2).getMeasurementValue());
+        assertEquals(-8, actual.get(3).getMeasurementValue());
+
+        List<PatientRecord> range = compressed.getRecords(1, start + 250_000, start + 250_299);
+        assertEquals(3, range.size());
+        assertEquals(start + 250_000, range.get(0).getTimestamp());
+    }
+
+    /**
+     * timestamps whose delta-of-delta is at the edges of the buckets of the codec must come back exactly
+     */
+    @Test
+    void testCompressedDeltaOfDeltaEdges() {
+        DataStorage storage = new DataStorage();
+        storage.enableCompression("ECG");
+        long[] times = edgeTimestamps(1714376789000L, 5000);
+        for (int i = 0; i < times.length; i++) {
+            storage.addPatientData(1, i, "ECG", times[i]);
+        }
+        List<PatientRecord> records = storage.getRecords(1, 0, Long.MAX_VALUE);
+        assertEquals(times.length, records.size());
+        for (int i = 0; i < times.length; i++) {
+            assertEquals(times[i], records.get(i).getTimestamp());
+            assertEquals(i, records.get(i).getMeasurementValue());
+        }
+    }
+
+    /**
+     * sorted timestamps about 10s apart, whose delta-of-deltas go over the edges of the codec's buckets
+     * (e.g. +64 and then -64), and some that only fit in 64 bits
+     */
+    private static long[] edgeTimestamps(long start, int count) {
+        long[] jitters = {0, 1, 63, 64, 65, 255, 256, 257, 2047, 2048, 2049, 5000};
+        long[] times = new long[count];
+        times[0] = start;
+        for (int i = 1; i < count; i++) {
+            long jitter = jitters[(i / 2) % jitters.length];
+            //every other delta is longer, so the delta-of-delta is +jitter and then -jitter
+            times[i] = times[i - 1] + 10_000 + (i % 2 == 0 ? jitter : 0);
+        }
+        return times;
+    }
+
+    @Test
+    void testRetentionAndRollups() {
+        DataStorage storage = new DataStorage();
+        storage.setRetentionPolicy("ECG", new RetentionPolicy(60_000)
+                .withRollup(1000, 10 * 60_000)
+                .withRollup(60_000, Long.MAX_VALUE));
+        long start = 1714376760000L; //a whole minute
+        for (int i = 0; i < 12_000; i++) { //20 minutes at 10 Hz
+            storage.addPatientData(1, i, "ECG", start + i * 100L);
+        }
+        long newest = start + 11_999 * 100L;
+        storage.sweepRetention();
+
+        List<PatientRecord> raw = storage.getRecords(1, 0, Long.MAX_VALUE);
+        assertTrue(raw.size() < 12_000);
+        assertTrue(raw.get(0).getTimestamp() <= newest - 60_000); //only whole chunks are dropped
+        assertEquals(newest, raw.get(raw.size() - 1).getTimestamp());
+
+        List<double[]> minutes = new ArrayList<>();
+        storage.forEachRollup(1, "ECG", 0, Long.MAX_VALUE, 60_000,
+                (bucketStart, min, max, mean, count) -> minutes.add(new double[]{bucketStart, min, max, mean, count}));
+        assertEquals(20, minutes.size());
+        assertArrayEquals(new double[]{start + 60_000, 600, 1199, 899.5, 600}, minutes.get(1));
+
+        List<double[]> seconds = new ArrayList<>();
+        storage.forEachRollup(1, "ECG", 0, Long.MAX_VALUE, 5000,
+                (bucketStart, min, max, mean, count) -> seconds.add(new double[]{bucketStart, min, max, mean, count}));
+        //the older seconds are past their retention, the minutes of the tier after it are used for those
+        assertEquals(10 + 600, seconds.size());
+        assertArrayEquals(new double[]{start, 0, 599, 299.5, 600}, seconds.get(0));
+        assertArrayEquals(new double[]{start + 540_000, 5400, 5999, 5699.5, 600}, seconds.get(9));
+        assertArrayEquals(new double[]{start + 600_000, 6000, 6009, 6004.5, 10}, seconds.get(10));
+
+        List<PatientRecord> fine = storage.getRecords(1, "ECG", newest - 999, newest, 100);
+        assertEquals(10, fine.size()); //finer than any tier, so the raw samples
+        assertEquals(11_999, fine.get(9).getMeasurementValue());
+
+        //raw samples for the last minute, and the seconds tier before that, without a gap or overlap
+        List<double[]> recent = new ArrayList<>();
+        storage.forEachRollup(1, "ECG", newest - 300_000, newest, 100,
+                (bucketStart, min, max, mean, count) -> recent.add(new double[]{bucketStart, min, max, mean, count}));
+        assertEquals(241 + 600, recent.size());
+        assertArrayEquals(new double[]{start + 899_000, 8990, 8999, 8994.5, 10}, recent.get(0));
+        assertArrayEquals(new double[]{start + 1_139_000, 11_390, 11_399, 11_394.5, 10}, recent.get(240));
+        assertArrayEquals(new double[]{start + 1_140_000, 11_400, 11_400, 11_400, 1}, recent.get(241));
+        long samples = 0;
+        for (int i = 0; i < recent.size(); i++) {
+            samples += (long) recent.get(i)[4];
+            if (i > 0) {
+                assertTrue(recent.get(i)[0] > recent.get(i - 1)[0]);
+            }
+        }
+        assertEquals(12_000 - 8990, samples);
+
+        assertThrows(IllegalArgumentException.class, () -> new RetentionPolicy(60_000)
+                .withRollup(1000, 60_000).withRollup(1500, 60_000)); //not a multiple
+    }
+
+    @Test
+    void testAggregate() {
+        DataStorage storage = new DataStorage();
+        storage.enableCompression("ECG");
+        long start = 1714376789000L;
+        java.util.Random random = new java.util.Random(7);
+        double[] values = new double[5000];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = random.nextGaussian() * 10 + 80;
+            storage.addPatientData(1, values[i], i % 2 == 0 ? "ECG" : "SystolicPressure", start + i * 100L);
+        }
+        storage.addPatientData(1, Double.NaN, "ECG", start - 100); //left out of the statistics
+
+        for (int[] range : new int[][]{{0, 4998}, {18, 3000}, {2100, 2100}, {4990, 4998}}) {
+            double sum = 0;
+            double min = Double.POSITIVE_INFINITY;
+            double max = Double.NEGATIVE_INFINITY;
+            int count = 0;
+            for (int i = range[0]; i <= range[1]; i += 2) {
+                sum += values[i];
+                min = Math.min(min, values[i]);
+                max = Math.max(max, values[i]);
+                count++;
+            }
+            double mean = sum / count;
+            double squares = 0;
+            for (int i = range[0]; i <= range[1]; i += 2) {
+                squares += (values[i] - mean) * (values[i] - mean);
+            }
+
+            Aggregate aggregate = storage.aggregate(1, "ECG", start + range[0] * 100L - 50, start + range[1] * 100L);
+            assertEquals(count, aggregate.getCount());
+            assertEquals(min, aggregate.getMin());
+            assertEquals(max, aggregate.getMax());
+            assertEquals(sum, aggregate.getSum(), 1e-6);
+            assertEquals(mean, aggregate.getMean(), 1e-9);
+            assertEquals(Math.sqrt(squares / count), aggregate.getStandardDeviation(), 1e-9);
+            assertEquals(start + range[0] * 100L, aggregate.getFirstTimestamp());
+            assertEquals(values[range[0]], aggregate.getFirstValue());
+            assertEquals(values[range[1]], aggregate.getLastValue());
+        }
+
+        Aggregate empty = storage.aggregate(2, "ECG", 0, Long.MAX_VALUE);
+        assertEquals(0, empty.getCount());
+        assertTrue(Double.isNaN(empty.getMean()));
+    }
+
+    @Test
+    void testParallelScansAcrossPatients() {
+        DataStorage storage = new DataStorage();
+        long start = 1714376789000L;
+        double sum = 0;
+        int count = 0;
+        List<Integer> low = new ArrayList<>();
+        for (int patientId = 1; patientId <= 500; patientId++) {
+            for (int i = 0; i < 100; i++) {
+                double saturation = 90 + (patientId * 7 + i) % 10;
+                storage.addPatientData(patientId, saturation, "Saturation", start + i * 1000L);
+                storage.addPatientData(patientId, 70, "HeartRate", start + i * 1000L);
+                if (i >= 50) {
+                    sum += saturation;
+                    count++;
+                }
+                if (i == 99 && saturation < 92) {
+                    low.add(patientId);
+                }
+            }
+        }
+
+        int[] found = storage.findPatients("Saturation", start + 90_000, start + 99_000,
+                aggregate -> aggregate.getCount() > 0 && aggregate.getLastValue() < 92);
+        assertArrayEquals(low.stream().mapToInt(Integer::intValue).toArray(), found);
+
+        Aggregate ward = storage.aggregateAcrossPatients("Saturation", start + 50_000, Long.MAX_VALUE);
+        assertEquals(count, ward.getCount());
+        assertEquals(sum / count, ward.getMean(), 1e-9);
+        assertEquals(90, ward.getMin());
+        assertEquals(99, ward.getMax());
+        assertEquals(start + 99_000, ward.getLastTimestamp());
+        assertEquals(0, storage.aggregateAcrossPatients("ECG", 0, Long.MAX_VALUE).getCount());
+
+        java.util.concurrent.atomic.AtomicInteger visited = new java.util.concurrent.atomic.AtomicInteger();
+        storage.forEachPatientParallel(patient -> visited.incrementAndGet());
+        assertEquals(500, visited.get());
+    }
+
+    @Test
+    void testSparsePatientIds() throws InterruptedException {
+        DataStorage storage = new DataStorage();
+        int[] ids = new java.util.Random(3).ints(100_000_000, 1_000_000_000).distinct().limit(4000).toArray();
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            int offset = t;
+            threads[t] = new Thread(() -> {
+                for (int i = offset; i < ids.length; i += threads.length) {
+                    storage.addPatientData(ids[i], i, "HeartRate", 1714376789050L);
+                    storage.addPatientData(ids[(i + 1) % ids.length], i, "Saturation", 1714376789050L + i);
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        storage.addPatientData(0, 1, "HeartRate", 1714376789050L);
+        storage.addPatientData(-5, 2, "HeartRate", 1714376789050L);
+
+        assertEquals(ids.length + 2, storage.getAllPatients().size());
+        for (int i = 0; i < ids.length; i++) {
+            assertEquals(i, storage.getLastRecordOfType(ids[i], "HeartRate").getMeasurementValue());
+            assertEquals(1, storage.getRecords(ids[i], 0, Long.MAX_VALUE).size() - 1);
+        }
+        assertEquals(2, storage.getLastRecordOfType(-5, "HeartRate").getMeasurementValue());
+        assertNull(storage.getLastRecordOfType(123, "HeartRate"));
+    }
+
+    @Test
+    void testMemoryBudgetSpillsColdPatients() throws IOException {
+        Path directory = Files.createTempDirectory("spill");
+        DataStorage storage = new DataStorage();
+        storage.enableCompression("ECG");
+        long start = 1714376789000L;
+        for (int patientId = 1; patientId <= 20; patientId++) {
+            for (int i = 0; i < 5000; i++) {
+                storage.addPatientData(patientId, Math.sin(i / 10.0) * patientId, "ECG", start + i * 100L);
+                storage.addPatientData(patientId, 60 + i % 40, "HeartRate", start + i * 100L);
+            }
+            //a series without compression, whose delta-of-deltas are at the edges of the codec's buckets
+            long[] edgeTimes = edgeTimestamps(start, 5000);
+            for (int i = 0; i < edgeTimes.length; i++) {
+                storage.addPatientData(patientId, i, "Saturation", edgeTimes[i]);
+            }
+        }
+        List<PatientRecord> expected = storage.getRecords(3, 0, Long.MAX_VALUE);
+        Aggregate expectedAggregate = storage.aggregate(3, "HeartRate", start + 1234, start + 456_789);
+        for (int patientId = 1; patientId <= 20; patientId++) {
+            if (patientId != 3) {
+                storage.getRecords(patientId, 0, 0); //patient 3 is now the least recently accessed, 20 the most
+            }
+        }
+        long before = storage.getResidentBytes();
+        long hot = storage.getResidentBytes(20);
+        long cold = storage.getResidentBytes(3);
+
+        storage.setMemoryBudget(before / 2, directory);
+        storage.enforceMemoryBudget();
+
+        assertTrue(storage.getResidentBytes() <= before / 2);
+        assertTrue(storage.getResidentBytes(3) < storage.getResidentBytes(20));
+        assertTrue(storage.getResidentBytes(3) < cold);
+        assertEquals(hot, storage.getResidentBytes(20));
+        List<PatientRecord> actual = storage.getRecords(3, 0, Long.MAX_VALUE);
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getTimestamp(), actual.get(i).getTimestamp());
+            assertEquals(expected.get(i).getMeasurementValue(), actual.get(i).getMeasurementValue());
+        }
+        long[] edgeTimes = edgeTimestamps(start, 5000);
+        List<PatientRecord> saturation = new ArrayList<>();
+        for (PatientRecord record : actual) {
+            if (record.getRecordType().equals("Saturation")) {
+                saturation.add(record);
+            }
+        }
+        assertEquals(edgeTimes.length, saturation.size());
+        for (int i = 0; i < edgeTimes.length; i++) {
+            assertEquals(edgeTimes[i], saturation.get(i).getTimestamp());
+            assertEquals(i, saturation.get(i).getMeasurementValue());
+        }
+        Aggregate aggregate = storage.aggregate(3, "HeartRate", start + 1234, start + 456_789);
+        assertEquals(expectedAggregate.getCount(), aggregate.getCount());
+        assertEquals(expectedAggregate.getMean(), aggregate.getMean(), 1e-9);
+
+        storage.addPatientData(3, -1, "ECG", start + 50); //very late, into a spilled chunk
+        assertEquals(-1, storage.getRecords(3, start + 50, start + 50).get(0).getMeasurementValue());
+    }
+
+    /**
+     * a patient whose latest values are polled is hot, so a patient that nobody reads is spilled first
+     */
+    @Test
+    void testLatestValueLookupKeepsPatientHot() throws IOException {
+        Path directory = Files.createTempDirectory("spill");
+        DataStorage storage = new DataStorage();
+        long start = 1714376789000L;
+        for (int patientId = 1; patientId <= 2; patientId++) {
+            for (int i = 0; i < 5000; i++) {
+                storage.addPatientData(patientId, i, "HeartRate", start + i * 100L);
+            }
+        }
+        storage.getLastRecordOfType(1, "HeartRate"); //patient 2 was touched last by adding, patient 1 by polling
+        long polled = storage.getResidentBytes(1);
+        long idle = storage.getResidentBytes(2);
+
+        storage.setMemoryBudget(storage.getResidentBytes() - 1, directory);
+        storage.enforceMemoryBudget();
+
+        assertEquals(polled, storage.getResidentBytes(1));
+        assertTrue(storage.getResidentBytes(2) < idle);
+    }
+
+    /**
+     * adding records in batches should give the same history as adding them one by one, also when a batch
+     * is out of order, has duplicates, mixes patients and record types, or is older than what is stored
+     */
+    @Test
+    void testAddBatch() {
+        DataStorage single = new DataStorage();
+        DataStorage batched = new DataStorage();
+        String[] types = {"ECG", "Saturation", "alert"};
+        Random random = new Random(14);
+        RecordBatch batch = new RecordBatch();
+        long start = 1714376789000L;
+        for (int round = 0; round < 20; round++) {
+            for (int i = 0; i < 1000; i++) {
+                int patientId = 1 + random.nextInt(5);
+                String type = types[random.nextInt(types.length)];
+                //mostly newer records, some of them a bit late and some of them much older
+                long time = start + round * 20_000L + random.nextInt(20_000) - (random.nextInt(10) == 0 ? 60_000 : 0);
+                double value = random.nextInt(100);
+                single.addPatientData(patientId, value, type, time);
+                batch.add(patientId, value, type, time);
+            }
+            batched.addBatch(batch);
+            batch.clear();
+        }
+        assertEquals(0, batch.size());
+        for (int patientId = 1; patientId <= 5; patientId++) {
+            List<PatientRecord> expected = single.getRecords(patientId, 0, Long.MAX_VALUE);
+            List<PatientRecord> actual = batched.getRecords(patientId, 0, Long.MAX_VALUE);
+            assertEquals(expected.size(), actual.size());
+            for (int i = 0; i < expected.size(); i++) {
+                assertEquals(expected.get(i).getTimestamp(), actual.get(i).getTimestamp());
+                assertEquals(expected.get(i).getRecordType(), actual.get(i).getRecordType());
+                assertEquals(expected.get(i).getMeasurementValue(), actual.get(i).getMeasurementValue());
+            }
+        }
+    }
 }
@@ -7,9 +7,15 @@ import org.junit.jupiter.api.Test;
 
 import com.data_management.DataStorage;
 import com.data_management.PatientRecord;
+import com.data_management.ReadStats;
 
 import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
 import java.util.List;
+import java.util.stream.Stream;
 
 public class FileReaderTest {
 
@@ -101,4 +107,146 @@ public class FileReaderTest {
         assertEquals(2, records.size()); // Check if the last 2 valid records are received
         assertEquals(1, records.get(0).getPatientId()); // Validate record
     }
+
+    /**
+     * the parallel mode splits files into chunks, it should give the same records as the serial mode,
+     * also when a later line of a file updates a record of an earlier chunk
+     */
+    @Test
+    void testParallelRead() throws IOException {
+        Path dir = Files.createTempDirectory("parallel-read");
+        try {
+            long start = 1714376789050L;
+            try (Writer ecg = Files.newBufferedWriter(dir.resolve("ECG.txt"));
+                 Writer saturation = Files.newBufferedWriter(dir.resolve("Saturation.txt"))) {
+                for (int i = 0; i < 3000; i++) { //about 250 KB, so many chunks of 16 KB
+                    int patientId = 1 + i % 7;
+                    ecg.write("Patient ID: " + patientId + ", Timestamp: " + (start + i) + ", Label: ECG, Data: " + (i % 100) + "\n");
+                    if (i % 10 == 0) {
+                        saturation.write("Patient ID: " + patientId + ", Timestamp: " + (start + i) + ", Label: Saturation, Data: 97\n");
+                    }
+                }
+                //duplicates of records in the first chunk, these values should win
+                ecg.write("Patient ID: 1, Timestamp: " + start + ", Label: ECG, Data: -1\n");
+                ecg.write("Patient ID: 2, Timestamp: " + (start + 1) + ", Label: ECG, Data: -2"); //no line break at the end
+            }
+
+            DataStorage serial = new DataStorage();
+            DataStorage parallel = new DataStorage();
+            FileReader serialReader = new FileReader(dir.toString());
+            serialReader.readData(serial);
+            FileReader parallelReader = new FileReader(dir.toString(), 4, 16 << 10);
+            parallelReader.readData(parallel);
+
+            long bytes = Files.size(dir.resolve("ECG.txt")) + Files.size(dir.resolve("Saturation.txt"));
+            for (ReadStats stats : List.of(serialReader.getLastReadStats(), parallelReader.getLastReadStats())) {
+                assertEquals(3000 + 300 + 2, stats.getLines());
+                assertEquals(bytes, stats.getBytes());
+                assertTrue(stats.getNanos() > 0 && stats.getLinesPerSecond() > 0, stats.toString());
+            }
+
+            //records of different types with the same timestamp can be in either order, the files are read in parallel
+            Comparator<PatientRecord> order = Comparator.comparingLong(PatientRecord::getTimestamp)
+                    .thenComparing(PatientRecord::getRecordType);
+            for (int patientId = 1; patientId <= 7; patientId++) {
+                List<PatientRecord> expected = serial.getRecords(patientId, 0, Long.MAX_VALUE);
+                List<PatientRecord> actual = parallel.getRecords(patientId, 0, Long.MAX_VALUE);
+                expected.sort(order);
+                actual.sort(order);
+                assertEquals(expected.size(), actual.size());
+                for (int i = 0; i < expected.size(); i++) {
+                    assertEquals(expected.get(i).getTimestamp(), actual.get(i).getTimestamp());
+                    assertEquals(expected.get(i).getRecordType(), actual.get(i).getRecordType());
+                    assertEquals(expected.get(i).getMeasurementValue(), actual.get(i).getMeasurementValue());
+                }
+            }
+            //many more chunks than are allowed in flight at once
+            DataStorage smallChunks = new DataStorage();
+            new FileReader(dir.toString(), 2, 256).readData(smallChunks);
+            assertEquals(serial.getRecords(1, 0, Long.MAX_VALUE).size(), smallChunks.getRecords(1, 0, Long.MAX_VALUE).size());
+
+            assertEquals(-1, parallel.getRecords(1, start, start).stream()
+                    .filter(record -> record.getRecordType().equals("ECG")).findFirst().get().getMeasurementValue());
+            assertEquals(-2, parallel.getRecords(2, start + 1, start + 1).get(0).getMeasurementValue());
+        } finally {
+            deleteDirectory(dir);
+        }
+    }
+
+    /**
+     * follow mode should read appended lines and new files, wait for incomplete lines,
+     * and continue from the saved offsets after a restart
+     */
+    @Test
+    void testFollow() throws Exception {
+        Path dir = Files.createTempDirectory("follow");
+        Thread follower = null;
+        try {
+            Path ecg = dir.resolve("ECG.txt");
+            long start = 1714376789050L;
+            Files.write(ecg, ("Patient ID: 1, Timestamp: " + start + ", Label: ECG, Data: 1\n").getBytes());
+
+            DataStorage storage = new DataStorage();
+            follower = follow(dir, storage);
+            waitForRecords(storage, 1, 1);
+            Files.write(ecg, ("Patient ID: 1, Timestamp: " + (start + 1) + ", Label: ECG, Data: 2\n"
+                    + "Patient ID: 1, Timestamp: " + (start + 2) + ", Label: E").getBytes(), StandardOpenOption.APPEND);
+            Files.write(dir.resolve("Saturation.txt"),
+                    ("Patient ID: 1, Timestamp: " + start + ", Label: Saturation, Data: 97\n").getBytes());
+            waitForRecords(storage, 1, 3);
+            Files.write(ecg, "CG, Data: 3\n".getBytes(), StandardOpenOption.APPEND); //the rest of the line
+            waitForRecords(storage, 1, 4);
+            follower.interrupt();
+            follower.join();
+            assertTrue(Files.exists(dir.resolve(".offsets")));
+
+            //a restart only reads what was appended since
+            Files.write(ecg, ("Patient ID: 2, Timestamp: " + start + ", Label: ECG, Data: 4\n").getBytes(), StandardOpenOption.APPEND);
+            DataStorage restarted = new DataStorage();
+            follower = follow(dir, restarted);
+            waitForRecords(restarted, 2, 1);
+            follower.interrupt();
+            follower.join();
+            assertNull(restarted.getLastRecordOfType(1, "ECG"));
+            assertEquals(4, restarted.getLastRecordOfType(2, "ECG").getMeasurementValue());
+            assertEquals(3, storage.getLastRecordOfType(1, "ECG").getMeasurementValue());
+        } finally {
+            if (follower != null) {
+                follower.interrupt(); //a failed assertion can leave it running, and it would write the offsets again
+                follower.join();
+            }
+            deleteDirectory(dir); //with the offsets file
+        }
+    }
+
+    private static Thread follow(Path dir, DataStorage storage) {
+        Thread thread = new Thread(() -> {
+            try {
+                new FileReader(dir.toString()).follow(storage);
+            } catch (InterruptedException e) {
+                //stopped by the test
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        thread.start();
+        return thread;
+    }
+
+    private static void deleteDirectory(Path dir) throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(dir);
+    }
+
+    private static void waitForRecords(DataStorage storage, int patientId, int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (storage.getRecords(patientId, 0, Long.MAX_VALUE).size() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        assertEquals(count, storage.getRecords(patientId, 0, Long.MAX_VALUE).size());
+    }
 }
@@ -1,18 +1,23 @@
 package data_management;
 
 import com.alerts.AlertGenerator;
+import com.cardio_generator.outputs.BinaryFrameEncoder;
 import com.cardio_generator.outputs.WebSocketOutputStrategy;
+import com.data_management.BinaryFrameDecoder;
 import com.data_management.DataStorage;
 import com.data_management.HospitalWebSocketClient;
 import com.data_management.PatientRecord;
+import com.data_management.RecordBatch;
 import org.java_websocket.client.WebSocketClient;
 import org.junit.jupiter.api.Test;
 
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
 import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 
 public class WebSocketClientTest {
 
@@ -34,12 +39,14 @@ public class WebSocketClientTest {
         List<PatientRecord> records = storage.getRecords(1, 1714376789049L, 1714376789052L);
         if (records.isEmpty()) {
             System.out.println("records is empty");
+            out.close();
             return;
         }
         assertEquals(1, records.size()); // Check if record is added (so no duplicates)
         assertEquals(100.0, records.get(0).getMeasurementValue()); // Validate value
         assertEquals(1, records.get(0).getPatientId()); //validate patientID
         client.close();
+        out.close(); //frees the port for the next test
     }
 
     @Test
@@ -61,6 +68,7 @@ public class WebSocketClientTest {
         List<PatientRecord> records = storage.getRecords(1, 1714376789049L, 1714376789055L);
         assertEquals(4, records.size()); //has it received 4 records?
         client.close();
+        out.close();
     }
 
     @Test
@@ -88,6 +96,7 @@ public class WebSocketClientTest {
         assertEquals(99999.0, allRecords.get(0).getMeasurementValue());
 
         client.close();
+        out.close();
     }
 
 
@@ -120,6 +129,7 @@ public class WebSocketClientTest {
         assertEquals("ECG", allRecords.get(1).getRecordType());
 
         client.close();
+        out.close();
     }
 
 
@@ -149,6 +159,7 @@ public class WebSocketClientTest {
         assertEquals(1, records.size()); // just one record in the list
         assertEquals(100.0, records.get(0).getMeasurementValue()); //record is updated
         client.close();
+        out.close();
     }
 
     /**
@@ -182,6 +193,42 @@ public class WebSocketClientTest {
         List<PatientRecord> records = storage.getRecords(1, 1714376789050L, 1714376789052L);
         assertEquals(3, records.size()); // just one record in the list
         client.close();
+        out.close();
     }
 
+    /**
+     * binary frames should decode into the same records, with label codes that are only defined once per connection
+     */
+    @Test
+    void testBinaryFrames() {
+        BinaryFrameEncoder encoder = new BinaryFrameEncoder();
+        BinaryFrameDecoder decoder = new BinaryFrameDecoder();
+        DataStorage storage = new DataStorage();
+        RecordBatch batch = new RecordBatch();
+
+        encoder.add(5, 1714376789050L, "ECG", 0.25);
+        encoder.add(5, 1714376789051L, "Saturation", 97);
+        ByteBuffer first = encoder.encode(0);
+        int known = encoder.getLabelCount();
+        encoder.clear();
+        encoder.add(5, 1714376789052L, "ECG", -0.5);
+        encoder.add(-1, 1714376789053L, "ECG", 1); //invalid patient ID, left out
+        ByteBuffer second = encoder.encode(known);
+        assertEquals(1 + 2 + 4 + 2 * BinaryFrameEncoder.SAMPLE_BYTES, second.remaining()); //no label definitions
+
+        assertEquals(2, decoder.decode(first, batch));
+        assertEquals(1, decoder.decode(second, batch));
+        storage.addBatch(batch);
+        List<PatientRecord> records = storage.getRecords(5, 0, Long.MAX_VALUE);
+        assertEquals(3, records.size());
+        assertEquals("Saturation", records.get(1).getRecordType());
+        assertEquals(-0.5, records.get(2).getMeasurementValue());
+
+        //a new connection doesn't know the codes, and frames of another version are refused
+        ByteBuffer withoutDefinitions = encoder.encode(known);
+        assertThrows(IllegalArgumentException.class, () -> new BinaryFrameDecoder().decode(withoutDefinitions, batch));
+        ByteBuffer otherVersion = encoder.encode(0);
+        otherVersion.put(0, (byte) 2);
+        assertThrows(IllegalArgumentException.class, () -> decoder.decode(otherVersion, batch));
+    }
 }